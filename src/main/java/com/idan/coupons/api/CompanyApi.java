@@ -1,5 +1,6 @@
 package com.idan.coupons.api;
 
+import java.io.IOException;
 import java.util.List;
 
 import javax.servlet.http.Cookie;
@@ -13,10 +14,14 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.idan.coupons.beans.CompanyDeletionStatus;
 import com.idan.coupons.beans.CompanyEntity;
+import com.idan.coupons.beans.CompanySalesStats;
 import com.idan.coupons.controller.CompanyController;
+import com.idan.coupons.enums.ErrorType;
 import com.idan.coupons.exceptions.ApplicationException;
 import com.idan.coupons.utils.CookieUtil;
 import com.idan.coupons.utils.ValidationUtils;
@@ -52,6 +57,66 @@ public class CompanyApi {
 		return companyController.getCompanyByComapnyId(companyId);
 	}
 
+	/**
+	 * Getting the progress of the removal of the coupons of a removed company, allowed for the admin.
+	 * @param request - an HttpServletRequest object, for validating use.
+	 * @param companyId - a long parameter represent the ID of the removed company.
+	 * @return The status of the removal: its state and the number of removed coupons and purchases.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/{companyId}/deletion", method = RequestMethod.GET)
+	public CompanyDeletionStatus getCompanyDeletionStatus(HttpServletRequest request, @PathVariable("companyId") Long companyId) throws ApplicationException{
+		ValidationUtils.validateAdmin(request);
+		return companyController.getCompanyDeletionStatus(companyId);
+	}
+
+	/**
+	 * Getting the sales of a company, allowed for the admin and the same company.
+	 * @param request - an HttpServletRequest object, for validating use.
+	 * @param companyId - a long parameter represent the ID of the requested company.
+	 * @return The units sold and the revenue of the company and of each of its coupons, with the remaining stock.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/{companyId}/stats", method = RequestMethod.GET)
+	public CompanySalesStats getCompanySalesStats(HttpServletRequest request, @PathVariable("companyId") Long companyId) throws ApplicationException{
+		ValidationUtils.ValidateUser(request, companyId);
+		return companyController.getCompanySalesStats(companyId);
+	}
+
+	/**
+	 * Downloading the coupons of a company with their purchasers as a CSV file, allowed for the admin and the same company.
+	 * @param request - an HttpServletRequest object, for validating use.
+	 * @param response - an HttpServletResponse object, the CSV is written to its body.
+	 * @param companyId - a long parameter represent the ID of the requested company.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/{companyId}/export", method = RequestMethod.GET)
+	public void exportCompanyCoupons(HttpServletRequest request, HttpServletResponse response, @PathVariable("companyId") Long companyId) throws ApplicationException{
+		ValidationUtils.ValidateUser(request, companyId);
+		
+		response.setContentType("text/csv; charset=UTF-8");
+		response.setHeader("Content-Disposition", "attachment; filename=\"company-" + companyId + "-coupons.csv\"");
+		try {
+			companyController.exportCompanyCoupons(companyId, response.getWriter());
+			response.flushBuffer();
+		} catch (IOException e) {
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CompanyApi, exportCompanyCoupons(); FAILED");
+		}
+	}
+
+	/**
+	 * Recomputing the sales of all the coupons and companies, allowed for the admin only.
+	 * @param request - an HttpServletRequest object, for validating use.
+	 * @param fromLedger - optional, true to replay the purchase ledger instead of counting the current purchases.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/stats/rebuild", method = RequestMethod.POST)
+	public void rebuildSalesStats(HttpServletRequest request,
+			@RequestParam(value = "fromLedger", required = false, defaultValue = "false") boolean fromLedger) throws ApplicationException{
+		ValidationUtils.validateAdmin(request);
+		companyController.rebuildSalesStats(fromLedger);
+	}
+
 	/**
 	 * Getting information of a company by name.
 	 * @param companyName - a String parameter represent the name of the requested company.
@@ -108,18 +173,19 @@ public class CompanyApi {
 	}
 
 	/**
-	 * Removing company from company table.
+	 * Removing company from company table. Its coupons and their purchases are removed in the background.
 	 * @param request - an HttpServletRequest object, for validating use.
 	 * @param companyId - a long parameter represent the ID of the requested company.
+	 * @return The status of the removal of the coupons, to follow with the deletion status endpoint.
 	 * @throws ApplicationException
 	 */
 	@RequestMapping(value ="/{companyId}", method = RequestMethod.DELETE)
-	public void removeCompany(HttpServletRequest request, HttpServletResponse response, @PathVariable("companyId") Long companyId) throws ApplicationException{
+	public CompanyDeletionStatus removeCompany(HttpServletRequest request, HttpServletResponse response, @PathVariable("companyId") Long companyId) throws ApplicationException{
 
 		// Will update the company in the DB only if the changes are made by the admin or the same company.
 		ValidationUtils.ValidateUser(request, companyId);
 		
-		companyController.removeCompanyByCompanyID(companyId);
+		CompanyDeletionStatus status = companyController.removeCompanyByCompanyID(companyId);
 		
 		// If user is not admin, he will be logged out.
 		String userType = (String) request.getAttribute("request");
@@ -134,6 +200,8 @@ public class CompanyApi {
 				response.addCookie(cookie);
 			} 
 		}
+		
+		return status;
 	}
 
 }
@@ -3,6 +3,7 @@ package com.idan.coupons.api;
 import java.util.List;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -14,11 +15,14 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.beans.CouponFilter;
+import com.idan.coupons.beans.CouponQueryResult;
+import com.idan.coupons.beans.CouponReservationEntity;
 import com.idan.coupons.controller.CouponController;
 import com.idan.coupons.enums.CouponType;
 import com.idan.coupons.enums.ErrorType;
 import com.idan.coupons.exceptions.ApplicationException;
-import com.idan.coupons.utils.DateUtils;
+import com.idan.coupons.stream.CouponStream;
 import com.idan.coupons.utils.ValidationUtils;
 
 @CrossOrigin(origins="http://localhost:4200")
@@ -29,17 +33,37 @@ public class CouponApi {
 	@Autowired
 	CouponController couponController;
 
+	@Autowired
+	CouponStream couponStream;
+
 	/**
 	 * Getting list of all coupons from DB.
+	 * @param fields - optional comma separated names of the fields to return, all the fields if not provided.
 	 * @return List collection of all the coupons in the coupon table.
 	 * @throws ApplicationException
 	 */
 	@RequestMapping(method = RequestMethod.GET)
-	public List<CouponEntity> getAllCoupons() throws ApplicationException {
+	public List<?> getAllCoupons(@RequestParam(value = "fields", required = false) String fields) throws ApplicationException {
+		if (fields != null) {
+			return couponController.getAllCoupons(fields);
+		}
 		List<CouponEntity> coupons = couponController.getAllCoupons();
 		return coupons;
 	}
 
+	/**
+	 * Opening a stream of the changes of the coupons as Server-Sent Events: created, updated, removed, amount and
+	 * expired. The changes of each coupon are sent at most once per tick. Open it before loading the coupons, and load
+	 * them again after the stream was closed and reopened. The browser reconnects after the stream is closed.
+	 * @param request - the request of the stream, answered asynchronously.
+	 * @param response - the response the events are written to.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/stream", method = RequestMethod.GET, produces = "text/event-stream")
+	public void streamCouponChanges(HttpServletRequest request, HttpServletResponse response) throws ApplicationException {
+		couponStream.subscribe(request, response);
+	}
+
 	/**
 	 * Getting information of a coupon.
 	 * @param couponId - Long parameter represent the ID of the requested coupon.
@@ -58,7 +82,6 @@ public class CouponApi {
 	 */
 	@RequestMapping(method = RequestMethod.POST)
 	public void createCoupon(@RequestBody CouponEntity coupon) throws ApplicationException {
-				System.out.println(coupon);
 		couponController.createCoupon(coupon);
 	}
 
@@ -108,8 +131,66 @@ public class CouponApi {
 			return couponID;
 		}
 		else {
-			throw new ApplicationException(ErrorType.COOKIES_LOST, DateUtils.getCurrentDateAndTime()
-					+" problem with cookies.");
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
+		}
+	}
+
+	/**
+	 * Holding a unit of a coupon for the customer during checkout, until it is confirmed, cancelled or expires.
+	 * @param request - an HttpServletRequest object, for retrieving the customer data.
+	 * @param couponID - Long parameter of the coupon ID.
+	 * @return The hold, with its ID and the time it expires in milliseconds since 1970-01-01 UTC.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/{couponId}/reserve", method = RequestMethod.POST)
+	public CouponReservationEntity reserveCoupon(HttpServletRequest request, @PathVariable("couponId") Long couponID) throws ApplicationException {
+
+		String customerIDStr = (String) request.getAttribute("userID");
+		if(customerIDStr != null) {
+			Long customerID = Long.valueOf(customerIDStr);
+			return couponController.reserveCoupon(customerID, couponID);
+		}
+		else {
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
+		}
+	}
+
+	/**
+	 * Buying the held unit of a coupon, before the hold expires.
+	 * @param request - an HttpServletRequest object, for retrieving the customer data.
+	 * @param reservationID - Long parameter of the hold ID.
+	 * @return The ID of the bought coupon.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/reservations/{reservationId}/confirm", method = RequestMethod.POST)
+	public Long confirmReservation(HttpServletRequest request, @PathVariable("reservationId") Long reservationID) throws ApplicationException {
+
+		String customerIDStr = (String) request.getAttribute("userID");
+		if(customerIDStr != null) {
+			Long customerID = Long.valueOf(customerIDStr);
+			return couponController.confirmReservation(customerID, reservationID);
+		}
+		else {
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
+		}
+	}
+
+	/**
+	 * Cancelling a hold, returning its unit to the amount of the coupon.
+	 * @param request - an HttpServletRequest object, for retrieving the customer data.
+	 * @param reservationID - Long parameter of the hold ID.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/reservations/{reservationId}", method = RequestMethod.DELETE)
+	public void cancelReservation(HttpServletRequest request, @PathVariable("reservationId") Long reservationID) throws ApplicationException {
+
+		String customerIDStr = (String) request.getAttribute("userID");
+		if(customerIDStr != null) {
+			Long customerID = Long.valueOf(customerIDStr);
+			couponController.cancelReservation(customerID, reservationID);
+		}
+		else {
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
 		}
 	}
 
@@ -128,52 +209,71 @@ public class CouponApi {
 			couponController.removeBoughtCouponByCouponIDandCustomerID(couponID, customerID);
 		}
 		else {
-			throw new ApplicationException(ErrorType.COOKIES_LOST, DateUtils.getCurrentDateAndTime()
-					+" problem with cookies.");
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
 		}
 	}
 
 	/**
 	 * Getting a list of coupon from the DB of a certain type.
 	 * @param couponType - type of coupon.
+	 * @param fields - optional comma separated names of the fields to return, all the fields if not provided.
 	 * @return List collection of all the coupons in the coupon table of the requested type.
 	 * @throws ApplicationException
 	 */
 	@RequestMapping(value ="/byCouponType", method = RequestMethod.GET)
-	public List<CouponEntity> getCouponByType(@RequestParam("couponType") CouponType couponType) throws ApplicationException{
+	public List<?> getCouponByType(@RequestParam("couponType") CouponType couponType,
+			@RequestParam(value = "fields", required = false) String fields) throws ApplicationException{
+		if (fields != null) {
+			return couponController.getCouponByType(couponType, fields);
+		}
 		return couponController.getCouponByType(couponType);
 	}
 	
 	/**
 	 * Getting a list of coupon from the DB up to a certain price.
 	 * @param price - Double parameter of the maximum wanted price for a coupon.
+	 * @param fields - optional comma separated names of the fields to return, all the fields if not provided.
 	 * @return List collection of all the coupons in the coupon table up to the requested price.
 	 * @throws ApplicationException
 	 */
 	@RequestMapping(value ="/upToPrice", method = RequestMethod.GET)
-	public List<CouponEntity> getCouponsUpToPrice(@RequestParam("price") Double price) throws ApplicationException{
+	public List<?> getCouponsUpToPrice(@RequestParam("price") Double price,
+			@RequestParam(value = "fields", required = false) String fields) throws ApplicationException{
+		if (fields != null) {
+			return couponController.getCouponsUpToPrice(price, fields);
+		}
 		return couponController.getCouponsUpToPrice(price);
 	}
 
 	/**
 	 * Getting a list of coupon from the DB up to a certain expiration date.
 	 * @param endDate - String parameter of the latest end date of the coupon.
+	 * @param fields - optional comma separated names of the fields to return, all the fields if not provided.
 	 * @return List collection of all the coupons in the coupon table up to the requested date.
 	 * @throws ApplicationException
 	 */
 	@RequestMapping(value ="/upToEndDate", method = RequestMethod.GET)
-	public List<CouponEntity> getCouponsUpToEndDate(@RequestParam("endDate") String endDate) throws ApplicationException{
+	public List<?> getCouponsUpToEndDate(@RequestParam("endDate") String endDate,
+			@RequestParam(value = "fields", required = false) String fields) throws ApplicationException{
+		if (fields != null) {
+			return couponController.getCouponsUpToEndDate(endDate, fields);
+		}
 		return couponController.getCouponsUpToEndDate(endDate);
 	}
 
 	/**
 	 * Getting a list of coupon from the DB from a certain company.
 	 * @param companyID - Long parameter of the ID of the requested company.
+	 * @param fields - optional comma separated names of the fields to return, all the fields if not provided.
 	 * @return List collection of all the coupons in the coupon table issued by the requested company.
 	 * @throws ApplicationException
 	 */
 	@RequestMapping(value ="/byCompanyID", method = RequestMethod.GET)
-	public List<CouponEntity> getCouponsByCompanyID(@RequestParam("companyID") Long companyID) throws ApplicationException{
+	public List<?> getCouponsByCompanyID(@RequestParam("companyID") Long companyID,
+			@RequestParam(value = "fields", required = false) String fields) throws ApplicationException{
+		if (fields != null) {
+			return couponController.getCouponsByCompanyID(companyID, fields);
+		}
 		return couponController.getCouponsByCompanyID(companyID);
 	}
 
@@ -192,14 +292,66 @@ public class CouponApi {
 			return couponController.getCouponsByCustomerID(customerID);
 		}
 		else {
-			throw new ApplicationException(ErrorType.COOKIES_LOST, DateUtils.getCurrentDateAndTime()
-					+" problem with cookies.");
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
 		}
 	}
 	
+	/**
+	 * Checking which of the requested coupons the customer has purchased, for example to mark the owned coupons of a page.
+	 * @param request - an HttpServletRequest object, for retrieving the customer data.
+	 * @param couponIDs - the IDs of the coupons to check, separated by commas.
+	 * @return List of the IDs of the requested coupons that the customer has purchased.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/purchasedCoupons/check", method = RequestMethod.GET)
+	public List<Long> getPurchasedCouponIDs(HttpServletRequest request, @RequestParam("couponIds") List<Long> couponIDs) throws ApplicationException{
+
+		String customerIDStr = (String) request.getAttribute("userID");
+		if(customerIDStr != null) {
+			Long customerID = Long.valueOf(customerIDStr);
+			return couponController.getPurchasedCouponIDs(customerID, couponIDs);
+		}
+		else {
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
+		}
+	}
+	
+	/**
+	 * Getting a page of the coupons matching any combination of criteria, with the counts per coupon type and price bucket.
+	 * @param filter - the criteria from the query parameters: couponType, minPrice, maxPrice, fromEndDate, toEndDate,
+	 * 				   companyID, inStockOnly, page and pageSize. Criteria that are not provided are ignored.
+	 * @return The page of coupons and the counts of the facets.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/query", method = RequestMethod.GET)
+	public CouponQueryResult queryCoupons(CouponFilter filter) throws ApplicationException{
+		return couponController.queryCoupons(filter);
+	}
+	
+	/**
+	 * Searching coupons by the words of their title and message.
+	 * @param query - the text to search, the last word is also matched as a prefix for autocomplete.
+	 * @param limit - optional maximum number of results.
+	 * @return List collection of the matching coupons, the best match first.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(value ="/search", method = RequestMethod.GET)
+	public List<CouponEntity> searchCoupons(@RequestParam("q") String query,
+			@RequestParam(value = "limit", required = false) Integer limit) throws ApplicationException{
+		return couponController.searchCoupons(query, limit);
+	}
+	
+	/**
+	 * Getting a page of the newest coupons.
+	 * @param page - optional number of the page, starting from 0.
+	 * @param pageSize - optional size of the page, 5 by default.
+	 * @return List collection of the newest coupons, newest first.
+	 * @throws ApplicationException
+	 */
 	@RequestMapping(value ="/newest", method = RequestMethod.GET)
-	public List<CouponEntity> getNewestCoupon() throws ApplicationException{
-		List<CouponEntity> coupons = couponController.getNewestCoupon();
+	public List<CouponEntity> getNewestCoupons(@RequestParam(value = "page", required = false) Integer page,
+			@RequestParam(value = "pageSize", required = false) Integer pageSize) throws ApplicationException{
+		List<CouponEntity> coupons = couponController.getNewestCoupons(page, pageSize);
 		return coupons;
 	}
 }
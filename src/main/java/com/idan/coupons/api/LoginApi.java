@@ -21,6 +21,7 @@ import com.idan.coupons.controller.CompanyController;
 import com.idan.coupons.controller.CustomerController;
 import com.idan.coupons.enums.UserType;
 import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.metrics.MetricsRegistry;
 import com.idan.coupons.utils.CookieUtil;
 
 @CrossOrigin(origins= {"http://localhost:4200"})
@@ -32,6 +33,8 @@ public class LoginApi {
 	CompanyController companyConroller;
 	@Autowired
 	CustomerController customerController;
+	@Autowired
+	MetricsRegistry metricsRegistry;
 	
 	
 	/**
@@ -68,6 +71,7 @@ public class LoginApi {
 					userLoginInfo.setEmail(company.getCompanyEmail());
 					return userLoginInfo;
 				}
+				metricsRegistry.getCounter(MetricsRegistry.LOGIN_FAILURES).increment();
 				response.setStatus(401);
 				return null;
 			}
@@ -82,10 +86,12 @@ public class LoginApi {
 					userLoginInfo.setName(customer.getCustomerName());
 					return userLoginInfo;
 				}
+				metricsRegistry.getCounter(MetricsRegistry.LOGIN_FAILURES).increment();
 				response.setStatus(401);
 				return null;
 			}
 		}
+		metricsRegistry.getCounter(MetricsRegistry.LOGIN_FAILURES).increment();
 		response.setStatus(401);
 		return null;
 		
@@ -0,0 +1,39 @@
+package com.idan.coupons.api;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.metrics.MetricsRegistry;
+
+@RestController
+@RequestMapping("/metrics")
+public class MetricsApi {
+
+	@Autowired
+	MetricsRegistry metricsRegistry;
+
+	/**
+	 * Getting the metrics of the server in the Prometheus text format, for scraping.
+	 * @param response - the response the metrics are written to.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	public void getMetrics(HttpServletResponse response) throws ApplicationException {
+		response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+		try {
+			metricsRegistry.writePrometheus(response.getWriter());
+			response.flushBuffer();
+		} catch (IOException e) {
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in MetricsApi, getMetrics(); FAILED");
+		}
+	}
+
+}
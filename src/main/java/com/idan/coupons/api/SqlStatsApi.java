@@ -0,0 +1,49 @@
+package com.idan.coupons.api;
+
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.idan.coupons.beans.SqlStatementStats;
+import com.idan.coupons.datasource.SqlStatistics;
+import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.utils.ValidationUtils;
+
+@CrossOrigin(origins="http://localhost:4200")
+@RestController
+@RequestMapping("/sqlStats")
+public class SqlStatsApi {
+
+	private static final int DEFAULT_LIMIT = 20;
+	private static final int MAX_LIMIT = 200;
+
+	@Autowired
+	SqlStatistics sqlStatistics;
+
+	/**
+	 * Getting the SQL statements that took the longest in total since the server started, allowed for the admin only.
+	 * @param request - an HttpServletRequest object, for validating use.
+	 * @param limit - optional, the maximum number of statements, 20 if not provided.
+	 * @return List of the statistics of the statements, the longest first.
+	 * @throws ApplicationException
+	 */
+	@RequestMapping(method = RequestMethod.GET)
+	public List<SqlStatementStats> getTopStatements(HttpServletRequest request,
+			@RequestParam(value = "limit", required = false) Integer limit) throws ApplicationException {
+		ValidationUtils.validateAdmin(request);
+		int requestedLimit = limit != null ? limit : DEFAULT_LIMIT;
+		if (requestedLimit < 1 || requestedLimit > MAX_LIMIT) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid limit entered: " + requestedLimit + ", the limit must be between 1 and " + MAX_LIMIT + ".");
+		}
+		return sqlStatistics.getTopStatements(requestedLimit);
+	}
+
+}
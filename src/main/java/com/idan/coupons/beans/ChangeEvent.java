@@ -0,0 +1,80 @@
+package com.idan.coupons.beans;
+
+import com.idan.coupons.enums.ChangeEventType;
+
+/**
+ * A committed change of a coupon, a company or a customer, as it is notified to the listeners of this node and sent
+ * to the other nodes. Only the fields of its type are set.
+ */
+public class ChangeEvent {
+
+	private ChangeEventType type;
+	// The node where the change was made, and the time it was committed there in milliseconds since the epoch.
+	private String originNode;
+	private long commitTime;
+	// The coupon after the change, of COUPON_CREATED and COUPON_UPDATED.
+	private CouponEntity coupon;
+	// The ID of the changed coupon, company or customer.
+	private Long id;
+	// The customer of COUPON_PURCHASED, COUPON_PURCHASE_CANCELLED and COUPON_RESERVATION_CONFIRMED.
+	private Long customerId;
+	// The end date of COUPONS_EXPIRED.
+	private String endDate;
+
+	public ChangeEvent() {
+	}
+
+	public ChangeEvent(ChangeEventType type, Long id) {
+		this.type = type;
+		this.id = id;
+	}
+
+	public ChangeEventType getType() {
+		return type;
+	}
+	public void setType(ChangeEventType type) {
+		this.type = type;
+	}
+	public String getOriginNode() {
+		return originNode;
+	}
+	public void setOriginNode(String originNode) {
+		this.originNode = originNode;
+	}
+	public long getCommitTime() {
+		return commitTime;
+	}
+	public void setCommitTime(long commitTime) {
+		this.commitTime = commitTime;
+	}
+	public CouponEntity getCoupon() {
+		return coupon;
+	}
+	public void setCoupon(CouponEntity coupon) {
+		this.coupon = coupon;
+	}
+	public Long getId() {
+		return id;
+	}
+	public void setId(Long id) {
+		this.id = id;
+	}
+	public Long getCustomerId() {
+		return customerId;
+	}
+	public void setCustomerId(Long customerId) {
+		this.customerId = customerId;
+	}
+	public String getEndDate() {
+		return endDate;
+	}
+	public void setEndDate(String endDate) {
+		this.endDate = endDate;
+	}
+
+	@Override
+	public String toString() {
+		return "ChangeEvent [type=" + type + ", originNode=" + originNode + ", id=" + id + "]";
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.idan.coupons.beans;
+
+import com.idan.coupons.enums.JobState;
+
+/**
+ * Progress of the removal of the coupons and purchases of a removed company, updated by the job while it runs.
+ */
+public class CompanyDeletionStatus {
+	
+	private final Long companyId;
+	private volatile JobState state = JobState.QUEUED;
+	private volatile long removedCoupons;
+	private volatile long removedPurchases;
+	private volatile String startTime;
+	private volatile String endTime;
+	private volatile String error;
+	
+	public CompanyDeletionStatus(Long companyId) {
+		super();
+		this.companyId = companyId;
+	}
+	
+	public Long getCompanyId() {
+		return companyId;
+	}
+	public JobState getState() {
+		return state;
+	}
+	public void setState(JobState state) {
+		this.state = state;
+	}
+	public long getRemovedCoupons() {
+		return removedCoupons;
+	}
+	public void setRemovedCoupons(long removedCoupons) {
+		this.removedCoupons = removedCoupons;
+	}
+	public long getRemovedPurchases() {
+		return removedPurchases;
+	}
+	public void setRemovedPurchases(long removedPurchases) {
+		this.removedPurchases = removedPurchases;
+	}
+	public String getStartTime() {
+		return startTime;
+	}
+	public void setStartTime(String startTime) {
+		this.startTime = startTime;
+	}
+	public String getEndTime() {
+		return endTime;
+	}
+	public void setEndTime(String endTime) {
+		this.endTime = endTime;
+	}
+	public String getError() {
+		return error;
+	}
+	public void setError(String error) {
+		this.error = error;
+	}
+	
+	@Override
+	public String toString() {
+		return "CompanyDeletionStatus [companyId=" + companyId + ", state=" + state + ", removedCoupons=" + removedCoupons
+				+ ", removedPurchases=" + removedPurchases + ", startTime=" + startTime + ", endTime=" + endTime
+				+ ", error=" + error + "]";
+	}
+	
+}
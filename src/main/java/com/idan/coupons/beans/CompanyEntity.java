@@ -4,12 +4,31 @@ import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 @Entity
-@Table(name="company")
+@NamedQueries({
+	@NamedQuery(name=CompanyEntity.FIND_BY_NAME, query="SELECT company FROM CompanyEntity company WHERE company.companyName = :companyNameObj"),
+	@NamedQuery(name=CompanyEntity.FIND_BY_EMAIL, query="SELECT company FROM CompanyEntity company WHERE company.companyEmail = :companyEmailObj"),
+	@NamedQuery(name=CompanyEntity.FIND_ALL, query="SELECT company FROM CompanyEntity company"),
+	@NamedQuery(name=CompanyEntity.LOGIN, query="SELECT company FROM CompanyEntity company"
+			+ " WHERE company.companyName = :companyNameObj AND company.companyPassword = :companyPasswordObj")})
+@Table(name="company", uniqueConstraints={
+		@UniqueConstraint(name=CompanyEntity.UNIQUE_NAME, columnNames="CompanyName"),
+		@UniqueConstraint(name=CompanyEntity.UNIQUE_EMAIL, columnNames="CompanyEmail")})
 public class CompanyEntity {
 
+	public static final String UNIQUE_NAME = "UK_CompanyName";
+	public static final String UNIQUE_EMAIL = "UK_CompanyEmail";
+
+	public static final String FIND_BY_NAME = "CompanyEntity.findByName";
+	public static final String FIND_BY_EMAIL = "CompanyEntity.findByEmail";
+	public static final String FIND_ALL = "CompanyEntity.findAll";
+	public static final String LOGIN = "CompanyEntity.login";
+
 	@GeneratedValue
 	@Id
 	@Column(name="CompanyID", nullable=false)
@@ -0,0 +1,54 @@
+package com.idan.coupons.beans;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Counters of the sales of all the coupons of a company, updated in the same transaction as the purchase or the 
+ * cancellation.
+ */
+@Entity
+@Table(name="company_sales")
+public class CompanySalesEntity {
+
+	@Id
+	@Column(name="CompanyID", nullable=false)
+	private Long companyId;
+	
+	@Column(name="UnitsSold", nullable=false)
+	private long unitsSold;
+	
+	@Column(name="Revenue", nullable=false)
+	private double revenue;
+	
+	public Long getCompanyId() {
+		return companyId;
+	}
+	public void setCompanyId(Long companyId) {
+		this.companyId = companyId;
+	}
+	public long getUnitsSold() {
+		return unitsSold;
+	}
+	public void setUnitsSold(long unitsSold) {
+		this.unitsSold = unitsSold;
+	}
+	public double getRevenue() {
+		return revenue;
+	}
+	public void setRevenue(double revenue) {
+		this.revenue = revenue;
+	}
+	
+	public CompanySalesEntity() {
+		super();
+	}
+	
+	@Override
+	public String toString() {
+		return "CompanySales [companyId=" + companyId + ", unitsSold=" + unitsSold + ", revenue=" + revenue + "]";
+	}
+	
+}
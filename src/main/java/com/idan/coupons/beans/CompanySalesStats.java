@@ -0,0 +1,55 @@
+package com.idan.coupons.beans;
+
+import java.util.List;
+
+public class CompanySalesStats {
+	
+	private Long companyId;
+	private long unitsSold;
+	private double revenue;
+	private List<CouponSalesStats> coupons;
+	
+	public Long getCompanyId() {
+		return companyId;
+	}
+	public void setCompanyId(Long companyId) {
+		this.companyId = companyId;
+	}
+	public long getUnitsSold() {
+		return unitsSold;
+	}
+	public void setUnitsSold(long unitsSold) {
+		this.unitsSold = unitsSold;
+	}
+	public double getRevenue() {
+		return revenue;
+	}
+	public void setRevenue(double revenue) {
+		this.revenue = revenue;
+	}
+	public List<CouponSalesStats> getCoupons() {
+		return coupons;
+	}
+	public void setCoupons(List<CouponSalesStats> coupons) {
+		this.coupons = coupons;
+	}
+	
+	public CompanySalesStats() {
+		super();
+	}
+	
+	public CompanySalesStats(Long companyId, long unitsSold, double revenue, List<CouponSalesStats> coupons) {
+		super();
+		this.companyId = companyId;
+		this.unitsSold = unitsSold;
+		this.revenue = revenue;
+		this.coupons = coupons;
+	}
+	
+	@Override
+	public String toString() {
+		return "CompanySalesStats [companyId=" + companyId + ", unitsSold=" + unitsSold + ", revenue=" + revenue
+				+ ", coupons=" + coupons + "]";
+	}
+	
+}
@@ -10,15 +10,42 @@ import javax.persistence.Id;
 import javax.persistence.JoinTable;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToMany;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.idan.coupons.enums.CouponType;
 
 @Entity
-@Table(name="Coupon")
+@NamedQueries({
+	@NamedQuery(name=CouponEntity.FIND_ALL, query="SELECT coupon FROM CouponEntity coupon"),
+	@NamedQuery(name=CouponEntity.FIND_BY_IDS, query="SELECT coupon FROM CouponEntity coupon WHERE coupon.couponId IN (:couponIdsObj)"),
+	@NamedQuery(name=CouponEntity.FIND_BY_TYPE, query="SELECT coupon FROM CouponEntity coupon WHERE coupon.couponType = :couponTypeObj"),
+	@NamedQuery(name=CouponEntity.FIND_UP_TO_PRICE, query="SELECT coupon FROM CouponEntity coupon WHERE coupon.couponPrice <= :couponPriceObj"),
+	@NamedQuery(name=CouponEntity.FIND_UP_TO_END_DATE, query="SELECT coupon FROM CouponEntity coupon WHERE coupon.couponEndDate <= :couponEndDateObj"),
+	@NamedQuery(name=CouponEntity.FIND_BY_COMPANY, query="SELECT coupon FROM CouponEntity coupon WHERE coupon.companyID = :companyIDObj"),
+	@NamedQuery(name=CouponEntity.FIND_BY_CUSTOMER, query="SELECT coupon FROM CouponEntity coupon"
+			+ " JOIN coupon.purchasers purchaser WHERE purchaser.customerId = :customerIdObj"),
+	@NamedQuery(name=CouponEntity.FIND_NEWEST, query="SELECT coupon FROM CouponEntity coupon WHERE EXISTS (SELECT company FROM CompanyEntity company"
+			+ " WHERE company.companyId = coupon.companyID) ORDER BY coupon.couponId DESC"),
+	@NamedQuery(name=CouponEntity.DELETE_EXPIRED, query="DELETE FROM CouponEntity coupon WHERE coupon.couponEndDate < :couponEndDateObj")})
+@Table(name="Coupon", uniqueConstraints=@UniqueConstraint(name=CouponEntity.UNIQUE_TITLE, columnNames="CouponTitle"))
 public class CouponEntity {
 
+	public static final String UNIQUE_TITLE = "UK_CouponTitle";
+
+	public static final String FIND_ALL = "CouponEntity.findAll";
+	public static final String FIND_BY_IDS = "CouponEntity.findByIds";
+	public static final String FIND_BY_TYPE = "CouponEntity.findByType";
+	public static final String FIND_UP_TO_PRICE = "CouponEntity.findUpToPrice";
+	public static final String FIND_UP_TO_END_DATE = "CouponEntity.findUpToEndDate";
+	public static final String FIND_BY_COMPANY = "CouponEntity.findByCompany";
+	public static final String FIND_BY_CUSTOMER = "CouponEntity.findByCustomer";
+	public static final String FIND_NEWEST = "CouponEntity.findNewest";
+	public static final String DELETE_EXPIRED = "CouponEntity.deleteExpired";
+
 	@GeneratedValue
 	@Id
 	@Column(name="CouponID", nullable=false)
@@ -175,9 +202,16 @@ public class CouponEntity {
 		this.couponImage = couponImage;
 		this.companyID = companyID;
 	}
-	
-	
-	
+
+	/**
+	 * Copying all the columns of a coupon, without the purchasers.
+	 * @param coupon - the coupon to copy.
+	 */
+	public CouponEntity(CouponEntity coupon) {
+		this(coupon.couponId, coupon.couponTitle, coupon.couponStartDate, coupon.couponEndDate, coupon.couponAmount,
+				coupon.couponType, coupon.couponMessage, coupon.couponPrice, coupon.couponImage, coupon.companyID);
+	}
+
 	@Override
 	public String toString() {
 		return "Coupon [couponId=" + couponId + ", couponTitle=" + couponTitle + ", couponStartDate=" + couponStartDate
@@ -208,21 +242,5 @@ public class CouponEntity {
 			return false;
 		return true;
 	}
-	
-	public void addPurchesers(CustomerEntity purcheser) {
-		this.purchasers.add(purcheser);
-	}
-	
-	public boolean removePurchesers(CustomerEntity purcheser) {
-		return this.purchasers.remove(purcheser);
-	}
-	
-	public void increaseAmountByOne() {
-		++this.couponAmount;
-	}
-	
-	public void reduceAmountByOne() {
-		--this.couponAmount;
-	}
 
 }
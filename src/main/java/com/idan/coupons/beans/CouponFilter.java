@@ -0,0 +1,83 @@
+package com.idan.coupons.beans;
+
+import com.idan.coupons.enums.CouponType;
+
+public class CouponFilter {
+	
+	private CouponType couponType;
+	private Double minPrice;
+	private Double maxPrice;
+	private String fromEndDate;	//yyyy-mm-dd
+	private String toEndDate;	//yyyy-mm-dd
+	private Long companyID;
+	private Boolean inStockOnly;
+	private Integer page;
+	private Integer pageSize;
+	
+	public CouponType getCouponType() {
+		return couponType;
+	}
+	public void setCouponType(CouponType couponType) {
+		this.couponType = couponType;
+	}
+	public Double getMinPrice() {
+		return minPrice;
+	}
+	public void setMinPrice(Double minPrice) {
+		this.minPrice = minPrice;
+	}
+	public Double getMaxPrice() {
+		return maxPrice;
+	}
+	public void setMaxPrice(Double maxPrice) {
+		this.maxPrice = maxPrice;
+	}
+	public String getFromEndDate() {
+		return fromEndDate;
+	}
+	public void setFromEndDate(String fromEndDate) {
+		this.fromEndDate = fromEndDate;
+	}
+	public String getToEndDate() {
+		return toEndDate;
+	}
+	public void setToEndDate(String toEndDate) {
+		this.toEndDate = toEndDate;
+	}
+	public Long getCompanyID() {
+		return companyID;
+	}
+	public void setCompanyID(Long companyID) {
+		this.companyID = companyID;
+	}
+	public Boolean getInStockOnly() {
+		return inStockOnly;
+	}
+	public void setInStockOnly(Boolean inStockOnly) {
+		this.inStockOnly = inStockOnly;
+	}
+	public Integer getPage() {
+		return page;
+	}
+	public void setPage(Integer page) {
+		this.page = page;
+	}
+	public Integer getPageSize() {
+		return pageSize;
+	}
+	public void setPageSize(Integer pageSize) {
+		this.pageSize = pageSize;
+	}
+	
+	public CouponFilter() {
+		super();
+	}
+	
+	@Override
+	public String toString() {
+		return "CouponFilter [couponType=" + couponType + ", minPrice=" + minPrice + ", maxPrice=" + maxPrice
+				+ ", fromEndDate=" + fromEndDate + ", toEndDate=" + toEndDate + ", companyID=" + companyID
+				+ ", inStockOnly=" + inStockOnly + ", page=" + page + ", pageSize=" + pageSize + "]";
+	}
+
+}
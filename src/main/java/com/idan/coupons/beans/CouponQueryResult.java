@@ -0,0 +1,60 @@
+package com.idan.coupons.beans;
+
+import java.util.List;
+import java.util.Map;
+
+import com.idan.coupons.enums.CouponType;
+import com.idan.coupons.enums.PriceBucket;
+
+public class CouponQueryResult {
+	
+	private List<CouponEntity> coupons;
+	private long totalCount;
+	private Map<CouponType, Long> couponTypeCounts;
+	private Map<PriceBucket, Long> priceBucketCounts;
+	
+	public List<CouponEntity> getCoupons() {
+		return coupons;
+	}
+	public void setCoupons(List<CouponEntity> coupons) {
+		this.coupons = coupons;
+	}
+	public long getTotalCount() {
+		return totalCount;
+	}
+	public void setTotalCount(long totalCount) {
+		this.totalCount = totalCount;
+	}
+	public Map<CouponType, Long> getCouponTypeCounts() {
+		return couponTypeCounts;
+	}
+	public void setCouponTypeCounts(Map<CouponType, Long> couponTypeCounts) {
+		this.couponTypeCounts = couponTypeCounts;
+	}
+	public Map<PriceBucket, Long> getPriceBucketCounts() {
+		return priceBucketCounts;
+	}
+	public void setPriceBucketCounts(Map<PriceBucket, Long> priceBucketCounts) {
+		this.priceBucketCounts = priceBucketCounts;
+	}
+	
+	public CouponQueryResult() {
+		super();
+	}
+	
+	public CouponQueryResult(List<CouponEntity> coupons, long totalCount, Map<CouponType, Long> couponTypeCounts,
+			Map<PriceBucket, Long> priceBucketCounts) {
+		super();
+		this.coupons = coupons;
+		this.totalCount = totalCount;
+		this.couponTypeCounts = couponTypeCounts;
+		this.priceBucketCounts = priceBucketCounts;
+	}
+	
+	@Override
+	public String toString() {
+		return "CouponQueryResult [coupons=" + coupons + ", totalCount=" + totalCount + ", couponTypeCounts="
+				+ couponTypeCounts + ", priceBucketCounts=" + priceBucketCounts + "]";
+	}
+
+}
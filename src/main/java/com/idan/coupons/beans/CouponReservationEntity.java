@@ -0,0 +1,82 @@
+package com.idan.coupons.beans;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
+
+/**
+ * A unit of a coupon held for a customer until it expires. The unit is taken from the amount of the coupon when the
+ * hold is created, and is either bought by confirming the hold or returned to the amount when the hold expires.
+ */
+@Entity
+@NamedQuery(name=CouponReservationEntity.FIND_EXPIRED, query="SELECT reservation FROM CouponReservationEntity reservation"
+		+ " WHERE reservation.expiresAt <= :expiresAtObj ORDER BY reservation.expiresAt")
+@Table(name="coupon_reservation", uniqueConstraints=@UniqueConstraint(name=CouponReservationEntity.UNIQUE_CUSTOMER_COUPON,
+		columnNames={"CustomerID", "CouponID"}))
+public class CouponReservationEntity {
+
+	public static final String UNIQUE_CUSTOMER_COUPON = "UK_CouponReservation";
+
+	public static final String FIND_EXPIRED = "CouponReservationEntity.findExpired";
+
+	@GeneratedValue(strategy=GenerationType.IDENTITY)
+	@Id
+	@Column(name="ReservationID", nullable=false)
+	private Long reservationId;
+
+	@Column(name="CouponID", nullable=false)
+	private Long couponId;
+
+	@Column(name="CustomerID", nullable=false)
+	private Long customerId;
+
+	// Milliseconds since 1970-01-01 UTC.
+	@Column(name="ExpiresAt", nullable=false)
+	private long expiresAt;
+
+	public CouponReservationEntity() {
+	}
+
+	public CouponReservationEntity(Long couponId, Long customerId, long expiresAt) {
+		this.couponId = couponId;
+		this.customerId = customerId;
+		this.expiresAt = expiresAt;
+	}
+
+	public Long getReservationId() {
+		return reservationId;
+	}
+	public void setReservationId(Long reservationId) {
+		this.reservationId = reservationId;
+	}
+	public Long getCouponId() {
+		return couponId;
+	}
+	public void setCouponId(Long couponId) {
+		this.couponId = couponId;
+	}
+	public Long getCustomerId() {
+		return customerId;
+	}
+	public void setCustomerId(Long customerId) {
+		this.customerId = customerId;
+	}
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+	public void setExpiresAt(long expiresAt) {
+		this.expiresAt = expiresAt;
+	}
+
+	@Override
+	public String toString() {
+		return "CouponReservation [reservationId=" + reservationId + ", couponId=" + couponId + ", customerId="
+				+ customerId + ", expiresAt=" + expiresAt + "]";
+	}
+
+}
@@ -0,0 +1,63 @@
+package com.idan.coupons.beans;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+/**
+ * Counters of the sales of a coupon, updated in the same transaction as the purchase or the cancellation.
+ */
+@Entity
+@Table(name="coupon_sales")
+public class CouponSalesEntity {
+
+	@Id
+	@Column(name="CouponID", nullable=false)
+	private Long couponId;
+	
+	@Column(name="CompanyID", nullable=false)
+	private Long companyID;
+	
+	@Column(name="UnitsSold", nullable=false)
+	private long unitsSold;
+	
+	@Column(name="Revenue", nullable=false)
+	private double revenue;
+	
+	public Long getCouponId() {
+		return couponId;
+	}
+	public void setCouponId(Long couponId) {
+		this.couponId = couponId;
+	}
+	public Long getCompanyID() {
+		return companyID;
+	}
+	public void setCompanyID(Long companyID) {
+		this.companyID = companyID;
+	}
+	public long getUnitsSold() {
+		return unitsSold;
+	}
+	public void setUnitsSold(long unitsSold) {
+		this.unitsSold = unitsSold;
+	}
+	public double getRevenue() {
+		return revenue;
+	}
+	public void setRevenue(double revenue) {
+		this.revenue = revenue;
+	}
+	
+	public CouponSalesEntity() {
+		super();
+	}
+	
+	@Override
+	public String toString() {
+		return "CouponSales [couponId=" + couponId + ", companyID=" + companyID + ", unitsSold=" + unitsSold
+				+ ", revenue=" + revenue + "]";
+	}
+	
+}
@@ -0,0 +1,61 @@
+package com.idan.coupons.beans;
+
+public class CouponSalesStats {
+	
+	private Long couponId;
+	private String couponTitle;
+	private long unitsSold;
+	private int remainingStock;
+	private double revenue;
+	
+	public Long getCouponId() {
+		return couponId;
+	}
+	public void setCouponId(Long couponId) {
+		this.couponId = couponId;
+	}
+	public String getCouponTitle() {
+		return couponTitle;
+	}
+	public void setCouponTitle(String couponTitle) {
+		this.couponTitle = couponTitle;
+	}
+	public long getUnitsSold() {
+		return unitsSold;
+	}
+	public void setUnitsSold(long unitsSold) {
+		this.unitsSold = unitsSold;
+	}
+	public int getRemainingStock() {
+		return remainingStock;
+	}
+	public void setRemainingStock(int remainingStock) {
+		this.remainingStock = remainingStock;
+	}
+	public double getRevenue() {
+		return revenue;
+	}
+	public void setRevenue(double revenue) {
+		this.revenue = revenue;
+	}
+	
+	public CouponSalesStats() {
+		super();
+	}
+	
+	public CouponSalesStats(Long couponId, String couponTitle, long unitsSold, int remainingStock, double revenue) {
+		super();
+		this.couponId = couponId;
+		this.couponTitle = couponTitle;
+		this.unitsSold = unitsSold;
+		this.remainingStock = remainingStock;
+		this.revenue = revenue;
+	}
+	
+	@Override
+	public String toString() {
+		return "CouponSalesStats [couponId=" + couponId + ", couponTitle=" + couponTitle + ", unitsSold=" + unitsSold
+				+ ", remainingStock=" + remainingStock + ", revenue=" + revenue + "]";
+	}
+	
+}
@@ -8,14 +8,30 @@ import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.Id;
 import javax.persistence.ManyToMany;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
+import javax.persistence.UniqueConstraint;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 @Entity
-@Table(name="customer")
+@NamedQueries({
+	@NamedQuery(name=CustomerEntity.FIND_BY_NAME, query="SELECT customer FROM CustomerEntity customer WHERE customer.customerName = :customerNameObj"),
+	@NamedQuery(name=CustomerEntity.FIND_BY_EMAIL, query="SELECT customer FROM CustomerEntity customer WHERE customer.customerEmail = :customerEmailObj"),
+	@NamedQuery(name=CustomerEntity.FIND_ALL, query="SELECT customer FROM CustomerEntity customer"),
+	@NamedQuery(name=CustomerEntity.LOGIN, query="SELECT customer FROM CustomerEntity customer"
+			+ " WHERE customer.customerEmail = :customerEmailObj AND customer.customerPassword = :customerPasswordObj")})
+@Table(name="customer", uniqueConstraints=@UniqueConstraint(name=CustomerEntity.UNIQUE_EMAIL, columnNames="CustomerEmail"))
 public class CustomerEntity {
 
+	public static final String UNIQUE_EMAIL = "UK_CustomerEmail";
+
+	public static final String FIND_BY_NAME = "CustomerEntity.findByName";
+	public static final String FIND_BY_EMAIL = "CustomerEntity.findByEmail";
+	public static final String FIND_ALL = "CustomerEntity.findAll";
+	public static final String LOGIN = "CustomerEntity.login";
+
 	@GeneratedValue
 	@Id
 	@Column(name="CustomerID", nullable=false)
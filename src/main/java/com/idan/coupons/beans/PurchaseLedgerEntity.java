@@ -0,0 +1,107 @@
+package com.idan.coupons.beans;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import com.idan.coupons.enums.PurchaseEventType;
+
+/**
+ * An entry of the append-only ledger of the purchases and the refunds. Entries are never updated or deleted.
+ */
+@Entity
+@Table(name="purchase_ledger")
+public class PurchaseLedgerEntity {
+
+	@GeneratedValue(strategy=GenerationType.IDENTITY)
+	@Id
+	@Column(name="Seq", nullable=false)
+	private Long seq;
+	
+	@Column(name="EventType", nullable=false)
+	private PurchaseEventType eventType;
+	
+	@Column(name="CouponID", nullable=false)
+	private Long couponId;
+	
+	@Column(name="CustomerID", nullable=false)
+	private Long customerId;
+	
+	@Column(name="CompanyID", nullable=false)
+	private Long companyID;
+	
+	@Column(name="Price", nullable=false)
+	private double price;
+	
+	// Milliseconds since 1970-01-01 UTC.
+	@Column(name="EventTime", nullable=false)
+	private long eventTime;
+	
+	public Long getSeq() {
+		return seq;
+	}
+	public void setSeq(Long seq) {
+		this.seq = seq;
+	}
+	public PurchaseEventType getEventType() {
+		return eventType;
+	}
+	public void setEventType(PurchaseEventType eventType) {
+		this.eventType = eventType;
+	}
+	public Long getCouponId() {
+		return couponId;
+	}
+	public void setCouponId(Long couponId) {
+		this.couponId = couponId;
+	}
+	public Long getCustomerId() {
+		return customerId;
+	}
+	public void setCustomerId(Long customerId) {
+		this.customerId = customerId;
+	}
+	public Long getCompanyID() {
+		return companyID;
+	}
+	public void setCompanyID(Long companyID) {
+		this.companyID = companyID;
+	}
+	public double getPrice() {
+		return price;
+	}
+	public void setPrice(double price) {
+		this.price = price;
+	}
+	public long getEventTime() {
+		return eventTime;
+	}
+	public void setEventTime(long eventTime) {
+		this.eventTime = eventTime;
+	}
+	
+	public PurchaseLedgerEntity() {
+		super();
+	}
+	
+	public PurchaseLedgerEntity(PurchaseEventType eventType, Long couponId, Long customerId, Long companyID, double price,
+			long eventTime) {
+		super();
+		this.eventType = eventType;
+		this.couponId = couponId;
+		this.customerId = customerId;
+		this.companyID = companyID;
+		this.price = price;
+		this.eventTime = eventTime;
+	}
+	
+	@Override
+	public String toString() {
+		return "PurchaseLedger [seq=" + seq + ", eventType=" + eventType + ", couponId=" + couponId + ", customerId="
+				+ customerId + ", companyID=" + companyID + ", price=" + price + ", eventTime=" + eventTime + "]";
+	}
+	
+}
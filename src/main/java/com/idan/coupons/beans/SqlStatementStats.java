@@ -0,0 +1,71 @@
+package com.idan.coupons.beans;
+
+public class SqlStatementStats {
+	
+	// The statement with its parameters as ?, and a list of parameters as a single (?...).
+	private String sql;
+	private long executions;
+	private double totalMillis;
+	private double maxMillis;
+	private long rows;
+	private long slowExecutions;
+	
+	public String getSql() {
+		return sql;
+	}
+	public void setSql(String sql) {
+		this.sql = sql;
+	}
+	public long getExecutions() {
+		return executions;
+	}
+	public void setExecutions(long executions) {
+		this.executions = executions;
+	}
+	public double getTotalMillis() {
+		return totalMillis;
+	}
+	public void setTotalMillis(double totalMillis) {
+		this.totalMillis = totalMillis;
+	}
+	public double getMaxMillis() {
+		return maxMillis;
+	}
+	public void setMaxMillis(double maxMillis) {
+		this.maxMillis = maxMillis;
+	}
+	public long getRows() {
+		return rows;
+	}
+	public void setRows(long rows) {
+		this.rows = rows;
+	}
+	public long getSlowExecutions() {
+		return slowExecutions;
+	}
+	public void setSlowExecutions(long slowExecutions) {
+		this.slowExecutions = slowExecutions;
+	}
+	
+	public SqlStatementStats() {
+		super();
+	}
+	
+	public SqlStatementStats(String sql, long executions, double totalMillis, double maxMillis, long rows,
+			long slowExecutions) {
+		super();
+		this.sql = sql;
+		this.executions = executions;
+		this.totalMillis = totalMillis;
+		this.maxMillis = maxMillis;
+		this.rows = rows;
+		this.slowExecutions = slowExecutions;
+	}
+	
+	@Override
+	public String toString() {
+		return "SqlStatementStats [sql=" + sql + ", executions=" + executions + ", totalMillis=" + totalMillis
+				+ ", maxMillis=" + maxMillis + ", rows=" + rows + ", slowExecutions=" + slowExecutions + "]";
+	}
+	
+}
@@ -0,0 +1,114 @@
+package com.idan.coupons.catalog;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.dao.CouponDao;
+import com.idan.coupons.events.CouponChangePublisher;
+import com.idan.coupons.metrics.Counter;
+import com.idan.coupons.metrics.MetricsRegistry;
+import com.idan.coupons.utils.DateUtils;
+
+/**
+ * Comparing the amounts held in memory with the DB periodically, and correcting the ones that differ.
+ * The purchases and the holds of the other nodes arrive as changes of one unit over a topic that doesn't persist them,
+ * so a change lost on a broker restart, or an updated coupon that overtakes a purchase, would leave an amount wrong
+ * until the node restarts. The correction bounds it to one period.
+ * The amounts of a page are copied before the page is read from the DB, and an amount is corrected only if it is still
+ * the copied one, so a change that comes in during the read is not overwritten by the older DB value.
+ * A purchase committed just before the read may still be on its way to this node, so an amount is corrected only when
+ * it differs from the DB by the same units on two comparisons in a row. A lost change leaves the same difference, a
+ * change on its way doesn't.
+ */
+@Component
+public class CouponAmountResync {
+
+	private static final Logger logger = LogManager.getLogger(CouponAmountResync.class);
+
+	private static final int COUPONS_PER_PAGE = 1000;
+
+	private static final String RESYNCED = "coupons_catalog_amounts_resynced_total";
+
+	@Value("${coupons.catalog.amountResyncSeconds:60}")
+	private long resyncSeconds;
+
+	@Autowired
+	private CouponCatalog couponCatalog;
+
+	@Autowired
+	private CouponDao couponDao;
+
+	@Autowired
+	private CouponChangePublisher couponChangePublisher;
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	private Counter resynced;
+
+	// The differences from the DB (DB minus memory) found by the last comparison, by the ID of the coupon.
+	private Map<Long, Integer> differences = new HashMap<Long, Integer>();
+
+	private ScheduledExecutorService executor;
+
+	@PostConstruct
+	public void start() {
+		resynced = metricsRegistry.counter(RESYNCED, "Coupon amounts in memory that differed from the DB and were corrected.");
+		executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "CouponAmountResync");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.scheduleWithFixedDelay(this::resync, resyncSeconds, resyncSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	private void resync() {
+		try {
+			long[] couponIDs = new long[COUPONS_PER_PAGE];
+			int[] expectedAmounts = new int[COUPONS_PER_PAGE];
+			Map<Long, Integer> newDifferences = new HashMap<Long, Integer>();
+			long lastCouponID = 0;
+			int count;
+			while ((count = couponCatalog.getAmounts(lastCouponID, couponIDs, expectedAmounts)) > 0) {
+				Map<Long, Integer> amounts = couponDao.getCouponAmounts(couponIDs[0], couponIDs[count - 1]);
+				for (int i = 0; i < count; i++) {
+					Integer amount = amounts.get(couponIDs[i]);
+					if (amount == null || amount == expectedAmounts[i]) {
+						continue;
+					}
+					Integer difference = amount - expectedAmounts[i];
+					if (difference.equals(differences.get(couponIDs[i]))) {
+						couponChangePublisher.publishCouponAmountResynced(couponIDs[i], expectedAmounts[i], amount);
+						resynced.increment();
+					}
+					else {
+						newDifferences.put(couponIDs[i], difference);
+					}
+				}
+				lastCouponID = couponIDs[count - 1];
+			}
+			differences = newDifferences;
+		} catch (RuntimeException e) {
+			// Thrown out of the task, it would stop the next resyncs.
+			logger.error(DateUtils.getCurrentDateAndTime() + ", Resyncing the coupon amounts with the DB failed", e);
+		}
+	}
+
+}
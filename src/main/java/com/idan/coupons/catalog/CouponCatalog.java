@@ -0,0 +1,554 @@
+package com.idan.coupons.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.enums.CouponType;
+import com.idan.coupons.events.CouponChangeListener;
+import com.idan.coupons.utils.DateCodec;
+
+/**
+ * In-memory snapshot of the coupon catalog for the public browsing filters.
+ * Every attribute that is filtered on is kept in its own primitive array (a column), sorted by the coupon ID, so a
+ * filter is a scan of one array into a BitSet, and a combination of filters is an intersection of BitSets.
+ * The snapshot is immutable except for the amounts. A change of the catalog builds a new snapshot from the previous one
+ * and swaps it with a single volatile write, so readers never take a lock. The new snapshot shares the columns it
+ * doesn't change with the previous one, so adding a new coupon or removing coupons only copies the columns when they
+ * grow or are compacted.
+ */
+@Component
+public class CouponCatalog implements CouponChangeListener {
+
+	private volatile Snapshot snapshot;
+
+	// The changes received between startLoad() and load(), applied once the catalog is loaded. Null when not loading.
+	private List<Runnable> pendingChanges;
+
+	/**
+	 * @return If the catalog was loaded and can serve the filters.
+	 */
+	public boolean isLoaded() {
+		return snapshot != null;
+	}
+
+	/**
+	 * Keeping the changes received from now on until the catalog is loaded, called before reading the coupons from the DB.
+	 * The changes received before were committed before the coupons are read, so they are already in the coupons.
+	 */
+	public synchronized void startLoad() {
+		pendingChanges = new ArrayList<Runnable>();
+	}
+
+	/**
+	 * Dropping the changes kept since startLoad(), when the coupons could not be read.
+	 */
+	public synchronized void cancelLoad() {
+		pendingChanges = null;
+	}
+
+	/**
+	 * Replacing the content of the catalog, used on startup, and applying the changes received since startLoad().
+	 * A change may already be in the coupons read from the DB. Adding, updating and removing coupons again has no effect,
+	 * and an amount changed twice is corrected by the amount resync.
+	 * @param coupons - List of all the coupons in the DB.
+	 */
+	public synchronized void load(List<CouponEntity> coupons) {
+		CouponEntity[] rows = new CouponEntity[coupons.size()];
+		for (int i = 0; i < rows.length; i++) {
+			rows[i] = new CouponEntity(coupons.get(i));
+		}
+		Arrays.sort(rows, (first, second) -> first.getCouponId().compareTo(second.getCouponId()));
+		snapshot = Snapshot.of(rows);
+
+		if (pendingChanges != null) {
+			List<Runnable> changes = pendingChanges;
+			pendingChanges = null;
+			for (Runnable change : changes) {
+				change.run();
+			}
+		}
+	}
+
+	/**
+	 * Getting the current amount of a coupon.
+	 * @param couponID - the ID of the coupon.
+	 * @return The amount of the coupon, or -1 if the catalog is not loaded or doesn't hold the coupon.
+	 */
+	public int getAmount(long couponID) {
+		Snapshot current = snapshot;
+		if (current == null) {
+			return -1;
+		}
+		int row = current.rowOf(couponID);
+		return row >= 0 ? current.amounts.get(row) : -1;
+	}
+
+	/**
+	 * Copying the IDs and the current amounts of the next coupons in the order of their IDs, for comparing the amounts
+	 * with the DB page by page.
+	 * @param afterCouponID - the coupons with a higher ID are copied.
+	 * @param couponIDs - filled with the IDs of the coupons.
+	 * @param amounts - filled with the amounts of the coupons.
+	 * @return The number of coupons copied, up to the length of the arrays, 0 after the last coupon.
+	 */
+	public int getAmounts(long afterCouponID, long[] couponIDs, int[] amounts) {
+		Snapshot current = snapshot;
+		if (current == null) {
+			return 0;
+		}
+		int row = current.indexOf(afterCouponID);
+		int count = 0;
+		for (int i = row >= 0 ? row + 1 : -row - 1; i < current.size && count < couponIDs.length; i++) {
+			if (!current.removedRows.get(i)) {
+				couponIDs[count] = current.couponIDs[i];
+				amounts[count] = current.amounts.get(i);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Getting the coupons of a certain type.
+	 * @param couponType - type of coupon.
+	 * @return List of the coupons of the requested type, ordered by ID.
+	 */
+	public List<CouponEntity> getCouponsByType(CouponType couponType) {
+		Snapshot current = snapshot;
+		return current.toCoupons(current.byType(couponType));
+	}
+
+	/**
+	 * Getting the coupons up to a certain price.
+	 * @param price - the maximum price.
+	 * @return List of the coupons up to the requested price, ordered by ID.
+	 */
+	public List<CouponEntity> getCouponsUpToPrice(double price) {
+		Snapshot current = snapshot;
+		return current.toCoupons(current.upToPriceCents(toCents(price)));
+	}
+
+	/**
+	 * Getting the coupons up to a certain end date.
+	 * @param endDate - the latest end date, in the format yyyy-mm-dd.
+	 * @return List of the coupons up to the requested end date, ordered by ID.
+	 */
+	public List<CouponEntity> getCouponsUpToEndDate(String endDate) {
+		Snapshot current = snapshot;
+		return current.toCoupons(current.upToEndDay(DateCodec.parse(endDate)));
+	}
+
+	/**
+	 * Getting the coupons of a certain company.
+	 * @param companyID - the ID of the company.
+	 * @return List of the coupons of the requested company, ordered by ID.
+	 */
+	public List<CouponEntity> getCouponsByCompanyID(long companyID) {
+		Snapshot current = snapshot;
+		return current.toCoupons(current.byCompany(companyID));
+	}
+
+	/**
+	 * Getting the coupons matching all the provided criteria, by intersecting the result of every criterion.
+	 * @param couponType - type of coupon, or null.
+	 * @param maxPrice - the maximum price, or null.
+	 * @param maxEndDate - the latest end date in the format yyyy-mm-dd, or null.
+	 * @param companyID - the ID of the company, or null.
+	 * @return List of the matching coupons, ordered by ID.
+	 */
+	public List<CouponEntity> getCoupons(CouponType couponType, Double maxPrice, String maxEndDate, Long companyID) {
+		Snapshot current = snapshot;
+		BitSet rows = current.liveRows();
+		if (couponType != null) {
+			rows.and(current.byType(couponType));
+		}
+		if (maxPrice != null) {
+			rows.and(current.upToPriceCents(toCents(maxPrice)));
+		}
+		if (maxEndDate != null) {
+			rows.and(current.upToEndDay(DateCodec.parse(maxEndDate)));
+		}
+		if (companyID != null) {
+			rows.and(current.byCompany(companyID));
+		}
+		return current.toCoupons(rows);
+	}
+
+	@Override
+	public synchronized void couponCreated(CouponEntity coupon) {
+		if (!deferUntilLoaded(() -> couponCreated(coupon))) {
+			snapshot = snapshot.withCoupon(coupon);
+		}
+	}
+
+	@Override
+	public synchronized void couponUpdated(CouponEntity coupon) {
+		couponCreated(coupon);
+	}
+
+	@Override
+	public synchronized void couponRemoved(Long couponID) {
+		if (!deferUntilLoaded(() -> couponRemoved(couponID))) {
+			snapshot = snapshot.withoutRows(snapshot.byCouponID(couponID));
+		}
+	}
+
+	@Override
+	public synchronized void companyRemoved(Long companyID) {
+		if (!deferUntilLoaded(() -> companyRemoved(companyID))) {
+			snapshot = snapshot.withoutRows(snapshot.byCompany(companyID));
+		}
+	}
+
+	@Override
+	public synchronized void couponsExpired(String endDate) {
+		if (!deferUntilLoaded(() -> couponsExpired(endDate))) {
+			BitSet expired = snapshot.upToEndDay(DateCodec.parse(endDate) - 1);
+			snapshot = snapshot.withoutRows(expired);
+		}
+	}
+
+	@Override
+	public synchronized void couponPurchased(Long couponID, Long customerID) {
+		addToAmount(couponID, -1);
+	}
+
+	@Override
+	public synchronized void couponPurchaseCancelled(Long couponID, Long customerID) {
+		addToAmount(couponID, 1);
+	}
+
+	@Override
+	public synchronized void couponReserved(Long couponID) {
+		addToAmount(couponID, -1);
+	}
+
+	@Override
+	public synchronized void couponReservationReleased(Long couponID) {
+		addToAmount(couponID, 1);
+	}
+
+	@Override
+	public synchronized void couponAmountResynced(Long couponID, int expectedAmount, int amount) {
+		// The resync compares the amounts of the loaded catalog, so there is nothing to resync before it is loaded.
+		if (snapshot != null) {
+			int row = snapshot.rowOf(couponID);
+			if (row >= 0) {
+				snapshot.amounts.compareAndSet(row, expectedAmount, amount);
+			}
+		}
+	}
+
+	/**
+	 * Updating the amount in place, the amounts are the only column that changes without a new snapshot.
+	 * Must be called while holding the monitor, so no new snapshot is built while the amount changes.
+	 */
+	private void addToAmount(Long couponID, int delta) {
+		if (!deferUntilLoaded(() -> addToAmount(couponID, delta))) {
+			int row = snapshot.rowOf(couponID);
+			if (row >= 0) {
+				snapshot.amounts.addAndGet(row, delta);
+			}
+		}
+	}
+
+	/**
+	 * Keeping a change received while the catalog is loaded, to apply it once it is loaded.
+	 * Must be called while holding the monitor.
+	 * @return If the catalog is not loaded, so the change must not be applied now.
+	 */
+	private boolean deferUntilLoaded(Runnable change) {
+		if (snapshot != null) {
+			return false;
+		}
+		if (pendingChanges != null) {
+			pendingChanges.add(change);
+		}
+		return true;
+	}
+
+	private static long toCents(double price) {
+		return Math.round(price * 100);
+	}
+
+	/**
+	 * Columns of the catalog, with spare capacity at their end. The rows up to the size are immutable except for the
+	 * amounts, which are updated atomically in place. A removed row stays in the columns and is marked in the removed
+	 * rows until the columns are compacted, so a removal doesn't copy the columns.
+	 */
+	private static final class Snapshot {
+
+		private static final int MIN_CAPACITY = 16;
+
+		// The number of rows in the columns, including the removed rows.
+		private final int size;
+		private final long[] couponIDs;
+		private final int[] endDays;
+		private final long[] priceCents;
+		private final AtomicIntegerArray amounts;
+		private final byte[] types;
+		private final long[] companyIDs;
+		// The rest of the columns, for returning the coupons. Their amount is not used, the amounts column is.
+		private final CouponEntity[] rows;
+		// Never changed once the snapshot is published.
+		private final BitSet removedRows;
+		private final int removedCount;
+
+		private Snapshot(int size, int capacity) {
+			this(size, new long[capacity], new int[capacity], new long[capacity], new AtomicIntegerArray(capacity),
+					new byte[capacity], new long[capacity], new CouponEntity[capacity], new BitSet(), 0);
+		}
+
+		private Snapshot(int size, long[] couponIDs, int[] endDays, long[] priceCents, AtomicIntegerArray amounts,
+				byte[] types, long[] companyIDs, CouponEntity[] rows, BitSet removedRows, int removedCount) {
+			this.size = size;
+			this.couponIDs = couponIDs;
+			this.endDays = endDays;
+			this.priceCents = priceCents;
+			this.amounts = amounts;
+			this.types = types;
+			this.companyIDs = companyIDs;
+			this.rows = rows;
+			this.removedRows = removedRows;
+			this.removedCount = removedCount;
+		}
+
+		/**
+		 * Building a snapshot of the coupons, sorted by their ID.
+		 */
+		private static Snapshot of(CouponEntity[] coupons) {
+			Snapshot snapshot = new Snapshot(coupons.length, capacityFor(coupons.length));
+			for (int i = 0; i < coupons.length; i++) {
+				snapshot.setRow(i, coupons[i]);
+			}
+			return snapshot;
+		}
+
+		private static int capacityFor(int size) {
+			return Math.max(MIN_CAPACITY, size + (size >> 1));
+		}
+
+		/**
+		 * Filling a row of the columns. Only called on a row that no published snapshot reads yet.
+		 */
+		private void setRow(int row, CouponEntity coupon) {
+			couponIDs[row] = coupon.getCouponId();
+			endDays[row] = DateCodec.parse(coupon.getCouponEndDate());
+			priceCents[row] = toCents(coupon.getCouponPrice());
+			amounts.set(row, coupon.getCouponAmount());
+			types[row] = (byte) coupon.getCouponType().ordinal();
+			companyIDs[row] = coupon.getCompanyID();
+			rows[row] = coupon;
+		}
+
+		private void copyRow(int row, Snapshot source, int sourceRow) {
+			couponIDs[row] = source.couponIDs[sourceRow];
+			endDays[row] = source.endDays[sourceRow];
+			priceCents[row] = source.priceCents[sourceRow];
+			amounts.set(row, source.amounts.get(sourceRow));
+			types[row] = source.types[sourceRow];
+			companyIDs[row] = source.companyIDs[sourceRow];
+			rows[row] = source.rows[sourceRow];
+		}
+
+		/**
+		 * @return The row of the coupon, removed or not, or (-(insertion point) - 1) as Arrays.binarySearch.
+		 */
+		private int indexOf(long couponID) {
+			return Arrays.binarySearch(couponIDs, 0, size, couponID);
+		}
+
+		/**
+		 * @return The row of the coupon, or -1 if the catalog doesn't hold the coupon.
+		 */
+		private int rowOf(long couponID) {
+			int row = indexOf(couponID);
+			return row >= 0 && !removedRows.get(row) ? row : -1;
+		}
+
+		private BitSet liveRows() {
+			BitSet result = new BitSet(size);
+			result.set(0, size);
+			result.andNot(removedRows);
+			return result;
+		}
+
+		private BitSet byCouponID(long couponID) {
+			BitSet result = new BitSet(size);
+			int row = rowOf(couponID);
+			if (row >= 0) {
+				result.set(row);
+			}
+			return result;
+		}
+
+		private BitSet byType(CouponType couponType) {
+			byte type = (byte) couponType.ordinal();
+			BitSet result = new BitSet(size);
+			for (int i = 0; i < size; i++) {
+				if (types[i] == type) {
+					result.set(i);
+				}
+			}
+			result.andNot(removedRows);
+			return result;
+		}
+
+		private BitSet upToPriceCents(long maxPriceCents) {
+			BitSet result = new BitSet(size);
+			for (int i = 0; i < size; i++) {
+				if (priceCents[i] <= maxPriceCents) {
+					result.set(i);
+				}
+			}
+			result.andNot(removedRows);
+			return result;
+		}
+
+		private BitSet upToEndDay(int maxEndDay) {
+			BitSet result = new BitSet(size);
+			for (int i = 0; i < size; i++) {
+				if (endDays[i] <= maxEndDay) {
+					result.set(i);
+				}
+			}
+			result.andNot(removedRows);
+			return result;
+		}
+
+		private BitSet byCompany(long companyID) {
+			BitSet result = new BitSet(size);
+			for (int i = 0; i < size; i++) {
+				if (companyIDs[i] == companyID) {
+					result.set(i);
+				}
+			}
+			result.andNot(removedRows);
+			return result;
+		}
+
+		/**
+		 * Copying the selected rows, with their current amounts, so callers can't change the catalog.
+		 */
+		private List<CouponEntity> toCoupons(BitSet selectedRows) {
+			List<CouponEntity> coupons = new ArrayList<CouponEntity>(selectedRows.cardinality());
+			for (int i = selectedRows.nextSetBit(0); i >= 0; i = selectedRows.nextSetBit(i + 1)) {
+				CouponEntity coupon = new CouponEntity(rows[i]);
+				coupon.setCouponAmount(amounts.get(i));
+				coupons.add(coupon);
+			}
+			return coupons;
+		}
+
+		/**
+		 * Building the next snapshot with the coupon added, or replaced if it is already in the catalog.
+		 * A new coupon has the highest ID, so it is usually appended in the spare capacity of the columns, which this
+		 * snapshot doesn't read, and the next snapshot shares the columns. Otherwise the columns are compacted with the
+		 * coupon inserted, into columns with new spare capacity.
+		 */
+		private Snapshot withCoupon(CouponEntity coupon) {
+			CouponEntity copy = new CouponEntity(coupon);
+			int row = indexOf(copy.getCouponId());
+			if (row >= 0) {
+				return withReplacedRow(row, copy);
+			}
+			int insertionPoint = -row - 1;
+			if (insertionPoint < size || size == couponIDs.length) {
+				return compacted(removedRows, insertionPoint, copy);
+			}
+			Snapshot next = new Snapshot(size + 1, couponIDs, endDays, priceCents, amounts, types, companyIDs, rows,
+					removedRows, removedCount);
+			next.setRow(size, copy);
+			return next;
+		}
+
+		/**
+		 * Building the next snapshot with a row replaced. Only the columns whose value changes are copied, the rest are
+		 * shared with this snapshot.
+		 */
+		private Snapshot withReplacedRow(int row, CouponEntity coupon) {
+			int endDay = DateCodec.parse(coupon.getCouponEndDate());
+			int[] nextEndDays = endDays;
+			if (endDays[row] != endDay) {
+				nextEndDays = endDays.clone();
+				nextEndDays[row] = endDay;
+			}
+			long couponPriceCents = toCents(coupon.getCouponPrice());
+			long[] nextPriceCents = priceCents;
+			if (priceCents[row] != couponPriceCents) {
+				nextPriceCents = priceCents.clone();
+				nextPriceCents[row] = couponPriceCents;
+			}
+			byte type = (byte) coupon.getCouponType().ordinal();
+			byte[] nextTypes = types;
+			if (types[row] != type) {
+				nextTypes = types.clone();
+				nextTypes[row] = type;
+			}
+			long companyID = coupon.getCompanyID();
+			long[] nextCompanyIDs = companyIDs;
+			if (companyIDs[row] != companyID) {
+				nextCompanyIDs = companyIDs.clone();
+				nextCompanyIDs[row] = companyID;
+			}
+			CouponEntity[] nextRows = rows.clone();
+			nextRows[row] = coupon;
+			BitSet nextRemovedRows = removedRows;
+			int nextRemovedCount = removedCount;
+			if (removedRows.get(row)) {
+				nextRemovedRows = (BitSet) removedRows.clone();
+				nextRemovedRows.clear(row);
+				nextRemovedCount--;
+			}
+			amounts.set(row, coupon.getCouponAmount());
+			return new Snapshot(size, couponIDs, nextEndDays, nextPriceCents, amounts, nextTypes, nextCompanyIDs, nextRows,
+					nextRemovedRows, nextRemovedCount);
+		}
+
+		/**
+		 * Building the next snapshot without the selected rows, by marking them as removed. The columns are compacted
+		 * once more than a quarter of their rows are removed.
+		 */
+		private Snapshot withoutRows(BitSet selectedRows) {
+			BitSet nextRemovedRows = (BitSet) removedRows.clone();
+			nextRemovedRows.or(selectedRows);
+			int nextRemovedCount = nextRemovedRows.cardinality();
+			if (nextRemovedCount == removedCount) {
+				return this;
+			}
+			if (nextRemovedCount > size / 4) {
+				return compacted(nextRemovedRows, -1, null);
+			}
+			return new Snapshot(size, couponIDs, endDays, priceCents, amounts, types, companyIDs, rows, nextRemovedRows,
+					nextRemovedCount);
+		}
+
+		/**
+		 * Copying the rows that are not removed into new columns, with a coupon inserted.
+		 * @param removed - the rows that are not copied.
+		 * @param insertionPoint - the row before which the coupon is inserted, -1 for none.
+		 * @param inserted - the coupon to insert, or null.
+		 */
+		private Snapshot compacted(BitSet removed, int insertionPoint, CouponEntity inserted) {
+			int nextSize = size - removed.cardinality() + (inserted != null ? 1 : 0);
+			Snapshot next = new Snapshot(nextSize, capacityFor(nextSize));
+			int nextRow = 0;
+			for (int i = 0; i <= size; i++) {
+				if (i == insertionPoint) {
+					next.setRow(nextRow++, inserted);
+				}
+				if (i < size && !removed.get(i)) {
+					next.copyRow(nextRow++, this, i);
+				}
+			}
+			return next;
+		}
+	}
+
+}
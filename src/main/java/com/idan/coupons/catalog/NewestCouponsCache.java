@@ -0,0 +1,261 @@
+package com.idan.coupons.catalog;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.events.CouponChangeListener;
+import com.idan.coupons.utils.DateCodec;
+
+/**
+ * In-memory list of the newest coupons for the newest coupons feed of the homepage.
+ * The list holds up to a configured number of coupons, newest first, and follows the creation, the removal and the
+ * expiry of coupons, so reading a page of the feed is a copy of a range of an array.
+ * The list is immutable and is replaced with a single volatile write on every change, so readers never take a lock.
+ */
+@Component
+public class NewestCouponsCache implements CouponChangeListener {
+
+	@Value("${coupons.newest.capacity:100}")
+	private int capacity;
+
+	private volatile Feed feed;
+
+	// Counts the changes, so a refill read from the DB before a change is not loaded after it.
+	private long version;
+
+	/**
+	 * @return The maximum number of coupons held in memory.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return The version to pass to load(), read before reading the newest coupons from the DB.
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Replacing the content of the cache, used on startup and after removals left too few coupons in it.
+	 * @param newestCoupons - List of the newest coupons in the DB, newest first, up to the capacity of the cache.
+	 * @param readVersion - the version of the cache before the coupons were read from the DB.
+	 * @return If the coupons were loaded, false if the cache has changed since they were read.
+	 */
+	public synchronized boolean load(List<CouponEntity> newestCoupons, long readVersion) {
+		if (readVersion != version) {
+			return false;
+		}
+		int size = Math.min(newestCoupons.size(), capacity);
+		CouponEntity[] coupons = new CouponEntity[size];
+		for (int i = 0; i < size; i++) {
+			coupons[i] = new CouponEntity(newestCoupons.get(i));
+		}
+		replace(coupons, newestCoupons.size() < capacity);
+		return true;
+	}
+
+	/**
+	 * Getting a range of the newest coupons.
+	 * @param first - the position of the first coupon, 0 for the newest.
+	 * @param count - the number of coupons.
+	 * @return List of the coupons, newest first, or null if the range can't be served from memory: the cache was not
+	 * loaded, the range is beyond the capacity or removals left too few coupons in the cache.
+	 */
+	public List<CouponEntity> getNewestCoupons(int first, int count) {
+		Feed current = feed;
+		if (current == null || first + count > capacity) {
+			return null;
+		}
+		int last = Math.min(first + count, current.coupons.length);
+		if (last < first + count && !current.holdsAllCoupons) {
+			return null;
+		}
+		List<CouponEntity> coupons = new ArrayList<CouponEntity>(Math.max(last - first, 0));
+		for (int i = first; i < last; i++) {
+			coupons.add(current.coupons[i]);
+		}
+		return coupons;
+	}
+
+	@Override
+	public synchronized void couponCreated(CouponEntity coupon) {
+		Feed current = feed;
+		if (current == null) {
+			version++;
+			return;
+		}
+		CouponEntity[] coupons = current.coupons;
+		// A coupon older than all the cached ones belongs in the list only if the list holds all the coupons.
+		boolean isNewer = coupons.length > 0 && coupon.getCouponId() > coupons[coupons.length - 1].getCouponId();
+		if (!isNewer && !current.holdsAllCoupons) {
+			version++;
+			return;
+		}
+		int position = 0;
+		while (position < coupons.length && coupons[position].getCouponId() > coupon.getCouponId()) {
+			position++;
+		}
+		boolean isFull = coupons.length == capacity;
+		CouponEntity[] updated = new CouponEntity[isFull ? capacity : coupons.length + 1];
+		System.arraycopy(coupons, 0, updated, 0, position);
+		if (position < updated.length) {
+			updated[position] = new CouponEntity(coupon);
+			System.arraycopy(coupons, position, updated, position + 1, updated.length - position - 1);
+		}
+		replace(updated, current.holdsAllCoupons && !isFull);
+	}
+
+	@Override
+	public synchronized void couponUpdated(CouponEntity coupon) {
+		replaceCoupon(coupon.getCouponId(), new CouponEntity(coupon));
+	}
+
+	@Override
+	public synchronized void couponRemoved(Long couponID) {
+		Feed current = feed;
+		if (current != null) {
+			List<CouponEntity> remaining = new ArrayList<CouponEntity>(current.coupons.length);
+			for (CouponEntity coupon : current.coupons) {
+				if (!coupon.getCouponId().equals(couponID)) {
+					remaining.add(coupon);
+				}
+			}
+			replace(remaining.toArray(new CouponEntity[remaining.size()]), current.holdsAllCoupons);
+		}
+		version++;
+	}
+
+	@Override
+	public synchronized void companyRemoved(Long companyID) {
+		Feed current = feed;
+		if (current != null) {
+			List<CouponEntity> remaining = new ArrayList<CouponEntity>(current.coupons.length);
+			for (CouponEntity coupon : current.coupons) {
+				if (!coupon.getCompanyID().equals(companyID)) {
+					remaining.add(coupon);
+				}
+			}
+			replace(remaining.toArray(new CouponEntity[remaining.size()]), current.holdsAllCoupons);
+		}
+		version++;
+	}
+
+	@Override
+	public synchronized void couponsExpired(String endDate) {
+		Feed current = feed;
+		if (current != null) {
+			int endDay = DateCodec.parse(endDate);
+			List<CouponEntity> remaining = new ArrayList<CouponEntity>(current.coupons.length);
+			for (CouponEntity coupon : current.coupons) {
+				if (DateCodec.parse(coupon.getCouponEndDate()) >= endDay) {
+					remaining.add(coupon);
+				}
+			}
+			replace(remaining.toArray(new CouponEntity[remaining.size()]), current.holdsAllCoupons);
+		}
+		version++;
+	}
+
+	@Override
+	public synchronized void couponPurchased(Long couponID, Long customerID) {
+		addToAmount(couponID, -1);
+	}
+
+	@Override
+	public synchronized void couponPurchaseCancelled(Long couponID, Long customerID) {
+		addToAmount(couponID, 1);
+	}
+
+	@Override
+	public synchronized void couponReserved(Long couponID) {
+		addToAmount(couponID, -1);
+	}
+
+	@Override
+	public synchronized void couponReservationReleased(Long couponID) {
+		addToAmount(couponID, 1);
+	}
+
+	@Override
+	public synchronized void couponAmountResynced(Long couponID, int expectedAmount, int amount) {
+		Feed current = feed;
+		if (current != null) {
+			for (CouponEntity coupon : current.coupons) {
+				if (coupon.getCouponId().equals(couponID)) {
+					if (coupon.getCouponAmount() == expectedAmount) {
+						CouponEntity updated = new CouponEntity(coupon);
+						updated.setCouponAmount(amount);
+						replaceCoupon(couponID, updated);
+					}
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replacing a cached coupon with a changed copy, the cached coupons themselves are never changed.
+	 * Must be called while holding the monitor.
+	 */
+	private void addToAmount(Long couponID, int delta) {
+		Feed current = feed;
+		if (current != null) {
+			for (CouponEntity coupon : current.coupons) {
+				if (coupon.getCouponId().equals(couponID)) {
+					CouponEntity updated = new CouponEntity(coupon);
+					updated.setCouponAmount(coupon.getCouponAmount() + delta);
+					replaceCoupon(couponID, updated);
+					return;
+				}
+			}
+		}
+		version++;
+	}
+
+	/**
+	 * Must be called while holding the monitor.
+	 */
+	private void replaceCoupon(Long couponID, CouponEntity coupon) {
+		Feed current = feed;
+		if (current != null) {
+			for (int i = 0; i < current.coupons.length; i++) {
+				if (current.coupons[i].getCouponId().equals(couponID)) {
+					CouponEntity[] updated = Arrays.copyOf(current.coupons, current.coupons.length);
+					updated[i] = coupon;
+					replace(updated, current.holdsAllCoupons);
+					break;
+				}
+			}
+		}
+		version++;
+	}
+
+	/**
+	 * Must be called while holding the monitor.
+	 */
+	private void replace(CouponEntity[] coupons, boolean holdsAllCoupons) {
+		feed = new Feed(coupons, holdsAllCoupons);
+		version++;
+	}
+
+	private static final class Feed {
+
+		// Newest first.
+		private final CouponEntity[] coupons;
+		// If there are no coupons in the DB older than the cached ones, so a short list is still complete.
+		private final boolean holdsAllCoupons;
+
+		private Feed(CouponEntity[] coupons, boolean holdsAllCoupons) {
+			this.coupons = coupons;
+			this.holdsAllCoupons = holdsAllCoupons;
+		}
+	}
+
+}
@@ -1,17 +1,24 @@
 package com.idan.coupons.controller;
 
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 
+import com.idan.coupons.beans.CompanyDeletionStatus;
 import com.idan.coupons.beans.CompanyEntity;
+import com.idan.coupons.beans.CompanySalesStats;
 import com.idan.coupons.dao.CompanyDao;
+import com.idan.coupons.dao.CouponDao;
+import com.idan.coupons.dao.SalesStatsDao;
+import com.idan.coupons.enums.CouponType;
 import com.idan.coupons.enums.ErrorType;
 import com.idan.coupons.enums.InputErrorType;
 import com.idan.coupons.exceptions.ApplicationException;
-import com.idan.coupons.utils.DateUtils;
+import com.idan.coupons.threads.CompanyDeletionJob;
+import com.idan.coupons.utils.CsvWriter;
 import com.idan.coupons.utils.ValidationUtils;
 
 
@@ -20,6 +27,15 @@ public class CompanyController {
 	
 	@Autowired
 	private CompanyDao companyDao;
+	
+	@Autowired
+	private SalesStatsDao salesStatsDao;
+	
+	@Autowired
+	private CouponDao couponDao;
+	
+	@Autowired
+	private CompanyDeletionJob companyDeletionJob;
 
 	
 
@@ -40,18 +56,35 @@ public class CompanyController {
 	}
 	
 	/**
-	 * Removing company from company table.
+	 * Removing company from company table. Its coupons and their purchases are removed in the background.
 	 * @param companyID - a long parameter represent the ID of the requested company.
+	 * @return The status of the removal of the coupons of the company.
 	 * @throws ApplicationException
 	 */
-	public void removeCompanyByCompanyID(Long companyID) throws ApplicationException {
+	public CompanyDeletionStatus removeCompanyByCompanyID(Long companyID) throws ApplicationException {
 		if(companyID==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
 		}
-//		this.couponDao.removeCouponByCompanyID(companyID);
 		this.companyDao.removeCompanyByCompanyID(companyID);
 		
+		return this.companyDeletionJob.submit(companyID);
+	}
+	
+	/**
+	 * Getting the progress of the removal of the coupons of a removed company.
+	 * @param companyID - a long parameter represent the ID of the removed company.
+	 * @return The status of the removal.
+	 * @throws ApplicationException
+	 */
+	public CompanyDeletionStatus getCompanyDeletionStatus(Long companyID) throws ApplicationException {
+		if(companyID==null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		CompanyDeletionStatus status = this.companyDeletionJob.getStatus(companyID);
+		if(status==null) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " No removal of company " + companyID + " since the server started.");
+		}
+		return status;
 	}
 	
 	/**
@@ -76,8 +109,7 @@ public class CompanyController {
 	 */
 	public CompanyEntity getCompanyByComapnyId(Long companyId) throws ApplicationException {
 		if(companyId==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
 		}
 		CompanyEntity company = this.companyDao.getCompanyByComapnyId(companyId);
 				
@@ -85,6 +117,67 @@ public class CompanyController {
 		
 	}
 	
+	/**
+	 * Getting the sales of a company: units sold and revenue in total and for each coupon, with the remaining stock.
+	 * @param companyId - a long parameter represent the ID of the requested company.
+	 * @return The sales of the requested company.
+	 * @throws ApplicationException
+	 */
+	public CompanySalesStats getCompanySalesStats(Long companyId) throws ApplicationException {
+		if(companyId==null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		return this.salesStatsDao.getCompanySalesStats(companyId);
+	}
+	
+	/**
+	 * Writing the coupons of a company with their purchasers as CSV, one row per purchase and one row for each coupon
+	 * without purchases. The rows are written while they are read from the DB, so any number of rows can be exported.
+	 * @param companyId - a long parameter represent the ID of the requested company.
+	 * @param writer - the writer of the response.
+	 * @throws ApplicationException
+	 */
+	public void exportCompanyCoupons(Long companyId, Writer writer) throws ApplicationException {
+		if(companyId==null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		
+		CsvWriter csvWriter = new CsvWriter(writer);
+		CouponType[] couponTypes = CouponType.values();
+		try {
+			for (String header : new String[] {"couponId", "couponTitle", "couponStartDate", "couponEndDate", "couponAmount",
+					"couponType", "couponPrice", "customerId", "customerName", "customerEmail"}) {
+				csvWriter.writeField(header);
+			}
+			csvWriter.endRow();
+		} catch (Exception e) {
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CompanyController, exportCompanyCoupons(); FAILED");
+		}
+		
+		this.couponDao.exportCouponsByCompanyID(companyId, row -> {
+			for (int i = 0; i < row.length; i++) {
+				// The coupon type is stored by its ordinal.
+				csvWriter.writeField(i == 5 ? couponTypes[((Number) row[i]).intValue()] : row[i]);
+			}
+			csvWriter.endRow();
+		});
+	}
+	
+	/**
+	 * Recomputing the sales of all the coupons and companies.
+	 * @param fromLedger - true to replay the purchase ledger, with the prices of the time of each purchase.
+	 * 					   false to count the current purchases, with the current prices.
+	 * @throws ApplicationException
+	 */
+	public void rebuildSalesStats(boolean fromLedger) throws ApplicationException {
+		if (fromLedger) {
+			this.salesStatsDao.rebuildSalesStatsFromLedger();
+		}
+		else {
+			this.salesStatsDao.rebuildSalesStats();
+		}
+	}
+	
 	/**
 	 * Getting information of a company by name.
 	 * @param companyName - a String parameter represent the name of the requested company.
@@ -94,8 +187,7 @@ public class CompanyController {
 	public CompanyEntity getCompanyByComapnyName(String companyName)  throws ApplicationException{
 
 		if (!ValidationUtils.isValidNameFormat(companyName)) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Not valid name format " + companyName + ".");
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Not valid name format " + companyName + ".");
 		}
 		
 		CompanyEntity company = companyDao.getCompanyByComapnyName(companyName);
@@ -112,8 +204,7 @@ public class CompanyController {
 	 */
 	public CompanyEntity getCompanyByComapnyEmail(String companyEmail) throws ApplicationException {
 		if (!ValidationUtils.isValidEmailFormat(companyEmail)) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Not valid name format " + companyEmail + ".");
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Not valid name format " + companyEmail + ".");
 		}
 		
 		CompanyEntity company = companyDao.getCompanyByComapnyEmail(companyEmail);
@@ -157,19 +248,7 @@ public class CompanyController {
 	private void validateUpdateCompany(CompanyEntity company) throws ApplicationException {
 		validateCompany(company);
 		
-		if (this.companyDao.isCompanyNameExistForUpdate(company.getCompanyId(), company.getCompanyName())) {
-			throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, DateUtils.getCurrentDateAndTime()
-					+" Update company has failed."
-					+"\nThe user attempted to update a company using a name that is already in use."
-					+"\nCustomer name = "+company.getCompanyEmail());
-		}
-		
-		if (this.companyDao.isCompanyEmailExistForUpdate(company.getCompanyId(), company.getCompanyEmail())) {
-			throw new ApplicationException(ErrorType.EMAIL_IS_ALREADY_EXISTS, DateUtils.getCurrentDateAndTime()
-					+" Create company has failed."
-					+"\nThe user attempted to update a company using an Email that is already in use."
-					+"\nCustomer Email="+company.getCompanyEmail());
-		}
+		// The name and the email of the company are checked to be unique by the DB, on the write itself.
 	}
 	
 	/**
@@ -181,21 +260,7 @@ public class CompanyController {
 
 		validateCompany(company);
 		
-		if (this.companyDao.isCompanyExistByName(company.getCompanyName())) {
-			throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, DateUtils.getCurrentDateAndTime()
-					+" Create company has failed."
-					+"\nThe user attempted to create a new company using a name that is already in use."
-					+"\nCustomer name="+company.getCompanyName());
-		}
-		
-		if (this.companyDao.isCompanyExistByEmail(company.getCompanyEmail())) {
-			throw new ApplicationException(ErrorType.EMAIL_IS_ALREADY_EXISTS, DateUtils.getCurrentDateAndTime()
-					+" Create company has failed."
-					+"\nThe user attempted to create a new company using an Email that is already in use."
-					+"\nCustomer Email="+company.getCompanyEmail());
-		}
-		
-		
+		// The name and the email of the company are checked to be unique by the DB, on the write itself.
 	}
 	
 	/**
@@ -206,8 +271,7 @@ public class CompanyController {
 	private void validateCompany(CompanyEntity company) throws ApplicationException {
 		
 		if (company == null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+ "   Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "   Bad input inserted, null value.");
 		}
 		
 		List<InputErrorType> errorTypes = new ArrayList<InputErrorType>();		
@@ -225,8 +289,7 @@ public class CompanyController {
 		
 		
 		if(!errorTypes.isEmpty()) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Validating company input has failed."
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Validating company input has failed."
 					+"\nOne or more of the fields are incorrect.", errorTypes);
 		}
 		
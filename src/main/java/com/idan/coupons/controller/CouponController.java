@@ -1,20 +1,37 @@
 package com.idan.coupons.controller;
 
 import java.util.ArrayList;
-import java.util.GregorianCalendar;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.beans.CouponFilter;
+import com.idan.coupons.beans.CouponQueryResult;
+import com.idan.coupons.beans.CouponReservationEntity;
+import com.idan.coupons.catalog.CouponCatalog;
+import com.idan.coupons.catalog.NewestCouponsCache;
 import com.idan.coupons.dao.CouponDao;
+import com.idan.coupons.dao.CouponReservationDao;
+import com.idan.coupons.datasource.DataSourceRouting;
+import com.idan.coupons.enums.CouponField;
 import com.idan.coupons.enums.CouponType;
 import com.idan.coupons.enums.ErrorType;
 import com.idan.coupons.enums.InputErrorType;
 import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.metrics.MetricsRegistry;
+import com.idan.coupons.purchases.CustomerPurchasesCache;
+import com.idan.coupons.reservations.ReservationReaper;
+import com.idan.coupons.search.CouponSearchIndex;
+import com.idan.coupons.utils.DateCodec;
 import com.idan.coupons.utils.DateUtils;
 import com.idan.coupons.utils.ValidationUtils;
 
@@ -24,6 +41,42 @@ public class CouponController {
 	@Autowired
 	private CouponDao couponDao;
 	
+	@Autowired
+	private CouponSearchIndex couponSearchIndex;
+	
+	@Autowired
+	private CouponCatalog couponCatalog;
+	
+	@Autowired
+	private NewestCouponsCache newestCouponsCache;
+	
+	@Autowired
+	private CustomerPurchasesCache customerPurchasesCache;
+	
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+	
+	@Autowired
+	private CouponReservationDao couponReservationDao;
+	
+	@Autowired
+	private ReservationReaper reservationReaper;
+	
+	// The seconds a customer has to confirm a hold before its unit returns to the amount of the coupon.
+	@Value("${coupons.reservations.ttlSeconds:600}")
+	private long reservationTtlSeconds;
+	
+	private static final int DEFAULT_SEARCH_LIMIT = 20;
+	private static final int MAX_SEARCH_LIMIT = 100;
+	
+	private static final int DEFAULT_PAGE_SIZE = 20;
+	private static final int MAX_PAGE_SIZE = 100;
+	
+	private static final int DEFAULT_NEWEST_PAGE_SIZE = 5;
+	
+	// Purchases removed in one transaction when coupons are removed.
+	private static final int PURCHASES_PER_CHUNK = 10000;
+	
 	/**
 	 * Creating a coupon in the DB.
 	 * @param coupon - the coupon as a Coupon object to add to the DB.
@@ -45,8 +98,7 @@ public class CouponController {
 	 */
 	public CouponEntity getCouponByCouponId(Long couponId) throws ApplicationException{
 		if(couponId==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
 		}
 		return this.couponDao.getCouponByCouponId(couponId);
 	}
@@ -65,17 +117,26 @@ public class CouponController {
 	}
 	
 	/**
-	 * Removing coupon from coupon table.
+	 * Removing coupon from coupon table. Its purchases are removed in chunks before it, each chunk in a short transaction
+	 * and each purchase recorded in the purchase ledger, as the coupons of a removed company.
 	 * @param couponID - the couponID as a long to remove from the DB.
 	 * @throws ApplicationException
 	 */
 	public void removeCouponByCouponID(Long couponID) throws ApplicationException {
 		
 		if(couponID==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		if(couponDao.getCouponByCouponId(couponID) == null) {
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon does not exist."
+					+"\nCoupon ID="+couponID);
 		}
-		couponDao.removeCouponByCouponID(couponID);
+		List<Long> couponIDs = Collections.singletonList(couponID);
+		int removedPurchases;
+		do {
+			removedPurchases = couponDao.removePurchasesOfCoupons(couponIDs, PURCHASES_PER_CHUNK);
+		} while (removedPurchases == PURCHASES_PER_CHUNK);
+		couponDao.removeCouponsByCouponIDs(couponIDs);
 		
 	}
 	
@@ -88,13 +149,10 @@ public class CouponController {
 	@Transactional(propagation=Propagation.REQUIRED)
 	public void removeBoughtCouponByCouponIDandCustomerID(Long couponID, Long customerID) throws ApplicationException {
 		if(couponID ==null || customerID == null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
 		}
 		CouponEntity coupon = couponDao.getCouponByCouponId(couponID);
-		if(couponDao.removeBoughtCouponByCouponIDandCustomerID(coupon, customerID)) {
-			coupon.increaseAmountByOne();
-		}
+		couponDao.removeBoughtCouponByCouponIDandCustomerID(coupon, customerID);
 	}
 	
 	/**
@@ -121,8 +179,12 @@ public class CouponController {
 	public List<CouponEntity> getCouponByType(CouponType couponType) throws ApplicationException{
 		
 		if (couponType == null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+ "   Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "   Bad input inserted, null value.");
+		}
+		
+		// The public filters are served from the in-memory catalog once it is loaded.
+		if (couponCatalog.isLoaded()) {
+			return couponCatalog.getCouponsByType(couponType);
 		}
 		
 		List<CouponEntity> coupons = couponDao.getCouponByType(couponType);		
@@ -139,12 +201,14 @@ public class CouponController {
 	 */
 	public List<CouponEntity> getCouponsUpToPrice(Double price) throws ApplicationException{
 		if(price==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
 		}
 		if (!ValidationUtils.isValidPrice(price)) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Invalid price entered: " + price + ".");
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid price entered: " + price + ".");
+		}
+		
+		if (couponCatalog.isLoaded()) {
+			return couponCatalog.getCouponsUpToPrice(price);
 		}
 		
 		List<CouponEntity> coupons = couponDao.getCouponsUpToPrice(price);
@@ -162,8 +226,12 @@ public class CouponController {
 	public List<CouponEntity> getCouponsUpToEndDate(String endDate) throws ApplicationException{
 		
 		if(!ValidationUtils.isValidDateFormat(endDate)) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Invalid date format entered: " + endDate + ".");
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid date format entered: " + endDate + ".");
+		}
+		endDate = DateCodec.normalize(endDate);
+		
+		if (couponCatalog.isLoaded()) {
+			return couponCatalog.getCouponsUpToEndDate(endDate);
 		}
 		
 		List<CouponEntity> coupons = couponDao.getCouponsUpToEndDate(endDate);
@@ -180,8 +248,11 @@ public class CouponController {
 	 */
 	public List<CouponEntity> getCouponsByCompanyID(Long companyID) throws ApplicationException{
 		if(companyID==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		
+		if (couponCatalog.isLoaded()) {
+			return couponCatalog.getCouponsByCompanyID(companyID);
 		}
 		
 		List<CouponEntity> coupons = couponDao.getCouponsByCompanyID(companyID);
@@ -190,6 +261,100 @@ public class CouponController {
 		
 	}
 	
+	/**
+	 * Getting only the requested fields of all coupons from DB.
+	 * @param fields - comma separated names of the requested fields, for example "couponId,couponTitle".
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	public List<Map<String, Object>> getAllCoupons(String fields) throws ApplicationException{
+		
+		return couponDao.getAllCoupons(parseFields(fields));
+		
+	}
+	
+	/**
+	 * Getting only the requested fields of the coupons of a certain type.
+	 * @param couponType - type of coupon.
+	 * @param fields - comma separated names of the requested fields.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	public List<Map<String, Object>> getCouponByType(CouponType couponType, String fields) throws ApplicationException{
+		
+		if (couponType == null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "   Bad input inserted, null value.");
+		}
+		
+		if (couponCatalog.isLoaded()) {
+			return projectFields(couponCatalog.getCouponsByType(couponType), parseFields(fields));
+		}
+		return couponDao.getCouponByType(couponType, parseFields(fields));
+		
+	}
+	
+	/**
+	 * Getting only the requested fields of the coupons up to a certain price.
+	 * @param price - Double parameter of the maximum wanted price for a coupon.
+	 * @param fields - comma separated names of the requested fields.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	public List<Map<String, Object>> getCouponsUpToPrice(Double price, String fields) throws ApplicationException{
+		if(price==null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		if (!ValidationUtils.isValidPrice(price)) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid price entered: " + price + ".");
+		}
+		
+		if (couponCatalog.isLoaded()) {
+			return projectFields(couponCatalog.getCouponsUpToPrice(price), parseFields(fields));
+		}
+		return couponDao.getCouponsUpToPrice(price, parseFields(fields));
+		
+	}
+	
+	/**
+	 * Getting only the requested fields of the coupons up to a certain expiration date.
+	 * @param endDate - String parameter of the latest end date of the coupon.
+	 * @param fields - comma separated names of the requested fields.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	public List<Map<String, Object>> getCouponsUpToEndDate(String endDate, String fields) throws ApplicationException{
+		
+		if(!ValidationUtils.isValidDateFormat(endDate)) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid date format entered: " + endDate + ".");
+		}
+		endDate = DateCodec.normalize(endDate);
+		
+		if (couponCatalog.isLoaded()) {
+			return projectFields(couponCatalog.getCouponsUpToEndDate(endDate), parseFields(fields));
+		}
+		return couponDao.getCouponsUpToEndDate(endDate, parseFields(fields));
+		
+	}
+	
+	/**
+	 * Getting only the requested fields of the coupons from a certain company.
+	 * @param companyID - Long parameter of the ID of the requested company.
+	 * @param fields - comma separated names of the requested fields.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	public List<Map<String, Object>> getCouponsByCompanyID(Long companyID, String fields) throws ApplicationException{
+		if(companyID==null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		
+		if (couponCatalog.isLoaded()) {
+			return projectFields(couponCatalog.getCouponsByCompanyID(companyID), parseFields(fields));
+		}
+		return couponDao.getCouponsByCompanyID(companyID, parseFields(fields));
+		
+	}
+	
 	/**
 	 * Getting a list of coupon from the DB purchased from a certain customer.
 	 * @param customerID - Long parameter of the ID of the requested customer.
@@ -198,8 +363,7 @@ public class CouponController {
 	 */
 	public List<CouponEntity> getCouponsByCustomerID(Long customerID) throws ApplicationException{
 		if(customerID==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
 		}
 		List<CouponEntity> coupons = couponDao.getCouponsByCustomerID(customerID);
 		
@@ -208,16 +372,151 @@ public class CouponController {
 	}
 	
 	/**
-	 * Getting a list of coupon of the newest coupons from the DB.
-	 * @return List collection of the five newest coupons to display on the homepage.
+	 * Checking which of the requested coupons a customer has purchased, without reading the coupons.
+	 * @param customerID - Long parameter of the ID of the customer.
+	 * @param couponIDs - the IDs of the coupons to check.
+	 * @return List of the IDs of the requested coupons that the customer has purchased.
+	 * @throws ApplicationException
+	 */
+	public List<Long> getPurchasedCouponIDs(Long customerID, List<Long> couponIDs) throws ApplicationException{
+		if(customerID==null || couponIDs==null || couponIDs.contains(null)) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		if(couponIDs.size() > MAX_PAGE_SIZE) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Too many coupons to check: " + couponIDs.size() + ".");
+		}
+		return customerPurchasesCache.getPurchased(customerID, couponIDs, couponDao::getPurchasedCouponIDs);
+	}
+	
+	/**
+	 * Getting a page of the coupons matching any combination of criteria, with the counts per coupon type and price bucket.
+	 * @param filter - the criteria, criteria that are null are ignored.
+	 * @return The page of coupons and the counts of the facets.
+	 * @throws ApplicationException
+	 */
+	public CouponQueryResult queryCoupons(CouponFilter filter) throws ApplicationException{
+		if(filter == null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		
+		List<InputErrorType> errorTypes = new ArrayList<InputErrorType>();
+		
+		if((filter.getMinPrice() != null && filter.getMinPrice() < 0) || (filter.getMaxPrice() != null && filter.getMaxPrice() < 0)
+				|| (filter.getMinPrice() != null && filter.getMaxPrice() != null && filter.getMinPrice() > filter.getMaxPrice())) {
+			errorTypes.add(InputErrorType.INVALID_PRICE);
+		}
+		
+		boolean isDateValide = true;
+		if(filter.getFromEndDate() != null && !ValidationUtils.isValidDateFormat(filter.getFromEndDate())) {
+			errorTypes.add(InputErrorType.INVALID_START_DATE);
+			isDateValide = false;
+		}
+		if(filter.getToEndDate() != null && !ValidationUtils.isValidDateFormat(filter.getToEndDate())) {
+			errorTypes.add(InputErrorType.INVALID_END_DATE);
+			isDateValide = false;
+		}
+		if(isDateValide && ValidationUtils.isStartEndDateMiss(filter.getFromEndDate(), filter.getToEndDate())) {
+			errorTypes.add(InputErrorType.INVALID_END_BEFORE_START);
+		}
+		
+		if(!errorTypes.isEmpty()) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Query coupons has failed."
+					+"\nOne or more of the fields are incorrect.", errorTypes);
+		}
+		
+		// The dates are compared as strings in the DB, so they are queried with leading zeros as they are stored.
+		if(filter.getFromEndDate() != null) {
+			filter.setFromEndDate(DateCodec.normalize(filter.getFromEndDate()));
+		}
+		if(filter.getToEndDate() != null) {
+			filter.setToEndDate(DateCodec.normalize(filter.getToEndDate()));
+		}
+		
+		int page = filter.getPage() == null ? 0 : filter.getPage();
+		int pageSize = filter.getPageSize() == null ? DEFAULT_PAGE_SIZE : filter.getPageSize();
+		if(page < 0 || pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid page entered: page " + page + " of size " + pageSize + ".");
+		}
+		
+		return couponDao.queryCoupons(filter, page, pageSize);
+	}
+	
+	/**
+	 * Searching coupons by the words of their title and message. The last word is also matched as a prefix.
+	 * @param query - the text to search.
+	 * @param limit - maximum number of results, or null for the default.
+	 * @return List collection of the matching coupons, the best match first.
 	 * @throws ApplicationException
 	 */
-	public List<CouponEntity> getNewestCoupon() throws ApplicationException{
-		List<CouponEntity> coupons = couponDao.getNewestCoupon();
+	public List<CouponEntity> searchCoupons(String query, Integer limit) throws ApplicationException{
+		if(query == null || query.trim().isEmpty()) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, empty search.");
+		}
+		if(limit == null) {
+			limit = DEFAULT_SEARCH_LIMIT;
+		}
+		if(limit < 1 || limit > MAX_SEARCH_LIMIT) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid limit entered: " + limit + ".");
+		}
+		
+		List<Long> couponIDs = couponSearchIndex.search(query, limit);
+		
+		// The DB returns the coupons in its own order, so they are put back in the order of the ranking.
+		Map<Long, CouponEntity> couponsByID = new HashMap<Long, CouponEntity>();
+		for (CouponEntity coupon : couponDao.getCouponsByCouponIDs(couponIDs)) {
+			couponsByID.put(coupon.getCouponId(), coupon);
+		}
+		List<CouponEntity> coupons = new ArrayList<CouponEntity>(couponIDs.size());
+		for (Long couponID : couponIDs) {
+			CouponEntity coupon = couponsByID.get(couponID);
+			if (coupon != null) {
+				coupons.add(coupon);
+			}
+		}
 		
 		return coupons;
 	}
 	
+	/**
+	 * Getting a page of the newest coupons, served from memory up to the capacity of the newest coupons cache.
+	 * @param page - optional number of the page, starting from 0.
+	 * @param pageSize - optional size of the page, by default the five coupons displayed on the homepage.
+	 * @return List collection of the newest coupons of the requested page, newest first.
+	 * @throws ApplicationException
+	 */
+	public List<CouponEntity> getNewestCoupons(Integer page, Integer pageSize) throws ApplicationException{
+		
+		int requestedPage = page == null ? 0 : page;
+		int requestedPageSize = pageSize == null ? DEFAULT_NEWEST_PAGE_SIZE : pageSize;
+		if(requestedPage < 0 || requestedPageSize < 1 || requestedPageSize > MAX_PAGE_SIZE) {
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid page entered: page " + requestedPage + " of size " + requestedPageSize + ".");
+		}
+		
+		// In long, a page far enough overflows int. No table holds that many coupons, so the page is empty.
+		long firstResult = (long) requestedPage * requestedPageSize;
+		if (firstResult + requestedPageSize > Integer.MAX_VALUE) {
+			return new ArrayList<CouponEntity>();
+		}
+		int first = (int) firstResult;
+		List<CouponEntity> coupons = newestCouponsCache.getNewestCoupons(first, requestedPageSize);
+		if (coupons != null) {
+			return coupons;
+		}
+		
+		// Within the capacity the cache was emptied by removals, so it is filled again for the next requests.
+		if (first + requestedPageSize <= newestCouponsCache.getCapacity()) {
+			long version = newestCouponsCache.getVersion();
+			// From the primary DB, a replica behind the version would leave stale coupons in the cache.
+			List<CouponEntity> newestCoupons = DataSourceRouting.onPrimary(
+					() -> couponDao.getNewestCoupons(0, newestCouponsCache.getCapacity()));
+			newestCouponsCache.load(newestCoupons, version);
+			return newestCoupons.subList(Math.min(first, newestCoupons.size()),
+					Math.min(first + requestedPageSize, newestCoupons.size()));
+		}
+		
+		return couponDao.getNewestCoupons(first, requestedPageSize);
+	}
+	
 	/**
 	 * Adding a coupon-customer relation after customer bought a coupon.
 	 * @param customerID - Long parameter of the customer ID.
@@ -227,36 +526,98 @@ public class CouponController {
 	@Transactional(propagation=Propagation.REQUIRED)
 	public void buyCoupon(Long customerID, Long couponID) throws ApplicationException {
 		if(couponID==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value of couponID.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value of couponID.");
 		}
 		
 		if(customerID==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value of customerID.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value of customerID.");
 		}
 		CouponEntity couponToBuy = this.couponDao.getCouponByCouponId(couponID);
 		
-		// Checking if there are remaining amount for coupon.
+		// Checking if there are remaining amount for coupon. The purchase itself takes the unit only if it is still left.
 		if(couponToBuy.getCouponAmount() <= 0) {
-			
-			throw new ApplicationException(ErrorType.GENERAL_ERROR, DateUtils.getCurrentDateAndTime()
-					+" Coupon out of stock.");
+			metricsRegistry.getCounter(MetricsRegistry.SOLD_OUT_REJECTIONS).increment();
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon out of stock.");
 		}
 		
-		if(this.couponDao.isCouponAlreadyPurchasedByCustomerID(couponID,customerID)) {
-			throw new ApplicationException(ErrorType.GENERAL_ERROR, DateUtils.getCurrentDateAndTime()
-					+" Coupon already purchesed.");
+		if(this.customerPurchasesCache.hasPurchased(customerID, couponID, this.couponDao::getPurchasedCouponIDs)) {
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon already purchesed.");
 		}
 		this.couponDao.buyCoupon(customerID, couponToBuy);
 		
-		// After purchase the amount of the coupon is updated in the DB
-		couponToBuy.reduceAmountByOne();
-//		this.couponDao.updateCoupon(couponToBuy);
+	}
+		
+	/**
+	 * Holding a unit of a coupon for a customer during checkout. The unit is taken from the amount of the coupon until
+	 * the hold is confirmed, cancelled or expires.
+	 * @param customerID - Long parameter of the customer ID.
+	 * @param couponID - Long parameter of the coupon ID.
+	 * @return The hold, with its ID and the time it expires.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public CouponReservationEntity reserveCoupon(Long customerID, Long couponID) throws ApplicationException {
+		if(couponID==null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value of couponID.");
+		}
+		
+		if(customerID==null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value of customerID.");
+		}
+		CouponEntity couponToReserve = this.couponDao.getCouponByCouponId(couponID);
 		
+		// Checking if there are remaining amount for coupon. The hold itself takes the unit only if it is still left.
+		if(couponToReserve.getCouponAmount() <= 0) {
+			metricsRegistry.getCounter(MetricsRegistry.SOLD_OUT_REJECTIONS).increment();
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon out of stock.");
+		}
 		
+		if(this.customerPurchasesCache.hasPurchased(customerID, couponID, this.couponDao::getPurchasedCouponIDs)) {
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon already purchesed.");
+		}
+		CouponReservationEntity reservation = this.couponReservationDao.reserveCoupon(couponID, customerID,
+				System.currentTimeMillis() + reservationTtlSeconds * 1000);
+		this.reservationReaper.schedule(reservation);
+		return reservation;
 	}
+	
+	/**
+	 * Buying the held unit of a coupon, before the hold expires. If the customer already bought the coupon, the hold is
+	 * cancelled and its unit returns to the amount of the coupon.
+	 * Not in one transaction, so the cancellation is not rolled back with the failed purchase. The purchase itself is
+	 * one transaction of the DAO.
+	 * @param customerID - Long parameter of the customer ID.
+	 * @param reservationID - Long parameter of the hold ID.
+	 * @return The ID of the bought coupon.
+	 * @throws ApplicationException
+	 */
+	public Long confirmReservation(Long customerID, Long reservationID) throws ApplicationException {
+		CouponReservationEntity reservation = getReservationOfCustomer(customerID, reservationID);
+		
+		if(this.customerPurchasesCache.hasPurchased(customerID, reservation.getCouponId(), this.couponDao::getPurchasedCouponIDs)) {
+			this.couponReservationDao.cancelReservation(reservation);
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon already purchesed.");
+		}
+		CouponEntity couponToBuy = this.couponDao.getCouponByCouponId(reservation.getCouponId());
+		this.couponReservationDao.confirmReservation(reservation, couponToBuy);
+		return reservation.getCouponId();
+	}
+	
+	/**
+	 * Cancelling a hold of a customer, returning its unit to the amount of the coupon.
+	 * @param customerID - Long parameter of the customer ID.
+	 * @param reservationID - Long parameter of the hold ID.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void cancelReservation(Long customerID, Long reservationID) throws ApplicationException {
+		CouponReservationEntity reservation = getReservationOfCustomer(customerID, reservationID);
 		
+		if(!this.couponReservationDao.cancelReservation(reservation)) {
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Reservation expired.");
+		}
+	}
+	
 	/**
 	 * Deleting expired coupon from DB.
 	 * @throws ApplicationException
@@ -264,13 +625,80 @@ public class CouponController {
 	public void deleteExpiredCoupon() throws ApplicationException {
 //		CouponDao couponDao = new CouponDao();
 		// Getting today's date.
-		GregorianCalendar today = new GregorianCalendar();
-
-		String todayStr = DateUtils.dateToStrConverter(today);
+		String todayStr = DateUtils.getCurrentDate();
+		// The purchases of the expired coupons are removed first in chunks, each one recorded in the purchase ledger.
+		int removedPurchases;
+		do {
+			removedPurchases = couponDao.removePurchasesOfExpiredCoupons(todayStr, PURCHASES_PER_CHUNK);
+		} while (removedPurchases == PURCHASES_PER_CHUNK);
 		couponDao.removeCouponByEndDate(todayStr);
 		
 	}
 
+	/**
+	 * Getting a hold that belongs to the customer. A hold of another customer is reported as missing, so its ID tells
+	 * nothing about it.
+	 * @param customerID - Long parameter of the customer ID.
+	 * @param reservationID - Long parameter of the hold ID.
+	 * @return The hold.
+	 * @throws ApplicationException
+	 */
+	private CouponReservationEntity getReservationOfCustomer(Long customerID, Long reservationID) throws ApplicationException {
+		if(reservationID==null || customerID==null) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
+		}
+		CouponReservationEntity reservation = this.couponReservationDao.getReservation(reservationID);
+		if(reservation == null || !reservation.getCustomerId().equals(customerID)) {
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Reservation expired."
+					+"\nReservation ID="+reservationID);
+		}
+		return reservation;
+	}
+
+	/**
+	 * Parsing the requested fields of a sparse fieldset. If a field is unknown ApplicationException will be thrown.
+	 * @param fields - comma separated names of the requested fields, for example "couponId,couponTitle".
+	 * @return List of the requested fields, without duplicates.
+	 * @throws ApplicationException
+	 */
+	private List<CouponField> parseFields(String fields) throws ApplicationException {
+		
+		if(fields == null || fields.trim().isEmpty()) {
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, no fields requested.");
+		}
+		
+		List<CouponField> couponFields = new ArrayList<CouponField>();
+		for (String fieldName : fields.split(",")) {
+			CouponField field = CouponField.fromPropertyName(fieldName.trim());
+			if (field == null) {
+				throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Invalid field requested: " + fieldName + ".");
+			}
+			if (!couponFields.contains(field)) {
+				couponFields.add(field);
+			}
+		}
+		return couponFields;
+	}
+
+	/**
+	 * Keeping only the requested fields of coupons that are already in memory.
+	 * @param coupons - the coupons.
+	 * @param fields - List of the requested fields.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 */
+	private List<Map<String, Object>> projectFields(List<CouponEntity> coupons, List<CouponField> fields) {
+		
+		List<Map<String, Object>> projectedCoupons = new ArrayList<Map<String, Object>>(coupons.size());
+		for (CouponEntity coupon : coupons) {
+			Map<String, Object> projectedCoupon = new LinkedHashMap<String, Object>();
+			for (CouponField field : fields) {
+				projectedCoupon.put(field.getPropertyName(), field.getValue(coupon));
+			}
+			projectedCoupons.add(projectedCoupon);
+		}
+		return projectedCoupons;
+	}
+
 	/**
 	 * Validating creation of coupon. If invalid ApplicationException will be thrown.
 	 * @param coupon - Coupon object to be validated.
@@ -279,15 +707,7 @@ public class CouponController {
 	private void validateCreateCoupon(CouponEntity coupon) throws ApplicationException{
 		
 		validateCoupon(coupon);
-		
-		//We check if the coupon's name is already exist in the DB
-		if (this.couponDao.isCouponExistByTitle(coupon.getCouponTitle())) {
-			throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, DateUtils.getCurrentDateAndTime()
-					+" Create coupon has failed."
-					+"\nThe user attempted to create a new coupon using a name that is already exists."
-					+"\nCoupon Name = "+coupon.getCouponTitle());
-		}
-		
+		// The title of the coupon is checked to be unique by the DB, on the write itself.
 	}
 
 	/**
@@ -297,15 +717,7 @@ public class CouponController {
 	 */
 	private void validateUpdateCoupon(CouponEntity coupon) throws ApplicationException {
 		validateCoupon(coupon);
-		
-		//We check if the change to coupon's name is already exist in the DB
-		if (this.couponDao.isCouponTitleExistForUpdate(coupon.getCouponId() ,coupon.getCouponTitle())) {
-			throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, DateUtils.getCurrentDateAndTime()
-					+" Update coupon has failed."
-					+"\nThe user attempted to update coupon using a name that is already exists."
-					+"\nCoupon Name = "+coupon.getCouponTitle());
-		}
-		
+		// The title of the coupon is checked to be unique by the DB, on the write itself.
 	}
 
 	/**
@@ -316,8 +728,7 @@ public class CouponController {
 	private void validateCoupon(CouponEntity coupon) throws ApplicationException {
 		
 		if(coupon == null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+ "   Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "   Bad input inserted, null value.");
 		}
 		
 		List<InputErrorType> errorTypes = new ArrayList<InputErrorType>();
@@ -361,10 +772,13 @@ public class CouponController {
 		}
 		
 		if(!errorTypes.isEmpty()) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Create coupon has failed."
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Create coupon has failed."
 					+"\nOne or more of the fields are incorrect.", errorTypes);
 		}
+		
+		// Storing the dates with leading zeros, so they compare as strings in the DB in the order of the days.
+		coupon.setCouponStartDate(DateCodec.normalize(coupon.getCouponStartDate()));
+		coupon.setCouponEndDate(DateCodec.normalize(coupon.getCouponEndDate()));
 	}
 		
 }
@@ -6,11 +6,11 @@ import java.util.List;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import com.idan.coupons.beans.CustomerEntity;
+import com.idan.coupons.dao.CouponDao;
 import com.idan.coupons.dao.CustomerDao;
 import com.idan.coupons.enums.ErrorType;
 import com.idan.coupons.enums.InputErrorType;
 import com.idan.coupons.exceptions.ApplicationException;
-import com.idan.coupons.utils.DateUtils;
 import com.idan.coupons.utils.ValidationUtils;
 
 @Controller
@@ -19,6 +19,11 @@ public class CustomerController {
 	@Autowired
 	private CustomerDao customerDao;
 	
+	@Autowired
+	private CouponDao couponDao;
+	
+	private static final int PURCHASES_PER_CHUNK = 1000;
+	
 	
 	/**
 	 * Creating a customer in the DB.
@@ -36,16 +41,16 @@ public class CustomerController {
 	}
 	
 	/**
-	 * Removing customer from customer table.
+	 * Removing customer from customer table, after removing its purchases and returning them to the stock of the coupons.
 	 * @param customerID - a long parameter represent the ID of the requested customer.
 	 * @throws ApplicationException
 	 */
 	public void removeCustomerByCustomerID(Long customerID) throws ApplicationException {
 		if(customerID==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
 		}
-//		this.couponDao.removeCustomerPurchasesByCustomerID(customerID);
+		// The purchases are removed in chunks of short transactions, the stock is returned to the coupons with each chunk.
+		while (this.couponDao.removeCustomerPurchasesByCustomerID(customerID, PURCHASES_PER_CHUNK) == PURCHASES_PER_CHUNK);
 		this.customerDao.removeCustomerByCustomerID(customerID);
 		
 	}
@@ -73,8 +78,7 @@ public class CustomerController {
 	 */
 	public CustomerEntity getCustomerByCustomerId(Long customerID) throws ApplicationException {
 		if(customerID==null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+"  Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "  Bad input inserted, null value.");
 		}
 		return this.customerDao.getCustomerByCustomerId(customerID);
 		
@@ -88,8 +92,7 @@ public class CustomerController {
 	 */
 	public List<CustomerEntity> getCustomersByCustomerName(String customerName) throws ApplicationException {
 		if (!ValidationUtils.isValidNameFormat(customerName)) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Not valid name format " + customerName + ".");
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Not valid name format " + customerName + ".");
 		}
 		
 		List<CustomerEntity> customers = customerDao.getCustomersByCustomerName(customerName);
@@ -105,8 +108,7 @@ public class CustomerController {
 	 */
 	public CustomerEntity getCustomerByCustomerEmail(String customerEmail) throws ApplicationException {
 		if (!ValidationUtils.isValidEmailFormat(customerEmail)) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Not valid email format " + customerEmail + ".");
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Not valid email format " + customerEmail + ".");
 		}
 		
 		CustomerEntity customer = customerDao.getCustomerByCustomerEmail(customerEmail);
@@ -150,14 +152,7 @@ public class CustomerController {
 	private void validateUpdateCustomer(CustomerEntity customer) throws ApplicationException {
 
 		validateCustomer(customer);
-		
-		if (this.customerDao.isCustomerEmailExistForUpdate(customer.getCustomerId(), customer.getCustomerEmail())) {
-			throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, DateUtils.getCurrentDateAndTime()
-					+" Update customer has failed."
-					+"\nThe user attempted to update a customer using an Email that is already in use."
-					+"\nCustomer Email="+customer.getCustomerEmail());
-		}
-		
+		// The email of the customer is checked to be unique by the DB, on the write itself.
 	}
 
 	/**
@@ -168,14 +163,7 @@ public class CustomerController {
 	private void validateCreateCustomer(CustomerEntity customer) throws ApplicationException {
 
 		validateCustomer(customer);
-		
-		if (this.customerDao.isCustomerExistByEmail(customer.getCustomerEmail())) {
-			throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, DateUtils.getCurrentDateAndTime()
-					+" Create customer has failed."
-					+"\nThe user attempted to create a new customer using an Email that is already in use."
-					+"\nCustomer Email="+customer.getCustomerEmail());
-		}
-		
+		// The email of the customer is checked to be unique by the DB, on the write itself.
 	}
 
 	/**
@@ -186,8 +174,7 @@ public class CustomerController {
 	private void validateCustomer(CustomerEntity customer) throws ApplicationException {
 		
 		if (customer == null) {
-			throw new ApplicationException(ErrorType.BAD_INPUT, DateUtils.getCurrentDateAndTime()
-					+ "   Bad input inserted, null value.");
+			throw new ApplicationException(ErrorType.BAD_INPUT, "   Bad input inserted, null value.");
 		}
 
 		List<InputErrorType> errorTypes = new ArrayList<InputErrorType>();
@@ -204,8 +191,7 @@ public class CustomerController {
 		}
 		
 		if(!errorTypes.isEmpty()) {
-			throw new ApplicationException(ErrorType.INVALID_PARAMETER, DateUtils.getCurrentDateAndTime()
-					+" Validating customer input has failed."
+			throw new ApplicationException(ErrorType.INVALID_PARAMETER, " Validating customer input has failed."
 					+"\nOne or more of the fields are incorrect.", errorTypes);
 		}
 		
@@ -7,22 +7,31 @@ import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 
 import com.idan.coupons.beans.CompanyEntity;
+import com.idan.coupons.datasource.NamedQueryCatalog;
 import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.events.CouponChangePublisher;
 import com.idan.coupons.exceptions.ApplicationException;
-import com.idan.coupons.utils.DateUtils;
 
 @Repository
 public class CompanyDao{
 
 	@PersistenceContext(unitName="couponSystem")
 	private EntityManager entityManager;
+
+	@Autowired
+	private NamedQueryCatalog namedQueryCatalog;
+
+	@Autowired
+	private CouponChangePublisher couponChangePublisher;
 	
 	
 	/**
@@ -35,8 +44,19 @@ public class CompanyDao{
 	public void createCompany(CompanyEntity company) throws ApplicationException {
 		try {
 			entityManager.persist(company);
+			entityManager.flush();
 		} catch (Exception e) {
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CompanyDao, creatCompany(); FAILED");
+			if (UniqueConstraints.isViolated(e, CompanyEntity.UNIQUE_NAME)) {
+				throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, " Create company has failed."
+						+"\nThe user attempted to create a new company using a name that is already in use."
+						+"\nCustomer name="+company.getCompanyName());
+			}
+			if (UniqueConstraints.isViolated(e, CompanyEntity.UNIQUE_EMAIL)) {
+				throw new ApplicationException(ErrorType.EMAIL_IS_ALREADY_EXISTS, " Create company has failed."
+						+"\nThe user attempted to create a new company using an Email that is already in use."
+						+"\nCustomer Email="+company.getCompanyEmail());
+			}
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CompanyDao, creatCompany(); FAILED");
 
 		}
 	}
@@ -51,8 +71,9 @@ public class CompanyDao{
 		CompanyEntity company = getCompanyByComapnyId(companyID);
 		try {
 			entityManager.remove(company);
+			couponChangePublisher.publishCompanyRemoved(companyID);
 		} catch (Exception e) {
-			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CompanyDao, removeCompany(); FAILED");
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CompanyDao, removeCompany(); FAILED");
 		}
 		
 	}
@@ -67,8 +88,20 @@ public class CompanyDao{
 	public void updateCompany(CompanyEntity company) throws ApplicationException {
 		try {
 			entityManager.merge(company);
+			entityManager.flush();
+			couponChangePublisher.publishCompanyUpdated(company.getCompanyId());
 		} catch (Exception e) {
-			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CompanyDao, updateCompany(); FAILED");
+			if (UniqueConstraints.isViolated(e, CompanyEntity.UNIQUE_NAME)) {
+				throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, " Update company has failed."
+						+"\nThe user attempted to update a company using a name that is already in use."
+						+"\nCustomer name = "+company.getCompanyName());
+			}
+			if (UniqueConstraints.isViolated(e, CompanyEntity.UNIQUE_EMAIL)) {
+				throw new ApplicationException(ErrorType.EMAIL_IS_ALREADY_EXISTS, " Update company has failed."
+						+"\nThe user attempted to update a company using an Email that is already in use."
+						+"\nCustomer Email="+company.getCompanyEmail());
+			}
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CompanyDao, updateCompany(); FAILED");
 		}
 		
 	}
@@ -80,13 +113,13 @@ public class CompanyDao{
 	 * @return Company object of the requested company.
 	 * @throws ApplicationException. 
 	 */
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public CompanyEntity getCompanyByComapnyId(Long companyId) throws ApplicationException {
 		
 		try {
 			return entityManager.find(CompanyEntity.class, companyId);
 		} catch (Exception e) {
-			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CompanyDao, getCompanyByComapnyId(); FAILED");
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CompanyDao, getCompanyByComapnyId(); FAILED");
 		}
 		
 	}
@@ -97,19 +130,19 @@ public class CompanyDao{
 	 * @return Company object of the requested company.
 	 * @throws ApplicationException
 	 */
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public CompanyEntity getCompanyByComapnyName(String companyName) throws ApplicationException {
 		
 		try {
-			Query getQuery = entityManager.createQuery("SELECT company FROM CompanyEntity As company WHERE companyName = :CompanyNameObj ");
-			getQuery.setParameter("CompanyNameObj", companyName);
-			CompanyEntity company = (CompanyEntity) getQuery.getSingleResult();
+			TypedQuery<CompanyEntity> getQuery = namedQueryCatalog.create(entityManager, CompanyEntity.FIND_BY_NAME, CompanyEntity.class);
+			getQuery.setParameter("companyNameObj", companyName);
+			CompanyEntity company = getQuery.getSingleResult();
 			return company;
 		} catch (NoResultException e) {
 			// getSingleResult throws a NoResultException in case of no results, so it will be replaced simple null.
 			return null;
 		} catch (Exception e) {
-			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CompanyDao, getCompanyByComapnyName(); FAILED");
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CompanyDao, getCompanyByComapnyName(); FAILED");
 		}
 	}
 
@@ -119,19 +152,19 @@ public class CompanyDao{
 	 * @return Company object of the requested company.
 	 * @throws ApplicationException
 	 */
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public CompanyEntity getCompanyByComapnyEmail(String companyEmail) throws ApplicationException {
 		 
 		try {
-			Query getQuery = entityManager.createQuery("SELECT company FROM CompanyEntity As company WHERE companyEmail = :companyEmailObj ");
+			TypedQuery<CompanyEntity> getQuery = namedQueryCatalog.create(entityManager, CompanyEntity.FIND_BY_EMAIL, CompanyEntity.class);
 			getQuery.setParameter("companyEmailObj", companyEmail);
-			CompanyEntity company = (CompanyEntity) getQuery.getSingleResult();
+			CompanyEntity company = getQuery.getSingleResult();
 			return company;
 		} catch (NoResultException e) {
 			// getSingleResult throws a NoResultException in case of no results, so it will be replaced simple null.
 			return null;
 		} catch (Exception e) {
-			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in getCompanyByComapnyEmail, getCompanyByComapnyName(); FAILED");
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in getCompanyByComapnyEmail, getCompanyByComapnyName(); FAILED");
 		}
 	}
 
@@ -140,15 +173,14 @@ public class CompanyDao{
 	 * @return List collection of all the companies in the company table.
 	 * @throws ApplicationException.
 	 */
-	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CompanyEntity> getAllCompanies() throws ApplicationException{
 		List<CompanyEntity> companies;
 		try {
-			Query getQuery = entityManager.createQuery("SELECT company FROM CompanyEntity As company");
+			TypedQuery<CompanyEntity> getQuery = namedQueryCatalog.create(entityManager, CompanyEntity.FIND_ALL, CompanyEntity.class);
 			companies = getQuery.getResultList();
 		} catch (Exception e) {
-			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CompanyDao, getAllCompanies(); FAILED");
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CompanyDao, getAllCompanies(); FAILED");
 		}
 		return companies;
 	}
@@ -164,133 +196,16 @@ public class CompanyDao{
 	public CompanyEntity login (String companyName, String companyPasword) throws ApplicationException {
 		
 		try {
-			Query loginQuery = entityManager.createQuery("SELECT company FROM CompanyEntity as company WHERE companyName =:companyNameObj AND companyPassword =:companyPasswordObj");
+			TypedQuery<CompanyEntity> loginQuery = namedQueryCatalog.create(entityManager, CompanyEntity.LOGIN, CompanyEntity.class);
 			loginQuery.setParameter("companyNameObj", companyName);
 			loginQuery.setParameter("companyPasswordObj", companyPasword);
-			CompanyEntity company = (CompanyEntity) loginQuery.getSingleResult();
+			CompanyEntity company = loginQuery.getSingleResult();
 			return company;		
 		} catch (NoResultException e) {
 			return null;
 		} catch (Exception e) {
-			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CompanyDao, login(); FAILED");
-		}
-	}
-	
-	/**
-	 * Sending a query to the DB to get if there is a company using that email for creation.
-	 * @param companyEmail - String of that company email.
-	 * @return true - Email in use by other company.
-	 * 		   false - Email not in use by other company.
-	 * @throws ApplicationException
-	 */
-	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCompanyExistByEmail(String companyEmail) throws ApplicationException {
-		
-		try {
-			Query verifyQUey = entityManager.createQuery("SELECT company FROM CompanyEntity As company WHERE companyEmail = :companyEmailObj");
-			verifyQUey.setParameter("companyEmailObj", companyEmail);			
-			verifyQUey.getSingleResult();
-			
-			// If a company with email exist in DB, return true.
-			return true;
-		} catch (NoResultException e) {
-		//	In case of no result exception, no company with this email exist, return false.
-			return false;
-		}
-		catch (Exception e) {
-		//	In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCompanyExistByEmail(); FAILED");
-		} 
-	}
-	
-	/**
-	 * Sending a query to the DB to get if there is a company using that email for update.
-	 * @param companyID - a long parameter represent the ID of the requested company.
-	 * @param companyEmail - String of that company email.
-	 * @return true - Email in use by other company.
-	 * 		   false - Email not in use by other company.
-	 * @throws ApplicationException
-	 */
-	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCompanyEmailExistForUpdate(Long companyID, String companyEmail) throws ApplicationException {
-
-		try {
-			Query verifyQUey = entityManager.createQuery("SELECT company FROM CompanyEntity As company WHERE companyEmail = :companyEmailObj AND NOT companyId = :companuIdObj");
-			verifyQUey.setParameter("companyEmailObj", companyEmail);		
-			verifyQUey.setParameter("companuIdObj", companyID);	
-			verifyQUey.getSingleResult();
-			
-			return true;
-		} catch (NoResultException e) {
-		//	In case of no result exception, no other company with this email exist, return false.
-			return false;
-		}	
-		catch (Exception e) {
-//		In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCouponTitleUpdateAvailable(); FAILED");
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CompanyDao, login(); FAILED");
 		}
 	}
 	
-	/**
-	 * Sending a query to the DB to get if there is a company using that name for creation.
-	 * @param companyName - String of that company name.
-	 * @return true - Name in use by other company.
-	 * 		   false - Name not in use by other company.
-	 * @throws ApplicationException
-	 */
-	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCompanyExistByName(String companyName) throws ApplicationException {
-		
-		try {
-			Query verifyQUey = entityManager.createQuery("SELECT company FROM CompanyEntity As company WHERE companyName = :companyNameObj");
-			verifyQUey.setParameter("companyNameObj", companyName);			
-			verifyQUey.getSingleResult();
-			
-			// If a company with name exist in DB, return true.
-			return true;
-			
-		}
-		catch (NoResultException e) {
-			//	In case of no result exception, no other company with this name exist, return false.
-			return false;
-		}	
-		catch (Exception e) {
-			e.printStackTrace();
-//		In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCompanyExistByName(); FAILED");
-		}
-	}
-	
-	/**
-	 * Sending a query to the DB to get if there is a company using that name for creation.
-	 * @param companyID - a long parameter represent the ID of the requested company.
-	 * @param companyName - String of that company name.
-	 * @return true - Name in use by other company.
-	 * 		   false - Name not in use by other company.
-	 * @throws ApplicationException
-	 */
-	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCompanyNameExistForUpdate(long companyID, String companyName) throws ApplicationException {
-
-		try {
-			Query verifyQUey = entityManager.createQuery("SELECT company FROM CompanyEntity As company WHERE companyName = :companyNameObj AND NOT companyId = :companuIdObj");
-			verifyQUey.setParameter("companyNameObj", companyName);		
-			verifyQUey.setParameter("companuIdObj", companyID);	
-			verifyQUey.getSingleResult();
-			
-			return true;
-		}
-		catch (NoResultException e) {
-			//	In case of no result exception, no other company with this name exist, return false.
-			return false;
-		}
-		
-		catch (Exception e) {
-//		In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCouponTitleUpdateAvailable(); FAILED");
-		}
-	}
-	
-
-	
 }
\ No newline at end of file
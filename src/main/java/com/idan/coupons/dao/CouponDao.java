@@ -1,32 +1,61 @@
 package com.idan.coupons.dao;
 
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.idan.coupons.beans.CouponEntity;
-import com.idan.coupons.beans.CustomerEntity;
+import com.idan.coupons.beans.CouponFilter;
+import com.idan.coupons.beans.CouponQueryResult;
+import com.idan.coupons.enums.CouponField;
 import com.idan.coupons.enums.CouponType;
+import com.idan.coupons.datasource.NamedQueryCatalog;
 import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.enums.PriceBucket;
+import com.idan.coupons.events.CouponChangePublisher;
 import com.idan.coupons.exceptions.ApplicationException;
-import com.idan.coupons.utils.DateUtils;
+import com.idan.coupons.ledger.PurchaseLedger;
+import com.idan.coupons.metrics.MetricsRegistry;
 
 @Repository
 public class CouponDao{
 
 	@PersistenceContext(unitName="couponSystem")
 	private EntityManager entityManager;
+
+	@Autowired
+	private NamedQueryCatalog namedQueryCatalog;
 	
 	@Autowired
-	private CustomerDao customerdao;
+	private CouponChangePublisher couponChangePublisher;
+	
+	@Autowired
+	private SalesStatsDao salesStatsDao;
+	
+	@Autowired
+	private PurchaseLedger purchaseLedger;
+	
+	@Autowired
+	private MetricsRegistry metricsRegistry;
 	
 	/**
 	 * Sending a query to the DB to add a new coupon to the coupon table.
@@ -39,9 +68,16 @@ public class CouponDao{
 
 		try {
 			entityManager.persist(coupon);
+			entityManager.flush();
+			couponChangePublisher.publishCouponCreated(coupon);
 		}	catch (Exception e) {
+			if (UniqueConstraints.isViolated(e, CouponEntity.UNIQUE_TITLE)) {
+				throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, " Create coupon has failed."
+						+"\nThe user attempted to create a new coupon using a name that is already exists."
+						+"\nCoupon Name = "+coupon.getCouponTitle());
+			}
 			// In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, createCoupon(); FAILED");
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, createCoupon(); FAILED");
 		} 
 
 	}
@@ -53,7 +89,7 @@ public class CouponDao{
 	 * @return Coupon Object correspond to the provided ID.
 	 * @throws ApplicationException.
 	 */
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public CouponEntity getCouponByCouponId(Long couponId) throws ApplicationException{
 
 		try {
@@ -61,7 +97,7 @@ public class CouponDao{
 		
 		} catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, getCouponByCouponId(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponByCouponId(); FAILED");
 		}
 	}
 	
@@ -72,56 +108,320 @@ public class CouponDao{
 	 * @return List collection of all the coupons in the coupon table.
 	 * @throws ApplicationException 
 	 */
-	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CouponEntity> getAllCoupons() throws ApplicationException{
 		
 		try {
 			List<CouponEntity> coupons;
-			Query getQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon");
+			TypedQuery<CouponEntity> getQuery = namedQueryCatalog.create(entityManager, CouponEntity.FIND_ALL, CouponEntity.class);
 			coupons = getQuery.getResultList();
 			return coupons;
 		} catch (Exception e) {
-			e.printStackTrace();
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, getAllCoupons(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getAllCoupons(); FAILED");
 		}
 		
 	}
 
 	/**
-	 * Sending a query to the DB to remove coupon from the coupon table by a couponID.
-	 * @param couponID - the couponID as a long to remove from the DB.
+	 * Sending a query to the DB to get the coupons of the requested IDs.
+	 * @param couponIDs - List of the IDs of the requested coupons.
+	 * @return List collection of the coupons of the requested IDs, in no particular order.
+	 * @throws ApplicationException 
+	 */
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public List<CouponEntity> getCouponsByCouponIDs(List<Long> couponIDs) throws ApplicationException{
+		
+		if (couponIDs.isEmpty()) {
+			return new ArrayList<CouponEntity>();
+		}
+		
+		try {
+			TypedQuery<CouponEntity> getQuery = namedQueryCatalog.create(entityManager, CouponEntity.FIND_BY_IDS, CouponEntity.class);
+			getQuery.setParameter("couponIdsObj", couponIDs);
+			return getQuery.getResultList();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponsByCouponIDs(); FAILED");
+		}
+		
+	}
+
+	/**
+	 * Sending a query to the DB to get the IDs of the first coupons of a company, for removing them in chunks.
+	 * @param companyID - Long parameter of the ID of the company.
+	 * @param maxResults - the maximum number of IDs.
+	 * @return List of the lowest IDs of the coupons of the company.
+	 * @throws ApplicationException 
+	 */
+	@SuppressWarnings("unchecked")
+	@Transactional(propagation=Propagation.REQUIRED)
+	public List<Long> getCouponIDsByCompanyID(Long companyID, int maxResults) throws ApplicationException {
+		
+		try {
+			Query getQuery = entityManager.createNativeQuery("SELECT CouponID FROM Coupon WHERE CompanyID = :companyIdObj ORDER BY CouponID");
+			getQuery.setParameter("companyIdObj", companyID);
+			getQuery.setMaxResults(maxResults);
+			List<Long> couponIDs = new ArrayList<Long>();
+			for (Number couponID : (List<Number>) getQuery.getResultList()) {
+				couponIDs.add(couponID.longValue());
+			}
+			return couponIDs;
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponIDsByCompanyID(); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending a query to the DB to get the amounts of a range of coupons. Not read-only, so it reads from the primary DB
+	 * and not from a replica that may be behind the events.
+	 * @param fromCouponID - the lowest ID of the range.
+	 * @param toCouponID - the highest ID of the range.
+	 * @return Map of the ID of each coupon in the range to its amount.
+	 * @throws ApplicationException 
+	 */
+	@SuppressWarnings("unchecked")
+	@Transactional(propagation=Propagation.REQUIRED)
+	public Map<Long, Integer> getCouponAmounts(long fromCouponID, long toCouponID) throws ApplicationException {
+		
+		try {
+			Query getQuery = entityManager.createNativeQuery("SELECT CouponID, CouponAmount FROM Coupon"
+					+ " WHERE CouponID BETWEEN :fromCouponIdObj AND :toCouponIdObj");
+			getQuery.setParameter("fromCouponIdObj", fromCouponID);
+			getQuery.setParameter("toCouponIdObj", toCouponID);
+			Map<Long, Integer> amounts = new HashMap<Long, Integer>();
+			for (Object[] row : (List<Object[]>) getQuery.getResultList()) {
+				amounts.put(((Number) row[0]).longValue(), ((Number) row[1]).intValue());
+			}
+			return amounts;
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponAmounts(); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending a query to the DB to get the IDs of the companies that were removed while they still have coupons.
+	 * @return List of the IDs of the companies.
+	 * @throws ApplicationException 
+	 */
+	@SuppressWarnings("unchecked")
+	@Transactional(propagation=Propagation.REQUIRED)
+	public List<Long> getRemovedCompaniesWithCoupons() throws ApplicationException {
+		
+		try {
+			Query getQuery = entityManager.createNativeQuery("SELECT DISTINCT coupon.CompanyID FROM Coupon coupon"
+					+ " LEFT JOIN company company ON company.CompanyID = coupon.CompanyID WHERE company.CompanyID IS NULL");
+			List<Long> companyIDs = new ArrayList<Long>();
+			for (Number companyID : (List<Number>) getQuery.getResultList()) {
+				companyIDs.add(companyID.longValue());
+			}
+			return companyIDs;
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getRemovedCompaniesWithCoupons(); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending queries to the DB to remove up to a certain number of purchases of coupons from the customer_coupon table,
+	 * so the purchases of coupons with many purchasers can be removed in short transactions.
+	 * Each removed purchase is recorded in the purchase ledger and published, as when a customer is removed.
+	 * The units are not returned to the amounts of the coupons, the coupons are removed after their purchases.
+	 * @param couponIDs - the IDs of the coupons.
+	 * @param maxRows - the maximum number of purchases to remove.
+	 * @return The number of removed purchases, less than maxRows when no purchases are left.
+	 * @throws ApplicationException 
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public int removePurchasesOfCoupons(List<Long> couponIDs, int maxRows) throws ApplicationException {
+		
+		try {
+			return removePurchases("purchase.CouponID IN (:couponIdsObj)", "couponIdsObj", couponIDs, maxRows);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, removePurchasesOfCoupons(); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending queries to the DB to remove up to a certain number of purchases of the coupons that expired before a date,
+	 * so the purchases are removed in short transactions before the coupons. Each removed purchase is recorded in the
+	 * purchase ledger and published.
+	 * @param endDate - the purchases of the coupons with an earlier end date are removed.
+	 * @param maxRows - the maximum number of purchases to remove.
+	 * @return The number of removed purchases, less than maxRows when no purchases are left.
+	 * @throws ApplicationException 
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public int removePurchasesOfExpiredCoupons(String endDate, int maxRows) throws ApplicationException {
+		
+		try {
+			return removePurchases("coupon.CouponEndDate < :couponEndDateObj", "couponEndDateObj", endDate, maxRows);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, removePurchasesOfExpiredCoupons(); FAILED");
+		}
+	}
+	
+	/**
+	 * Removing the purchases that match a condition on the purchase or on its coupon, and recording each one in the
+	 * purchase ledger. Must be called in a transaction.
+	 */
+	@SuppressWarnings("unchecked")
+	private int removePurchases(String condition, String parameterName, Object parameter, int maxRows) {
+		
+		// Locking the purchases, so the removed purchases are the recorded ones.
+		Query getQuery = entityManager.createNativeQuery("SELECT purchase.CouponID, coupon.CompanyID, coupon.CouponPrice, purchase.CustomerID"
+				+ " FROM customer_coupon purchase JOIN Coupon coupon ON coupon.CouponID = purchase.CouponID"
+				+ " WHERE " + condition + " LIMIT " + maxRows + " FOR UPDATE");
+		getQuery.setParameter(parameterName, parameter);
+		List<Object[]> purchases = getQuery.getResultList();
+		Map<Long, List<Long>> customerIDsByCouponID = new HashMap<Long, List<Long>>();
+		for (Object[] purchase : purchases) {
+			customerIDsByCouponID.computeIfAbsent(((Number) purchase[0]).longValue(), couponID -> new ArrayList<Long>())
+					.add(((Number) purchase[3]).longValue());
+		}
+		
+		for (Map.Entry<Long, List<Long>> couponPurchases : customerIDsByCouponID.entrySet()) {
+			Query deleteQuery = entityManager.createNativeQuery("DELETE FROM customer_coupon WHERE CouponID = :couponIdObj AND CustomerID IN (:customerIdsObj)");
+			deleteQuery.setParameter("couponIdObj", couponPurchases.getKey());
+			deleteQuery.setParameter("customerIdsObj", couponPurchases.getValue());
+			deleteQuery.executeUpdate();
+		}
+		
+		for (Object[] purchase : purchases) {
+			Long couponID = ((Number) purchase[0]).longValue();
+			Long customerID = ((Number) purchase[3]).longValue();
+			purchaseLedger.recordPurchaseRemoved(couponID, ((Number) purchase[1]).longValue(), ((Number) purchase[2]).doubleValue(), customerID);
+			couponChangePublisher.publishCouponPurchaseCancelled(couponID, customerID);
+		}
+		return purchases.size();
+	}
+	
+	/**
+	 * Sending queries to the DB to remove coupons with their remaining purchases and sales counters, without loading them.
+	 * @param couponIDs - the IDs of the coupons to remove.
+	 * @return The number of purchases that were removed with the coupons.
+	 * @throws ApplicationException 
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public int removeCouponsByCouponIDs(List<Long> couponIDs) throws ApplicationException {
+		
+		// Purchases made since the purchases of the coupons were removed are removed with the coupons.
+		int removedPurchases = removePurchasesOfCoupons(couponIDs, Integer.MAX_VALUE);
+		salesStatsDao.removeCouponsSales(couponIDs);
+		try {
+			Query couponsQuery = entityManager.createNativeQuery("DELETE FROM Coupon WHERE CouponID IN (:couponIdsObj)");
+			couponsQuery.setParameter("couponIdsObj", couponIDs);
+			couponsQuery.executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, removeCouponsByCouponIDs(); FAILED");
+		}
+		
+		for (Long couponID : couponIDs) {
+			couponChangePublisher.publishCouponRemoved(couponID);
+		}
+		return removedPurchases;
+	}
+	
+	/**
+	 * Sending queries to the DB to remove up to a certain number of purchases of a customer, returning their units to
+	 * the amounts of the coupons. The units are returned to all the coupons with one grouped update, and the purchases
+	 * are removed with one delete, so removing the purchases doesn't depend on loading them or on the coupons.
+	 * @param customerID - the ID of the customer.
+	 * @param maxPurchases - the maximum number of purchases to remove.
+	 * @return The number of removed purchases, less than maxPurchases when no purchases are left.
 	 * @throws ApplicationException 
 	 */
+	@SuppressWarnings("unchecked")
 	@Transactional(propagation=Propagation.REQUIRED)
-	public void removeCouponByCouponID(Long couponID) throws ApplicationException {
+	public int removeCustomerPurchasesByCustomerID(Long customerID, int maxPurchases) throws ApplicationException {
 		
-		CouponEntity coupon = getCouponByCouponId(couponID);
+		List<Object[]> purchases;
+		List<Long> couponIDs = new ArrayList<Long>();
 		try {
-			entityManager.remove(coupon);
+			// Locking the purchases, so a refund at the same time can't return the same units.
+			Query getQuery = entityManager.createNativeQuery("SELECT purchase.CouponID, coupon.CompanyID, coupon.CouponPrice"
+					+ " FROM customer_coupon purchase JOIN Coupon coupon ON coupon.CouponID = purchase.CouponID"
+					+ " WHERE purchase.CustomerID = :customerIdObj LIMIT " + maxPurchases + " FOR UPDATE");
+			getQuery.setParameter("customerIdObj", customerID);
+			purchases = getQuery.getResultList();
+			for (Object[] purchase : purchases) {
+				couponIDs.add(((Number) purchase[0]).longValue());
+			}
 		} catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, removeCouponByID(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, removeCustomerPurchasesByCustomerID(); FAILED");
+		}
+		
+		if (couponIDs.isEmpty()) {
+			return 0;
 		}
 		
+		salesStatsDao.removeCustomerSales(customerID, couponIDs);
+		try {
+			Query amountQuery = entityManager.createNativeQuery("UPDATE Coupon coupon JOIN (SELECT CouponID, COUNT(*) AS Units"
+					+ " FROM customer_coupon WHERE CustomerID = :customerIdObj AND CouponID IN (:couponIdsObj) GROUP BY CouponID) purchases"
+					+ " ON purchases.CouponID = coupon.CouponID SET coupon.CouponAmount = coupon.CouponAmount + purchases.Units");
+			amountQuery.setParameter("customerIdObj", customerID);
+			amountQuery.setParameter("couponIdsObj", couponIDs);
+			amountQuery.executeUpdate();
+			
+			Query deleteQuery = entityManager.createNativeQuery("DELETE FROM customer_coupon WHERE CustomerID = :customerIdObj AND CouponID IN (:couponIdsObj)");
+			deleteQuery.setParameter("customerIdObj", customerID);
+			deleteQuery.setParameter("couponIdsObj", couponIDs);
+			deleteQuery.executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, removeCustomerPurchasesByCustomerID(); FAILED");
+		}
+		
+		for (Object[] purchase : purchases) {
+			Long couponID = ((Number) purchase[0]).longValue();
+			purchaseLedger.recordPurchaseRemoved(couponID, ((Number) purchase[1]).longValue(), ((Number) purchase[2]).doubleValue(), customerID);
+			couponChangePublisher.publishCouponPurchaseCancelled(couponID, customerID);
+		}
+		return purchases.size();
 	}
 	
 	/**
-	 * Sending a query to the DB to remove coupon from the customer_coupon table by a couponID.
-	 * @param couponID - the couponID as a long to remove from the DB.
+	 * Sending a query to the DB to remove coupon from the customer_coupon table by a couponID, and return the unit to
+	 * the amount of the coupon.
+	 * Both are single statements on the rows of the purchase and of the coupon, the purchasers of the coupon are not loaded.
+	 * @param coupon - the coupon of the cancelled purchase.
+	 * @param customerID - Long parameter of the customer ID.
+	 * @return If the customer had purchased the coupon.
 	 * @throws ApplicationException 
 	 */
 	@Transactional(propagation=Propagation.REQUIRED)
 	public boolean removeBoughtCouponByCouponIDandCustomerID(CouponEntity coupon, Long customerID) throws ApplicationException {
 
+		boolean isRemoved;
 		try {
-			CustomerEntity customer = this.customerdao.getCustomerByCustomerId(customerID);
-			return coupon.removePurchesers(customer);
+			Query deleteQuery = entityManager.createNativeQuery("DELETE FROM customer_coupon WHERE CouponID = :couponIdObj AND CustomerID = :customerIdObj");
+			deleteQuery.setParameter("couponIdObj", coupon.getCouponId());
+			deleteQuery.setParameter("customerIdObj", customerID);
+			isRemoved = deleteQuery.executeUpdate() > 0;
+			
+			if (isRemoved) {
+				Query amountQuery = entityManager.createNativeQuery("UPDATE Coupon SET CouponAmount = CouponAmount + 1 WHERE CouponID = :couponIdObj");
+				amountQuery.setParameter("couponIdObj", coupon.getCouponId());
+				amountQuery.executeUpdate();
+			}
 		}	catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, removeBoughtCouponByID(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, removeBoughtCouponByID(); FAILED");
+		}
+		
+		if (isRemoved) {
+			salesStatsDao.addSales(coupon, -1);
+			purchaseLedger.recordRefund(coupon, customerID);
+			couponChangePublisher.publishCouponPurchaseCancelled(coupon.getCouponId(), customerID);
 		}
+		return isRemoved;
 		
 	}
 
@@ -135,12 +435,18 @@ public class CouponDao{
 		
 		try {
 			entityManager.merge(coupon);
+			entityManager.flush();
+			couponChangePublisher.publishCouponUpdated(coupon);
 		}
 
 		catch (Exception e) {
-			e.printStackTrace();
+			if (UniqueConstraints.isViolated(e, CouponEntity.UNIQUE_TITLE)) {
+				throw new ApplicationException(ErrorType.NAME_IS_ALREADY_EXISTS, " Update coupon has failed."
+						+"\nThe user attempted to update coupon using a name that is already exists."
+						+"\nCoupon Name = "+coupon.getCouponTitle());
+			}
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, updateCoupon(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, updateCoupon(); FAILED");
 		}
 		
 	}
@@ -151,19 +457,18 @@ public class CouponDao{
 	 * @return List collection of all the coupons in the coupon table of the requested type.
 	 * @throws ApplicationException 
 	 */
-	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CouponEntity> getCouponByType(CouponType couponType) throws ApplicationException{
 		
 		try {
 			List<CouponEntity> coupons;
-			Query getQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon WHERE couponType =:customerTypeObj");
-			getQuery.setParameter("customerTypeObj", couponType);
+			TypedQuery<CouponEntity> getQuery = namedQueryCatalog.create(entityManager, CouponEntity.FIND_BY_TYPE, CouponEntity.class);
+			getQuery.setParameter("couponTypeObj", couponType);
 			coupons = getQuery.getResultList();
 			return coupons;
 		} catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, getCouponByType(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponByType(); FAILED");
 		}
 	}
 
@@ -175,20 +480,18 @@ public class CouponDao{
 	 * @return List collection of all the coupons in the coupon table up to the requested price.
 	 * @throws ApplicationException 
 	 */
-	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CouponEntity> getCouponsUpToPrice(double price) throws ApplicationException{
 
 		try {
 			List<CouponEntity> coupons;
-			Query getQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon WHERE couponPrice <=:couponPriceObj");
+			TypedQuery<CouponEntity> getQuery = namedQueryCatalog.create(entityManager, CouponEntity.FIND_UP_TO_PRICE, CouponEntity.class);
 			getQuery.setParameter("couponPriceObj", price);
 			coupons = getQuery.getResultList();
 			return coupons;
 		} catch (Exception e) {
-			e.printStackTrace();
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, getCouponsUpToPrice(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponsUpToPrice(); FAILED");
 		}
 	}
 	
@@ -198,13 +501,12 @@ public class CouponDao{
 	 * @return List collection of all the coupons in the coupon table up to the requested date.
 	 * @throws ApplicationException 
 	 */
-	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CouponEntity> getCouponsUpToEndDate(String endDate) throws ApplicationException{
 
 		try {
 			List<CouponEntity> coupons;
-			Query getQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon WHERE couponEndDate <=:couponEndDateObj");
+			TypedQuery<CouponEntity> getQuery = namedQueryCatalog.create(entityManager, CouponEntity.FIND_UP_TO_END_DATE, CouponEntity.class);
 			getQuery.setParameter("couponEndDateObj", endDate);
 			coupons = getQuery.getResultList();
 			return coupons;
@@ -212,9 +514,53 @@ public class CouponDao{
 			// getSingleResult throws a NoResultException in case of no results, so it will be replaced simple null.
 			return null;
 		} catch (Exception e) {
-			e.printStackTrace();
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, getCouponsUpToEndDate(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponsUpToEndDate(); FAILED");
+		}
+		
+	}
+	
+	/**
+	 * Streaming the coupons of a company with their purchasers, one row per purchase and one row for each coupon
+	 * without purchases. The rows are read with a forward-only cursor and handed to the handler one by one, so the
+	 * memory used does not depend on the number of rows.
+	 * The columns are CouponID, CouponTitle, CouponStartDate, CouponEndDate, CouponAmount, CouponType (ordinal),
+	 * CouponPrice, CustomerID, CustomerName and CustomerEmail, the customer columns are null for a coupon without
+	 * purchases.
+	 * @param companyID - Long parameter of the ID of the requested company.
+	 * @param rowHandler - called for each row, ordered by the coupon ID.
+	 * @throws ApplicationException 
+	 */
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public void exportCouponsByCompanyID(Long companyID, RowHandler rowHandler) throws ApplicationException{
+
+		ScrollableResults results = null;
+		try {
+			// A native query, so the rows are not turned into managed entities that stay in the session.
+			SQLQuery exportQuery = entityManager.unwrap(Session.class).createSQLQuery("SELECT coupon.CouponID, coupon.CouponTitle,"
+					+ " coupon.CouponStartDate, coupon.CouponEndDate, coupon.CouponAmount, coupon.CouponType, coupon.CouponPrice,"
+					+ " customer.CustomerID, customer.CustomerName, customer.CustomerEmail"
+					+ " FROM Coupon coupon"
+					+ " LEFT JOIN customer_coupon purchase ON purchase.CouponID = coupon.CouponID"
+					+ " LEFT JOIN customer customer ON customer.CustomerID = purchase.CustomerID"
+					+ " WHERE coupon.CompanyID = :companyIDObj ORDER BY coupon.CouponID");
+			exportQuery.setParameter("companyIDObj", companyID);
+			exportQuery.setReadOnly(true);
+			exportQuery.setCacheMode(CacheMode.IGNORE);
+			// The MySQL driver streams the rows one by one only with this fetch size, otherwise it reads the whole result.
+			exportQuery.setFetchSize(Integer.MIN_VALUE);
+			
+			results = exportQuery.scroll(ScrollMode.FORWARD_ONLY);
+			while (results.next()) {
+				rowHandler.handleRow(results.get());
+			}
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, exportCouponsByCompanyID(); FAILED");
+		} finally {
+			if (results != null) {
+				results.close();
+			}
 		}
 		
 	}
@@ -225,19 +571,220 @@ public class CouponDao{
 	 * @return List collection of all the coupons in the coupon table issued by the requested company.
 	 * @throws ApplicationException 
 	 */
-	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CouponEntity> getCouponsByCompanyID(Long companyID) throws ApplicationException{
 
 		try {
 			List<CouponEntity> coupons;
-			Query getQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon WHERE companyID =:companyIDObj");
+			TypedQuery<CouponEntity> getQuery = namedQueryCatalog.create(entityManager, CouponEntity.FIND_BY_COMPANY, CouponEntity.class);
 			getQuery.setParameter("companyIDObj", companyID);
 			coupons = getQuery.getResultList();
 			return coupons;
 		} catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, getCouponsByCompanyID(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponsByCompanyID(); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending a query to the DB to get only the requested fields of all the coupons in coupon table.
+	 * @param fields - List of the fields to select.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public List<Map<String, Object>> getAllCoupons(List<CouponField> fields) throws ApplicationException{
+		
+		try {
+			return getCouponFields(fields, null, null, null);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getAllCoupons(fields); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending a query to the DB to get only the requested fields of the coupons of a specific type.
+	 * @param couponType - type of coupon.
+	 * @param fields - List of the fields to select.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public List<Map<String, Object>> getCouponByType(CouponType couponType, List<CouponField> fields) throws ApplicationException{
+		
+		try {
+			return getCouponFields(fields, "coupon.couponType =:couponTypeObj", "couponTypeObj", couponType);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponByType(fields); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending a query to the DB to get only the requested fields of the coupons up to requested price.
+	 * @param price - Double parameter of the maximum wanted price for a coupon.
+	 * @param fields - List of the fields to select.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public List<Map<String, Object>> getCouponsUpToPrice(double price, List<CouponField> fields) throws ApplicationException{
+		
+		try {
+			return getCouponFields(fields, "coupon.couponPrice <=:couponPriceObj", "couponPriceObj", price);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponsUpToPrice(fields); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending a query to the DB to get only the requested fields of the coupons up to requested expiration date.
+	 * @param endDate - String parameter of the latest end date of the coupon.
+	 * @param fields - List of the fields to select.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public List<Map<String, Object>> getCouponsUpToEndDate(String endDate, List<CouponField> fields) throws ApplicationException{
+		
+		try {
+			return getCouponFields(fields, "coupon.couponEndDate <=:couponEndDateObj", "couponEndDateObj", endDate);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponsUpToEndDate(fields); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending a query to the DB to get only the requested fields of the coupons issued by the requested company.
+	 * @param companyID - Long parameter of the ID of the requested company.
+	 * @param fields - List of the fields to select.
+	 * @return List of the coupons, each one as a map of field name to value.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public List<Map<String, Object>> getCouponsByCompanyID(Long companyID, List<CouponField> fields) throws ApplicationException{
+		
+		try {
+			return getCouponFields(fields, "coupon.companyID =:companyIDObj", "companyIDObj", companyID);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponsByCompanyID(fields); FAILED");
+		}
+	}
+	
+	/**
+	 * Sending queries to the DB to get a page of the coupons matching all the criteria of the filter, together with
+	 * the count of the matching coupons per coupon type and per price bucket.
+	 * The counts of both facets are computed by a single grouped query, and the page by a second query.
+	 * @param filter - the criteria, criteria that are null are ignored.
+	 * @param page - the number of the page, starting from 0.
+	 * @param pageSize - the number of coupons in a page.
+	 * @return The page of coupons and the counts of the facets.
+	 * @throws ApplicationException
+	 */
+	@SuppressWarnings("unchecked")
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public CouponQueryResult queryCoupons(CouponFilter filter, int page, int pageSize) throws ApplicationException{
+		
+		// Every criterion is written once for the JPQL page query and once for the SQL facets query.
+		StringBuilder jpqlConditions = new StringBuilder(" WHERE 1 = 1");
+		StringBuilder sqlConditions = new StringBuilder(" WHERE 1 = 1");
+		Map<String, Object> jpqlParameters = new LinkedHashMap<String, Object>();
+		Map<String, Object> sqlParameters = new LinkedHashMap<String, Object>();
+		
+		if (filter.getCouponType() != null) {
+			jpqlConditions.append(" AND coupon.couponType = :couponTypeObj");
+			sqlConditions.append(" AND CouponType = :couponTypeObj");
+			jpqlParameters.put("couponTypeObj", filter.getCouponType());
+			// The coupon type is saved by its ordinal.
+			sqlParameters.put("couponTypeObj", filter.getCouponType().ordinal());
+		}
+		if (filter.getMinPrice() != null) {
+			jpqlConditions.append(" AND coupon.couponPrice >= :minPriceObj");
+			sqlConditions.append(" AND CouponPrice >= :minPriceObj");
+			jpqlParameters.put("minPriceObj", filter.getMinPrice());
+			sqlParameters.put("minPriceObj", filter.getMinPrice());
+		}
+		if (filter.getMaxPrice() != null) {
+			jpqlConditions.append(" AND coupon.couponPrice <= :maxPriceObj");
+			sqlConditions.append(" AND CouponPrice <= :maxPriceObj");
+			jpqlParameters.put("maxPriceObj", filter.getMaxPrice());
+			sqlParameters.put("maxPriceObj", filter.getMaxPrice());
+		}
+		if (filter.getFromEndDate() != null) {
+			jpqlConditions.append(" AND coupon.couponEndDate >= :fromEndDateObj");
+			sqlConditions.append(" AND CouponEndDate >= :fromEndDateObj");
+			jpqlParameters.put("fromEndDateObj", filter.getFromEndDate());
+			sqlParameters.put("fromEndDateObj", filter.getFromEndDate());
+		}
+		if (filter.getToEndDate() != null) {
+			jpqlConditions.append(" AND coupon.couponEndDate <= :toEndDateObj");
+			sqlConditions.append(" AND CouponEndDate <= :toEndDateObj");
+			jpqlParameters.put("toEndDateObj", filter.getToEndDate());
+			sqlParameters.put("toEndDateObj", filter.getToEndDate());
+		}
+		if (filter.getCompanyID() != null) {
+			jpqlConditions.append(" AND coupon.companyID = :companyIDObj");
+			sqlConditions.append(" AND CompanyID = :companyIDObj");
+			jpqlParameters.put("companyIDObj", filter.getCompanyID());
+			sqlParameters.put("companyIDObj", filter.getCompanyID());
+		}
+		if (Boolean.TRUE.equals(filter.getInStockOnly())) {
+			jpqlConditions.append(" AND coupon.couponAmount > 0");
+			sqlConditions.append(" AND CouponAmount > 0");
+		}
+		
+		// Numbering the price buckets by a CASE, so one GROUP BY counts both facets.
+		StringBuilder bucketCase = new StringBuilder("CASE");
+		for (PriceBucket bucket : PriceBucket.values()) {
+			if (bucket.getMaxPrice() != Double.MAX_VALUE) {
+				bucketCase.append(" WHEN CouponPrice < ").append(bucket.getMaxPrice()).append(" THEN ").append(bucket.ordinal());
+			}
+			else {
+				bucketCase.append(" ELSE ").append(bucket.ordinal());
+			}
+		}
+		bucketCase.append(" END");
+		
+		try {
+			Query facetsQuery = entityManager.createNativeQuery("SELECT CouponType, " + bucketCase + " AS PriceBucket, COUNT(*) FROM Coupon"
+					+ sqlConditions + " GROUP BY CouponType, PriceBucket");
+			for (Map.Entry<String, Object> parameter : sqlParameters.entrySet()) {
+				facetsQuery.setParameter(parameter.getKey(), parameter.getValue());
+			}
+			
+			Map<CouponType, Long> couponTypeCounts = new EnumMap<CouponType, Long>(CouponType.class);
+			Map<PriceBucket, Long> priceBucketCounts = new EnumMap<PriceBucket, Long>(PriceBucket.class);
+			long totalCount = 0;
+			for (Object[] row : (List<Object[]>) facetsQuery.getResultList()) {
+				CouponType couponType = CouponType.values()[((Number) row[0]).intValue()];
+				PriceBucket priceBucket = PriceBucket.values()[((Number) row[1]).intValue()];
+				long count = ((Number) row[2]).longValue();
+				couponTypeCounts.merge(couponType, count, Long::sum);
+				priceBucketCounts.merge(priceBucket, count, Long::sum);
+				totalCount += count;
+			}
+			
+			List<CouponEntity> coupons = new ArrayList<CouponEntity>();
+			// No need for the page query when the counts show there are no coupons in the page.
+			if ((long) page * pageSize < totalCount) {
+				Query pageQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon" + jpqlConditions 
+						+ " ORDER BY coupon.couponId");
+				for (Map.Entry<String, Object> parameter : jpqlParameters.entrySet()) {
+					pageQuery.setParameter(parameter.getKey(), parameter.getValue());
+				}
+				pageQuery.setFirstResult(page * pageSize);
+				pageQuery.setMaxResults(pageSize);
+				coupons = pageQuery.getResultList();
+			}
+			
+			return new CouponQueryResult(coupons, totalCount, couponTypeCounts, priceBucketCounts);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, queryCoupons(); FAILED");
 		}
 	}
 	
@@ -247,156 +794,176 @@ public class CouponDao{
 	 * @return List collection of all the coupons in the coupon table bought by the requested customer.
 	 * @throws ApplicationException 
 	 */
-	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CouponEntity> getCouponsByCustomerID(Long customerID) throws ApplicationException{
 
 		try {
 			List<CouponEntity> coupons;
-			Query getQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon JOIN coupon.purchasers purchaser WHERE purchaser.customerId =:customerIdObj");
+			TypedQuery<CouponEntity> getQuery = namedQueryCatalog.create(entityManager, CouponEntity.FIND_BY_CUSTOMER, CouponEntity.class);
 			getQuery.setParameter("customerIdObj", customerID);
 			coupons = getQuery.getResultList();
 			return coupons;
 		} catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, getCouponsByCustomerID(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getCouponsByCustomerID(); FAILED");
 		}
 	}
 	
 	/**
 	 * Getting a list of coupon of the newest coupons from the DB.
-	 * @return List collection of the five newest coupons to display on the homepage.
+	 * @param firstResult - the position of the first coupon, 0 for the newest.
+	 * @param maxResults - the maximum number of coupons.
+	 * @return List collection of the newest coupons, newest first.
 	 * @throws ApplicationException
 	 */
-	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)	
-	public List<CouponEntity> getNewestCoupon() throws ApplicationException{
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)	
+	public List<CouponEntity> getNewestCoupons(int firstResult, int maxResults) throws ApplicationException{
 
 		try {
 			List<CouponEntity> coupons;
-			Query getQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon  ORDER BY couponID DESC");
-			getQuery.setMaxResults(5);
+			TypedQuery<CouponEntity> getQuery = namedQueryCatalog.create(entityManager, CouponEntity.FIND_NEWEST, CouponEntity.class);
+			getQuery.setFirstResult(firstResult);
+			getQuery.setMaxResults(maxResults);
 			coupons = getQuery.getResultList();
 			return coupons;
 		} catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, getCouponsByCustomerID(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getNewestCoupons(); FAILED");
 		}
 	}
 	
 	/**
 	 * Sending a query to the DB to add coupon to a customer in customer_coupon table after the customer has bought a coupon.
+	 * A unit is first taken from the amount of the coupon by a conditional update, so two customers can't buy the last
+	 * unit, and then the purchase is inserted. Both are single statements on the rows of the purchase and of the coupon,
+	 * the purchasers of the coupon are not loaded. The coupons of a removed company are not sold while they are removed.
 	 * @param customerID - Long parameter of the customer ID.
-	 * @param couponID - Long parameter of the coupon ID.
+	 * @param coupon - the bought coupon.
 	 * @throws ApplicationException 
 	 */
 	@Transactional(propagation=Propagation.REQUIRED)
 	public void buyCoupon(Long customerID, CouponEntity coupon) throws ApplicationException {
 
+		int reservedUnits;
 		try {
-			CustomerEntity customer = this.customerdao.getCustomerByCustomerId(customerID);
-			coupon.addPurchesers(customer);
+			Query amountQuery = entityManager.createNativeQuery("UPDATE Coupon SET CouponAmount = CouponAmount - 1 WHERE CouponID = :couponIdObj AND CouponAmount > 0"
+					+ " AND EXISTS (SELECT 1 FROM company WHERE company.CompanyID = Coupon.CompanyID)");
+			amountQuery.setParameter("couponIdObj", coupon.getCouponId());
+			reservedUnits = amountQuery.executeUpdate();
+			
+			if (reservedUnits > 0) {
+				Query insertQuery = entityManager.createNativeQuery("INSERT INTO customer_coupon (CouponID, CustomerID) VALUES (:couponIdObj, :customerIdObj)");
+				insertQuery.setParameter("couponIdObj", coupon.getCouponId());
+				insertQuery.setParameter("customerIdObj", customerID);
+				insertQuery.executeUpdate();
+			}
 		} 
 
 		catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, buyCoupon(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, buyCoupon(); FAILED");
 		} 
 		
+		if (reservedUnits == 0) {
+			metricsRegistry.getCounter(MetricsRegistry.SOLD_OUT_REJECTIONS).increment();
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon out of stock.");
+		}
+		
+		salesStatsDao.addSales(coupon, 1);
+		purchaseLedger.recordPurchase(coupon, customerID);
+		couponChangePublisher.publishCouponPurchased(coupon.getCouponId(), customerID);
+		metricsRegistry.getCounter(MetricsRegistry.PURCHASES).increment();
+		
 	}
 
 	/**
-	 * Delete coupons by endDate
+	 * Delete coupons by endDate, with their remaining purchases, each one recorded in the purchase ledger.
 	 * @param endDate Coupon with endDate before this date will be deleted.
 	 * @throws ApplicationException
 	 */
 	@Transactional(propagation=Propagation.REQUIRED)
 	public void removeCouponByEndDate(String endDate) throws ApplicationException {
 		
+		// Purchases made since the purchases of the expired coupons were removed are removed with the coupons.
+		removePurchasesOfExpiredCoupons(endDate, Integer.MAX_VALUE);
+		salesStatsDao.removeExpiredCouponsSales(endDate);
 		try {
-			Query deleteQuery = entityManager.createQuery("DELETE FROM CouponEntity As coupon WHERE couponEndDate <:couponEndDateObj");
+			Query deleteQuery = namedQueryCatalog.create(entityManager, CouponEntity.DELETE_EXPIRED);
 			deleteQuery.setParameter("couponEndDateObj", endDate);
 			deleteQuery.executeUpdate();
+			couponChangePublisher.publishCouponsExpired(endDate);
 			
 		} catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, removeCouponByID(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, removeCouponByID(); FAILED");
 		}
 		
 	}
 
 	/**
-	 * Sending a query to the DB to get if there is a coupon using that title for creation.
-	 * @param couponTitle - String of that coupon tile.
-	 * @return true - Title in use by other coupon.
-	 * 		   false - Title not in use by other coupon.
+	 * Sending a query to the DB to get the IDs of the coupons purchased by a customer, reading only the customer_coupon table.
+	 * Not read-only, so it reads from the primary DB: the purchases held in memory must include every committed purchase.
+	 * @param customerID - a long parameter represent the ID of the requested customer.
+	 * @return List of the IDs of the coupons purchased by the customer.
 	 * @throws ApplicationException
 	 */
+	@SuppressWarnings("unchecked")
 	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCouponExistByTitle(String couponTitle) throws ApplicationException {
+	public List<Long> getPurchasedCouponIDs(Long customerID) throws ApplicationException {
 
 		try {
-			Query validationQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon WHERE couponTitle =:couponTitleObj");
-			validationQuery.setParameter("couponTitleObj", couponTitle);
-			validationQuery.getSingleResult();
-			return true;
-		} catch (NoResultException e) {
-			return false;
+			Query getQuery = entityManager.createNativeQuery("SELECT CouponID FROM customer_coupon WHERE CustomerID = :customerIdObj");
+			getQuery.setParameter("customerIdObj", customerID);
+			List<Long> couponIDs = new ArrayList<Long>();
+			for (Number couponID : (List<Number>) getQuery.getResultList()) {
+				couponIDs.add(couponID.longValue());
+			}
+			return couponIDs;
 		} catch (Exception e) {
-			e.printStackTrace();
 //		In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCouponExistByTitle(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CouponDao, getPurchasedCouponIDs(); FAILED");
 		}
-	}
-	
+	}	
+
 	/**
-	 * Sending a query to the DB to get if there is a coupon using that title for update.
-	 * @param couponID - a long parameter represent the ID of the requested company.
-	 * @param couponTitle - String of that coupon tile.
-	 * @return true - Title in use by other coupon.
-	 * 		   false - Title not in use by other coupon.
-	 * @throws ApplicationException
+	 * Selecting only the requested columns of the coupon table, so the rest of the columns are not read or sent.
+	 * @param fields - List of the fields to select.
+	 * @param condition - the WHERE condition of the query, or null for all the coupons.
+	 * @param paramName - name of the parameter of the condition.
+	 * @param paramValue - value of the parameter of the condition.
+	 * @return List of the coupons, each one as a map of field name to value.
 	 */
-	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCouponTitleExistForUpdate(Long couponID, String couponTitle) throws ApplicationException {
-		try {
-			Query validationQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon WHERE couponTitle =:couponTitleObj AND NOT couponId = :couponIdObj");
-			validationQuery.setParameter("couponTitleObj", couponTitle);
-			validationQuery.setParameter("couponIdObj", couponID);
-			validationQuery.getSingleResult();
-			return true;
-		} catch (NoResultException e) {
-			return false;
-		} catch (Exception e) {
-			e.printStackTrace();
-//		In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCouponTitleUpdateAvailable(); FAILED");
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> getCouponFields(List<CouponField> fields, String condition, String paramName, Object paramValue) {
+		
+		StringBuilder select = new StringBuilder("SELECT ");
+		for (int i = 0; i < fields.size(); i++) {
+			if (i > 0) {
+				select.append(", ");
+			}
+			select.append("coupon.").append(fields.get(i).getPropertyName());
 		}
-	}
-	
-	/**
-	 * Sending a query to the DB to get if the customer already purchased the coupon.
-	 * @param couponID - a long parameter represent the ID of the requested coupon.
-	 * @param customerID - a long parameter represent the ID of the requested customer.
-	 * @return true - customer already purchased the coupon.
-	 * 		   false - customer didn't purchased the coupon..
-	 * @throws ApplicationException
-	 */
-	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCouponAlreadyPurchasedByCustomerID(Long couponID, Long customerID) throws ApplicationException {
-
-		try {
-			Query validationQuery = entityManager.createQuery("SELECT coupon FROM CouponEntity As coupon JOIN coupon.purchasers purchaser WHERE purchaser.customerId =:customerIdObj and coupon.couponId=:couponId");
-			validationQuery.setParameter("customerIdObj", customerID);
-			validationQuery.setParameter("couponId", couponID);
-			validationQuery.getSingleResult();
-			
-			return true;
-		} catch (NoResultException e) {
-			return false;
-		} catch (Exception e) {
-//		In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCouponAlreadyPurchasedByCustomerID(); FAILED");
+		select.append(" FROM CouponEntity As coupon");
+		if (condition != null) {
+			select.append(" WHERE ").append(condition);
 		}
-	}	
+		
+		Query getQuery = entityManager.createQuery(select.toString());
+		if (condition != null) {
+			getQuery.setParameter(paramName, paramValue);
+		}
+		
+		List<Object> rows = getQuery.getResultList();
+		List<Map<String, Object>> coupons = new ArrayList<Map<String, Object>>(rows.size());
+		for (Object row : rows) {
+			// A query of a single column returns the value itself instead of an array.
+			Object[] values = fields.size() == 1 ? new Object[] {row} : (Object[]) row;
+			Map<String, Object> coupon = new LinkedHashMap<String, Object>();
+			for (int i = 0; i < fields.size(); i++) {
+				coupon.put(fields.get(i).getPropertyName(), values[i]);
+			}
+			coupons.add(coupon);
+		}
+		return coupons;
+	}
 }
\ No newline at end of file
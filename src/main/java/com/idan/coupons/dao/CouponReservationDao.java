@@ -0,0 +1,241 @@
+package com.idan.coupons.dao;
+
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.beans.CouponReservationEntity;
+import com.idan.coupons.datasource.NamedQueryCatalog;
+import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.events.CouponChangePublisher;
+import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.ledger.PurchaseLedger;
+import com.idan.coupons.metrics.MetricsRegistry;
+
+/**
+ * The holds of coupon units for customers during checkout, in the coupon_reservation table.
+ * A held unit is taken from the amount of the coupon by the same conditional update as a purchase, so the amount of a
+ * coupon always counts the outstanding holds, and the holds and the purchases can never take more units than there are.
+ * Every hold is removed exactly once, by the statement that deletes its row: confirming it buys the unit, and
+ * cancelling it or its expiry returns the unit to the amount.
+ */
+@Repository
+public class CouponReservationDao{
+
+	@PersistenceContext(unitName="couponSystem")
+	private EntityManager entityManager;
+
+	@Autowired
+	private NamedQueryCatalog namedQueryCatalog;
+
+	@Autowired
+	private CouponChangePublisher couponChangePublisher;
+
+	@Autowired
+	private SalesStatsDao salesStatsDao;
+
+	@Autowired
+	private PurchaseLedger purchaseLedger;
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	/**
+	 * Holding a unit of a coupon for a customer: taking the unit from the amount of the coupon, and adding the hold.
+	 * The coupons of a removed company are not held while they are removed.
+	 * @param couponID - the ID of the coupon.
+	 * @param customerID - the ID of the customer.
+	 * @param expiresAt - the time the hold expires, in milliseconds since 1970-01-01 UTC.
+	 * @return The hold, with its ID.
+	 * @throws ApplicationException when the coupon is out of stock or the customer already holds it.
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public CouponReservationEntity reserveCoupon(Long couponID, Long customerID, long expiresAt) throws ApplicationException {
+
+		CouponReservationEntity reservation = new CouponReservationEntity(couponID, customerID, expiresAt);
+		int reservedUnits;
+		try {
+			Query amountQuery = entityManager.createNativeQuery("UPDATE Coupon SET CouponAmount = CouponAmount - 1 WHERE CouponID = :couponIdObj AND CouponAmount > 0"
+					+ " AND EXISTS (SELECT 1 FROM company WHERE company.CompanyID = Coupon.CompanyID)");
+			amountQuery.setParameter("couponIdObj", couponID);
+			reservedUnits = amountQuery.executeUpdate();
+
+			if (reservedUnits > 0) {
+				entityManager.persist(reservation);
+				entityManager.flush();
+			}
+		} catch (Exception e) {
+			if (UniqueConstraints.isViolated(e, CouponReservationEntity.UNIQUE_CUSTOMER_COUPON)) {
+				throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon already reserved."
+						+"\nCoupon ID="+couponID+", Customer ID="+customerID);
+			}
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CouponReservationDao, reserveCoupon(); FAILED");
+		}
+
+		if (reservedUnits == 0) {
+			metricsRegistry.getCounter(MetricsRegistry.SOLD_OUT_REJECTIONS).increment();
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Coupon out of stock.");
+		}
+		couponChangePublisher.publishCouponReserved(couponID);
+		countReservations("created");
+		return reservation;
+	}
+
+	/**
+	 * Sending a query to the DB to get a hold. Not read-only, so it reads from the primary DB and finds a hold that was
+	 * just created.
+	 * @param reservationID - the ID of the hold.
+	 * @return The hold, or null if it was confirmed, cancelled, expired or never existed.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public CouponReservationEntity getReservation(Long reservationID) throws ApplicationException {
+		try {
+			return entityManager.find(CouponReservationEntity.class, reservationID);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CouponReservationDao, getReservation(); FAILED");
+		}
+	}
+
+	/**
+	 * Buying the held unit of a coupon: removing the hold if it has not expired, and adding the purchase. The unit was
+	 * already taken from the amount of the coupon by the hold.
+	 * @param reservation - the hold.
+	 * @param coupon - the held coupon.
+	 * @throws ApplicationException when the hold has expired or was already removed.
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void confirmReservation(CouponReservationEntity reservation, CouponEntity coupon) throws ApplicationException {
+
+		int confirmed;
+		try {
+			Query deleteQuery = entityManager.createNativeQuery("DELETE FROM coupon_reservation WHERE ReservationID = :reservationIdObj"
+					+ " AND CustomerID = :customerIdObj AND CouponID = :couponIdObj AND ExpiresAt > :nowObj");
+			deleteQuery.setParameter("reservationIdObj", reservation.getReservationId());
+			deleteQuery.setParameter("customerIdObj", reservation.getCustomerId());
+			deleteQuery.setParameter("couponIdObj", coupon.getCouponId());
+			deleteQuery.setParameter("nowObj", System.currentTimeMillis());
+			confirmed = deleteQuery.executeUpdate();
+
+			if (confirmed > 0) {
+				Query insertQuery = entityManager.createNativeQuery("INSERT INTO customer_coupon (CouponID, CustomerID) VALUES (:couponIdObj, :customerIdObj)");
+				insertQuery.setParameter("couponIdObj", coupon.getCouponId());
+				insertQuery.setParameter("customerIdObj", reservation.getCustomerId());
+				insertQuery.executeUpdate();
+			}
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CouponReservationDao, confirmReservation(); FAILED");
+		}
+
+		if (confirmed == 0) {
+			throw new ApplicationException(ErrorType.GENERAL_ERROR, " Reservation expired.");
+		}
+
+		salesStatsDao.addSales(coupon, 1);
+		purchaseLedger.recordPurchase(coupon, reservation.getCustomerId());
+		couponChangePublisher.publishCouponReservationConfirmed(coupon.getCouponId(), reservation.getCustomerId());
+		metricsRegistry.getCounter(MetricsRegistry.PURCHASES).increment();
+		countReservations("confirmed");
+	}
+
+	/**
+	 * Cancelling a hold of a customer before it expires, and returning its unit to the amount of the coupon.
+	 * @param reservation - the hold.
+	 * @return If the hold was cancelled, false if it was already removed.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public boolean cancelReservation(CouponReservationEntity reservation) throws ApplicationException {
+		try {
+			Query deleteQuery = entityManager.createNativeQuery("DELETE FROM coupon_reservation WHERE ReservationID = :reservationIdObj"
+					+ " AND CustomerID = :customerIdObj");
+			deleteQuery.setParameter("reservationIdObj", reservation.getReservationId());
+			deleteQuery.setParameter("customerIdObj", reservation.getCustomerId());
+			if (deleteQuery.executeUpdate() == 0) {
+				return false;
+			}
+			returnUnit(reservation.getCouponId());
+			countReservations("cancelled");
+			return true;
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CouponReservationDao, cancelReservation(); FAILED");
+		}
+	}
+
+	/**
+	 * Removing a hold that has expired, and returning its unit to the amount of the coupon.
+	 * @param reservationID - the ID of the hold.
+	 * @param couponID - the ID of the held coupon.
+	 * @return If the hold was removed, false if it was confirmed or removed before, or has not expired yet.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public boolean releaseExpiredReservation(Long reservationID, Long couponID) throws ApplicationException {
+		try {
+			Query deleteQuery = entityManager.createNativeQuery("DELETE FROM coupon_reservation WHERE ReservationID = :reservationIdObj"
+					+ " AND ExpiresAt <= :nowObj");
+			deleteQuery.setParameter("reservationIdObj", reservationID);
+			deleteQuery.setParameter("nowObj", System.currentTimeMillis());
+			if (deleteQuery.executeUpdate() == 0) {
+				return false;
+			}
+			returnUnit(couponID);
+			countReservations("expired");
+			return true;
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CouponReservationDao, releaseExpiredReservation(); FAILED");
+		}
+	}
+
+	/**
+	 * Sending a query to the DB to get the holds that have expired and were not removed yet, the oldest first.
+	 * @param now - the current time, in milliseconds since 1970-01-01 UTC.
+	 * @param maxResults - the maximum number of holds to return.
+	 * @return List of the expired holds.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public List<CouponReservationEntity> getExpiredReservations(long now, int maxResults) throws ApplicationException {
+		try {
+			TypedQuery<CouponReservationEntity> getQuery = namedQueryCatalog.create(entityManager,
+					CouponReservationEntity.FIND_EXPIRED, CouponReservationEntity.class);
+			getQuery.setParameter("expiresAtObj", now);
+			getQuery.setMaxResults(maxResults);
+			return getQuery.getResultList();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CouponReservationDao, getExpiredReservations(); FAILED");
+		}
+	}
+
+	/**
+	 * Returning the unit of a removed hold to the amount of the coupon. The coupon may have been removed since.
+	 */
+	private void returnUnit(Long couponID) {
+		Query amountQuery = entityManager.createNativeQuery("UPDATE Coupon SET CouponAmount = CouponAmount + 1 WHERE CouponID = :couponIdObj");
+		amountQuery.setParameter("couponIdObj", couponID);
+		if (amountQuery.executeUpdate() > 0) {
+			couponChangePublisher.publishCouponReservationReleased(couponID);
+		}
+	}
+
+	private void countReservations(String outcome) {
+		metricsRegistry.counter(MetricsRegistry.RESERVATIONS, "Coupon holds by what happened to them: created, confirmed, cancelled or expired.",
+				"outcome", outcome).increment();
+	}
+
+}
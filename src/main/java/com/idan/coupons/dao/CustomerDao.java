@@ -6,21 +6,30 @@ import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.idan.coupons.beans.CustomerEntity;
+import com.idan.coupons.datasource.NamedQueryCatalog;
 import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.events.CouponChangePublisher;
 import com.idan.coupons.exceptions.ApplicationException;
-import com.idan.coupons.utils.DateUtils;
 
 @Repository
 public class CustomerDao{
 
 	@PersistenceContext(unitName="couponSystem")
 	private EntityManager entityManager;
+
+	@Autowired
+	private NamedQueryCatalog namedQueryCatalog;
+
+	@Autowired
+	private CouponChangePublisher couponChangePublisher;
 	
 	/**
 	 * Sending a query to the DB to add a new customer to the customer table.
@@ -33,11 +42,17 @@ public class CustomerDao{
 
 		try {
 			entityManager.persist(customer);
+			entityManager.flush();
 		} 
 		catch (Exception e) {
+			if (UniqueConstraints.isViolated(e, CustomerEntity.UNIQUE_EMAIL)) {
+				throw new ApplicationException(ErrorType.EMAIL_IS_ALREADY_EXISTS, " Create customer has failed."
+						+"\nThe user attempted to create a new customer using an Email that is already in use."
+						+"\nCustomer Email="+customer.getCustomerEmail());
+			}
 
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CustomerDao, createCustomer(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CustomerDao, createCustomer(); FAILED");
 		} 
 
 	}
@@ -53,11 +68,12 @@ public class CustomerDao{
 		
 		CustomerEntity customer = getCustomerByCustomerId(customerID);
 		try {
-			entityManager.remove(customer);	
+			entityManager.remove(customer);
+			couponChangePublisher.publishCustomerRemoved(customerID);
 		}
 		catch (Exception e) {
 //				In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CustomerDao, removeCustomer(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CustomerDao, removeCustomer(); FAILED");
 		}
 		
 	}
@@ -72,11 +88,18 @@ public class CustomerDao{
 
 		try {
 			entityManager.merge(customer);
+			entityManager.flush();
+			couponChangePublisher.publishCustomerUpdated(customer.getCustomerId());
 		}
 
 		catch (Exception e) {
+			if (UniqueConstraints.isViolated(e, CustomerEntity.UNIQUE_EMAIL)) {
+				throw new ApplicationException(ErrorType.EMAIL_IS_ALREADY_EXISTS, " Update customer has failed."
+						+"\nThe user attempted to update a customer using an Email that is already in use."
+						+"\nCustomer Email="+customer.getCustomerEmail());
+			}
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CustomerDao, creatCompany(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CustomerDao, creatCompany(); FAILED");
 		}
 	}
 
@@ -87,7 +110,7 @@ public class CustomerDao{
 	 * @return Customer object of the requested customer.
 	 * @throws ApplicationException 
 	 */
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public CustomerEntity getCustomerByCustomerId(Long customerId) throws ApplicationException {
 
 		try {
@@ -95,7 +118,7 @@ public class CustomerDao{
 			
 		} catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CustomerDao, getCustomerByCustomerId(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CustomerDao, getCustomerByCustomerId(); FAILED");
 			}
 	}
 	
@@ -107,20 +130,19 @@ public class CustomerDao{
 	 * @throws ApplicationException
 	 */
 	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CustomerEntity> getCustomersByCustomerName(String customerName) throws ApplicationException {
 
 		try {
 			List<CustomerEntity> customers;
-			Query getQuery = entityManager.createQuery("SELECT customer FROM CustomerEntity As customer WHERE customerName = :customerNameObj ");
+			TypedQuery<CustomerEntity> getQuery = namedQueryCatalog.create(entityManager, CustomerEntity.FIND_BY_NAME, CustomerEntity.class);
 			getQuery.setParameter("customerNameObj", customerName);
 			customers = getQuery.getResultList();
 			return customers;
 		}
 		catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + 
-					"Error in CustomerDao, getCustomersByCustomerName(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CustomerDao, getCustomersByCustomerName(); FAILED");
 			}
 		
 	}
@@ -131,22 +153,20 @@ public class CustomerDao{
 	 * @return Company object of the requested customer.
 	 * @throws ApplicationException
 	 */
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public CustomerEntity getCustomerByCustomerEmail(String customerEmail) throws ApplicationException {
 
 		try {
-			Query getQuery = entityManager.createQuery("SELECT customer FROM CustomerEntity As customer WHERE customerEmail = :customerEmailObj ");
+			TypedQuery<CustomerEntity> getQuery = namedQueryCatalog.create(entityManager, CustomerEntity.FIND_BY_EMAIL, CustomerEntity.class);
 			getQuery.setParameter("customerEmailObj", customerEmail);
-			CustomerEntity customer = (CustomerEntity) getQuery.getSingleResult();
+			CustomerEntity customer = getQuery.getSingleResult();
 			return customer;
 		} catch (NoResultException e) {
 			// getSingleResult throws a NoResultException in case of no results, so it will be replaced simple null.
 			return null;
 		} catch (Exception e) {
-			e.printStackTrace();
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + 
-					"Error in CustomerDao, getCustomerByCustomerEmail(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CustomerDao, getCustomerByCustomerEmail(); FAILED");
 			}
 
 	}
@@ -158,17 +178,17 @@ public class CustomerDao{
 	 * @throws ApplicationException 
 	 */
 	@SuppressWarnings("unchecked")
-	@Transactional(propagation=Propagation.REQUIRED)
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
 	public List<CustomerEntity> getAllCustomers() throws ApplicationException{
 	
 		try {
 			List<CustomerEntity> customers;
-			Query getQuery = entityManager.createQuery("SELECT customer FROM CustomerEntity As customer");
+			TypedQuery<CustomerEntity> getQuery = namedQueryCatalog.create(entityManager, CustomerEntity.FIND_ALL, CustomerEntity.class);
 			customers = getQuery.getResultList();
 			return customers;
 		} 	catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CustomerDao, getAllCustomers(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CustomerDao, getAllCustomers(); FAILED");
 		}
 		
 		
@@ -185,10 +205,10 @@ public class CustomerDao{
 	public CustomerEntity login (String customerEmail, String customerPassword) throws ApplicationException {
 	
 		try {
-			Query loginQuery = entityManager.createQuery("SELECT customer FROM CustomerEntity as customer WHERE customerEmail =:customerEmailObj AND customerPassword =:customerPasswordObj");
+			TypedQuery<CustomerEntity> loginQuery = namedQueryCatalog.create(entityManager, CustomerEntity.LOGIN, CustomerEntity.class);
 			loginQuery.setParameter("customerEmailObj", customerEmail);
 			loginQuery.setParameter("customerPasswordObj", customerPassword);
-			CustomerEntity customer = (CustomerEntity) loginQuery.getSingleResult();
+			CustomerEntity customer = loginQuery.getSingleResult();
 			return customer;	
 		} catch (NoResultException e) {
 			return null;
@@ -196,63 +216,8 @@ public class CustomerDao{
 
 		catch (Exception e) {
 //			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CustomerDao, login(); FAILED");
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in CustomerDao, login(); FAILED");
 			}		
 	}
 	
-	/**
-	 * Sending a query to the DB to get if there is a customer using that email for creation.
-	 * @param customerEmail - String of that customer email.
-	 * @return true - Email in use by other customer.
-	 * 		   false - Email not in use by other customer.
-	 * @throws ApplicationException
-	 */
-	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCustomerExistByEmail(String customerEmail) throws ApplicationException {
-
-		try {
-			Query verifyQUey = entityManager.createQuery("SELECT customer FROM CustomerEntity As customer WHERE customerEmail = :customerEmailObj");
-			verifyQUey.setParameter("customerEmailObj", customerEmail);			
-			verifyQUey.getSingleResult();
-			
-			// If a company with email exist in DB, return true.
-			return true;
-		} catch (NoResultException e) {
-		//	In case of no result exception, no company with this email exist, return false.
-			return false;
-		}		
-		catch (Exception e) {
-//		In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCustomerExistByEmail(); FAILED");
-		}
-	}
-	
-	/**
-	 * Sending a query to the DB to get if there is a customer using that email for update.
-	 * @param customerID - a long parameter represent the ID of the requested customer.
-	 * @param customerEmail - String of that customer email.
-	 * @return true - Email in use by other customer.
-	 * 		   false - Email not in use by other customer.
-	 * @throws ApplicationException
-	 */
-	@Transactional(propagation=Propagation.REQUIRED)
-	public boolean isCustomerEmailExistForUpdate(Long customerId, String customerEmail) throws ApplicationException {
-
-		try {
-			Query verifyQUey = entityManager.createQuery("SELECT customer FROM CustomerEntity As customer WHERE customerEmail = :customerEmailObj AND NOT customerId = :customerIDObj");
-			verifyQUey.setParameter("customerEmailObj", customerEmail);		
-			verifyQUey.setParameter("customerIDObj", customerId);	
-			verifyQUey.getSingleResult();
-			
-			return true;
-		} catch (NoResultException e) {
-		//	In case of no result exception, no company with this email exist, return false.
-			return false;
-		}		
-		catch (Exception e) {
-//		In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
-			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime() + "Error in CouponDao, isCustomerExistByEmail(); FAILED");
-		}
-	}
-	
 }
\ No newline at end of file
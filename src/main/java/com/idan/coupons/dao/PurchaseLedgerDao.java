@@ -0,0 +1,132 @@
+package com.idan.coupons.dao;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.CacheMode;
+import org.hibernate.SQLQuery;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idan.coupons.beans.PurchaseLedgerEntity;
+import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.exceptions.ApplicationException;
+
+@Repository
+public class PurchaseLedgerDao{
+
+	// Rows of a single insert statement, 6 parameters each.
+	private static final int ROWS_PER_INSERT = 500;
+	// Rows read at a time by the replay, on the drivers other than MySQL.
+	private static final int REPLAY_FETCH_SIZE = 1000;
+
+	@PersistenceContext(unitName="couponSystem")
+	private EntityManager entityManager;
+
+	/**
+	 * Appending entries to the purchase_ledger table with multi-row inserts. The sequence numbers are given by the DB in
+	 * the order of the list.
+	 * The rows are bound on a JDBC statement of the transaction, as binding thousands of parameters on a query of the
+	 * entity manager takes time quadratic in their number. The statement of the full inserts is prepared once.
+	 * @param entries - the entries to append, in the order of the events.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void appendEntries(List<PurchaseLedgerEntity> entries) throws ApplicationException {
+
+		try {
+			entityManager.unwrap(Session.class).doWork(connection -> {
+				PreparedStatement insertStatement = null;
+				int statementRows = 0;
+				try {
+					for (int first = 0; first < entries.size(); first += ROWS_PER_INSERT) {
+						List<PurchaseLedgerEntity> rows = entries.subList(first, Math.min(first + ROWS_PER_INSERT, entries.size()));
+						if (rows.size() != statementRows) {
+							if (insertStatement != null) {
+								insertStatement.close();
+							}
+							insertStatement = connection.prepareStatement(getInsertSql(rows.size()));
+							statementRows = rows.size();
+						}
+						int position = 1;
+						for (PurchaseLedgerEntity row : rows) {
+							insertStatement.setInt(position++, row.getEventType().ordinal());
+							insertStatement.setLong(position++, row.getCouponId());
+							insertStatement.setLong(position++, row.getCustomerId());
+							insertStatement.setLong(position++, row.getCompanyID());
+							insertStatement.setDouble(position++, row.getPrice());
+							insertStatement.setLong(position++, row.getEventTime());
+						}
+						insertStatement.executeUpdate();
+					}
+				} finally {
+					if (insertStatement != null) {
+						insertStatement.close();
+					}
+				}
+			});
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in PurchaseLedgerDao, appendEntries(); FAILED");
+		}
+	}
+
+	/**
+	 * Streaming the entries of the ledger in the order of their sequence numbers, with a forward-only cursor.
+	 * The columns are Seq, EventType (ordinal), CouponID, CustomerID, CompanyID, Price and EventTime.
+	 * @param afterSeq - only the entries after this sequence number are read, 0 for all the entries.
+	 * @param rowHandler - called for each entry.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void replay(long afterSeq, RowHandler rowHandler) throws ApplicationException {
+
+		ScrollableResults results = null;
+		try {
+			SQLQuery replayQuery = entityManager.unwrap(Session.class).createSQLQuery("SELECT Seq, EventType, CouponID,"
+					+ " CustomerID, CompanyID, Price, EventTime FROM purchase_ledger WHERE Seq > :seqObj ORDER BY Seq");
+			replayQuery.setParameter("seqObj", afterSeq);
+			replayQuery.setReadOnly(true);
+			replayQuery.setCacheMode(CacheMode.IGNORE);
+			// The MySQL driver streams the rows one by one only with this fetch size, otherwise it reads the whole result.
+			// Other drivers reject it and stream with a positive fetch size.
+			replayQuery.setFetchSize(isMySql() ? Integer.MIN_VALUE : REPLAY_FETCH_SIZE);
+
+			results = replayQuery.scroll(ScrollMode.FORWARD_ONLY);
+			while (results.next()) {
+				rowHandler.handleRow(results.get());
+			}
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in PurchaseLedgerDao, replay(); FAILED");
+		} finally {
+			if (results != null) {
+				results.close();
+			}
+		}
+	}
+
+	private static String getInsertSql(int rows) {
+		StringBuilder sql = new StringBuilder("INSERT INTO purchase_ledger (EventType, CouponID, CustomerID, CompanyID, Price, EventTime) VALUES ");
+		for (int i = 0; i < rows; i++) {
+			sql.append(i == 0 ? "(?, ?, ?, ?, ?, ?)" : ", (?, ?, ?, ?, ?, ?)");
+		}
+		return sql.toString();
+	}
+
+	/**
+	 * @return If the connection of the current transaction is of the MySQL driver.
+	 */
+	private boolean isMySql() {
+		return entityManager.unwrap(Session.class).doReturningWork(
+				connection -> connection.getMetaData().getURL().startsWith("jdbc:mysql:"));
+	}
+
+}
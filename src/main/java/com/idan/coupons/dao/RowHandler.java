@@ -0,0 +1,15 @@
+package com.idan.coupons.dao;
+
+/**
+ * Callback for queries that stream their rows instead of returning them as a list.
+ */
+public interface RowHandler {
+
+	/**
+	 * Called for each row of the result, in the order of the query. The row must not be kept after the call.
+	 * @param row - the columns of the row, in the order of the select clause.
+	 * @throws Exception
+	 */
+	void handleRow(Object[] row) throws Exception;
+
+}
@@ -0,0 +1,268 @@
+package com.idan.coupons.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.idan.coupons.beans.CompanySalesEntity;
+import com.idan.coupons.beans.CompanySalesStats;
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.beans.CouponSalesStats;
+import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.exceptions.ApplicationException;
+
+/**
+ * The sales counters of the coupons and the companies, in the coupon_sales and company_sales tables.
+ * The counters are changed by single statements that add to the current value, and are called from the transaction
+ * of the purchase, the cancellation or the removal of the coupons, so they always match the customer_coupon table.
+ */
+@Repository
+public class SalesStatsDao{
+
+	@PersistenceContext(unitName="couponSystem")
+	private EntityManager entityManager;
+
+	/**
+	 * Adding sold units of a coupon to the counters of the coupon and of its company.
+	 * @param coupon - the sold coupon, its price is added to the revenue for each unit.
+	 * @param units - the number of units to add, negative for a cancelled purchase.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void addSales(CouponEntity coupon, int units) throws ApplicationException {
+
+		try {
+			Query couponQuery = entityManager.createNativeQuery("INSERT INTO coupon_sales (CouponID, CompanyID, UnitsSold, Revenue)"
+					+ " VALUES (:couponIdObj, :companyIdObj, :unitsObj, :revenueObj)"
+					+ " ON DUPLICATE KEY UPDATE UnitsSold = UnitsSold + VALUES(UnitsSold), Revenue = Revenue + VALUES(Revenue)");
+			couponQuery.setParameter("couponIdObj", coupon.getCouponId());
+			couponQuery.setParameter("companyIdObj", coupon.getCompanyID());
+			couponQuery.setParameter("unitsObj", units);
+			couponQuery.setParameter("revenueObj", units * coupon.getCouponPrice());
+			couponQuery.executeUpdate();
+
+			Query companyQuery = entityManager.createNativeQuery("INSERT INTO company_sales (CompanyID, UnitsSold, Revenue)"
+					+ " VALUES (:companyIdObj, :unitsObj, :revenueObj)"
+					+ " ON DUPLICATE KEY UPDATE UnitsSold = UnitsSold + VALUES(UnitsSold), Revenue = Revenue + VALUES(Revenue)");
+			companyQuery.setParameter("companyIdObj", coupon.getCompanyID());
+			companyQuery.setParameter("unitsObj", units);
+			companyQuery.setParameter("revenueObj", units * coupon.getCouponPrice());
+			companyQuery.executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in SalesStatsDao, addSales(); FAILED");
+		}
+	}
+
+	/**
+	 * Removing the counters of coupons that are being removed, and their sales from the counters of their companies.
+	 * @param couponIDs - the IDs of the removed coupons.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void removeCouponsSales(List<Long> couponIDs) throws ApplicationException {
+
+		try {
+			// Correlated subqueries instead of a join, so the removal also runs on the embedded DB of the tests.
+			String removedSales = " FROM coupon_sales couponSales WHERE couponSales.CompanyID = company_sales.CompanyID"
+					+ " AND couponSales.CouponID IN (:couponIdsObj))";
+			Query companyQuery = entityManager.createNativeQuery("UPDATE company_sales"
+					+ " SET UnitsSold = UnitsSold - (SELECT SUM(couponSales.UnitsSold)" + removedSales + ","
+					+ " Revenue = Revenue - (SELECT SUM(couponSales.Revenue)" + removedSales
+					+ " WHERE CompanyID IN (SELECT CompanyID FROM coupon_sales WHERE CouponID IN (:couponIdsObj))");
+			companyQuery.setParameter("couponIdsObj", couponIDs);
+			companyQuery.executeUpdate();
+
+			Query couponQuery = entityManager.createNativeQuery("DELETE FROM coupon_sales WHERE CouponID IN (:couponIdsObj)");
+			couponQuery.setParameter("couponIdsObj", couponIDs);
+			couponQuery.executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in SalesStatsDao, removeCouponsSales(); FAILED");
+		}
+	}
+
+	/**
+	 * Removing the purchases of a customer from the counters of the coupons and of their companies, with the current
+	 * price of each coupon as for a cancelled purchase. Must be called before the purchases are removed.
+	 * @param customerID - the ID of the customer.
+	 * @param couponIDs - the IDs of the coupons whose purchases by the customer are removed.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void removeCustomerSales(Long customerID, List<Long> couponIDs) throws ApplicationException {
+
+		String removedSales = "(SELECT coupon.CouponID, coupon.CompanyID, COUNT(*) AS UnitsSold, SUM(coupon.CouponPrice) AS Revenue"
+				+ " FROM customer_coupon purchase JOIN Coupon coupon ON coupon.CouponID = purchase.CouponID"
+				+ " WHERE purchase.CustomerID = :customerIdObj AND purchase.CouponID IN (:couponIdsObj)"
+				+ " GROUP BY coupon.CouponID, coupon.CompanyID) removed";
+		try {
+			Query couponQuery = entityManager.createNativeQuery("UPDATE coupon_sales couponSales JOIN " + removedSales
+					+ " ON removed.CouponID = couponSales.CouponID"
+					+ " SET couponSales.UnitsSold = couponSales.UnitsSold - removed.UnitsSold,"
+					+ " couponSales.Revenue = couponSales.Revenue - removed.Revenue");
+			couponQuery.setParameter("customerIdObj", customerID);
+			couponQuery.setParameter("couponIdsObj", couponIDs);
+			couponQuery.executeUpdate();
+
+			Query companyQuery = entityManager.createNativeQuery("UPDATE company_sales companySales JOIN"
+					+ " (SELECT CompanyID, SUM(UnitsSold) AS UnitsSold, SUM(Revenue) AS Revenue FROM " + removedSales
+					+ " GROUP BY CompanyID) removedByCompany ON removedByCompany.CompanyID = companySales.CompanyID"
+					+ " SET companySales.UnitsSold = companySales.UnitsSold - removedByCompany.UnitsSold,"
+					+ " companySales.Revenue = companySales.Revenue - removedByCompany.Revenue");
+			companyQuery.setParameter("customerIdObj", customerID);
+			companyQuery.setParameter("couponIdsObj", couponIDs);
+			companyQuery.executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in SalesStatsDao, removeCustomerSales(); FAILED");
+		}
+	}
+
+	/**
+	 * Removing the counters of a company that was removed, after all its coupons were removed.
+	 * @param companyID - the ID of the removed company.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void removeCompanySales(Long companyID) throws ApplicationException {
+
+		try {
+			Query deleteQuery = entityManager.createNativeQuery("DELETE FROM company_sales WHERE CompanyID = :companyIdObj");
+			deleteQuery.setParameter("companyIdObj", companyID);
+			deleteQuery.executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in SalesStatsDao, removeCompanySales(); FAILED");
+		}
+	}
+
+	/**
+	 * Removing the counters of the coupons that are being removed for being expired, and their sales from the
+	 * counters of their companies. Must be called before the coupons are removed.
+	 * @param endDate - coupons with end date before this date (yyyy-mm-dd) are removed.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void removeExpiredCouponsSales(String endDate) throws ApplicationException {
+
+		try {
+			Query companyQuery = entityManager.createNativeQuery("UPDATE company_sales companySales"
+					+ " JOIN (SELECT couponSales.CompanyID, SUM(couponSales.UnitsSold) AS UnitsSold, SUM(couponSales.Revenue) AS Revenue"
+					+ " FROM coupon_sales couponSales JOIN Coupon coupon ON coupon.CouponID = couponSales.CouponID"
+					+ " WHERE coupon.CouponEndDate < :couponEndDateObj GROUP BY couponSales.CompanyID) expired"
+					+ " ON expired.CompanyID = companySales.CompanyID"
+					+ " SET companySales.UnitsSold = companySales.UnitsSold - expired.UnitsSold,"
+					+ " companySales.Revenue = companySales.Revenue - expired.Revenue");
+			companyQuery.setParameter("couponEndDateObj", endDate);
+			companyQuery.executeUpdate();
+
+			Query couponQuery = entityManager.createNativeQuery("DELETE couponSales FROM coupon_sales couponSales"
+					+ " JOIN Coupon coupon ON coupon.CouponID = couponSales.CouponID"
+					+ " WHERE coupon.CouponEndDate < :couponEndDateObj");
+			couponQuery.setParameter("couponEndDateObj", endDate);
+			couponQuery.executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in SalesStatsDao, removeExpiredCouponsSales(); FAILED");
+		}
+	}
+
+	/**
+	 * Getting the sales of a company and of each of its coupons, reading the counters instead of the purchases.
+	 * @param companyID - the ID of the company.
+	 * @return The sales of the company, with the units sold, the remaining stock and the revenue of each coupon.
+	 * @throws ApplicationException
+	 */
+	@SuppressWarnings("unchecked")
+	@Transactional(propagation=Propagation.REQUIRED, readOnly=true)
+	public CompanySalesStats getCompanySalesStats(Long companyID) throws ApplicationException {
+
+		try {
+			CompanySalesEntity companySales = entityManager.find(CompanySalesEntity.class, companyID);
+
+			Query couponsQuery = entityManager.createNativeQuery("SELECT coupon.CouponID, coupon.CouponTitle, coupon.CouponAmount,"
+					+ " COALESCE(couponSales.UnitsSold, 0), COALESCE(couponSales.Revenue, 0)"
+					+ " FROM Coupon coupon LEFT JOIN coupon_sales couponSales ON couponSales.CouponID = coupon.CouponID"
+					+ " WHERE coupon.CompanyID = :companyIdObj ORDER BY coupon.CouponID");
+			couponsQuery.setParameter("companyIdObj", companyID);
+
+			List<CouponSalesStats> couponsSales = new ArrayList<CouponSalesStats>();
+			for (Object[] row : (List<Object[]>) couponsQuery.getResultList()) {
+				couponsSales.add(new CouponSalesStats(((Number) row[0]).longValue(), (String) row[1],
+						((Number) row[3]).longValue(), ((Number) row[2]).intValue(), ((Number) row[4]).doubleValue()));
+			}
+
+			if (companySales == null) {
+				return new CompanySalesStats(companyID, 0, 0, couponsSales);
+			}
+			return new CompanySalesStats(companyID, companySales.getUnitsSold(), companySales.getRevenue(), couponsSales);
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in SalesStatsDao, getCompanySalesStats(); FAILED");
+		}
+	}
+
+	/**
+	 * Recomputing all the counters from the customer_coupon table, in case they drifted from it.
+	 * The revenue is recomputed with the current price of the coupons, as the price at the time of each purchase is
+	 * not recorded.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void rebuildSalesStats() throws ApplicationException {
+
+		try {
+			entityManager.createNativeQuery("DELETE FROM coupon_sales").executeUpdate();
+			entityManager.createNativeQuery("DELETE FROM company_sales").executeUpdate();
+
+			entityManager.createNativeQuery("INSERT INTO coupon_sales (CouponID, CompanyID, UnitsSold, Revenue)"
+					+ " SELECT coupon.CouponID, coupon.CompanyID, COUNT(*), COUNT(*) * coupon.CouponPrice"
+					+ " FROM customer_coupon purchase JOIN Coupon coupon ON coupon.CouponID = purchase.CouponID"
+					+ " GROUP BY coupon.CouponID, coupon.CompanyID, coupon.CouponPrice").executeUpdate();
+
+			entityManager.createNativeQuery("INSERT INTO company_sales (CompanyID, UnitsSold, Revenue)"
+					+ " SELECT CompanyID, SUM(UnitsSold), SUM(Revenue) FROM coupon_sales GROUP BY CompanyID").executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in SalesStatsDao, rebuildSalesStats(); FAILED");
+		}
+	}
+
+	/**
+	 * Recomputing all the counters by replaying the purchase ledger, with the price each purchase and refund was made for.
+	 * Only the coupons that still exist are counted, as for the counters that are kept during the purchases.
+	 * Entries still queued for the ledger are not counted.
+	 * @throws ApplicationException
+	 */
+	@Transactional(propagation=Propagation.REQUIRED)
+	public void rebuildSalesStatsFromLedger() throws ApplicationException {
+
+		try {
+			entityManager.createNativeQuery("DELETE FROM coupon_sales").executeUpdate();
+			entityManager.createNativeQuery("DELETE FROM company_sales").executeUpdate();
+
+			// EventType 0 is a purchase, the other types (a refund or a removed purchase) cancel one, by the ordinals of PurchaseEventType.
+			entityManager.createNativeQuery("INSERT INTO coupon_sales (CouponID, CompanyID, UnitsSold, Revenue)"
+					+ " SELECT ledger.CouponID, ledger.CompanyID,"
+					+ " SUM(CASE ledger.EventType WHEN 0 THEN 1 ELSE -1 END),"
+					+ " SUM(CASE ledger.EventType WHEN 0 THEN ledger.Price ELSE -ledger.Price END)"
+					+ " FROM purchase_ledger ledger JOIN Coupon coupon ON coupon.CouponID = ledger.CouponID"
+					+ " GROUP BY ledger.CouponID, ledger.CompanyID").executeUpdate();
+
+			entityManager.createNativeQuery("INSERT INTO company_sales (CompanyID, UnitsSold, Revenue)"
+					+ " SELECT CompanyID, SUM(UnitsSold), SUM(Revenue) FROM coupon_sales GROUP BY CompanyID").executeUpdate();
+		} catch (Exception e) {
+//			In case of SQL exception it will be sent as a cause of an application exception to the exception handler.
+			throw new ApplicationException( e, ErrorType.SYSTEM_ERROR, "Error in SalesStatsDao, rebuildSalesStatsFromLedger(); FAILED");
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+package com.idan.coupons.dao;
+
+import java.sql.SQLException;
+
+/**
+ * Telling which unique constraint an insert or an update violated, so a DAO can report a taken name or email from the
+ * failed statement itself, instead of checking for it with another query before every write.
+ */
+class UniqueConstraints {
+
+	// The SQL state class of the integrity constraint violations.
+	private static final String INTEGRITY_VIOLATION_STATE = "23";
+
+	/**
+	 * @param e - the exception thrown by the write.
+	 * @param constraintName - the name of a unique constraint.
+	 * @return If the write failed because of that constraint.
+	 */
+	static boolean isViolated(Throwable e, String constraintName) {
+		for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+			if (cause instanceof SQLException) {
+				SQLException sqlException = (SQLException) cause;
+				// The DB names the violated key in the message, such as "Duplicate entry 'x' for key 'UK_CompanyName'",
+				// some DBs in upper case.
+				if (sqlException.getSQLState() != null && sqlException.getSQLState().startsWith(INTEGRITY_VIOLATION_STATE)
+						&& sqlException.getMessage() != null
+						&& sqlException.getMessage().toUpperCase().contains(constraintName.toUpperCase())) {
+					return true;
+				}
+			}
+			if (cause.getCause() == cause) {
+				break;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.idan.coupons.datasource;
+
+import java.util.function.Supplier;
+
+/**
+ * Pinning the transactions of the current thread to the primary DB, including the read-only ones.
+ * Used for reads that must see every committed write, such as the loading of the in-memory caches, and for the
+ * requests of a user that has just written.
+ */
+public class DataSourceRouting {
+
+	private static final ThreadLocal<Boolean> primaryRequired = new ThreadLocal<Boolean>();
+
+	/**
+	 * @return If the transactions of the current thread must use the primary DB.
+	 */
+	public static boolean isPrimaryRequired() {
+		return Boolean.TRUE.equals(primaryRequired.get());
+	}
+
+	/**
+	 * Pinning the transactions of the current thread to the primary DB, until clearPrimaryRequired() is called.
+	 */
+	public static void requirePrimary() {
+		primaryRequired.set(Boolean.TRUE);
+	}
+
+	public static void clearPrimaryRequired() {
+		primaryRequired.remove();
+	}
+
+	/**
+	 * Running an action with all its transactions on the primary DB.
+	 * @param action - the action, which must start its own transactions.
+	 * @return The result of the action.
+	 */
+	public static <T> T onPrimary(Supplier<T> action) {
+		if (isPrimaryRequired()) {
+			return action.get();
+		}
+		requirePrimary();
+		try {
+			return action.get();
+		} finally {
+			clearPrimaryRequired();
+		}
+	}
+
+}
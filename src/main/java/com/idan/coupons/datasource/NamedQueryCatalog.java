@@ -0,0 +1,301 @@
+package com.idan.coupons.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.NoResultException;
+import javax.persistence.PersistenceUnit;
+import javax.persistence.Query;
+import javax.persistence.TypedQuery;
+import javax.persistence.metamodel.EntityType;
+import javax.sql.DataSource;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.metrics.Counter;
+import com.idan.coupons.metrics.LatencyHistogram;
+import com.idan.coupons.metrics.MetricsRegistry;
+
+/**
+ * Creating the named queries of the entities, and measuring each one of them by its name.
+ * The queries are declared with @NamedQuery on the entities, so Hibernate parses and validates them when the
+ * application context starts, and a mistake in a query stops the startup instead of failing its first request.
+ * Every execution of a named query is timed in the coupons_named_query_seconds histogram, and its rows are counted in
+ * coupons_named_query_rows_total, both labeled with the name of the query.
+ */
+@Component
+public class NamedQueryCatalog {
+
+	private static final Logger logger = LogManager.getLogger(NamedQueryCatalog.class);
+
+	private static final String LATENCY_HISTOGRAM = "coupons_named_query_seconds";
+	private static final String ROWS_COUNTER = "coupons_named_query_rows_total";
+
+	private static final Pattern TABLE_ALIAS = Pattern.compile("\\b(?:from|join)\\s+(\\w+)(?:\\s+(?!on\\b|where\\b|inner\\b|left\\b|cross\\b)(\\w+))?",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern WHERE_CLAUSE = Pattern.compile("\\bwhere\\b(.*?)(?:\\border\\s+by\\b|\\bgroup\\s+by\\b|$)",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern FILTERED_COLUMN = Pattern.compile("(?:(\\w+)\\.)?(\\w+)\\s*(?:=|<>|<=|>=|<|>|\\bin\\b|\\blike\\b)",
+			Pattern.CASE_INSENSITIVE);
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	@Autowired
+	@Qualifier("dataSource")
+	private DataSource dataSource;
+
+	@PersistenceUnit(unitName="couponSystem")
+	private EntityManagerFactory entityManagerFactory;
+
+	private final ConcurrentHashMap<String, QueryMetrics> metricsByName = new ConcurrentHashMap<String, QueryMetrics>();
+
+	/**
+	 * Creating a named query that returns entities or values of a known type.
+	 * @param entityManager - the entity manager of the DAO.
+	 * @param name - the name of the query, one of the constants of the entities.
+	 * @param resultClass - the type of the results.
+	 * @return The query, measured by its name.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> TypedQuery<T> create(EntityManager entityManager, String name, Class<T> resultClass) {
+		return (TypedQuery<T>) wrap(TypedQuery.class, entityManager.createNamedQuery(name, resultClass), name);
+	}
+
+	/**
+	 * Creating a named update or delete query.
+	 * @param entityManager - the entity manager of the DAO.
+	 * @param name - the name of the query, one of the constants of the entities.
+	 * @return The query, measured by its name.
+	 */
+	public Query create(EntityManager entityManager, String name) {
+		return wrap(Query.class, entityManager.createNamedQuery(name), name);
+	}
+
+	/**
+	 * Writing to the log which named queries filter on columns that no index of the DB starts with, so they read the
+	 * whole table. Queries without conditions, which read the whole table by design, are only listed.
+	 * Called once on startup, a failure is only logged.
+	 */
+	public void reportIndexes() {
+
+		try (Connection connection = dataSource.getConnection()) {
+			SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor)
+					((HibernateEntityManagerFactory) entityManagerFactory).getSessionFactory();
+			DatabaseMetaData metaData = connection.getMetaData();
+			Map<String, Set<String>> indexedColumnsByTable = new HashMap<String, Set<String>>();
+
+			for (NamedQuery namedQuery : getNamedQueries()) {
+				String[] sqlStrings = sessionFactory.getQueryPlanCache()
+						.getHQLQueryPlan(namedQuery.query(), false, Collections.emptyMap()).getSqlStrings();
+				for (String sql : sqlStrings) {
+					Map<String, List<String>> filteredColumnsByTable = getFilteredColumns(sql);
+					if (filteredColumnsByTable.isEmpty()) {
+						logger.info("Named query " + namedQuery.name() + " has no conditions: " + sql);
+						continue;
+					}
+					if (!isIndexed(filteredColumnsByTable, indexedColumnsByTable, metaData)) {
+						logger.warn("Named query " + namedQuery.name() + " filters on " + filteredColumnsByTable
+								+ " without a supporting index: " + sql);
+					}
+				}
+			}
+		} catch (SQLException | RuntimeException e) {
+			logger.warn("Reporting the indexes of the named queries has failed", e);
+		}
+	}
+
+	/**
+	 * @return The named queries declared on the entities of the persistence unit.
+	 */
+	private List<NamedQuery> getNamedQueries() {
+		List<NamedQuery> namedQueries = new ArrayList<NamedQuery>();
+		for (EntityType<?> entity : entityManagerFactory.getMetamodel().getEntities()) {
+			NamedQueries declared = entity.getJavaType().getAnnotation(NamedQueries.class);
+			if (declared != null) {
+				Collections.addAll(namedQueries, declared.value());
+			}
+			NamedQuery single = entity.getJavaType().getAnnotation(NamedQuery.class);
+			if (single != null) {
+				namedQueries.add(single);
+			}
+		}
+		return namedQueries;
+	}
+
+	/**
+	 * Finding the columns compared in the where clause of a query generated by Hibernate.
+	 * @param sql - the SQL of the query.
+	 * @return Table -> the columns of the table that the query filters on.
+	 */
+	private static Map<String, List<String>> getFilteredColumns(String sql) {
+
+		Map<String, String> tablesByAlias = new HashMap<String, String>();
+		String singleTable = null;
+		Matcher tables = TABLE_ALIAS.matcher(sql);
+		while (tables.find()) {
+			singleTable = singleTable == null ? tables.group(1) : "";
+			if (tables.group(2) != null) {
+				tablesByAlias.put(tables.group(2), tables.group(1));
+			}
+		}
+
+		Map<String, List<String>> filteredColumnsByTable = new HashMap<String, List<String>>();
+		Matcher where = WHERE_CLAUSE.matcher(sql);
+		if (!where.find()) {
+			return filteredColumnsByTable;
+		}
+		Matcher columns = FILTERED_COLUMN.matcher(where.group(1));
+		while (columns.find()) {
+			// A statement on a single table, such as a bulk delete, doesn't prefix its columns with an alias.
+			String table = columns.group(1) != null ? tablesByAlias.get(columns.group(1)) : singleTable;
+			if (table != null && !table.isEmpty()) {
+				filteredColumnsByTable.computeIfAbsent(table, key -> new ArrayList<String>()).add(columns.group(2));
+			}
+		}
+		return filteredColumnsByTable;
+	}
+
+	/**
+	 * @return If at least one of the filtered columns is the first column of an index of its table.
+	 */
+	private static boolean isIndexed(Map<String, List<String>> filteredColumnsByTable,
+			Map<String, Set<String>> indexedColumnsByTable, DatabaseMetaData metaData) throws SQLException {
+
+		for (Map.Entry<String, List<String>> entry : filteredColumnsByTable.entrySet()) {
+			Set<String> indexedColumns = indexedColumnsByTable.get(entry.getKey());
+			if (indexedColumns == null) {
+				indexedColumns = getLeadingIndexColumns(entry.getKey(), metaData);
+				indexedColumnsByTable.put(entry.getKey(), indexedColumns);
+			}
+			for (String column : entry.getValue()) {
+				if (indexedColumns.contains(column.toLowerCase())) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return The first columns of the indexes of a table, in lower case.
+	 */
+	private static Set<String> getLeadingIndexColumns(String table, DatabaseMetaData metaData) throws SQLException {
+
+		String storedTable = metaData.storesUpperCaseIdentifiers() ? table.toUpperCase() : table;
+		Set<String> columns = new HashSet<String>();
+		try (ResultSet indexes = metaData.getIndexInfo(null, null, storedTable, false, true)) {
+			while (indexes.next()) {
+				if (indexes.getShort("ORDINAL_POSITION") == 1 && indexes.getString("COLUMN_NAME") != null) {
+					columns.add(indexes.getString("COLUMN_NAME").toLowerCase());
+				}
+			}
+		}
+		return columns;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <Q extends Query> Q wrap(Class<Q> type, Query query, String name) {
+		QueryMetrics metrics = metricsByName.get(name);
+		if (metrics == null) {
+			metrics = metricsByName.computeIfAbsent(name, key -> new QueryMetrics(
+					metricsRegistry.histogram(LATENCY_HISTOGRAM, "Latency of the named queries.", "query", key),
+					metricsRegistry.counter(ROWS_COUNTER, "Rows returned or changed by the named queries.", "query", key)));
+		}
+		return (Q) Proxy.newProxyInstance(NamedQueryCatalog.class.getClassLoader(), new Class<?>[] {type},
+				new QueryHandler(query, metrics));
+	}
+
+	private static class QueryMetrics {
+
+		private final LatencyHistogram latency;
+		private final Counter rows;
+
+		private QueryMetrics(LatencyHistogram latency, Counter rows) {
+			this.latency = latency;
+			this.rows = rows;
+		}
+	}
+
+	/**
+	 * Timing the executions of a query. The setters of the query return the proxy, so they can be chained.
+	 */
+	private static class QueryHandler implements InvocationHandler {
+
+		private final Query target;
+		private final QueryMetrics metrics;
+
+		private QueryHandler(Query target, QueryMetrics metrics) {
+			this.target = target;
+			this.metrics = metrics;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			boolean isExecution = name.equals("getResultList") || name.equals("getSingleResult") || name.equals("executeUpdate");
+			if (!isExecution) {
+				Object result = invokeTarget(method, args);
+				return result == target ? proxy : result;
+			}
+
+			long start = System.nanoTime();
+			boolean isError = true;
+			try {
+				Object result = invokeTarget(method, args);
+				isError = false;
+				if (result instanceof List) {
+					metrics.rows.add(((List<?>) result).size());
+				}
+				else if (name.equals("executeUpdate")) {
+					metrics.rows.add((Integer) result);
+				}
+				else {
+					metrics.rows.add(1);
+				}
+				return result;
+			} catch (NoResultException e) {
+				// Not finding a row is an answer of the query, such as a wrong password, not a failure.
+				isError = false;
+				throw e;
+			} finally {
+				metrics.latency.record(System.nanoTime() - start, isError);
+			}
+		}
+
+		private Object invokeTarget(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+
+}
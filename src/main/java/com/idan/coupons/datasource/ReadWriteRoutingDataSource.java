@@ -0,0 +1,23 @@
+package com.idan.coupons.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.idan.coupons.enums.DataSourceType;
+
+/**
+ * Sending the read-only transactions to the replica DB and all the others to the primary DB.
+ * The connection must be taken after the transaction has started, otherwise it is not known yet if it is read-only, so
+ * this DataSource is wrapped with a LazyConnectionDataSourceProxy that takes the connection on the first statement.
+ */
+public class ReadWriteRoutingDataSource extends AbstractRoutingDataSource {
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (TransactionSynchronizationManager.isCurrentTransactionReadOnly() && !DataSourceRouting.isPrimaryRequired()) {
+			return DataSourceType.REPLICA;
+		}
+		return DataSourceType.PRIMARY;
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.idan.coupons.datasource;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Pinning the requests that write to the primary DB, so the reads of a purchase or an update see the latest data.
+ * When enabled, the reads of a user are also kept on the primary DB for a few seconds after the user writes, by a
+ * cookie holding the time until which the user reads from the primary, so the user sees its own writes even when the
+ * replica is behind, and on any server.
+ */
+@Component
+public class ReadYourWritesInterceptor extends HandlerInterceptorAdapter {
+
+	private static final String PRIMARY_UNTIL_COOKIE = "primaryUntil";
+
+	// 0 turns the stickiness off.
+	@Value("${coupons.db.readYourWritesSeconds:5}")
+	private int readYourWritesSeconds;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		if (isWrite(request)) {
+			DataSourceRouting.requirePrimary();
+			if (readYourWritesSeconds > 0) {
+				// Added before the handler runs, the response may be committed when it returns.
+				Cookie cookie = new Cookie(PRIMARY_UNTIL_COOKIE,
+						Long.toString(System.currentTimeMillis() + readYourWritesSeconds * 1000L));
+				cookie.setPath("/");
+				cookie.setMaxAge(readYourWritesSeconds);
+				response.addCookie(cookie);
+			}
+		}
+		else if (readYourWritesSeconds > 0 && getPrimaryUntil(request) > System.currentTimeMillis()) {
+			DataSourceRouting.requirePrimary();
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+		DataSourceRouting.clearPrimaryRequired();
+	}
+
+	// An async request, such as a stream, leaves the request thread without afterCompletion().
+	@Override
+	public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		DataSourceRouting.clearPrimaryRequired();
+	}
+
+	private static boolean isWrite(HttpServletRequest request) {
+		String method = request.getMethod();
+		return !"GET".equals(method) && !"HEAD".equals(method) && !"OPTIONS".equals(method);
+	}
+
+	private static long getPrimaryUntil(HttpServletRequest request) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (PRIMARY_UNTIL_COOKIE.equals(cookie.getName())) {
+					try {
+						return Long.parseLong(cookie.getValue());
+					} catch (NumberFormatException e) {
+						return 0;
+					}
+				}
+			}
+		}
+		return 0;
+	}
+
+}
@@ -0,0 +1,147 @@
+package com.idan.coupons.datasource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.beans.SqlStatementStats;
+
+/**
+ * The statistics of the SQL statements executed since the server started, counted by the StatementStatsDataSource.
+ * The statements are grouped by their text, with every list of parameters collapsed, so an IN list or a multi-row
+ * insert is counted as one statement whatever its length. Statements slower than a threshold are also written to a
+ * slow-query log, up to a number of statements per second.
+ */
+@Component
+public class SqlStatistics {
+
+	private static final Logger logger = LogManager.getLogger(SqlStatistics.class);
+
+	// Bounds the memory of statements built with literals, the statements beyond it are counted together.
+	private static final int MAX_STATEMENTS = 2000;
+	private static final String OTHER_STATEMENTS = "(other statements)";
+
+	private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)*\\s*\\)");
+	private static final Pattern REPEATED_ROWS = Pattern.compile("\\(\\?\\.\\.\\.\\)(\\s*,\\s*\\(\\?\\.\\.\\.\\))+");
+
+	@Value("${coupons.sql.slowMillis:200}")
+	private long slowMillis;
+
+	@Value("${coupons.sql.slowLogPerSecond:10}")
+	private int slowLogPerSecond;
+
+	// Raw SQL -> statistics, so the text of a statement is collapsed only on its first execution.
+	private final ConcurrentHashMap<String, StatementStats> statsBySql = new ConcurrentHashMap<String, StatementStats>();
+	// Collapsed SQL -> statistics.
+	private final ConcurrentHashMap<String, StatementStats> statsByStatement = new ConcurrentHashMap<String, StatementStats>();
+
+	private volatile long slowLogSecond;
+	private final AtomicInteger slowLoggedInSecond = new AtomicInteger();
+
+	/**
+	 * @param sql - the SQL of a statement that is about to be executed.
+	 * @return The statistics of the statement, to record its executions and rows in.
+	 */
+	StatementStats getStatementStats(String sql) {
+		StatementStats stats = statsBySql.get(sql);
+		if (stats != null) {
+			return stats;
+		}
+		String statement = collapseParameterLists(sql);
+		if (statsByStatement.size() >= MAX_STATEMENTS && !statsByStatement.containsKey(statement)) {
+			statement = OTHER_STATEMENTS;
+		}
+		stats = statsByStatement.computeIfAbsent(statement, StatementStats::new);
+		if (statsBySql.size() < MAX_STATEMENTS) {
+			statsBySql.putIfAbsent(sql, stats);
+		}
+		return stats;
+	}
+
+	/**
+	 * Recording an execution of a statement, and logging it if it is slow.
+	 * @param stats - the statistics of the statement.
+	 * @param nanos - the time of the execution.
+	 * @param rows - the number of changed rows, 0 for a query whose rows are counted while they are read.
+	 */
+	void recordExecution(StatementStats stats, long nanos, long rows) {
+		stats.executions.increment();
+		stats.totalNanos.add(nanos);
+		stats.maxNanos.accumulate(nanos);
+		if (rows > 0) {
+			stats.rows.add(rows);
+		}
+		long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+		if (millis >= slowMillis) {
+			stats.slowExecutions.increment();
+			if (isSlowLogSampled()) {
+				logger.warn("Slow SQL, " + millis + " ms: " + stats.statement);
+			}
+		}
+	}
+
+	/**
+	 * @param limit - the maximum number of statements.
+	 * @return The statistics of the statements that took the longest in total, the longest first.
+	 */
+	public List<SqlStatementStats> getTopStatements(int limit) {
+		List<SqlStatementStats> statements = new ArrayList<SqlStatementStats>(statsByStatement.size());
+		for (StatementStats stats : statsByStatement.values()) {
+			statements.add(new SqlStatementStats(stats.statement, stats.executions.sum(), toMillis(stats.totalNanos.sum()),
+					toMillis(stats.maxNanos.get()), stats.rows.sum(), stats.slowExecutions.sum()));
+		}
+		statements.sort((first, second) -> Double.compare(second.getTotalMillis(), first.getTotalMillis()));
+		return statements.size() > limit ? new ArrayList<SqlStatementStats>(statements.subList(0, limit)) : statements;
+	}
+
+	/**
+	 * Sampling the slow statements to log, so a slow DB doesn't flood the log with the same statements.
+	 */
+	private boolean isSlowLogSampled() {
+		long second = System.currentTimeMillis() / 1000;
+		if (second != slowLogSecond) {
+			// Two threads may both start the new second, which only lets a few more statements through.
+			slowLogSecond = second;
+			slowLoggedInSecond.set(0);
+		}
+		return slowLoggedInSecond.incrementAndGet() <= slowLogPerSecond;
+	}
+
+	private static String collapseParameterLists(String sql) {
+		String collapsed = PARAMETER_LIST.matcher(sql).replaceAll("(?...)");
+		return REPEATED_ROWS.matcher(collapsed).replaceAll("(?...), ...");
+	}
+
+	private static double toMillis(long nanos) {
+		return nanos / 1000000.0;
+	}
+
+	static class StatementStats {
+
+		private final String statement;
+		private final LongAdder executions = new LongAdder();
+		private final LongAdder totalNanos = new LongAdder();
+		private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+		private final LongAdder rows = new LongAdder();
+		private final LongAdder slowExecutions = new LongAdder();
+
+		private StatementStats(String statement) {
+			this.statement = statement;
+		}
+
+		void addRow() {
+			rows.increment();
+		}
+	}
+
+}
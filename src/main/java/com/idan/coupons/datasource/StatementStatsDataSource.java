@@ -0,0 +1,138 @@
+package com.idan.coupons.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import com.idan.coupons.datasource.SqlStatistics.StatementStats;
+
+/**
+ * Counting the executions, the time and the rows of every SQL statement in the SqlStatistics.
+ * The connections, the statements and the result sets of the target DataSource are wrapped, so the statistics cover
+ * the statements of Hibernate and the native queries alike. The time of a query is the time of its execution call,
+ * and its rows are counted while they are read.
+ */
+public class StatementStatsDataSource extends DelegatingDataSource {
+
+	private SqlStatistics sqlStatistics;
+
+	public void setSqlStatistics(SqlStatistics sqlStatistics) {
+		this.sqlStatistics = sqlStatistics;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+		return wrap(Connection.class, getTargetDataSource().getConnection(), new ConnectionHandler());
+	}
+
+	@Override
+	public Connection getConnection(String username, String password) throws SQLException {
+		return wrap(Connection.class, getTargetDataSource().getConnection(username, password), new ConnectionHandler());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T wrap(Class<T> type, T target, TargetHandler handler) {
+		handler.target = target;
+		return (T) Proxy.newProxyInstance(StatementStatsDataSource.class.getClassLoader(), new Class<?>[] {type}, handler);
+	}
+
+	private abstract static class TargetHandler implements InvocationHandler {
+
+		protected Object target;
+
+		protected Object invokeTarget(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getTargetException();
+			}
+		}
+	}
+
+	private class ConnectionHandler extends TargetHandler {
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result = invokeTarget(method, args);
+			switch (method.getName()) {
+			case "prepareStatement":
+				return wrap(PreparedStatement.class, (PreparedStatement) result, new StatementHandler((String) args[0]));
+			case "prepareCall":
+				return wrap(CallableStatement.class, (CallableStatement) result, new StatementHandler((String) args[0]));
+			case "createStatement":
+				return wrap(Statement.class, (Statement) result, new StatementHandler(null));
+			default:
+				return result;
+			}
+		}
+	}
+
+	private class StatementHandler extends TargetHandler {
+
+		// Null for a plain statement, whose SQL is given to each execution.
+		private final String preparedSql;
+
+		private StatementHandler(String preparedSql) {
+			this.preparedSql = preparedSql;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (!name.startsWith("execute")) {
+				Object result = invokeTarget(method, args);
+				return name.equals("getResultSet") && result != null ? wrapResultSet((ResultSet) result, preparedSql) : result;
+			}
+
+			String sql = preparedSql != null ? preparedSql : args != null && args.length > 0 ? (String) args[0] : "(batch)";
+			StatementStats stats = sqlStatistics.getStatementStats(sql);
+			long start = System.nanoTime();
+			Object result = invokeTarget(method, args);
+			long nanos = System.nanoTime() - start;
+
+			long rows = 0;
+			if (result instanceof Integer || result instanceof Long) {
+				rows = ((Number) result).longValue();
+			}
+			else if (result instanceof int[]) {
+				for (int batchRows : (int[]) result) {
+					rows += Math.max(batchRows, 0);
+				}
+			}
+			sqlStatistics.recordExecution(stats, nanos, rows);
+			return result instanceof ResultSet ? wrap(ResultSet.class, (ResultSet) result, new ResultSetHandler(stats)) : result;
+		}
+
+		private ResultSet wrapResultSet(ResultSet resultSet, String sql) {
+			return sql == null ? resultSet : wrap(ResultSet.class, resultSet, new ResultSetHandler(sqlStatistics.getStatementStats(sql)));
+		}
+	}
+
+	private static class ResultSetHandler extends TargetHandler {
+
+		private final StatementStats stats;
+
+		private ResultSetHandler(StatementStats stats) {
+			this.stats = stats;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			Object result = invokeTarget(method, args);
+			if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+				stats.addRow();
+			}
+			return result;
+		}
+	}
+
+}
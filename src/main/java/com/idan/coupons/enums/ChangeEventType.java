@@ -0,0 +1,20 @@
+package com.idan.coupons.enums;
+
+public enum ChangeEventType {
+
+	// Sent between the nodes by the name, types can be added but not renamed while nodes of both versions run.
+	COUPON_CREATED,
+	COUPON_UPDATED,
+	COUPON_REMOVED,
+	COUPONS_EXPIRED,
+	COUPON_PURCHASED,
+	COUPON_PURCHASE_CANCELLED,
+	COMPANY_UPDATED,
+	COMPANY_REMOVED,
+	CUSTOMER_UPDATED,
+	CUSTOMER_REMOVED,
+	COUPON_RESERVED,
+	COUPON_RESERVATION_RELEASED,
+	COUPON_RESERVATION_CONFIRMED;
+
+}
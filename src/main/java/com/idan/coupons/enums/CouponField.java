@@ -0,0 +1,65 @@
+package com.idan.coupons.enums;
+
+import com.idan.coupons.beans.CouponEntity;
+
+public enum CouponField {
+
+	COUPON_ID("couponId"),
+	COUPON_TITLE("couponTitle"),
+	COUPON_START_DATE("couponStartDate"),
+	COUPON_END_DATE("couponEndDate"),
+	COUPON_AMOUNT("couponAmount"),
+	COUPON_TYPE("couponType"),
+	COUPON_MESSAGE("couponMessage"),
+	COUPON_PRICE("couponPrice"),
+	COUPON_IMAGE("couponImage"),
+	COMPANY_ID("companyID");
+
+	private String propertyName;
+
+	private CouponField(String propertyName) {
+		this.propertyName = propertyName;
+	}
+
+	/**
+	 * @return The name of the field as it is used in the JSON and in the queries.
+	 */
+	public String getPropertyName() {
+		return propertyName;
+	}
+
+	/**
+	 * Getting the value of this field from a coupon.
+	 * @param coupon - the coupon to read the field from.
+	 * @return The value of the field in the coupon.
+	 */
+	public Object getValue(CouponEntity coupon) {
+		switch (this) {
+		case COUPON_ID:			return coupon.getCouponId();
+		case COUPON_TITLE:		return coupon.getCouponTitle();
+		case COUPON_START_DATE:	return coupon.getCouponStartDate();
+		case COUPON_END_DATE:	return coupon.getCouponEndDate();
+		case COUPON_AMOUNT:		return coupon.getCouponAmount();
+		case COUPON_TYPE:		return coupon.getCouponType();
+		case COUPON_MESSAGE:	return coupon.getCouponMessage();
+		case COUPON_PRICE:		return coupon.getCouponPrice();
+		case COUPON_IMAGE:		return coupon.getCouponImage();
+		default:				return coupon.getCompanyID();
+		}
+	}
+
+	/**
+	 * Getting the field by the name used in the JSON.
+	 * @param propertyName - the name of the field, for example "couponTitle".
+	 * @return The matching field, or null if there is no such field.
+	 */
+	public static CouponField fromPropertyName(String propertyName) {
+		for (CouponField field : values()) {
+			if (field.propertyName.equals(propertyName)) {
+				return field;
+			}
+		}
+		return null;
+	}
+
+}
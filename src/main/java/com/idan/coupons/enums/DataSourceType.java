@@ -0,0 +1,10 @@
+package com.idan.coupons.enums;
+
+public enum DataSourceType {
+	
+	// The DB that takes the writes.
+	PRIMARY,
+	// A copy of the primary DB for the reads, which may be behind it.
+	REPLICA;
+
+}
@@ -9,7 +9,8 @@ public enum ErrorType {
 	NAME_IS_ALREADY_EXISTS(608), 
 	EMAIL_IS_ALREADY_EXISTS(609),
 	BAD_INPUT(621),
-	COOKIES_LOST(622);
+	COOKIES_LOST(622),
+	SERVICE_UNAVAILABLE(503);
 	
 	private int number;
 	
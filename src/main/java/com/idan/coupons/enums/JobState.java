@@ -0,0 +1,10 @@
+package com.idan.coupons.enums;
+
+public enum JobState {
+	
+	QUEUED,
+	RUNNING,
+	COMPLETED,
+	FAILED;
+
+}
@@ -0,0 +1,47 @@
+package com.idan.coupons.enums;
+
+public enum PriceBucket {
+	
+	UNDER_10(0, 10),
+	FROM_10_TO_50(10, 50),
+	FROM_50_TO_100(50, 100),
+	FROM_100_TO_500(100, 500),
+	FROM_500(500, Double.MAX_VALUE);
+	
+	private double minPrice;
+	private double maxPrice;
+	
+	private PriceBucket(double minPrice, double maxPrice) {
+		this.minPrice = minPrice;
+		this.maxPrice = maxPrice;
+	}
+	
+	/**
+	 * @return The lowest price in the bucket, inclusive.
+	 */
+	public double getMinPrice() {
+		return minPrice;
+	}
+	
+	/**
+	 * @return The highest price of the bucket, exclusive.
+	 */
+	public double getMaxPrice() {
+		return maxPrice;
+	}
+	
+	/**
+	 * Getting the bucket of a price.
+	 * @param price - the price of a coupon.
+	 * @return The bucket that contains the price.
+	 */
+	public static PriceBucket fromPrice(double price) {
+		for (PriceBucket bucket : values()) {
+			if (price < bucket.maxPrice) {
+				return bucket;
+			}
+		}
+		return FROM_500;
+	}
+
+}
@@ -0,0 +1,11 @@
+package com.idan.coupons.enums;
+
+public enum PurchaseEventType {
+	
+	// Stored by the ordinal, new types must be added at the end.
+	PURCHASE,
+	REFUND,
+	// The purchase was removed with the account of the customer.
+	PURCHASE_REMOVED;
+
+}
@@ -0,0 +1,12 @@
+package com.idan.coupons.enums;
+
+public enum StreamEventType {
+
+	// Sent to the browsers by the name in lower case, as the name of the event.
+	CREATED,
+	UPDATED,
+	REMOVED,
+	AMOUNT,
+	EXPIRED;
+
+}
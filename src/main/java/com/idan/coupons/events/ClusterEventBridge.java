@@ -0,0 +1,114 @@
+package com.idan.coupons.events;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.TextMessage;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idan.coupons.beans.ChangeEvent;
+import com.idan.coupons.metrics.Counter;
+import com.idan.coupons.metrics.MetricsRegistry;
+
+/**
+ * Sending the changes committed on this node to the other nodes over a JMS topic, and notifying the listeners of this
+ * node of the changes committed on the other nodes, so the in-memory catalogs and caches of every node follow the DB.
+ * The changes are sent as JSON text messages after the commit, and are not persisted by the broker: a node that was
+ * down builds its in-memory structures from the DB when it starts.
+ * The time from the commit on the sending node to the notification on this node is measured in the
+ * coupons_cluster_event_lag_seconds histogram, labeled with the sending node. It is measured between the clocks of the
+ * two nodes, so it is only as accurate as their clocks are synchronized.
+ */
+@Component
+public class ClusterEventBridge implements MessageListener {
+
+	private static final Logger logger = LogManager.getLogger(ClusterEventBridge.class);
+
+	private static final String LAG_HISTOGRAM = "coupons_cluster_event_lag_seconds";
+	private static final String SENT = "coupons_cluster_events_sent_total";
+	private static final String RECEIVED = "coupons_cluster_events_received_total";
+	private static final String FAILED = "coupons_cluster_events_failed_total";
+
+	private final ObjectMapper objectMapper = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	@Autowired
+	private JmsTemplate clusterJmsTemplate;
+
+	@Autowired
+	private CouponChangePublisher couponChangePublisher;
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	// Tells the changes of this node apart from the changes of the other nodes, pid@host by default.
+	@Value("${coupons.cluster.nodeId:}")
+	private String nodeId;
+
+	private Counter sent;
+	private Counter received;
+	private Counter failed;
+
+	@PostConstruct
+	public void init() {
+		if (nodeId.isEmpty()) {
+			nodeId = ManagementFactory.getRuntimeMXBean().getName();
+		}
+		sent = metricsRegistry.counter(SENT, "Changes sent to the other nodes.");
+		received = metricsRegistry.counter(RECEIVED, "Changes received from the other nodes.");
+		failed = metricsRegistry.counter(FAILED, "Changes that could not be sent to or read from the other nodes.");
+	}
+
+	/**
+	 * Sending a change that was committed on this node to the other nodes.
+	 * A failure is logged and counted, the change is already in the DB and notified on this node.
+	 * @param event - the committed change.
+	 */
+	public void send(ChangeEvent event) {
+		try {
+			event.setOriginNode(nodeId);
+			String json = objectMapper.writeValueAsString(event);
+			clusterJmsTemplate.send(session -> session.createTextMessage(json));
+			sent.increment();
+		} catch (IOException | RuntimeException e) {
+			failed.increment();
+			logger.error("Sending " + event + " to the other nodes failed", e);
+		}
+	}
+
+	@Override
+	public void onMessage(Message message) {
+		ChangeEvent event;
+		try {
+			event = objectMapper.readValue(((TextMessage) message).getText(), ChangeEvent.class);
+		} catch (IOException | JMSException | ClassCastException e) {
+			failed.increment();
+			logger.error("Reading a change from the other nodes failed", e);
+			return;
+		}
+		// The topic delivers the changes of this node back to it, they were already notified on the commit.
+		if (nodeId.equals(event.getOriginNode())) {
+			return;
+		}
+
+		couponChangePublisher.dispatchRemote(event);
+		received.increment();
+		long lagMillis = Math.max(0, System.currentTimeMillis() - event.getCommitTime());
+		metricsRegistry.histogram(LAG_HISTOGRAM, "Time from the commit of a change on another node to its notification on this node.",
+				"origin", event.getOriginNode()).record(TimeUnit.MILLISECONDS.toNanos(lagMillis), false);
+	}
+
+}
@@ -0,0 +1,121 @@
+package com.idan.coupons.events;
+
+import com.idan.coupons.beans.CouponEntity;
+
+/**
+ * Listener for changes in the coupon table, and in the companies and customers that own and buy the coupons.
+ * The methods are called by the CouponChangePublisher only after the transaction of the change was committed, so
+ * in-memory structures that follow the DB are never ahead of it. They are called for the changes made on this node and
+ * for the changes received from the other nodes, each change once.
+ */
+public interface CouponChangeListener {
+
+	/**
+	 * Called after a coupon was created.
+	 * @param coupon - a copy of the created coupon.
+	 */
+	default void couponCreated(CouponEntity coupon) {
+	}
+
+	/**
+	 * Called after a coupon was updated.
+	 * @param coupon - a copy of the coupon after the update.
+	 */
+	default void couponUpdated(CouponEntity coupon) {
+	}
+
+	/**
+	 * Called after a coupon was removed.
+	 * @param couponID - the ID of the removed coupon.
+	 */
+	default void couponRemoved(Long couponID) {
+	}
+
+	/**
+	 * Called after the expired coupons were removed.
+	 * @param endDate - coupons with end date before this date (yyyy-mm-dd) were removed.
+	 */
+	default void couponsExpired(String endDate) {
+	}
+
+	/**
+	 * Called after a customer bought a coupon, the amount of the coupon was reduced by one.
+	 * @param couponID - the ID of the bought coupon.
+	 * @param customerID - the ID of the customer.
+	 */
+	default void couponPurchased(Long couponID, Long customerID) {
+	}
+
+	/**
+	 * Called after a customer cancelled a purchase, the amount of the coupon was increased by one. Also called for the
+	 * purchases removed with their coupons, whose amounts don't change.
+	 * @param couponID - the ID of the coupon.
+	 * @param customerID - the ID of the customer.
+	 */
+	default void couponPurchaseCancelled(Long couponID, Long customerID) {
+	}
+
+	/**
+	 * Called after a unit of a coupon was held for a customer, the amount of the coupon was reduced by one.
+	 * @param couponID - the ID of the held coupon.
+	 */
+	default void couponReserved(Long couponID) {
+	}
+
+	/**
+	 * Called after a hold was cancelled or expired, the amount of the coupon was increased by one.
+	 * @param couponID - the ID of the coupon.
+	 */
+	default void couponReservationReleased(Long couponID) {
+	}
+
+	/**
+	 * Called after a customer bought the held unit of a coupon. The amount of the coupon doesn't change, the unit was
+	 * taken from it by the hold.
+	 * @param couponID - the ID of the bought coupon.
+	 * @param customerID - the ID of the customer.
+	 */
+	default void couponReservationConfirmed(Long couponID, Long customerID) {
+	}
+
+	/**
+	 * Called when the amount of a coupon in the DB differs from the amount this node held before reading it, which
+	 * happens when a change from another node was lost or came out of order. Called on this node only.
+	 * The amount is set only if it is still the expected amount, a change since the read is newer than the DB.
+	 * @param couponID - the ID of the coupon.
+	 * @param expectedAmount - the amount this node held before reading the DB.
+	 * @param amount - the amount in the DB.
+	 */
+	default void couponAmountResynced(Long couponID, int expectedAmount, int amount) {
+	}
+
+	/**
+	 * Called after the details of a company were updated.
+	 * @param companyID - the ID of the company.
+	 */
+	default void companyUpdated(Long companyID) {
+	}
+
+	/**
+	 * Called after a company was removed. Its coupons are removed after it, each one notified by couponRemoved(), and
+	 * are no longer listed or sold from now on. The purchases removed with them are notified by couponPurchaseCancelled().
+	 * @param companyID - the ID of the removed company.
+	 */
+	default void companyRemoved(Long companyID) {
+	}
+
+	/**
+	 * Called after the details of a customer were updated.
+	 * @param customerID - the ID of the customer.
+	 */
+	default void customerUpdated(Long customerID) {
+	}
+
+	/**
+	 * Called after a customer was removed with the purchases of the customer.
+	 * @param customerID - the ID of the removed customer.
+	 */
+	default void customerRemoved(Long customerID) {
+	}
+
+}
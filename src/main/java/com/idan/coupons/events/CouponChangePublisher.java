@@ -0,0 +1,255 @@
+package com.idan.coupons.events;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.idan.coupons.beans.ChangeEvent;
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.enums.ChangeEventType;
+
+@Component
+public class CouponChangePublisher {
+
+	private static final Logger logger = LogManager.getLogger(CouponChangePublisher.class);
+
+	@Autowired(required=false)
+	private List<CouponChangeListener> listeners = Collections.emptyList();
+
+	@Autowired
+	private ClusterEventBridge clusterEventBridge;
+
+	/**
+	 * Notifying the listeners that a coupon was created, after the current transaction commits.
+	 * @param coupon - the created coupon.
+	 */
+	public void publishCouponCreated(CouponEntity coupon) {
+		ChangeEvent event = new ChangeEvent(ChangeEventType.COUPON_CREATED, coupon.getCouponId());
+		event.setCoupon(new CouponEntity(coupon));
+		afterCommit(event);
+	}
+
+	/**
+	 * Notifying the listeners that a coupon was updated, after the current transaction commits.
+	 * @param coupon - the coupon after the update.
+	 */
+	public void publishCouponUpdated(CouponEntity coupon) {
+		ChangeEvent event = new ChangeEvent(ChangeEventType.COUPON_UPDATED, coupon.getCouponId());
+		event.setCoupon(new CouponEntity(coupon));
+		afterCommit(event);
+	}
+
+	/**
+	 * Notifying the listeners that a coupon was removed, after the current transaction commits.
+	 * @param couponID - the ID of the removed coupon.
+	 */
+	public void publishCouponRemoved(Long couponID) {
+		afterCommit(new ChangeEvent(ChangeEventType.COUPON_REMOVED, couponID));
+	}
+
+	/**
+	 * Notifying the listeners that the expired coupons were removed, after the current transaction commits.
+	 * @param endDate - coupons with end date before this date were removed.
+	 */
+	public void publishCouponsExpired(String endDate) {
+		ChangeEvent event = new ChangeEvent(ChangeEventType.COUPONS_EXPIRED, null);
+		event.setEndDate(endDate);
+		afterCommit(event);
+	}
+
+	/**
+	 * Notifying the listeners that a customer bought a coupon, after the current transaction commits.
+	 * @param couponID - the ID of the bought coupon.
+	 * @param customerID - the ID of the customer.
+	 */
+	public void publishCouponPurchased(Long couponID, Long customerID) {
+		ChangeEvent event = new ChangeEvent(ChangeEventType.COUPON_PURCHASED, couponID);
+		event.setCustomerId(customerID);
+		afterCommit(event);
+	}
+
+	/**
+	 * Notifying the listeners that a customer cancelled a purchase, after the current transaction commits.
+	 * @param couponID - the ID of the coupon.
+	 * @param customerID - the ID of the customer.
+	 */
+	public void publishCouponPurchaseCancelled(Long couponID, Long customerID) {
+		ChangeEvent event = new ChangeEvent(ChangeEventType.COUPON_PURCHASE_CANCELLED, couponID);
+		event.setCustomerId(customerID);
+		afterCommit(event);
+	}
+
+	/**
+	 * Notifying the listeners that a unit of a coupon was held, after the current transaction commits.
+	 * @param couponID - the ID of the held coupon.
+	 */
+	public void publishCouponReserved(Long couponID) {
+		afterCommit(new ChangeEvent(ChangeEventType.COUPON_RESERVED, couponID));
+	}
+
+	/**
+	 * Notifying the listeners that a hold was cancelled or expired, after the current transaction commits.
+	 * @param couponID - the ID of the coupon.
+	 */
+	public void publishCouponReservationReleased(Long couponID) {
+		afterCommit(new ChangeEvent(ChangeEventType.COUPON_RESERVATION_RELEASED, couponID));
+	}
+
+	/**
+	 * Notifying the listeners that a customer bought the held unit of a coupon, after the current transaction commits.
+	 * @param couponID - the ID of the bought coupon.
+	 * @param customerID - the ID of the customer.
+	 */
+	public void publishCouponReservationConfirmed(Long couponID, Long customerID) {
+		ChangeEvent event = new ChangeEvent(ChangeEventType.COUPON_RESERVATION_CONFIRMED, couponID);
+		event.setCustomerId(customerID);
+		afterCommit(event);
+	}
+
+	/**
+	 * Notifying the listeners that the details of a company were updated, after the current transaction commits.
+	 * @param companyID - the ID of the company.
+	 */
+	public void publishCompanyUpdated(Long companyID) {
+		afterCommit(new ChangeEvent(ChangeEventType.COMPANY_UPDATED, companyID));
+	}
+
+	/**
+	 * Notifying the listeners that a company was removed, after the current transaction commits.
+	 * @param companyID - the ID of the removed company.
+	 */
+	public void publishCompanyRemoved(Long companyID) {
+		afterCommit(new ChangeEvent(ChangeEventType.COMPANY_REMOVED, companyID));
+	}
+
+	/**
+	 * Notifying the listeners that the details of a customer were updated, after the current transaction commits.
+	 * @param customerID - the ID of the customer.
+	 */
+	public void publishCustomerUpdated(Long customerID) {
+		afterCommit(new ChangeEvent(ChangeEventType.CUSTOMER_UPDATED, customerID));
+	}
+
+	/**
+	 * Notifying the listeners that a customer was removed, after the current transaction commits.
+	 * @param customerID - the ID of the removed customer.
+	 */
+	public void publishCustomerRemoved(Long customerID) {
+		afterCommit(new ChangeEvent(ChangeEventType.CUSTOMER_REMOVED, customerID));
+	}
+
+	/**
+	 * Notifying the listeners of this node that the amount of a coupon in the DB differs from the amount they hold.
+	 * Not sent to the other nodes, every node compares its own amounts with the DB.
+	 * @param couponID - the ID of the coupon.
+	 * @param expectedAmount - the amount this node held before reading the DB.
+	 * @param amount - the amount in the DB.
+	 */
+	public void publishCouponAmountResynced(Long couponID, int expectedAmount, int amount) {
+		for (CouponChangeListener listener : listeners) {
+			try {
+				listener.couponAmountResynced(couponID, expectedAmount, amount);
+			} catch (RuntimeException e) {
+				logger.error("Coupon change listener failed on the resync of the amount of coupon " + couponID, e);
+			}
+		}
+	}
+
+	/**
+	 * Notifying the listeners of this node of a change that was committed on another node.
+	 * The change is not sent again, every node receives it from the node that made it.
+	 * @param event - the change received from the other node.
+	 */
+	public void dispatchRemote(ChangeEvent event) {
+		for (CouponChangeListener listener : listeners) {
+			try {
+				dispatch(event, listener);
+			} catch (RuntimeException e) {
+				logger.error("Coupon change listener failed on " + event, e);
+			}
+		}
+	}
+
+	/**
+	 * Notifying the listeners after the commit of the current transaction, or immediately if there is no transaction,
+	 * and then sending the change to the other nodes.
+	 * A failing listener is logged and doesn't fail the request, since the change is already in the DB.
+	 * @param event - the change to notify.
+	 */
+	private void afterCommit(ChangeEvent event) {
+		Runnable notification = () -> {
+			event.setCommitTime(System.currentTimeMillis());
+			for (CouponChangeListener listener : listeners) {
+				try {
+					dispatch(event, listener);
+				} catch (RuntimeException e) {
+					logger.error("Coupon change listener failed on " + event, e);
+				}
+			}
+			clusterEventBridge.send(event);
+		};
+
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					notification.run();
+				}
+			});
+		}
+		else {
+			notification.run();
+		}
+	}
+
+	private static void dispatch(ChangeEvent event, CouponChangeListener listener) {
+		switch (event.getType()) {
+		case COUPON_CREATED:
+			listener.couponCreated(event.getCoupon());
+			break;
+		case COUPON_UPDATED:
+			listener.couponUpdated(event.getCoupon());
+			break;
+		case COUPON_REMOVED:
+			listener.couponRemoved(event.getId());
+			break;
+		case COUPONS_EXPIRED:
+			listener.couponsExpired(event.getEndDate());
+			break;
+		case COUPON_PURCHASED:
+			listener.couponPurchased(event.getId(), event.getCustomerId());
+			break;
+		case COUPON_PURCHASE_CANCELLED:
+			listener.couponPurchaseCancelled(event.getId(), event.getCustomerId());
+			break;
+		case COUPON_RESERVED:
+			listener.couponReserved(event.getId());
+			break;
+		case COUPON_RESERVATION_RELEASED:
+			listener.couponReservationReleased(event.getId());
+			break;
+		case COUPON_RESERVATION_CONFIRMED:
+			listener.couponReservationConfirmed(event.getId(), event.getCustomerId());
+			break;
+		case COMPANY_UPDATED:
+			listener.companyUpdated(event.getId());
+			break;
+		case COMPANY_REMOVED:
+			listener.companyRemoved(event.getId());
+			break;
+		case CUSTOMER_UPDATED:
+			listener.customerUpdated(event.getId());
+			break;
+		case CUSTOMER_REMOVED:
+			listener.customerRemoved(event.getId());
+			break;
+		}
+	}
+
+}
@@ -4,7 +4,13 @@ import java.util.List;
 
 import com.idan.coupons.enums.ErrorType;
 import com.idan.coupons.enums.InputErrorType;
+import com.idan.coupons.utils.DateUtils;
 
+/**
+ * The exception of the application, sent to the client by the ExceptionsHandler.
+ * Only a SYSTEM_ERROR fills its stack trace, the other types are expected results of bad input and are thrown often,
+ * so they skip the cost of the stack trace. The message is prefixed with the time the exception was created.
+ */
 public class ApplicationException extends RuntimeException {
 
 	private static final long serialVersionUID = -6259848867338873175L;
@@ -21,7 +27,7 @@ public ErrorType getType() {
 	 * @param massage - the massage of what happened.
 	 */
 	public ApplicationException(ErrorType type, String massage) {
-		super(massage);
+		super(DateUtils.getCurrentDateAndTime() + massage, null, false, type == ErrorType.SYSTEM_ERROR);
 		this.type = type;
 	}
 	
@@ -32,7 +38,7 @@ public ErrorType getType() {
 	 * @param massage - the massage of what happened.
 	 */
 	public ApplicationException(Exception e, ErrorType type, String massage) {
-		super(massage, e);
+		super(DateUtils.getCurrentDateAndTime() + massage, e, false, type == ErrorType.SYSTEM_ERROR);
 		this.type = type;
 	}
 	
@@ -43,7 +49,7 @@ public ErrorType getType() {
 	 * @param types
 	 */
 	public ApplicationException(ErrorType type, String massage, List<InputErrorType> types) {
-		super(massage);
+		super(DateUtils.getCurrentDateAndTime() + massage, null, false, type == ErrorType.SYSTEM_ERROR);
 		this.type = type;
 		this.inputErrorTypes = types;
 	}
@@ -37,7 +37,6 @@ public class ExceptionsHandler{
 
 		int errorCode = 500;
 		ApplicationError error = new ApplicationError(errorCode, ErrorType.SYSTEM_ERROR.name(), exception.getMessage());
-		exception.printStackTrace();
 		logger.error(error.getErrorMessage(), exception);
 		response.setStatus(errorCode);
         return error;
@@ -13,6 +13,8 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.stereotype.Component;
 
 import com.idan.coupons.utils.LoginUtils;
@@ -20,6 +22,8 @@ import com.idan.coupons.utils.LoginUtils;
 @Component
 public class LoginFilter implements Filter{
 
+	private static final Logger logger = LogManager.getLogger(LoginFilter.class);
+
 	@Override
 	public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain) throws IOException, ServletException {
 		
@@ -39,7 +43,7 @@ public class LoginFilter implements Filter{
 		}
 		HttpServletResponse res = (HttpServletResponse) response;
 		res.setStatus(401);
-		System.out.println("access denied");
+		logger.debug("access denied: " + req.getRequestURI());
 		
 	}
 
@@ -0,0 +1,209 @@
+package com.idan.coupons.ledger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.beans.PurchaseLedgerEntity;
+import com.idan.coupons.dao.PurchaseLedgerDao;
+import com.idan.coupons.enums.PurchaseEventType;
+import com.idan.coupons.events.CouponChangeListener;
+import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.metrics.Counter;
+import com.idan.coupons.metrics.MetricsRegistry;
+
+/**
+ * The append-only ledger of the purchases and the refunds, with the time and the price of each one.
+ * The entries are queued after the commit of the purchase and written in batches by a background thread, so a purchase
+ * doesn't wait for the ledger. The ledger can be replayed to rebuild anything that follows the purchases.
+ * When the writer falls too far behind, or a batch keeps failing, entries are dropped and counted rather than making the
+ * purchases wait for the DB.
+ */
+@Component
+public class PurchaseLedger {
+
+	private static final Logger logger = LogManager.getLogger(PurchaseLedger.class);
+
+	private static final int QUEUE_CAPACITY = 100000;
+	private static final int MAX_BATCH_SIZE = 5000;
+	private static final long RETRY_DELAY_MILLIS = 1000;
+	private static final int MAX_ATTEMPTS = 5;
+	private static final String DROPPED = "coupons_ledger_entries_dropped_total";
+
+	@Autowired
+	private PurchaseLedgerDao purchaseLedgerDao;
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	// When the writer falls this far behind, new entries are dropped instead of waiting for it.
+	private final BlockingQueue<PurchaseLedgerEntity> queue = new LinkedBlockingQueue<PurchaseLedgerEntity>(QUEUE_CAPACITY);
+
+	private Thread writer;
+	private volatile boolean isRunning;
+
+	private Counter dropped;
+
+	@PostConstruct
+	public void start() {
+		dropped = metricsRegistry.counter(DROPPED, "Purchase ledger entries dropped because the queue was full or the DB kept failing.");
+		isRunning = true;
+		writer = new Thread(this::writeEntries, "PurchaseLedgerWriter");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+		isRunning = false;
+		writer.interrupt();
+		writer.join(TimeUnit.SECONDS.toMillis(30));
+	}
+
+	/**
+	 * Recording a purchase, the entry is queued when the current transaction commits.
+	 * @param coupon - the bought coupon, with the price it was bought for.
+	 * @param customerID - the ID of the customer.
+	 */
+	public void recordPurchase(CouponEntity coupon, Long customerID) {
+		record(new PurchaseLedgerEntity(PurchaseEventType.PURCHASE, coupon.getCouponId(), customerID,
+				coupon.getCompanyID(), coupon.getCouponPrice(), System.currentTimeMillis()));
+	}
+
+	/**
+	 * Recording a refund, the entry is queued when the current transaction commits.
+	 * @param coupon - the refunded coupon, with the price that is refunded.
+	 * @param customerID - the ID of the customer.
+	 */
+	public void recordRefund(CouponEntity coupon, Long customerID) {
+		record(new PurchaseLedgerEntity(PurchaseEventType.REFUND, coupon.getCouponId(), customerID,
+				coupon.getCompanyID(), coupon.getCouponPrice(), System.currentTimeMillis()));
+	}
+
+	/**
+	 * Recording a purchase that was removed with the account of the customer, the entry is queued when the current
+	 * transaction commits.
+	 * @param couponID - the ID of the coupon.
+	 * @param companyID - the ID of the company of the coupon.
+	 * @param price - the current price of the coupon.
+	 * @param customerID - the ID of the customer.
+	 */
+	public void recordPurchaseRemoved(Long couponID, Long companyID, double price, Long customerID) {
+		record(new PurchaseLedgerEntity(PurchaseEventType.PURCHASE_REMOVED, couponID, customerID, companyID, price,
+				System.currentTimeMillis()));
+	}
+
+	/**
+	 * Replaying the entries of the ledger to a listener, as the purchase and cancellation events of the coupons.
+	 * Refunds and removed purchases are both replayed as cancellations.
+	 * Entries that are still queued are not replayed.
+	 * @param afterSeq - only the entries after this sequence number are replayed, 0 for all the entries.
+	 * @param listener - the listener to rebuild, for example an in-memory cache.
+	 * @return The sequence number of the last replayed entry, to continue from later.
+	 * @throws ApplicationException
+	 */
+	public long replay(long afterSeq, CouponChangeListener listener) throws ApplicationException {
+		long[] lastSeq = {afterSeq};
+		PurchaseEventType[] eventTypes = PurchaseEventType.values();
+		purchaseLedgerDao.replay(afterSeq, row -> {
+			lastSeq[0] = ((Number) row[0]).longValue();
+			Long couponID = ((Number) row[2]).longValue();
+			Long customerID = ((Number) row[3]).longValue();
+			if (eventTypes[((Number) row[1]).intValue()] == PurchaseEventType.PURCHASE) {
+				listener.couponPurchased(couponID, customerID);
+			}
+			else {
+				listener.couponPurchaseCancelled(couponID, customerID);
+			}
+		});
+		return lastSeq[0];
+	}
+
+	/**
+	 * Queuing the entry after the commit of the current transaction, so a rolled back purchase is not recorded.
+	 */
+	private void record(PurchaseLedgerEntity entry) {
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCommit() {
+					enqueue(entry);
+				}
+			});
+		}
+		else {
+			enqueue(entry);
+		}
+	}
+
+	/**
+	 * Queuing the entry without waiting, the request thread that committed the purchase never blocks on the ledger.
+	 */
+	private void enqueue(PurchaseLedgerEntity entry) {
+		if (!queue.offer(entry)) {
+			dropped.increment();
+		}
+	}
+
+	/**
+	 * The loop of the writer thread: waiting for an entry, then writing it with all the entries queued behind it.
+	 * A batch that failed is written again a few times, so entries are not lost when the DB is down for a moment,
+	 * then it is dropped so the entries behind it are written.
+	 */
+	private void writeEntries() {
+		List<PurchaseLedgerEntity> batch = new ArrayList<PurchaseLedgerEntity>(MAX_BATCH_SIZE);
+		int attempts = 0;
+		while (isRunning || !queue.isEmpty() || !batch.isEmpty()) {
+			try {
+				if (batch.isEmpty()) {
+					PurchaseLedgerEntity first = isRunning ? queue.take() : queue.poll();
+					if (first == null) {
+						continue;
+					}
+					batch.add(first);
+					queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+				}
+				attempts++;
+				purchaseLedgerDao.appendEntries(batch);
+				batch.clear();
+				attempts = 0;
+			} catch (InterruptedException e) {
+				// Stopping, the remaining entries are written before the thread ends.
+				isRunning = false;
+			} catch (RuntimeException e) {
+				if (!isRunning) {
+					logger.error("Purchase ledger stopped, " + (batch.size() + queue.size()) + " entries were not written", e);
+					dropped.add(batch.size() + queue.size());
+					return;
+				}
+				if (attempts >= MAX_ATTEMPTS) {
+					logger.error("Writing " + batch.size() + " entries to the purchase ledger failed " + attempts + " times, dropping them", e);
+					dropped.add(batch.size());
+					batch.clear();
+					attempts = 0;
+					continue;
+				}
+				logger.error("Writing " + batch.size() + " entries to the purchase ledger failed, retrying", e);
+				try {
+					Thread.sleep(RETRY_DELAY_MILLIS);
+				} catch (InterruptedException interrupted) {
+					isRunning = false;
+				}
+			}
+		}
+	}
+
+}
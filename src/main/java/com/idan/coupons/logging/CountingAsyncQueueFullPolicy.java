@@ -0,0 +1,33 @@
+package com.idan.coupons.logging;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.async.DiscardingAsyncQueueFullPolicy;
+import org.apache.logging.log4j.core.async.EventRoute;
+import org.apache.logging.log4j.util.PropertiesUtil;
+
+import com.idan.coupons.metrics.Counter;
+
+/**
+ * What the async loggers do when their ring buffer is full: the events up to the level of log4j2.DiscardThreshold are
+ * dropped and counted, and the more severe events wait for room. The threshold is OFF unless it is set, which drops the
+ * events of every level, so a request thread never waits for the disk, not even during a burst of errors.
+ * Set as log4j2.AsyncQueueFullPolicy in log4j2.component.properties, log4j creates it, so the count is static.
+ */
+public class CountingAsyncQueueFullPolicy extends DiscardingAsyncQueueFullPolicy {
+
+	public static final Counter DROPPED_EVENTS = new Counter();
+
+	public CountingAsyncQueueFullPolicy() {
+		super(Level.toLevel(PropertiesUtil.getProperties().getStringProperty("log4j2.DiscardThreshold"), Level.OFF));
+	}
+
+	@Override
+	public EventRoute getRoute(long backgroundThreadId, Level level) {
+		EventRoute route = super.getRoute(backgroundThreadId, level);
+		if (route == EventRoute.DISCARD) {
+			DROPPED_EVENTS.increment();
+		}
+		return route;
+	}
+
+}
@@ -0,0 +1,25 @@
+package com.idan.coupons.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, such as the number of purchases. Counting doesn't lock and spreads contended updates
+ * over several cells, so it is cheap enough for the hottest paths.
+ */
+public class Counter {
+
+	private final LongAdder count = new LongAdder();
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long amount) {
+		count.add(amount);
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+}
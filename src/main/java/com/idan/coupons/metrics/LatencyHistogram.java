@@ -0,0 +1,68 @@
+package com.idan.coupons.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The latencies of an operation counted in fixed buckets, with the total time and the number of failures.
+ * Recording a latency only adds to a few counters, so it doesn't allocate or lock.
+ */
+public class LatencyHistogram {
+
+	// The upper bounds of the buckets in seconds, the last bucket takes everything above them.
+	static final double[] BUCKET_BOUNDS = {0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+
+	private static final long[] BUCKET_BOUNDS_NANOS = new long[BUCKET_BOUNDS.length];
+	static {
+		for (int i = 0; i < BUCKET_BOUNDS.length; i++) {
+			BUCKET_BOUNDS_NANOS[i] = (long) (BUCKET_BOUNDS[i] * TimeUnit.SECONDS.toNanos(1));
+		}
+	}
+
+	// Not cumulative, each latency is counted only in its own bucket.
+	private final LongAdder[] buckets = new LongAdder[BUCKET_BOUNDS.length + 1];
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAdder errors = new LongAdder();
+
+	public LatencyHistogram() {
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * @param nanos - the latency of the operation in nanoseconds.
+	 * @param isError - if the operation failed.
+	 */
+	public void record(long nanos, boolean isError) {
+		int bucket = 0;
+		while (bucket < BUCKET_BOUNDS_NANOS.length && nanos > BUCKET_BOUNDS_NANOS[bucket]) {
+			bucket++;
+		}
+		buckets[bucket].increment();
+		totalNanos.add(nanos);
+		if (isError) {
+			errors.increment();
+		}
+	}
+
+	/**
+	 * @return The number of latencies in each bucket, the last one for the latencies above all the bounds.
+	 */
+	public long[] getBucketCounts() {
+		long[] counts = new long[buckets.length];
+		for (int i = 0; i < buckets.length; i++) {
+			counts[i] = buckets[i].sum();
+		}
+		return counts;
+	}
+
+	public double getTotalSeconds() {
+		return totalNanos.sum() / (double) TimeUnit.SECONDS.toNanos(1);
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+}
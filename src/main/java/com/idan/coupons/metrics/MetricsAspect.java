@@ -0,0 +1,62 @@
+package com.idan.coupons.metrics;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Timing every endpoint of the api package and every public method of the dao package.
+ * Runs outside the transactions, so the time of a DAO method includes its commit. The histogram of each method is
+ * looked up once and then kept by the method, so timing a call doesn't build the name of its histogram.
+ */
+@Aspect
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class MetricsAspect {
+
+	private static final String API_HISTOGRAM = "coupons_api_request_seconds";
+	private static final String DAO_HISTOGRAM = "coupons_dao_call_seconds";
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	private final ConcurrentHashMap<Method, LatencyHistogram> histograms = new ConcurrentHashMap<Method, LatencyHistogram>();
+
+	@Around("execution(public * com.idan.coupons.api..*(..)) && @annotation(org.springframework.web.bind.annotation.RequestMapping)")
+	public Object timeEndpoint(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(joinPoint, API_HISTOGRAM, "Latency of the REST endpoints.", "endpoint");
+	}
+
+	@Around("execution(public * com.idan.coupons.dao..*(..))")
+	public Object timeDaoMethod(ProceedingJoinPoint joinPoint) throws Throwable {
+		return time(joinPoint, DAO_HISTOGRAM, "Latency of the DAO methods.", "method");
+	}
+
+	private Object time(ProceedingJoinPoint joinPoint, String name, String help, String labelName) throws Throwable {
+		Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+		LatencyHistogram histogram = histograms.get(method);
+		if (histogram == null) {
+			histogram = histograms.computeIfAbsent(method, key -> metricsRegistry.histogram(name, help, labelName,
+					key.getDeclaringClass().getSimpleName() + "." + key.getName()));
+		}
+
+		long start = System.nanoTime();
+		boolean isError = true;
+		try {
+			Object result = joinPoint.proceed();
+			isError = false;
+			return result;
+		} finally {
+			histogram.record(System.nanoTime() - start, isError);
+		}
+	}
+
+}
@@ -0,0 +1,182 @@
+package com.idan.coupons.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.logging.CountingAsyncQueueFullPolicy;
+
+/**
+ * The metrics of the server: counters of business events and latency histograms of the endpoints, the DAO methods and
+ * the named queries.
+ * The metrics are kept in memory since the server started and are written in the Prometheus text format.
+ */
+@Component
+public class MetricsRegistry {
+
+	public static final String PURCHASES = "coupons_purchases_total";
+	public static final String SOLD_OUT_REJECTIONS = "coupons_sold_out_rejections_total";
+	public static final String LOGIN_FAILURES = "coupons_login_failures_total";
+	public static final String RESERVATIONS = "coupons_reservations_total";
+	public static final String LOG_EVENTS_DROPPED = "coupons_log_events_dropped_total";
+
+	private final ConcurrentHashMap<String, CounterMetric> counters = new ConcurrentHashMap<String, CounterMetric>();
+
+	private final ConcurrentHashMap<String, CounterFamily> labeledCounters = new ConcurrentHashMap<String, CounterFamily>();
+
+	private final ConcurrentHashMap<String, HistogramFamily> histograms = new ConcurrentHashMap<String, HistogramFamily>();
+
+	public MetricsRegistry() {
+		counter(PURCHASES, "Coupons purchased.");
+		counter(SOLD_OUT_REJECTIONS, "Purchases rejected because the coupon was out of stock.");
+		counter(LOGIN_FAILURES, "Logins rejected because of wrong credentials.");
+		// Counted by log4j, which creates the policy itself.
+		counters.put(LOG_EVENTS_DROPPED, new CounterMetric("Log events dropped because the async logging buffer was full.",
+				CountingAsyncQueueFullPolicy.DROPPED_EVENTS));
+	}
+
+	/**
+	 * Getting a counter, creating it on the first call.
+	 * @param name - the name of the counter, ending with _total.
+	 * @param help - the description of the counter.
+	 * @return The counter.
+	 */
+	public Counter counter(String name, String help) {
+		return counters.computeIfAbsent(name, key -> new CounterMetric(help, new Counter())).counter;
+	}
+
+	/**
+	 * @param name - the name of a counter created before.
+	 * @return The counter.
+	 */
+	public Counter getCounter(String name) {
+		return counters.get(name).counter;
+	}
+
+	/**
+	 * Getting the counter of one value of a label, creating it on the first call.
+	 * @param name - the name of the counter, ending with _total.
+	 * @param help - the description of the counter.
+	 * @param labelName - the name of the label that tells the counters of the same name apart.
+	 * @param labelValue - the value of the label.
+	 * @return The counter.
+	 */
+	public Counter counter(String name, String help, String labelName, String labelValue) {
+		return labeledCounters.computeIfAbsent(name, key -> new CounterFamily(help, labelName)).counters
+				.computeIfAbsent(labelValue, key -> new Counter());
+	}
+
+	/**
+	 * Getting the histogram of one value of a label, creating it on the first call.
+	 * @param name - the name of the histogram, ending with _seconds.
+	 * @param help - the description of the histogram.
+	 * @param labelName - the name of the label that tells the histograms of the same name apart.
+	 * @param labelValue - the value of the label.
+	 * @return The histogram.
+	 */
+	public LatencyHistogram histogram(String name, String help, String labelName, String labelValue) {
+		return histograms.computeIfAbsent(name, key -> new HistogramFamily(help, labelName)).histograms
+				.computeIfAbsent(labelValue, key -> new LatencyHistogram());
+	}
+
+	/**
+	 * Writing all the metrics in the Prometheus text format. The failures of each histogram are written as a separate
+	 * counter, named as the histogram with _errors_total instead of _seconds.
+	 * @param writer - the writer of the response.
+	 * @throws IOException
+	 */
+	public void writePrometheus(Writer writer) throws IOException {
+
+		for (Map.Entry<String, CounterMetric> entry : new TreeMap<String, CounterMetric>(counters).entrySet()) {
+			writeHeader(writer, entry.getKey(), entry.getValue().help, "counter");
+			writer.write(entry.getKey() + " " + entry.getValue().counter.getCount() + "\n");
+		}
+
+		for (Map.Entry<String, CounterFamily> entry : new TreeMap<String, CounterFamily>(labeledCounters).entrySet()) {
+			CounterFamily family = entry.getValue();
+			writeHeader(writer, entry.getKey(), family.help, "counter");
+			for (Map.Entry<String, Counter> counter : new TreeMap<String, Counter>(family.counters).entrySet()) {
+				writer.write(entry.getKey() + "{" + family.labelName + "=\"" + escapeLabelValue(counter.getKey()) + "\"} "
+						+ counter.getValue().getCount() + "\n");
+			}
+		}
+
+		for (Map.Entry<String, HistogramFamily> entry : new TreeMap<String, HistogramFamily>(histograms).entrySet()) {
+			String name = entry.getKey();
+			HistogramFamily family = entry.getValue();
+			Map<String, LatencyHistogram> sortedHistograms = new TreeMap<String, LatencyHistogram>(family.histograms);
+
+			writeHeader(writer, name, family.help, "histogram");
+			for (Map.Entry<String, LatencyHistogram> histogram : sortedHistograms.entrySet()) {
+				String label = family.labelName + "=\"" + escapeLabelValue(histogram.getKey()) + "\"";
+				long[] bucketCounts = histogram.getValue().getBucketCounts();
+				long cumulativeCount = 0;
+				for (int i = 0; i < bucketCounts.length; i++) {
+					cumulativeCount += bucketCounts[i];
+					String bound = i < LatencyHistogram.BUCKET_BOUNDS.length ? Double.toString(LatencyHistogram.BUCKET_BOUNDS[i]) : "+Inf";
+					writer.write(name + "_bucket{" + label + ",le=\"" + bound + "\"} " + cumulativeCount + "\n");
+				}
+				writer.write(name + "_sum{" + label + "} " + histogram.getValue().getTotalSeconds() + "\n");
+				writer.write(name + "_count{" + label + "} " + cumulativeCount + "\n");
+			}
+
+			String errorsName = name.replaceAll("_seconds$", "") + "_errors_total";
+			writeHeader(writer, errorsName, "Calls that threw an exception, of " + name + ".", "counter");
+			for (Map.Entry<String, LatencyHistogram> histogram : sortedHistograms.entrySet()) {
+				writer.write(errorsName + "{" + family.labelName + "=\"" + escapeLabelValue(histogram.getKey()) + "\"} "
+						+ histogram.getValue().getErrors() + "\n");
+			}
+		}
+	}
+
+	private static void writeHeader(Writer writer, String name, String help, String type) throws IOException {
+		writer.write("# HELP " + name + " " + help.replace("\\", "\\\\").replace("\n", "\\n") + "\n");
+		writer.write("# TYPE " + name + " " + type + "\n");
+	}
+
+	private static String escapeLabelValue(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	private static class CounterMetric {
+
+		private final String help;
+		private final Counter counter;
+
+		private CounterMetric(String help, Counter counter) {
+			this.help = help;
+			this.counter = counter;
+		}
+	}
+
+	private static class CounterFamily {
+
+		private final String help;
+		private final String labelName;
+		// Label value -> counter.
+		private final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<String, Counter>();
+
+		private CounterFamily(String help, String labelName) {
+			this.help = help;
+			this.labelName = labelName;
+		}
+	}
+
+	private static class HistogramFamily {
+
+		private final String help;
+		private final String labelName;
+		// Label value -> histogram.
+		private final ConcurrentHashMap<String, LatencyHistogram> histograms = new ConcurrentHashMap<String, LatencyHistogram>();
+
+		private HistogramFamily(String help, String labelName) {
+			this.help = help;
+			this.labelName = labelName;
+		}
+	}
+
+}
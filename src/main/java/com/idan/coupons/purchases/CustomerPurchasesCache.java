@@ -0,0 +1,222 @@
+package com.idan.coupons.purchases;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.events.CouponChangeListener;
+import com.idan.coupons.exceptions.ApplicationException;
+
+/**
+ * In-memory compressed bitmaps of the IDs of the coupons purchased by each customer, for checking if a customer already
+ * owns a coupon without a DB query.
+ * The bitmap of a customer is loaded on the first check, follows the purchases and the cancellations of the customer,
+ * and is evicted after the customer was not checked for the configured idle time.
+ * A bitmap is never changed after it was published, a change replaces it with a changed copy, so checks take no lock.
+ */
+@Component
+public class CustomerPurchasesCache implements CouponChangeListener {
+
+	@Value("${coupons.purchases.idleMinutes:30}")
+	private long idleMinutes;
+
+	private final ConcurrentHashMap<Long, CustomerPurchases> customersPurchases = new ConcurrentHashMap<Long, CustomerPurchases>();
+
+	/**
+	 * Checking if a customer has purchased a coupon.
+	 * @param customerID - the ID of the customer.
+	 * @param couponID - the ID of the coupon.
+	 * @param loader - reads the purchases of the customer if they are not held in memory.
+	 * @return If the customer has purchased the coupon.
+	 * @throws ApplicationException
+	 */
+	public boolean hasPurchased(Long customerID, Long couponID, PurchasedCouponsLoader loader) throws ApplicationException {
+		return getPurchases(customerID, loader).contains(couponID);
+	}
+
+	/**
+	 * Checking which of the coupons a customer has purchased.
+	 * @param customerID - the ID of the customer.
+	 * @param couponIDs - the IDs of the coupons to check.
+	 * @param loader - reads the purchases of the customer if they are not held in memory.
+	 * @return List of the IDs of the coupons the customer has purchased, in the order of the checked coupons.
+	 * @throws ApplicationException
+	 */
+	public List<Long> getPurchased(Long customerID, List<Long> couponIDs, PurchasedCouponsLoader loader) throws ApplicationException {
+		Roaring64Bitmap purchases = getPurchases(customerID, loader);
+		List<Long> purchased = new ArrayList<Long>();
+		for (Long couponID : couponIDs) {
+			if (purchases.contains(couponID)) {
+				purchased.add(couponID);
+			}
+		}
+		return purchased;
+	}
+
+	/**
+	 * Evicting the customers that were not checked for the configured idle time.
+	 * @return The number of evicted customers.
+	 */
+	public int evictIdle() {
+		long idleSince = System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(idleMinutes);
+		int evicted = 0;
+		for (Long customerID : customersPurchases.keySet()) {
+			if (customersPurchases.computeIfPresent(customerID,
+					(id, purchases) -> purchases.lastAccess < idleSince ? null : purchases) == null) {
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	@Override
+	public void couponPurchased(Long couponID, Long customerID) {
+		customersPurchases.computeIfPresent(customerID, (id, purchases) -> purchases.with(couponID));
+	}
+
+	@Override
+	public void couponReservationConfirmed(Long couponID, Long customerID) {
+		couponPurchased(couponID, customerID);
+	}
+
+	@Override
+	public void couponPurchaseCancelled(Long couponID, Long customerID) {
+		customersPurchases.computeIfPresent(customerID, (id, purchases) -> purchases.without(couponID));
+	}
+
+	@Override
+	public void customerRemoved(Long customerID) {
+		customersPurchases.remove(customerID);
+	}
+
+	/**
+	 * Getting the purchases of a customer, loading them if they are not held in memory.
+	 * The first check of a customer puts a loading entry in the map and reads the DB outside of it, so the map is not
+	 * locked during the query. The other checks of the customer wait for the same load. The purchases and cancellations
+	 * committed while the customer is loaded are collected by the loading entry and applied to the loaded bitmap,
+	 * instead of being missed.
+	 */
+	private Roaring64Bitmap getPurchases(Long customerID, PurchasedCouponsLoader loader) throws ApplicationException {
+
+		CustomerPurchases purchases = customersPurchases.get(customerID);
+		if (purchases == null) {
+			LoadingPurchases loading = new LoadingPurchases();
+			purchases = customersPurchases.putIfAbsent(customerID, loading);
+			if (purchases == null) {
+				return load(customerID, loading, loader);
+			}
+		}
+		if (purchases instanceof LoadingPurchases) {
+			return ((LoadingPurchases) purchases).await();
+		}
+		purchases.lastAccess = System.currentTimeMillis();
+		return purchases.couponIDs;
+	}
+
+	private Roaring64Bitmap load(Long customerID, LoadingPurchases loading, PurchasedCouponsLoader loader) {
+		Roaring64Bitmap couponIDs = new Roaring64Bitmap();
+		try {
+			for (Long couponID : loader.getPurchasedCouponIDs(customerID)) {
+				couponIDs.addLong(couponID);
+			}
+		} catch (RuntimeException | Error e) {
+			customersPurchases.remove(customerID, loading);
+			loading.loaded.completeExceptionally(e);
+			throw e;
+		}
+
+		CustomerPurchases purchases = customersPurchases.computeIfPresent(customerID,
+				(id, current) -> current == loading ? loading.toLoaded(couponIDs) : current);
+		if (purchases == null || purchases instanceof LoadingPurchases) {
+			// The customer was removed or evicted during the load, the load is only returned to the waiting checks.
+			purchases = loading.toLoaded(couponIDs);
+		}
+		loading.loaded.complete(purchases.couponIDs);
+		return purchases.couponIDs;
+	}
+
+	private static class CustomerPurchases {
+
+		private final Roaring64Bitmap couponIDs;
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		private CustomerPurchases(Roaring64Bitmap couponIDs) {
+			this.couponIDs = couponIDs;
+		}
+
+		CustomerPurchases with(Long couponID) {
+			Roaring64Bitmap changed = couponIDs.clone();
+			changed.addLong(couponID);
+			return copyAccess(new CustomerPurchases(changed));
+		}
+
+		CustomerPurchases without(Long couponID) {
+			Roaring64Bitmap changed = couponIDs.clone();
+			changed.removeLong(couponID);
+			return copyAccess(new CustomerPurchases(changed));
+		}
+
+		private CustomerPurchases copyAccess(CustomerPurchases changed) {
+			changed.lastAccess = lastAccess;
+			return changed;
+		}
+	}
+
+	/**
+	 * The entry of a customer whose purchases are being loaded. It is changed only inside the computations of its map
+	 * entry, so the collected changes and the replacement by the loaded bitmap don't overlap.
+	 */
+	private static final class LoadingPurchases extends CustomerPurchases {
+
+		private final CompletableFuture<Roaring64Bitmap> loaded = new CompletableFuture<Roaring64Bitmap>();
+		private final List<Consumer<Roaring64Bitmap>> changes = new ArrayList<Consumer<Roaring64Bitmap>>();
+
+		private LoadingPurchases() {
+			super(null);
+		}
+
+		@Override
+		CustomerPurchases with(Long couponID) {
+			changes.add(couponIDs -> couponIDs.addLong(couponID));
+			return this;
+		}
+
+		@Override
+		CustomerPurchases without(Long couponID) {
+			changes.add(couponIDs -> couponIDs.removeLong(couponID));
+			return this;
+		}
+
+		/**
+		 * Applying the changes collected during the load, in the order they were committed.
+		 */
+		private CustomerPurchases toLoaded(Roaring64Bitmap couponIDs) {
+			for (Consumer<Roaring64Bitmap> change : changes) {
+				change.accept(couponIDs);
+			}
+			couponIDs.runOptimize();
+			return new CustomerPurchases(couponIDs);
+		}
+
+		private Roaring64Bitmap await() {
+			try {
+				return loaded.join();
+			} catch (CompletionException e) {
+				// The failure of the load is thrown to every check that waited for it.
+				if (e.getCause() instanceof Error) {
+					throw (Error) e.getCause();
+				}
+				throw (RuntimeException) e.getCause();
+			}
+		}
+	}
+
+}
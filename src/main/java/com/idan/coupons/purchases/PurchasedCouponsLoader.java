@@ -0,0 +1,20 @@
+package com.idan.coupons.purchases;
+
+import java.util.List;
+
+import com.idan.coupons.exceptions.ApplicationException;
+
+/**
+ * Reading the purchases of a customer from the DB, for the customers not held in the CustomerPurchasesCache.
+ */
+@FunctionalInterface
+public interface PurchasedCouponsLoader {
+
+	/**
+	 * @param customerID - the ID of the customer.
+	 * @return List of the IDs of the coupons purchased by the customer.
+	 * @throws ApplicationException
+	 */
+	List<Long> getPurchasedCouponIDs(Long customerID) throws ApplicationException;
+
+}
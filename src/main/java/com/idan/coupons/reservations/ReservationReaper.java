@@ -0,0 +1,168 @@
+package com.idan.coupons.reservations;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.beans.CouponReservationEntity;
+import com.idan.coupons.dao.CouponReservationDao;
+import com.idan.coupons.utils.DateUtils;
+
+/**
+ * Returning the units of expired coupon holds to the amounts of the coupons.
+ * The holds created on this node are kept in a hashed timing wheel: a ring of slots, one per tick, where a hold is
+ * added to the slot of the tick it expires in. Adding a hold and releasing the holds of a tick cost the same no matter
+ * how many holds are outstanding, and no thread waits per hold. A hold that expires more than one revolution ahead
+ * stays in its slot until the revolution it is due in.
+ * The holds of a node that stopped are not in any wheel, so the DB is swept for expired holds on start and every few
+ * minutes. A hold is released by the statement that deletes its row, so the wheel and the sweeps of all the nodes never
+ * release the same hold twice, and a hold that was confirmed or cancelled is skipped.
+ */
+@Component
+public class ReservationReaper {
+
+	private static final Logger logger = LogManager.getLogger(ReservationReaper.class);
+
+	private static final int SWEEP_BATCH = 500;
+
+	@Value("${coupons.reservations.tickMillis:1000}")
+	private long tickMillis;
+
+	// The ticks of one revolution of the wheel, a hold further ahead waits a revolution in its slot.
+	@Value("${coupons.reservations.wheelSlots:1024}")
+	private int wheelSlots;
+
+	@Value("${coupons.reservations.sweepMinutes:5}")
+	private long sweepMinutes;
+
+	@Autowired
+	private CouponReservationDao couponReservationDao;
+
+	private ConcurrentLinkedQueue<Hold>[] slots;
+
+	// The last tick whose slot was released, written only by the ticker thread.
+	private volatile long releasedTick;
+
+	// A single thread, so the wheel and the sweep don't release holds concurrently.
+	private ScheduledExecutorService ticker;
+
+	@PostConstruct
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public void start() {
+		slots = new ConcurrentLinkedQueue[wheelSlots];
+		for (int i = 0; i < wheelSlots; i++) {
+			slots[i] = new ConcurrentLinkedQueue<Hold>();
+		}
+		releasedTick = System.currentTimeMillis() / tickMillis;
+
+		ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ReservationReaper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ticker.scheduleWithFixedDelay(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+		ticker.scheduleWithFixedDelay(this::sweep, 0, sweepMinutes, TimeUnit.MINUTES);
+	}
+
+	@PreDestroy
+	public void stop() {
+		ticker.shutdownNow();
+	}
+
+	/**
+	 * Adding a hold to the wheel, so its unit returns to the amount of the coupon when it expires.
+	 * A hold added while its slot is being released waits in the slot for the next revolution, or for the sweep.
+	 * @param reservation - the hold that was created.
+	 */
+	public void schedule(CouponReservationEntity reservation) {
+		// The first tick that starts at or after the expiry, and never a tick that was already released.
+		long tick = Math.max((reservation.getExpiresAt() + tickMillis - 1) / tickMillis, releasedTick + 1);
+		slots[(int) (tick % wheelSlots)].add(new Hold(reservation.getReservationId(), reservation.getCouponId(), reservation.getExpiresAt()));
+	}
+
+	/**
+	 * Releasing the slots of the ticks that started since the last advance. After a long pause every slot is released
+	 * once, which releases every expired hold in the wheel.
+	 */
+	private void advance() {
+		long now = System.currentTimeMillis();
+		long currentTick = now / tickMillis;
+		long firstTick = Math.max(releasedTick + 1, currentTick - wheelSlots + 1);
+		for (long tick = firstTick; tick <= currentTick; tick++) {
+			releaseSlot(slots[(int) (tick % wheelSlots)], now);
+			releasedTick = tick;
+		}
+	}
+
+	private void releaseSlot(ConcurrentLinkedQueue<Hold> slot, long now) {
+		List<Hold> notDue = new ArrayList<Hold>();
+		Hold hold;
+		while ((hold = slot.poll()) != null) {
+			if (hold.expiresAt > now) {
+				notDue.add(hold);
+			}
+			else {
+				release(hold.reservationId, hold.couponId);
+			}
+		}
+		slot.addAll(notDue);
+	}
+
+	/**
+	 * Releasing the expired holds in the DB, batch after batch, until a batch is not full or releases nothing.
+	 */
+	private void sweep() {
+		try {
+			List<CouponReservationEntity> expired;
+			int released;
+			do {
+				expired = couponReservationDao.getExpiredReservations(System.currentTimeMillis(), SWEEP_BATCH);
+				released = 0;
+				for (CouponReservationEntity reservation : expired) {
+					if (release(reservation.getReservationId(), reservation.getCouponId())) {
+						released++;
+					}
+				}
+			} while (expired.size() == SWEEP_BATCH && released > 0);
+		} catch (RuntimeException e) {
+			logger.error(DateUtils.getCurrentDateAndTime() + ", Sweeping the expired coupon holds failed", e);
+		}
+	}
+
+	/**
+	 * @return If the hold was released by this call. A failure is logged and the hold is left for the next sweep.
+	 */
+	private boolean release(Long reservationID, Long couponID) {
+		try {
+			return couponReservationDao.releaseExpiredReservation(reservationID, couponID);
+		} catch (RuntimeException e) {
+			logger.error(DateUtils.getCurrentDateAndTime() + ", Releasing coupon hold " + reservationID + " failed", e);
+			return false;
+		}
+	}
+
+	private static final class Hold {
+		private final Long reservationId;
+		private final Long couponId;
+		private final long expiresAt;
+
+		private Hold(Long reservationId, Long couponId, long expiresAt) {
+			this.reservationId = reservationId;
+			this.couponId = couponId;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+}
@@ -0,0 +1,360 @@
+package com.idan.coupons.search;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.events.CouponChangeListener;
+import com.idan.coupons.utils.DateCodec;
+
+/**
+ * In-memory inverted index over the title and the message of the coupons.
+ * Every term points to the coupons containing it with a weight, so a search only touches the coupons of the searched
+ * terms. The terms are kept sorted, so the last term of a search is also matched as a prefix for autocomplete.
+ */
+@Component
+public class CouponSearchIndex implements CouponChangeListener {
+
+	private static final int TITLE_WEIGHT = 3;
+	private static final int MESSAGE_WEIGHT = 1;
+
+	// Exact matches are ranked above matches of the prefix only.
+	private static final int EXACT_MATCH_FACTOR = 2;
+	private static final int PREFIX_MATCH_FACTOR = 1;
+
+	// Limits the work of a very short prefix such as a single letter, which is expanded to the terms of the most coupons.
+	@Value("${coupons.search.maxPrefixTerms:64}")
+	private int maxPrefixTerms;
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// Term -> (couponID -> weight of the term in the coupon).
+	private final TreeMap<String, Map<Long, Integer>> postings = new TreeMap<String, Map<Long, Integer>>();
+
+	private final Map<Long, IndexedCoupon> coupons = new HashMap<Long, IndexedCoupon>();
+
+	/**
+	 * Replacing the content of the index, used on startup.
+	 * @param indexedCoupons - List of the coupons, each one as a map with couponId, couponTitle, couponMessage, couponEndDate
+	 * and companyID.
+	 */
+	public void load(List<Map<String, Object>> indexedCoupons) {
+		lock.writeLock().lock();
+		try {
+			postings.clear();
+			coupons.clear();
+			for (Map<String, Object> coupon : indexedCoupons) {
+				addCoupon((Long) coupon.get("couponId"), (String) coupon.get("couponTitle"),
+						(String) coupon.get("couponMessage"), (String) coupon.get("couponEndDate"), (Long) coupon.get("companyID"));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Searching the coupons matching all the terms of the query. The last term is also matched as a prefix.
+	 * @param query - the text to search.
+	 * @param limit - maximum number of results.
+	 * @return List of the IDs of the matching coupons, the best match first.
+	 */
+	public List<Long> search(String query, int limit) {
+
+		List<String> terms = tokenize(query);
+		if (terms.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		lock.readLock().lock();
+		try {
+			List<Map<Long, Integer>> exactPostings = new ArrayList<Map<Long, Integer>>(terms.size() - 1);
+			for (String term : terms.subList(0, terms.size() - 1)) {
+				Map<Long, Integer> termPostings = postings.get(term);
+				if (termPostings == null) {
+					return Collections.emptyList();
+				}
+				exactPostings.add(termPostings);
+			}
+			PrefixMatch prefixMatch = matchPrefix(terms.get(terms.size() - 1));
+			if (prefixMatch.scores.isEmpty()) {
+				return Collections.emptyList();
+			}
+			exactPostings.sort((first, second) -> Integer.compare(first.size(), second.size()));
+
+			// Intersecting starting from the rarest term, the candidates are looked up in the postings of the other terms.
+			PriorityQueue<ScoredCoupon> best = new PriorityQueue<ScoredCoupon>(limit + 1);
+			boolean isExactTermRarest = !exactPostings.isEmpty() && exactPostings.get(0).size() <= prefixMatch.scores.size();
+			for (Long couponID : isExactTermRarest ? exactPostings.get(0).keySet() : prefixMatch.scores.keySet()) {
+				score(couponID, exactPostings, prefixMatch, best, limit);
+			}
+
+			List<Long> results = new ArrayList<Long>(best.size());
+			while (!best.isEmpty()) {
+				results.add(best.poll().couponId);
+			}
+			Collections.reverse(results);
+			return results;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public void couponCreated(CouponEntity coupon) {
+		lock.writeLock().lock();
+		try {
+			addCoupon(coupon.getCouponId(), coupon.getCouponTitle(), coupon.getCouponMessage(), coupon.getCouponEndDate(),
+					coupon.getCompanyID());
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void couponUpdated(CouponEntity coupon) {
+		couponCreated(coupon);
+	}
+
+	@Override
+	public void couponRemoved(Long couponID) {
+		lock.writeLock().lock();
+		try {
+			removeCoupon(couponID);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void couponsExpired(String endDate) {
+		lock.writeLock().lock();
+		try {
+			int endDay = DateCodec.parse(endDate);
+			List<Long> expiredCouponIDs = new ArrayList<Long>();
+			for (Map.Entry<Long, IndexedCoupon> entry : coupons.entrySet()) {
+				if (entry.getValue().endDay < endDay) {
+					expiredCouponIDs.add(entry.getKey());
+				}
+			}
+			for (Long couponID : expiredCouponIDs) {
+				removeCoupon(couponID);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void companyRemoved(Long companyID) {
+		lock.writeLock().lock();
+		try {
+			List<Long> removedCouponIDs = new ArrayList<Long>();
+			for (Map.Entry<Long, IndexedCoupon> entry : coupons.entrySet()) {
+				if (entry.getValue().companyId == companyID.longValue()) {
+					removedCouponIDs.add(entry.getKey());
+				}
+			}
+			for (Long couponID : removedCouponIDs) {
+				removeCoupon(couponID);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Adding a coupon to the index, replacing its previous version. Must be called under the write lock.
+	 */
+	private void addCoupon(Long couponID, String title, String message, String endDate, Long companyID) {
+
+		removeCoupon(couponID);
+
+		Map<String, Integer> termWeights = new HashMap<String, Integer>();
+		for (String term : tokenize(title)) {
+			termWeights.merge(term, TITLE_WEIGHT, Integer::sum);
+		}
+		for (String term : tokenize(message)) {
+			termWeights.merge(term, MESSAGE_WEIGHT, Integer::sum);
+		}
+
+		for (Map.Entry<String, Integer> termWeight : termWeights.entrySet()) {
+			postings.computeIfAbsent(termWeight.getKey(), term -> new HashMap<Long, Integer>())
+					.put(couponID, termWeight.getValue());
+		}
+		coupons.put(couponID, new IndexedCoupon(termWeights.keySet().toArray(new String[termWeights.size()]), DateCodec.parse(endDate),
+				companyID));
+	}
+
+	/**
+	 * Removing a coupon from the index. Must be called under the write lock.
+	 */
+	private void removeCoupon(Long couponID) {
+
+		IndexedCoupon coupon = coupons.remove(couponID);
+		if (coupon == null) {
+			return;
+		}
+		for (String term : coupon.terms) {
+			Map<Long, Integer> termPostings = postings.get(term);
+			termPostings.remove(couponID);
+			if (termPostings.isEmpty()) {
+				postings.remove(term);
+			}
+		}
+	}
+
+	/**
+	 * Getting the postings of the terms starting with the prefix. The postings of a single matching term are used as
+	 * they are, the postings of several terms are merged once, keeping the best score of each coupon.
+	 * Of several terms, the term equal to the prefix and the maxPrefixTerms terms of the most coupons are merged, so a
+	 * short prefix completes to the most common terms rather than to the first ones in alphabetical order.
+	 */
+	private PrefixMatch matchPrefix(String prefix) {
+
+		SortedMap<String, Map<Long, Integer>> matchingTerms = postings.subMap(prefix, prefix + Character.MAX_VALUE);
+		if (matchingTerms.size() == 1) {
+			String term = matchingTerms.firstKey();
+			return new PrefixMatch(matchingTerms.get(term), term.equals(prefix) ? EXACT_MATCH_FACTOR : PREFIX_MATCH_FACTOR);
+		}
+		Map<Long, Integer> scores = new HashMap<Long, Integer>();
+		// The expanded terms with the fewest coupons first, so the heap keeps the terms of the most coupons.
+		PriorityQueue<Map<Long, Integer>> expandedTerms = new PriorityQueue<Map<Long, Integer>>(maxPrefixTerms + 1,
+				(first, second) -> Integer.compare(first.size(), second.size()));
+		for (Map.Entry<String, Map<Long, Integer>> matchingTerm : matchingTerms.entrySet()) {
+			if (matchingTerm.getKey().equals(prefix)) {
+				mergeScores(scores, matchingTerm.getValue(), EXACT_MATCH_FACTOR);
+			}
+			else {
+				expandedTerms.add(matchingTerm.getValue());
+				if (expandedTerms.size() > maxPrefixTerms) {
+					expandedTerms.poll();
+				}
+			}
+		}
+		for (Map<Long, Integer> termPostings : expandedTerms) {
+			mergeScores(scores, termPostings, PREFIX_MATCH_FACTOR);
+		}
+		return new PrefixMatch(scores, 1);
+	}
+
+	private static void mergeScores(Map<Long, Integer> scores, Map<Long, Integer> termPostings, int factor) {
+		for (Map.Entry<Long, Integer> posting : termPostings.entrySet()) {
+			scores.merge(posting.getKey(), posting.getValue() * factor, Math::max);
+		}
+	}
+
+	/**
+	 * Scoring a candidate by all the terms, and keeping it if it matches all of them and is among the best results.
+	 * The best results are kept in a bounded heap, instead of sorting all the matches.
+	 */
+	private static void score(Long couponID, List<Map<Long, Integer>> exactPostings, PrefixMatch prefixMatch,
+			PriorityQueue<ScoredCoupon> best, int limit) {
+
+		int score = prefixMatch.score(couponID);
+		if (score == 0) {
+			return;
+		}
+		for (Map<Long, Integer> termPostings : exactPostings) {
+			Integer weight = termPostings.get(couponID);
+			if (weight == null) {
+				return;
+			}
+			score += weight * EXACT_MATCH_FACTOR;
+		}
+		best.add(new ScoredCoupon(couponID, score));
+		if (best.size() > limit) {
+			best.poll();
+		}
+	}
+
+	/**
+	 * Splitting a text to lower case terms of letters and digits.
+	 */
+	private static List<String> tokenize(String text) {
+
+		List<String> terms = new ArrayList<String>();
+		if (text == null) {
+			return terms;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean isTermChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (isTermChar && start < 0) {
+				start = i;
+			}
+			else if (!isTermChar && start >= 0) {
+				terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+				start = -1;
+			}
+		}
+		return terms;
+	}
+
+	/**
+	 * The coupons matching the last term of a search, with their weights and the factor that turns them to scores.
+	 */
+	private static class PrefixMatch {
+
+		private final Map<Long, Integer> scores;
+		private final int factor;
+
+		private PrefixMatch(Map<Long, Integer> scores, int factor) {
+			this.scores = scores;
+			this.factor = factor;
+		}
+
+		/**
+		 * @return The score of the coupon, 0 if it doesn't match.
+		 */
+		private int score(Long couponID) {
+			Integer weight = scores.get(couponID);
+			return weight != null ? weight * factor : 0;
+		}
+	}
+
+	/**
+	 * A result of a search. The lower score comes first, and between the same scores the older coupon, so the heap of
+	 * the best results drops them first.
+	 */
+	private static class ScoredCoupon implements Comparable<ScoredCoupon> {
+
+		private final long couponId;
+		private final int score;
+
+		private ScoredCoupon(long couponId, int score) {
+			this.couponId = couponId;
+			this.score = score;
+		}
+
+		@Override
+		public int compareTo(ScoredCoupon other) {
+			return score != other.score ? Integer.compare(score, other.score) : Long.compare(couponId, other.couponId);
+		}
+	}
+
+	private static class IndexedCoupon {
+
+		private final String[] terms;
+		private final int endDay;
+		private final long companyId;
+
+		private IndexedCoupon(String[] terms, int endDay, long companyId) {
+			this.terms = terms;
+			this.endDay = endDay;
+			this.companyId = companyId;
+		}
+	}
+
+}
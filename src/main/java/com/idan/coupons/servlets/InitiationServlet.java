@@ -1,5 +1,6 @@
 package com.idan.coupons.servlets;
 
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
 import java.util.Timer;
@@ -7,25 +8,132 @@ import java.util.Timer;
 import javax.annotation.PostConstruct;
 import javax.servlet.http.HttpServlet;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import com.idan.coupons.catalog.CouponCatalog;
+import com.idan.coupons.catalog.NewestCouponsCache;
+import com.idan.coupons.dao.CouponDao;
+import com.idan.coupons.datasource.DataSourceRouting;
+import com.idan.coupons.datasource.NamedQueryCatalog;
+import com.idan.coupons.enums.CouponField;
+import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.search.CouponSearchIndex;
+import com.idan.coupons.threads.CompanyDeletionJob;
 import com.idan.coupons.threads.DeleteExpiredCouponTimerTask;
+import com.idan.coupons.threads.EvictIdlePurchasesTimerTask;
+import com.idan.coupons.utils.DateUtils;
 
 @Component
 public class InitiationServlet extends HttpServlet {
 	private static final long serialVersionUID = 1L;
+	
+	private static final Logger logger = LogManager.getLogger(InitiationServlet.class);
        
 	@Autowired
 	DeleteExpiredCouponTimerTask deleteExpiredCouponTimerTask;
 	
+	@Autowired
+	EvictIdlePurchasesTimerTask evictIdlePurchasesTimerTask;
+	
+	@Autowired
+	CompanyDeletionJob companyDeletionJob;
+	
+	@Autowired
+	CouponDao couponDao;
+	
+	@Autowired
+	CouponSearchIndex couponSearchIndex;
+	
+	@Autowired
+	CouponCatalog couponCatalog;
+	
+	@Autowired
+	NewestCouponsCache newestCouponsCache;
+	
+	@Autowired
+	NamedQueryCatalog namedQueryCatalog;
+	
 	@PostConstruct
     public void Init() {
     	
+    	// The in-memory structures follow the changes from now on, so they are loaded from the primary DB that has all of them.
+    	DataSourceRouting.requirePrimary();
+    	try {
+    		loadCouponSearchIndex();
+    		loadCouponCatalog();
+    		loadNewestCoupons();
+    		resumeCompanyDeletions();
+    		namedQueryCatalog.reportIndexes();
+    	} finally {
+    		DataSourceRouting.clearPrimaryRequired();
+    	}
     	startDeleteExpiredCoupons();
+    	startEvictIdlePurchases();
     	
     }
 
+    /**
+     * Load the search index from the DB, reading only the indexed columns.
+     */
+	private void loadCouponSearchIndex() {
+		
+		try {
+			couponSearchIndex.load(couponDao.getAllCoupons(Arrays.asList(CouponField.COUPON_ID, CouponField.COUPON_TITLE,
+					CouponField.COUPON_MESSAGE, CouponField.COUPON_END_DATE, CouponField.COMPANY_ID)));
+		} catch (ApplicationException e) {
+			// The server can still work without search, so the problem is only reported.
+			logger.error(DateUtils.getCurrentDateAndTime() + ", Loading the coupon search index has failed", e);
+		}
+	}
+
+    /**
+     * Load the in-memory catalog from the DB. Until it is loaded the filters are served by the DB.
+     */
+	private void loadCouponCatalog() {
+		
+		couponCatalog.startLoad();
+		try {
+			couponCatalog.load(couponDao.getAllCoupons());
+		} catch (ApplicationException e) {
+			couponCatalog.cancelLoad();
+			logger.error(DateUtils.getCurrentDateAndTime() + ", Loading the coupon catalog has failed", e);
+		}
+	}
+
+    /**
+     * Load the newest coupons feed from the DB. Until it is loaded the feed is served by the DB.
+     */
+	private void loadNewestCoupons() {
+		
+		try {
+			long version = newestCouponsCache.getVersion();
+			newestCouponsCache.load(couponDao.getNewestCoupons(0, newestCouponsCache.getCapacity()), version);
+		} catch (ApplicationException e) {
+			logger.error(DateUtils.getCurrentDateAndTime() + ", Loading the newest coupons has failed", e);
+		}
+	}
+
+    /**
+     * Resume removing the coupons of companies that were removed before the server stopped.
+     * Their remaining coupons were just loaded, so they are hidden again until they are removed.
+     */
+	private void resumeCompanyDeletions() {
+		
+		try {
+			for (Long companyID : couponDao.getRemovedCompaniesWithCoupons()) {
+				couponSearchIndex.companyRemoved(companyID);
+				couponCatalog.companyRemoved(companyID);
+				newestCouponsCache.companyRemoved(companyID);
+				companyDeletionJob.submit(companyID);
+			}
+		} catch (ApplicationException e) {
+			logger.error(DateUtils.getCurrentDateAndTime() + ", Resuming the removal of the coupons of removed companies has failed", e);
+		}
+	}
+
     /**
      * start Delete Expired Coupons.
      */
@@ -42,6 +150,15 @@ public class InitiationServlet extends HttpServlet {
 		Timer timer = new Timer();
 		timer.schedule(deleteExpiredCouponTimerTask, gc.getTime(), 1000 * 60 * 60 * 24);
 	}
+
+    /**
+     * start evicting the purchases of idle customers from memory, every minute.
+     */
+	private void startEvictIdlePurchases() {
+		
+		Timer timer = new Timer("EvictIdlePurchases", true);
+		timer.schedule(evictIdlePurchasesTimerTask, 1000 * 60, 1000 * 60);
+	}
     
     
 	
@@ -0,0 +1,486 @@
+package com.idan.coupons.stream;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.catalog.CouponCatalog;
+import com.idan.coupons.enums.ErrorType;
+import com.idan.coupons.enums.StreamEventType;
+import com.idan.coupons.events.CouponChangeListener;
+import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.metrics.Counter;
+import com.idan.coupons.metrics.MetricsRegistry;
+
+/**
+ * Pushing the changes of the coupons to the browsers as Server-Sent Events, so they show the remaining amounts and the
+ * changes of the catalog without polling it.
+ * The changes are collected per coupon and sent once per tick, so many purchases of a hot coupon during a tick are sent
+ * as a single amount event, with the amount at the end of the tick. The events of a tick are written once into a frame
+ * that all the subscribers share.
+ * Each subscriber has a bounded queue of frames that a small pool of writer threads drains with non-blocking writes: a
+ * writer writes only while the connection takes the data, and the container calls back when it takes more. A browser
+ * that stops reading holds no thread, its frames wait in its queue. A subscriber whose queue is full is disconnected,
+ * and the browser reconnects and reloads the catalog.
+ * A browser should open the stream before it loads the catalog, so no change falls between them.
+ */
+@Component
+public class CouponStream implements CouponChangeListener {
+
+	private static final Logger logger = LogManager.getLogger(CouponStream.class);
+
+	// Milliseconds that a browser waits before it reconnects after the stream was closed.
+	private static final long RECONNECT_MILLIS = 3000;
+
+	private static final byte[] HEARTBEAT = ":\n\n".getBytes(StandardCharsets.UTF_8);
+
+	private static final String OPENED = "coupons_stream_subscribers_opened_total";
+	private static final String DROPPED = "coupons_stream_subscribers_dropped_total";
+	private static final String EVENTS = "coupons_stream_events_total";
+
+	@Value("${coupons.stream.tickMillis:250}")
+	private long tickMillis;
+
+	// Frames held for a subscriber that has not read them yet, about the seconds of tickMillis it may fall behind.
+	@Value("${coupons.stream.bufferedFrames:32}")
+	private int bufferedFrames;
+
+	@Value("${coupons.stream.maxSubscribers:50000}")
+	private int maxSubscribers;
+
+	@Value("${coupons.stream.writerThreads:8}")
+	private int writerThreads;
+
+	@Value("${coupons.stream.heartbeatSeconds:20}")
+	private long heartbeatSeconds;
+
+	@Value("${coupons.stream.timeoutMinutes:30}")
+	private long timeoutMinutes;
+
+	@Autowired
+	private CouponCatalog couponCatalog;
+
+	@Autowired
+	private MetricsRegistry metricsRegistry;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	// The changes since the last tick, by the ID of the coupon.
+	private final ConcurrentHashMap<Long, PendingChange> pendingChanges = new ConcurrentHashMap<Long, PendingChange>();
+	private final AtomicReference<String> pendingExpiry = new AtomicReference<String>();
+
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+	private final AtomicInteger subscriberCount = new AtomicInteger();
+
+	private ScheduledExecutorService ticker;
+	private ExecutorService writers;
+
+	// Used only by the ticker thread.
+	private long tick;
+	private long lastFrameTime;
+
+	private Counter opened;
+	private Counter dropped;
+	private Counter events;
+
+	@PostConstruct
+	public void start() {
+		opened = metricsRegistry.counter(OPENED, "Streams of coupon changes opened by browsers.");
+		dropped = metricsRegistry.counter(DROPPED, "Streams of coupon changes closed because the browser fell behind.");
+		events = metricsRegistry.counter(EVENTS, "Coupon change events sent to the streams, counted once per tick.");
+
+		AtomicInteger writerNumber = new AtomicInteger();
+		writers = Executors.newFixedThreadPool(writerThreads, runnable -> {
+			Thread thread = new Thread(runnable, "CouponStreamWriter-" + writerNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "CouponStreamTicker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ticker.scheduleWithFixedDelay(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		ticker.shutdownNow();
+		writers.shutdownNow();
+		for (Subscriber subscriber : subscribers) {
+			subscriber.close();
+			subscriber.complete();
+		}
+	}
+
+	/**
+	 * Opening a stream of the changes of the coupons for a browser, as the asynchronous response of the request.
+	 * The stream is open until the browser closes it, falls behind or the stream times out.
+	 * @param request - the request of the stream.
+	 * @param response - the response the events are written to.
+	 * @throws ApplicationException when the node already holds the configured maximum of streams.
+	 */
+	public void subscribe(HttpServletRequest request, HttpServletResponse response) throws ApplicationException {
+
+		if (subscriberCount.incrementAndGet() > maxSubscribers) {
+			subscriberCount.decrementAndGet();
+			throw new ApplicationException(ErrorType.SERVICE_UNAVAILABLE, " Opening a stream of coupon changes has failed."
+					+"\nThe server already holds " + maxSubscribers + " streams.");
+		}
+		ServletOutputStream out;
+		try {
+			response.setContentType("text/event-stream;charset=UTF-8");
+			response.setHeader("Cache-Control", "no-cache");
+			out = response.getOutputStream();
+		} catch (IOException e) {
+			subscriberCount.decrementAndGet();
+			throw new ApplicationException(e, ErrorType.SYSTEM_ERROR, "Error in CouponStream, subscribe(); FAILED");
+		}
+		AsyncContext asyncContext = request.startAsync(request, response);
+		asyncContext.setTimeout(TimeUnit.MINUTES.toMillis(timeoutMinutes));
+		Subscriber subscriber = new Subscriber(asyncContext, out);
+		asyncContext.addListener(subscriber);
+		subscribers.add(subscriber);
+		opened.increment();
+
+		// The first frame sends the headers to the browser, with the time to wait before reconnecting.
+		subscriber.offer(("retry: " + RECONNECT_MILLIS + "\n\n").getBytes(StandardCharsets.UTF_8));
+		// The container starts the writes by calling the subscriber when the connection can take data.
+		out.setWriteListener(subscriber);
+	}
+
+	@Override
+	public void couponCreated(CouponEntity coupon) {
+		pendingChanges.merge(coupon.getCouponId(), new PendingChange(StreamEventType.CREATED, coupon), CouponStream::coalesce);
+	}
+
+	@Override
+	public void couponUpdated(CouponEntity coupon) {
+		pendingChanges.merge(coupon.getCouponId(), new PendingChange(StreamEventType.UPDATED, coupon), CouponStream::coalesce);
+	}
+
+	@Override
+	public void couponRemoved(Long couponID) {
+		pendingChanges.merge(couponID, new PendingChange(StreamEventType.REMOVED, null), CouponStream::coalesce);
+	}
+
+	@Override
+	public void couponsExpired(String endDate) {
+		pendingExpiry.set(endDate);
+	}
+
+	@Override
+	public void couponPurchased(Long couponID, Long customerID) {
+		pendingChanges.merge(couponID, new PendingChange(StreamEventType.AMOUNT, null), CouponStream::coalesce);
+	}
+
+	@Override
+	public void couponPurchaseCancelled(Long couponID, Long customerID) {
+		pendingChanges.merge(couponID, new PendingChange(StreamEventType.AMOUNT, null), CouponStream::coalesce);
+	}
+
+	@Override
+	public void couponReserved(Long couponID) {
+		pendingChanges.merge(couponID, new PendingChange(StreamEventType.AMOUNT, null), CouponStream::coalesce);
+	}
+
+	@Override
+	public void couponReservationReleased(Long couponID) {
+		pendingChanges.merge(couponID, new PendingChange(StreamEventType.AMOUNT, null), CouponStream::coalesce);
+	}
+
+	@Override
+	public void couponAmountResynced(Long couponID, int expectedAmount, int amount) {
+		pendingChanges.merge(couponID, new PendingChange(StreamEventType.AMOUNT, null), CouponStream::coalesce);
+	}
+
+	/**
+	 * Merging a change of a coupon into the change already pending for it in this tick.
+	 * A removal replaces everything before it, a created coupon stays created when it is updated, and a change of the
+	 * amount is covered by a pending created or updated coupon, whose amount is taken when the tick is sent.
+	 */
+	private static PendingChange coalesce(PendingChange pending, PendingChange next) {
+		switch (next.type) {
+		case UPDATED:
+			return pending.type == StreamEventType.CREATED ? new PendingChange(StreamEventType.CREATED, next.coupon) : next;
+		case AMOUNT:
+			return pending;
+		default:
+			return next;
+		}
+	}
+
+	/**
+	 * Sending the changes of the last tick to all the subscribers, or a heartbeat when there were no changes for a while,
+	 * which keeps the idle streams open through proxies and finds the browsers that left.
+	 */
+	private void tick() {
+		try {
+			byte[] frame = nextFrame();
+			long now = System.currentTimeMillis();
+			if (frame == null) {
+				if (now - lastFrameTime < TimeUnit.SECONDS.toMillis(heartbeatSeconds)) {
+					return;
+				}
+				frame = HEARTBEAT;
+			}
+			lastFrameTime = now;
+			for (Subscriber subscriber : subscribers) {
+				subscriber.offer(frame);
+			}
+		} catch (RuntimeException e) {
+			// Thrown out of the task, it would stop the ticks.
+			logger.error("Sending the coupon changes to the streams failed", e);
+		}
+	}
+
+	/**
+	 * Taking the pending changes into a single frame of events, all with the number of the tick as their ID. The frame
+	 * is encoded once and written as is to every subscriber.
+	 * @return The frame, or null if nothing changed since the last tick.
+	 */
+	private byte[] nextFrame() {
+
+		StringBuilder text = new StringBuilder();
+		String eventID = Long.toString(tick + 1);
+		int eventCount = 0;
+
+		String endDate = pendingExpiry.getAndSet(null);
+		if (endDate != null) {
+			appendEvent(text, eventID, StreamEventType.EXPIRED, "{\"endDate\":\"" + endDate + "\"}");
+			eventCount++;
+		}
+
+		for (Long couponID : pendingChanges.keySet()) {
+			PendingChange change = pendingChanges.remove(couponID);
+			if (change == null) {
+				continue;
+			}
+			int amount = couponCatalog.getAmount(couponID);
+			switch (change.type) {
+			case CREATED:
+			case UPDATED:
+				// The coupon of the change is shared with the other listeners, the amount is set on a copy.
+				CouponEntity coupon = new CouponEntity(change.coupon);
+				if (amount >= 0) {
+					coupon.setCouponAmount(amount);
+				}
+				appendEvent(text, eventID, change.type, toJson(coupon));
+				break;
+			case REMOVED:
+				appendEvent(text, eventID, change.type, "{\"couponId\":" + couponID + "}");
+				break;
+			default:
+				if (amount < 0) {
+					continue;
+				}
+				appendEvent(text, eventID, change.type, "{\"couponId\":" + couponID + ",\"amount\":" + amount + "}");
+				break;
+			}
+			eventCount++;
+		}
+
+		if (eventCount == 0) {
+			return null;
+		}
+		tick++;
+		events.add(eventCount);
+		return text.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static void appendEvent(StringBuilder text, String eventID, StreamEventType type, String data) {
+		text.append("id: ").append(eventID).append('\n')
+				.append("event: ").append(type.name().toLowerCase()).append('\n')
+				.append("data: ").append(data).append("\n\n");
+	}
+
+	private String toJson(CouponEntity coupon) {
+		try {
+			return objectMapper.writeValueAsString(coupon);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException("Writing coupon " + coupon.getCouponId() + " as JSON failed", e);
+		}
+	}
+
+	private static final class PendingChange {
+
+		private final StreamEventType type;
+		// The coupon after the change, of CREATED and UPDATED.
+		private final CouponEntity coupon;
+
+		private PendingChange(StreamEventType type, CouponEntity coupon) {
+			this.type = type;
+			this.coupon = coupon;
+		}
+	}
+
+	/**
+	 * A browser with an open stream. Its frames are written by at most one thread at a time, in order: a writer started
+	 * by a new frame, or the container thread that calls back when the connection can take more data.
+	 */
+	private final class Subscriber implements WriteListener, AsyncListener {
+
+		private final AsyncContext asyncContext;
+		private final ServletOutputStream out;
+		private final ArrayBlockingQueue<byte[]> frames = new ArrayBlockingQueue<byte[]>(bufferedFrames);
+		// Held from the start until the container calls back the first time, so no frame is written before it.
+		private final AtomicBoolean draining = new AtomicBoolean(true);
+		private final AtomicBoolean isCompleted = new AtomicBoolean();
+		private volatile boolean started;
+		private volatile boolean writePossible;
+		private volatile boolean closed;
+
+		private Subscriber(AsyncContext asyncContext, ServletOutputStream out) {
+			this.asyncContext = asyncContext;
+			this.out = out;
+		}
+
+		/**
+		 * Queueing a frame, and starting a writer if none is writing the frames of this subscriber.
+		 * A subscriber whose queue is full is closed, and a writer completes the stream.
+		 */
+		private void offer(byte[] frame) {
+			if (closed) {
+				return;
+			}
+			if (!frames.offer(frame)) {
+				close();
+				dropped.increment();
+			}
+			if (started && draining.compareAndSet(false, true)) {
+				writers.execute(this::drain);
+			}
+		}
+
+		@Override
+		public void onWritePossible() {
+			writePossible = true;
+			if (!started) {
+				started = true;
+				drain();
+			}
+			else if (draining.compareAndSet(false, true)) {
+				drain();
+			}
+		}
+
+		/**
+		 * Writing the queued frames until the queue is empty or the connection takes no more data. A call back of the
+		 * container that comes while writing is not lost, the writing goes on after it.
+		 */
+		private void drain() {
+			boolean blocked;
+			do {
+				writePossible = false;
+				try {
+					blocked = write();
+				} catch (IOException | IllegalStateException e) {
+					// The browser left, or the stream was already completed.
+					close();
+					blocked = true;
+				}
+				draining.set(false);
+			} while (!closed && (writePossible || !blocked && !frames.isEmpty()) && draining.compareAndSet(false, true));
+
+			if (closed) {
+				frames.clear();
+				complete();
+			}
+		}
+
+		/**
+		 * @return If the connection takes no more data for now, the container calls back when it does.
+		 */
+		private boolean write() throws IOException {
+			while (!closed) {
+				if (!out.isReady()) {
+					return true;
+				}
+				byte[] frame = frames.poll();
+				if (frame == null) {
+					out.flush();
+					return !out.isReady();
+				}
+				out.write(frame);
+			}
+			return true;
+		}
+
+		private void close() {
+			closed = true;
+			if (subscribers.remove(this)) {
+				subscriberCount.decrementAndGet();
+			}
+		}
+
+		private void complete() {
+			if (isCompleted.compareAndSet(false, true)) {
+				try {
+					asyncContext.complete();
+				} catch (RuntimeException e) {
+					logger.debug("Completing a stream of coupon changes failed", e);
+				}
+			}
+		}
+
+		@Override
+		public void onError(Throwable t) {
+			close();
+			complete();
+		}
+
+		@Override
+		public void onTimeout(AsyncEvent event) {
+			close();
+			complete();
+		}
+
+		@Override
+		public void onError(AsyncEvent event) {
+			close();
+			complete();
+		}
+
+		/**
+		 * Called by the container after the stream was completed, by this node or by the container.
+		 */
+		@Override
+		public void onComplete(AsyncEvent event) {
+			isCompleted.set(true);
+			close();
+		}
+
+		@Override
+		public void onStartAsync(AsyncEvent event) {
+		}
+	}
+
+}
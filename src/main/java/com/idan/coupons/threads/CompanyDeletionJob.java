@@ -0,0 +1,113 @@
+package com.idan.coupons.threads;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.beans.CompanyDeletionStatus;
+import com.idan.coupons.dao.CouponDao;
+import com.idan.coupons.dao.SalesStatsDao;
+import com.idan.coupons.enums.JobState;
+import com.idan.coupons.utils.DateUtils;
+
+/**
+ * Removing the coupons and the purchases of removed companies in the background.
+ * The coupons are removed in chunks, and the purchases of each chunk are removed in chunks before it, so every
+ * transaction is short and no coupon is loaded. Each removed purchase is recorded in the purchase ledger, and each
+ * removed purchase and coupon is published. The in-memory catalogs already hid the coupons when the company was removed.
+ */
+@Component
+public class CompanyDeletionJob {
+
+	private static final Logger logger = LogManager.getLogger(CompanyDeletionJob.class);
+
+	private static final int COUPONS_PER_CHUNK = 500;
+	private static final int PURCHASES_PER_CHUNK = 10000;
+
+	@Autowired
+	private CouponDao couponDao;
+
+	@Autowired
+	private SalesStatsDao salesStatsDao;
+
+	private final ConcurrentHashMap<Long, CompanyDeletionStatus> statuses = new ConcurrentHashMap<Long, CompanyDeletionStatus>();
+
+	// A single thread, so removals don't compete with each other for the DB.
+	private ExecutorService executor;
+
+	@PostConstruct
+	public void start() {
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "CompanyDeletionJob");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@PreDestroy
+	public void stop() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Starting the removal of the coupons of a company that was removed, unless it is already queued or running.
+	 * @param companyID - the ID of the removed company.
+	 * @return The status of the removal.
+	 */
+	public CompanyDeletionStatus submit(Long companyID) {
+		CompanyDeletionStatus newStatus = new CompanyDeletionStatus(companyID);
+		CompanyDeletionStatus status = statuses.merge(companyID, newStatus, (current, submitted) ->
+				current.getState() == JobState.QUEUED || current.getState() == JobState.RUNNING ? current : submitted);
+		if (status == newStatus) {
+			executor.execute(() -> run(status));
+		}
+		return status;
+	}
+
+	/**
+	 * @param companyID - the ID of the removed company.
+	 * @return The status of the last removal of the company since the server started, or null if there is none.
+	 */
+	public CompanyDeletionStatus getStatus(Long companyID) {
+		return statuses.get(companyID);
+	}
+
+	private void run(CompanyDeletionStatus status) {
+		Long companyID = status.getCompanyId();
+		status.setStartTime(DateUtils.getCurrentDateAndTime());
+		status.setState(JobState.RUNNING);
+		try {
+			List<Long> couponIDs = couponDao.getCouponIDsByCompanyID(companyID, COUPONS_PER_CHUNK);
+			while (!couponIDs.isEmpty()) {
+				int removedPurchases;
+				do {
+					removedPurchases = couponDao.removePurchasesOfCoupons(couponIDs, PURCHASES_PER_CHUNK);
+					status.setRemovedPurchases(status.getRemovedPurchases() + removedPurchases);
+				} while (removedPurchases == PURCHASES_PER_CHUNK);
+
+				status.setRemovedPurchases(status.getRemovedPurchases() + couponDao.removeCouponsByCouponIDs(couponIDs));
+				status.setRemovedCoupons(status.getRemovedCoupons() + couponIDs.size());
+
+				couponIDs = couponDao.getCouponIDsByCompanyID(companyID, COUPONS_PER_CHUNK);
+			}
+			salesStatsDao.removeCompanySales(companyID);
+			status.setState(JobState.COMPLETED);
+		} catch (RuntimeException e) {
+			logger.error(DateUtils.getCurrentDateAndTime() + ", Removing the coupons of company " + companyID + " failed", e);
+			status.setError(e.getMessage());
+			status.setState(JobState.FAILED);
+		} finally {
+			status.setEndTime(DateUtils.getCurrentDateAndTime());
+		}
+	}
+
+}
@@ -0,0 +1,30 @@
+package com.idan.coupons.threads;
+
+import java.util.TimerTask;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.idan.coupons.purchases.CustomerPurchasesCache;
+import com.idan.coupons.utils.DateUtils;
+
+@Component
+public class EvictIdlePurchasesTimerTask extends TimerTask{
+
+	@Autowired
+	private CustomerPurchasesCache customerPurchasesCache;
+	private static final Logger logger = LogManager.getLogger(EvictIdlePurchasesTimerTask.class);
+
+	@Override
+	public void run() {
+
+		int evicted = customerPurchasesCache.evictIdle();
+		if (evicted > 0) {
+			logger.info(DateUtils.getCurrentDateAndTime() + ", Purchases of " + evicted + " idle customers evicted");
+		}
+
+	}
+
+}
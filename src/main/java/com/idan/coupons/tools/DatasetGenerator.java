@@ -0,0 +1,348 @@
+package com.idan.coupons.tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import org.flywaydb.core.Flyway;
+
+import com.idan.coupons.enums.CouponType;
+import com.idan.coupons.utils.DateCodec;
+
+/**
+ * Loading a synthetic dataset of companies, customers, coupons and purchases into an empty DB, for testing the server
+ * and the query plans at scale.
+ * The rows are written with multi-row inserts in the order of their primary keys, and every value is drawn from
+ * random generators seeded from a single seed, so the same settings always load the same dataset.
+ * The data is skewed as in production: a few companies issue most of the coupons, a few coupons take most of the
+ * purchases, the types and the prices of the coupons are uneven, and some of the coupons have already expired.
+ *
+ * The DB and the volumes are read from coupons.properties, and can be overridden with system properties, for example:
+ * java -Dcoupons.dataset.customers=100000 -Dcoupons.dataset.seed=7 com.idan.coupons.tools.DatasetGenerator
+ */
+public class DatasetGenerator {
+
+	// Rows of a single insert statement.
+	private static final int ROWS_PER_INSERT = 1000;
+	// Insert statements of a single transaction.
+	private static final int INSERTS_PER_COMMIT = 20;
+
+	// Relative weights of the coupon types, by the ordinals of CouponType.
+	private static final int[] TYPE_WEIGHTS = {30, 20, 12, 10, 8, 8, 4, 8};
+
+	// Prices are log-normal around e^3.5 (about 33), between 1 and 5000.
+	private static final double PRICE_LOG_MEAN = 3.5;
+	private static final double PRICE_LOG_DEVIATION = 0.9;
+	private static final double MIN_PRICE = 1;
+	private static final double MAX_PRICE = 5000;
+
+	// Coupons last for about two months on average. Some of them have expired during the last month, so the removal of
+	// the expired coupons has work to do, and the rest end within the next months.
+	private static final double MEAN_DAYS_OF_COUPON = 60;
+	private static final double EXPIRED_RATIO = 0.2;
+	private static final int MAX_DAYS_SINCE_EXPIRY = 30;
+
+	private static final int MAX_AMOUNT = 1000;
+	private static final double SOLD_OUT_RATIO = 0.05;
+
+	// Spreads the popular ranks over the IDs, it has no common factor with any table size below it.
+	private static final long RANK_STRIDE = 2654435761L;
+
+	private static final String PASSWORD = "Dataset1";
+	private static final String EMAIL_DOMAIN = "@dataset.example";
+
+	private final long seed;
+	private final int companies;
+	private final int customers;
+	private final int coupons;
+	private final long purchases;
+
+	private DatasetGenerator(Properties properties) {
+		seed = Long.parseLong(properties.getProperty("coupons.dataset.seed", "1"));
+		companies = Integer.parseInt(properties.getProperty("coupons.dataset.companies", "10000"));
+		customers = Integer.parseInt(properties.getProperty("coupons.dataset.customers", "5000000"));
+		coupons = Integer.parseInt(properties.getProperty("coupons.dataset.coupons", "2000000"));
+		purchases = Long.parseLong(properties.getProperty("coupons.dataset.purchases", "100000000"));
+	}
+
+	public static void main(String[] args) throws IOException, SQLException {
+
+		Properties properties = new Properties();
+		try (InputStream input = DatasetGenerator.class.getClassLoader().getResourceAsStream("coupons.properties")) {
+			if (input != null) {
+				properties.load(input);
+			}
+		}
+		properties.putAll(System.getProperties());
+
+		String url = properties.getProperty("coupons.db.primary.url");
+		String username = properties.getProperty("coupons.db.primary.username");
+		String password = properties.getProperty("coupons.db.primary.password");
+
+		// The schema is created by the same migrations as on the startup of the server.
+		Flyway.configure().dataSource(url, username, password).baselineOnMigrate(true).baselineVersion("0").load().migrate();
+
+		try (Connection connection = DriverManager.getConnection(url, username, password)) {
+			new DatasetGenerator(properties).load(connection);
+		}
+	}
+
+	private void load(Connection connection) throws SQLException {
+
+		for (String table : new String[] {"company", "customer", "Coupon", "customer_coupon", "coupon_sales", "company_sales"}) {
+			if (!isEmpty(connection, table)) {
+				throw new IllegalStateException("The table " + table + " is not empty, the dataset is loaded only into an empty DB.");
+			}
+		}
+
+		connection.setAutoCommit(false);
+		try (Statement statement = connection.createStatement()) {
+			// The generated names and emails are unique, so the unique constraints are not checked row by row.
+			statement.execute("SET unique_checks = 0");
+		}
+
+		long start = System.currentTimeMillis();
+		loadCompanies(connection);
+		loadCustomers(connection);
+		loadCoupons(connection);
+		long loadedPurchases = loadPurchases(connection);
+		loadSalesStats(connection);
+		System.out.println("Loaded " + companies + " companies, " + customers + " customers, " + coupons + " coupons and "
+				+ loadedPurchases + " purchases with seed " + seed + " in " + (System.currentTimeMillis() - start) / 1000 + " seconds.");
+	}
+
+	private void loadCompanies(Connection connection) throws SQLException {
+
+		try (MultiRowInsert insert = new MultiRowInsert(connection, "company (CompanyID, CompanyName, CompanyPassword, CompanyEmail)")) {
+			for (int companyID = 1; companyID <= companies; companyID++) {
+				insert.row().append(companyID).append(", 'Company ").append(companyID).append("', '").append(PASSWORD)
+						.append("', 'company").append(companyID).append(EMAIL_DOMAIN).append('\'');
+				insert.endRow();
+			}
+		}
+		System.out.println("Loaded " + companies + " companies.");
+	}
+
+	private void loadCustomers(Connection connection) throws SQLException {
+
+		try (MultiRowInsert insert = new MultiRowInsert(connection, "customer (CustomerID, CustomerName, CustomerPassword, CustomerEmail)")) {
+			for (int customerID = 1; customerID <= customers; customerID++) {
+				insert.row().append(customerID).append(", 'Customer ").append(customerID).append("', '").append(PASSWORD)
+						.append("', 'customer").append(customerID).append(EMAIL_DOMAIN).append('\'');
+				insert.endRow();
+				if (customerID % 1000000 == 0) {
+					System.out.println("Loaded " + customerID + " customers.");
+				}
+			}
+		}
+		System.out.println("Loaded " + customers + " customers.");
+	}
+
+	private void loadCoupons(Connection connection) throws SQLException {
+
+		SplittableRandom random = new SplittableRandom(seed * 31 + 1);
+		CouponType[] types = CouponType.values();
+		int totalTypeWeight = 0;
+		for (int weight : TYPE_WEIGHTS) {
+			totalTypeWeight += weight;
+		}
+		int today = DateCodec.today();
+		char[] date = new char[10];
+
+		try (MultiRowInsert insert = new MultiRowInsert(connection, "Coupon (CouponID, CouponTitle, CouponStartDate, CouponEndDate,"
+				+ " CouponAmount, CouponType, CouponMessage, CouponPrice, CouponImage, CompanyID)")) {
+			for (int couponID = 1; couponID <= coupons; couponID++) {
+
+				int type = 0;
+				for (int draw = random.nextInt(totalTypeWeight); draw >= TYPE_WEIGHTS[type]; type++) {
+					draw -= TYPE_WEIGHTS[type];
+				}
+				double price = Math.round(Math.min(MAX_PRICE, Math.max(MIN_PRICE,
+						Math.exp(PRICE_LOG_MEAN + PRICE_LOG_DEVIATION * nextGaussian(random)))) * 100) / 100.0;
+				int endDay = random.nextDouble() < EXPIRED_RATIO ? today - 1 - random.nextInt(MAX_DAYS_SINCE_EXPIRY)
+						: today + 1 + nextExponential(random, MEAN_DAYS_OF_COUPON);
+				int startDay = endDay - 1 - nextExponential(random, MEAN_DAYS_OF_COUPON);
+				int amount = random.nextDouble() < SOLD_OUT_RATIO ? 0 : 1 + random.nextInt(MAX_AMOUNT);
+				long companyID = skewedID(random, companies);
+
+				StringBuilder row = insert.row();
+				row.append(couponID).append(", 'Coupon ").append(couponID).append("', '");
+				DateCodec.format(startDay, date, 0);
+				row.append(date).append("', '");
+				DateCodec.format(endDay, date, 0);
+				row.append(date).append("', ").append(amount).append(", ").append(type).append(", '")
+						.append(types[type]).append(" coupon number ").append(couponID)
+						.append(", generated for testing the coupon system at scale.', ")
+						.append(price).append(", NULL, ").append(companyID);
+				insert.endRow();
+				if (couponID % 1000000 == 0) {
+					System.out.println("Loaded " + couponID + " coupons.");
+				}
+			}
+		}
+		System.out.println("Loaded " + coupons + " coupons.");
+	}
+
+	/**
+	 * Loading the purchases customer by customer, each one with an exponentially distributed number of distinct coupons,
+	 * drawn by their popularity. The mean is taken from the purchases that are left for the customers that are left,
+	 * so the coupons that were drawn twice are made up by the next customers.
+	 * The rows are written in the order of the primary key (CustomerID, CouponID).
+	 * @return The number of loaded purchases, close to the requested number.
+	 */
+	private long loadPurchases(Connection connection) throws SQLException {
+
+		SplittableRandom random = new SplittableRandom(seed * 31 + 2);
+		long[] couponIDs = new long[16];
+		long loaded = 0;
+		long nextReport = 10000000;
+
+		try (MultiRowInsert insert = new MultiRowInsert(connection, "customer_coupon (CustomerID, CouponID)")) {
+			for (int customerID = 1; customerID <= customers && loaded < purchases; customerID++) {
+
+				double meanPerCustomer = (double) (purchases - loaded) / (customers - customerID + 1);
+				int count = (int) Math.min(Math.min(coupons, purchases - loaded), nextExponential(random, meanPerCustomer));
+				if (couponIDs.length < count) {
+					couponIDs = new long[Math.max(count, couponIDs.length * 2)];
+				}
+				for (int i = 0; i < count; i++) {
+					couponIDs[i] = skewedID(random, coupons);
+				}
+				Arrays.sort(couponIDs, 0, count);
+
+				for (int i = 0; i < count; i++) {
+					// A customer buys a coupon only once, a popular coupon drawn twice is counted once.
+					if (i > 0 && couponIDs[i] == couponIDs[i - 1]) {
+						continue;
+					}
+					insert.row().append(customerID).append(", ").append(couponIDs[i]);
+					insert.endRow();
+					loaded++;
+				}
+				if (loaded >= nextReport) {
+					System.out.println("Loaded " + loaded + " purchases.");
+					nextReport += 10000000;
+				}
+			}
+		}
+		System.out.println("Loaded " + loaded + " purchases.");
+		return loaded;
+	}
+
+	/**
+	 * Counting the sales of the loaded purchases, as rebuilding the sales statistics does.
+	 */
+	private void loadSalesStats(Connection connection) throws SQLException {
+
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate("INSERT INTO coupon_sales (CouponID, CompanyID, UnitsSold, Revenue)"
+					+ " SELECT coupon.CouponID, coupon.CompanyID, COUNT(*), COUNT(*) * coupon.CouponPrice"
+					+ " FROM customer_coupon purchase JOIN Coupon coupon ON coupon.CouponID = purchase.CouponID"
+					+ " GROUP BY coupon.CouponID, coupon.CompanyID, coupon.CouponPrice");
+			statement.executeUpdate("INSERT INTO company_sales (CompanyID, UnitsSold, Revenue)"
+					+ " SELECT CompanyID, SUM(UnitsSold), SUM(Revenue) FROM coupon_sales GROUP BY CompanyID");
+			connection.commit();
+		}
+		System.out.println("Counted the sales of the purchases.");
+	}
+
+	/**
+	 * Drawing an ID with a Zipf-like popularity, the rank r is drawn with a probability of about 1/r.
+	 * The ranks are spread over the IDs, so the popular rows are not the first ones.
+	 * @param random - the random generator of the table.
+	 * @param size - the number of IDs, from 1 to size.
+	 * @return The drawn ID.
+	 */
+	private static long skewedID(SplittableRandom random, int size) {
+		long rank = Math.min(size - 1, (long) Math.exp(random.nextDouble() * Math.log(size + 1)) - 1);
+		return rank * RANK_STRIDE % size + 1;
+	}
+
+	/**
+	 * An exponentially distributed number, rounded to the nearest integer.
+	 */
+	private static int nextExponential(SplittableRandom random, double mean) {
+		return (int) Math.min(Integer.MAX_VALUE, Math.round(-mean * Math.log(1 - random.nextDouble())));
+	}
+
+	/**
+	 * A normally distributed value with a mean of 0 and a deviation of 1, by the Box-Muller transform.
+	 */
+	private static double nextGaussian(SplittableRandom random) {
+		return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+	}
+
+	private static boolean isEmpty(Connection connection, String table) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement.executeQuery("SELECT 1 FROM " + table + " LIMIT 1")) {
+			return !resultSet.next();
+		}
+	}
+
+	/**
+	 * Writing rows with multi-row insert statements, and committing every few statements.
+	 * The values are written into the statement as literals, they are all generated and never contain quotes.
+	 */
+	private static class MultiRowInsert implements AutoCloseable {
+
+		private final Connection connection;
+		private final Statement statement;
+		private final String prefix;
+		private final StringBuilder sql = new StringBuilder();
+		private int rows;
+		private int statements;
+
+		private MultiRowInsert(Connection connection, String tableAndColumns) throws SQLException {
+			this.connection = connection;
+			this.statement = connection.createStatement();
+			this.prefix = "INSERT INTO " + tableAndColumns + " VALUES ";
+		}
+
+		/**
+		 * Starting a row.
+		 * @return The statement to append the values of the row to, separated by commas.
+		 */
+		private StringBuilder row() {
+			sql.append(rows == 0 ? prefix : ", ").append('(');
+			rows++;
+			return sql;
+		}
+
+		private void endRow() throws SQLException {
+			sql.append(')');
+			if (rows == ROWS_PER_INSERT) {
+				flush();
+			}
+		}
+
+		private void flush() throws SQLException {
+			if (rows == 0) {
+				return;
+			}
+			statement.executeUpdate(sql.toString());
+			sql.setLength(0);
+			rows = 0;
+			if (++statements % INSERTS_PER_COMMIT == 0) {
+				connection.commit();
+			}
+		}
+
+		@Override
+		public void close() throws SQLException {
+			try {
+				flush();
+				connection.commit();
+			} finally {
+				statement.close();
+			}
+		}
+	}
+
+}
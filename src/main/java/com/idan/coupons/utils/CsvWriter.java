@@ -0,0 +1,73 @@
+package com.idan.coupons.utils;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writing CSV rows (RFC 4180) field by field straight to a writer, without building the rows in memory.
+ */
+public class CsvWriter {
+
+	private final Writer writer;
+	private boolean isFirstField = true;
+
+	public CsvWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Writing a text field, quoted only if it contains a comma, a quote or a line break.
+	 * @param value - the value of the field, null is written as an empty field.
+	 * @throws IOException
+	 */
+	public void writeField(String value) throws IOException {
+		startField();
+		if (value == null) {
+			return;
+		}
+		boolean isQuoted = false;
+		for (int i = 0; i < value.length() && !isQuoted; i++) {
+			char c = value.charAt(i);
+			isQuoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+		}
+		if (!isQuoted) {
+			writer.write(value);
+			return;
+		}
+		writer.write('"');
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == '"') {
+				writer.write('"');
+			}
+			writer.write(c);
+		}
+		writer.write('"');
+	}
+
+	/**
+	 * Writing a field of any other type by its string value.
+	 * @param value - the value of the field, null is written as an empty field.
+	 * @throws IOException
+	 */
+	public void writeField(Object value) throws IOException {
+		writeField(value == null ? null : value.toString());
+	}
+
+	/**
+	 * Ending the current row.
+	 * @throws IOException
+	 */
+	public void endRow() throws IOException {
+		writer.write("\r\n");
+		isFirstField = true;
+	}
+
+	private void startField() throws IOException {
+		if (!isFirstField) {
+			writer.write(',');
+		}
+		isFirstField = false;
+	}
+
+}
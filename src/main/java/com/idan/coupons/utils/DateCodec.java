@@ -0,0 +1,195 @@
+package com.idan.coupons.utils;
+
+import java.time.LocalDate;
+
+/**
+ * Converting the dates of the coupons, in the format yyyy-mm-dd used in the DB, to and from the number of days since
+ * 1970-01-01 (the epoch day).
+ * The dates are parsed and validated in a single pass over the characters and formatted into a reusable buffer, so
+ * the validation, the comparison and the expiry of the dates run on an int and don't create any objects.
+ */
+public class DateCodec {
+
+	/**
+	 * Returned by parse() for a date that is not valid.
+	 */
+	public static final int INVALID = Integer.MIN_VALUE;
+
+	// The range of years provided by MySQL.
+	private static final int MIN_YEAR = 1000;
+	private static final int MAX_YEAR = 9999;
+
+	private static final int DATE_LENGTH = 10;
+
+	// Days from 0000-03-01 to 1970-01-01, the calendar is counted from March so the leap day is the last day of a year.
+	private static final int DAYS_TO_EPOCH = 719468;
+	private static final int DAYS_PER_400_YEARS = 146097;
+
+	private static final ThreadLocal<char[]> FORMAT_BUFFER = ThreadLocal.withInitial(() -> new char[DATE_LENGTH]);
+
+	/**
+	 * Parsing a date in the format yyyy-mm-dd. Months and days without a leading zero are also accepted.
+	 * @param date - the date as a string.
+	 * @return The epoch day of the date, or INVALID if it is null, not in the format or not a day of the calendar.
+	 */
+	public static int parse(CharSequence date) {
+
+		if (date == null) {
+			return INVALID;
+		}
+
+		int length = date.length();
+		int position = 0;
+		int year = 0;
+		int month = 0;
+		int day = 0;
+
+		// Reading the three fields, each one is a run of digits ending with '-' or with the end of the date.
+		for (int field = 0; field < 3; field++) {
+			int maxDigits = field == 0 ? 4 : 2;
+			int value = 0;
+			int digits = 0;
+			while (position < length && date.charAt(position) != '-') {
+				char c = date.charAt(position++);
+				if (c < '0' || c > '9' || ++digits > maxDigits) {
+					return INVALID;
+				}
+				value = value * 10 + (c - '0');
+			}
+			if (digits == 0) {
+				return INVALID;
+			}
+			if (field < 2) {
+				if (position == length) {
+					return INVALID;
+				}
+				position++;
+			}
+			if (field == 0) {
+				year = value;
+			}
+			else if (field == 1) {
+				month = value;
+			}
+			else {
+				day = value;
+			}
+		}
+		if (position != length) {
+			return INVALID;
+		}
+
+		if (year < MIN_YEAR || year > MAX_YEAR || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+			return INVALID;
+		}
+		return toEpochDay(year, month, day);
+	}
+
+	/**
+	 * @param year - the year.
+	 * @param month - the month, 1 for January.
+	 * @param day - the day of the month.
+	 * @return The epoch day of the date.
+	 */
+	public static int toEpochDay(int year, int month, int day) {
+
+		int marchYear = month <= 2 ? year - 1 : year;
+		int era = Math.floorDiv(marchYear, 400);
+		int yearOfEra = marchYear - era * 400;
+		int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return era * DAYS_PER_400_YEARS + dayOfEra - DAYS_TO_EPOCH;
+	}
+
+	/**
+	 * @return The epoch day of today, in the time zone of the server.
+	 */
+	public static int today() {
+		return (int) LocalDate.now().toEpochDay();
+	}
+
+	/**
+	 * Formatting an epoch day as a date in the format yyyy-mm-dd.
+	 * @param epochDay - the epoch day of a date in the years 0 to 9999.
+	 * @return The date as a string.
+	 */
+	public static String format(int epochDay) {
+		char[] buffer = FORMAT_BUFFER.get();
+		format(epochDay, buffer, 0);
+		return new String(buffer);
+	}
+
+	/**
+	 * Formatting an epoch day as a date in the format yyyy-mm-dd into a buffer.
+	 * @param epochDay - the epoch day of a date in the years 0 to 9999.
+	 * @param buffer - the buffer to write the 10 characters of the date into.
+	 * @param offset - the position in the buffer of the first character.
+	 * @return The position in the buffer after the last character.
+	 */
+	public static int format(int epochDay, char[] buffer, int offset) {
+
+		int days = epochDay + DAYS_TO_EPOCH;
+		int era = Math.floorDiv(days, DAYS_PER_400_YEARS);
+		int dayOfEra = days - era * DAYS_PER_400_YEARS;
+		int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / (DAYS_PER_400_YEARS - 1)) / 365;
+		int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		int marchMonth = (5 * dayOfYear + 2) / 153;
+		int day = dayOfYear - (153 * marchMonth + 2) / 5 + 1;
+		int month = marchMonth < 10 ? marchMonth + 3 : marchMonth - 9;
+		int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+		buffer[offset] = (char) ('0' + year / 1000);
+		buffer[offset + 1] = (char) ('0' + year / 100 % 10);
+		buffer[offset + 2] = (char) ('0' + year / 10 % 10);
+		buffer[offset + 3] = (char) ('0' + year % 10);
+		buffer[offset + 4] = '-';
+		buffer[offset + 5] = (char) ('0' + month / 10);
+		buffer[offset + 6] = (char) ('0' + month % 10);
+		buffer[offset + 7] = '-';
+		buffer[offset + 8] = (char) ('0' + day / 10);
+		buffer[offset + 9] = (char) ('0' + day % 10);
+		return offset + DATE_LENGTH;
+	}
+
+	/**
+	 * Bringing a valid date to the format used in the DB, with leading zeros, so the dates in the DB compare as strings
+	 * in the order of the days.
+	 * @param date - a valid date.
+	 * @return The date in the format yyyy-mm-dd.
+	 */
+	public static String normalize(String date) {
+		int epochDay = parse(date);
+		if (epochDay == INVALID) {
+			return date;
+		}
+		return date.length() == DATE_LENGTH ? date : format(epochDay);
+	}
+
+	/**
+	 * @param year - the year.
+	 * @param month - the month, 1 for January.
+	 * @return The number of days in the month.
+	 */
+	public static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return isLeapYear(year) ? 29 : 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	/**
+	 * @param year - the year.
+	 * @return If the year has a February 29.
+	 */
+	public static boolean isLeapYear(int year) {
+		return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0);
+	}
+
+}
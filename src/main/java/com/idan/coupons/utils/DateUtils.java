@@ -13,29 +13,18 @@ public class DateUtils {
 	 */
 	public static String dateToStrConverter(GregorianCalendar date) {
 		
-		String[] dateStrArr = {	String.format("%04d", date.get(Calendar.YEAR)),
-								String.format("%02d", (date.get(Calendar.MONTH)+1)),  // GregorianCalendar sets January as 0;
-								String.format("%02d", date.get(Calendar.DAY_OF_MONTH))};
-		
-		return stringArrJoiner(dateStrArr);
+		return DateCodec.format(DateCodec.toEpochDay(date.get(Calendar.YEAR),
+				date.get(Calendar.MONTH)+1,	// GregorianCalendar sets January as 0;
+				date.get(Calendar.DAY_OF_MONTH)));
 	}
 	
 	/**
-	 * Convert the string format used in the DB to a date object.
-	 * @param dateStr - String in the format yyyy-mm-dd that is used in the DB.
-	 * @return a GregorianCalendar Object of the date.
+	 * Get today's date in the format used in the DB.
+	 * @return String in the format yyyy-mm-dd of the current date.
 	 */
-	public static GregorianCalendar strToDateConverter(String dateStr) {
-		
-		String[] dateStrArr = stringDevider(dateStr);
-		GregorianCalendar gc = new GregorianCalendar();
-		
-		gc.set(Calendar.YEAR, Integer.parseInt(dateStrArr[0]));
-		gc.set(Calendar.MONTH, Integer.parseInt(dateStrArr[1])-1);	// GregorianCalendar sets January as 0;
-		gc.set(Calendar.DAY_OF_MONTH, Integer.parseInt(dateStrArr[2]));
-		
-		return gc;
+	public static String getCurrentDate() {
 		
+		return DateCodec.format(DateCodec.today());
 	}
 	
 	/**
@@ -20,12 +20,17 @@ public class LoginUtils {
 				pageRequest.endsWith("/byCouponType") ||
 				pageRequest.endsWith("/upToPrice") ||
 				pageRequest.endsWith("/newest") ||
+				pageRequest.endsWith("/search") ||
+				pageRequest.endsWith("/query") ||
+				(pageRequest.endsWith("/stream") && pageMethod.equals("GET")) ||
 				pageRequest.endsWith("/upToEndDate") ||
 				pageRequest.endsWith("/byCompanyID") ||
 				(pageRequest.endsWith("/customers") &&  (pageMethod.equals("POST") )) || 
 				(pageRequest.endsWith("/companies") && (pageMethod.equals("GET") || pageMethod.equals("POST") )) ||
 				pageRequest.endsWith("/byCompanyName") ||
-				pageRequest.endsWith("/logout");
+				pageRequest.endsWith("/logout") ||
+				// Scraped by the monitoring without logging in.
+				(pageRequest.endsWith("/metrics") && pageMethod.equals("GET"));
 	}
 
 }
@@ -1,7 +1,5 @@
 package com.idan.coupons.utils;
 
-import java.util.GregorianCalendar;
-
 import javax.servlet.http.HttpServletRequest;
 
 import com.idan.coupons.enums.ErrorType;
@@ -19,78 +17,8 @@ public class ValidationUtils {
 	 */
 	public static boolean isValidDateFormat(String str) {
 
-		if(str == null) {
-			return false;
-		}
-		
-		String[] date = str.split("-");
-		
-		if(date.length !=3) {
-			return false;
-		}
-		
-		int year,month,day;
+		return DateCodec.parse(str) != DateCodec.INVALID;
 		
-		try {
-			year 	= Integer.parseInt(date[0]);
-			month 	= Integer.parseInt(date[1]);
-			day 	= Integer.parseInt(date[2]);
-		} catch (NumberFormatException e) {
-			// If an exception was thrown then it is not a valid date format.
-			return false;
-		}
-		
-		// Checking if the year is in the range provided by MySQL.
-		if(year < 1000 || year > 9999) {
-			return false;
-		}
-		
-		if(month < 1 || month > 12) {
-			return false;
-		}
-		
-		if((month == 1 || month == 3 || month == 5 || month == 7 || month == 8 || month == 10 || month == 12) && (day > 31 || day < 1)) {
-			return false;
-		}
-		
-		if((month == 4 || month == 6 || month == 9 || month == 11) && (day > 30 || day < 1)) {
-			return false;
-		}
-		boolean isLeapYear = false;
-		
-		// For February doing a leap year check.
-		if(month == 2) {
-			if(year % 4 == 0)
-			{
-				if( year % 100 == 0)
-				{
-					if ( year % 400 == 0) {
-						isLeapYear = true;
-					}
-					else {
-						isLeapYear = false;
-					}
-				}
-				else {
-					isLeapYear = true;
-				}
-			}
-			else {
-				isLeapYear = false;
-			}
-			
-			if(isLeapYear && (day <1 || day > 29)) {
-				return false;
-			}
-			
-			if(!isLeapYear && (day <1 || day > 28)) {
-				return false;
-			}
-		}
-			
-		
-		
-		return true;
 	}
 	
 	/**
@@ -302,10 +230,7 @@ public class ValidationUtils {
 			return false;
 		}
 		
-		GregorianCalendar startDate = DateUtils.strToDateConverter(couponStartDate);
-		GregorianCalendar endDate = DateUtils.strToDateConverter(couponEndDate);
-		
-		return startDate.after(endDate);
+		return DateCodec.parse(couponStartDate) > DateCodec.parse(couponEndDate);
 	}
 	
 	/**
@@ -319,9 +244,7 @@ public class ValidationUtils {
 			return false;
 		}
 		
-		GregorianCalendar startDate = DateUtils.strToDateConverter(couponStartDate);
-		
-		return startDate.before(new GregorianCalendar());
+		return DateCodec.parse(couponStartDate) < DateCodec.today();
 	}
 	
 	/**
@@ -336,33 +259,46 @@ public class ValidationUtils {
 		String userIDstr = (String) request.getAttribute("userID");
 		Long userID = null;
 		if(userIDstr == null || userType == null) {
-			throw new ApplicationException(ErrorType.COOKIES_LOST, DateUtils.getCurrentDateAndTime()
-					+" problem with cookies.");
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
 		}
 
 		userID = Long.parseLong(userIDstr);
 
 		if ( !userType.equals(UserType.ADMIN.name()) && !userID.equals(requestId)) {
-			throw new ApplicationException(ErrorType.UNAUTHORIZED_ACTION, DateUtils.getCurrentDateAndTime()
-					+" Unauthorized action.");
+			throw new ApplicationException(ErrorType.UNAUTHORIZED_ACTION, " Unauthorized action.");
 		} 
 	}
 	
 
 
+	/**
+	 * Validating that the request was made by the admin.
+	 * @param request - an HttpServletRequest object with the user details of the cookies.
+	 * @throws ApplicationException
+	 */
+	public static void validateAdmin(HttpServletRequest request) throws ApplicationException {
+		
+		String userType = (String) request.getAttribute("userType");
+		if(userType == null) {
+			throw new ApplicationException(ErrorType.COOKIES_LOST, " problem with cookies.");
+		}
+		
+		if(!userType.equals(UserType.ADMIN.name())) {
+			throw new ApplicationException(ErrorType.UNAUTHORIZED_ACTION, " Unauthorized action.");
+		}
+	}
+	
 	public static Long validateAndGetetCustomerID(HttpServletRequest request) throws ApplicationException {
 		String userType = (String) request.getAttribute("userType");
 		String userIDstr = (String) request.getAttribute("userID");
 		Long userID = null;
 
 		if(userType.equals(UserType.CUSTOMER.name())) {
-			throw new ApplicationException(ErrorType.UNAUTHORIZED_ACTION, DateUtils.getCurrentDateAndTime()
-					+" Unauthorized action.");
+			throw new ApplicationException(ErrorType.UNAUTHORIZED_ACTION, " Unauthorized action.");
 		}
 
 		if(userIDstr == null) {
-			throw new ApplicationException(ErrorType.SYSTEM_ERROR, DateUtils.getCurrentDateAndTime()
-					+" System error, problem with cookies.");
+			throw new ApplicationException(ErrorType.SYSTEM_ERROR, " System error, problem with cookies.");
 		}
 
 		userID = Long.valueOf(userIDstr);
@@ -0,0 +1,67 @@
+-- The tables of the coupon system as the entities map them.
+-- The tables are created only if they are missing, so a database that was set up before the migrations is
+-- brought under them without being rebuilt.
+
+CREATE TABLE IF NOT EXISTS company (
+	CompanyID BIGINT NOT NULL AUTO_INCREMENT,
+	CompanyName VARCHAR(255) NOT NULL,
+	CompanyPassword VARCHAR(255) NOT NULL,
+	CompanyEmail VARCHAR(255) NOT NULL,
+	PRIMARY KEY (CompanyID)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS customer (
+	CustomerID BIGINT NOT NULL AUTO_INCREMENT,
+	CustomerName VARCHAR(255) NOT NULL,
+	CustomerPassword VARCHAR(255) NOT NULL,
+	CustomerEmail VARCHAR(255) NOT NULL,
+	PRIMARY KEY (CustomerID)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS Coupon (
+	CouponID BIGINT NOT NULL AUTO_INCREMENT,
+	CouponTitle VARCHAR(255) NOT NULL,
+	CouponStartDate VARCHAR(255) NOT NULL,
+	CouponEndDate VARCHAR(255) NOT NULL,
+	CouponAmount INT NOT NULL,
+	CouponType INT NOT NULL,
+	CouponMessage VARCHAR(255) NOT NULL,
+	CouponPrice DOUBLE NOT NULL,
+	CouponImage VARCHAR(255),
+	CompanyID BIGINT NOT NULL,
+	PRIMARY KEY (CouponID)
+) ENGINE=InnoDB;
+
+-- A customer buys a coupon at most once.
+CREATE TABLE IF NOT EXISTS customer_coupon (
+	CustomerID BIGINT NOT NULL,
+	CouponID BIGINT NOT NULL,
+	PRIMARY KEY (CustomerID, CouponID)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS coupon_sales (
+	CouponID BIGINT NOT NULL,
+	CompanyID BIGINT NOT NULL,
+	UnitsSold BIGINT NOT NULL,
+	Revenue DOUBLE NOT NULL,
+	PRIMARY KEY (CouponID)
+) ENGINE=InnoDB;
+
+CREATE TABLE IF NOT EXISTS company_sales (
+	CompanyID BIGINT NOT NULL,
+	UnitsSold BIGINT NOT NULL,
+	Revenue DOUBLE NOT NULL,
+	PRIMARY KEY (CompanyID)
+) ENGINE=InnoDB;
+
+-- EventType is the ordinal of PurchaseEventType, EventTime is in milliseconds since the epoch.
+CREATE TABLE IF NOT EXISTS purchase_ledger (
+	Seq BIGINT NOT NULL AUTO_INCREMENT,
+	EventType INT NOT NULL,
+	CouponID BIGINT NOT NULL,
+	CustomerID BIGINT NOT NULL,
+	CompanyID BIGINT NOT NULL,
+	Price DOUBLE NOT NULL,
+	EventTime BIGINT NOT NULL,
+	PRIMARY KEY (Seq)
+) ENGINE=InnoDB;
@@ -0,0 +1,16 @@
+-- The unique constraints that the DAOs map to NAME_IS_ALREADY_EXISTS and EMAIL_IS_ALREADY_EXISTS.
+-- Built in place without locking the tables, the writes go on while the indexes are built.
+-- Fails if the table already holds duplicates, which must be resolved by hand before the migration.
+
+ALTER TABLE company
+	ADD CONSTRAINT UK_CompanyName UNIQUE (CompanyName),
+	ADD CONSTRAINT UK_CompanyEmail UNIQUE (CompanyEmail),
+	ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE customer
+	ADD CONSTRAINT UK_CustomerEmail UNIQUE (CustomerEmail),
+	ALGORITHM=INPLACE, LOCK=NONE;
+
+ALTER TABLE Coupon
+	ADD CONSTRAINT UK_CouponTitle UNIQUE (CouponTitle),
+	ALGORITHM=INPLACE, LOCK=NONE;
@@ -0,0 +1,18 @@
+-- Indexes for the queries that filter the coupons and the purchases, reported by the named query catalog.
+-- Built in place without locking the tables, the writes go on while the indexes are built.
+
+ALTER TABLE Coupon
+	ADD INDEX IX_Coupon_CompanyID (CompanyID),
+	ADD INDEX IX_Coupon_CouponEndDate (CouponEndDate),
+	ADD INDEX IX_Coupon_CouponType (CouponType),
+	ALGORITHM=INPLACE, LOCK=NONE;
+
+-- The purchases are removed by coupon, the primary key only serves the lookups by customer.
+ALTER TABLE customer_coupon
+	ADD INDEX IX_customer_coupon_CouponID (CouponID),
+	ALGORITHM=INPLACE, LOCK=NONE;
+
+-- The sales of the coupons are summed by company.
+ALTER TABLE coupon_sales
+	ADD INDEX IX_coupon_sales_CompanyID (CompanyID),
+	ALGORITHM=INPLACE, LOCK=NONE;
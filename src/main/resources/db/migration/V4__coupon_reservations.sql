@@ -0,0 +1,13 @@
+-- Units of coupons held for customers during checkout. The held units are already taken from the amount of the coupon,
+-- so the amount is the stock left for new holds and purchases, and a hold is returned to it when it expires.
+-- A customer holds a coupon at most once, and the expired holds are found by their expiry time.
+
+CREATE TABLE coupon_reservation (
+	ReservationID BIGINT NOT NULL AUTO_INCREMENT,
+	CouponID BIGINT NOT NULL,
+	CustomerID BIGINT NOT NULL,
+	ExpiresAt BIGINT NOT NULL,
+	PRIMARY KEY (ReservationID),
+	CONSTRAINT UK_CouponReservation UNIQUE (CustomerID, CouponID),
+	INDEX IX_coupon_reservation_ExpiresAt (ExpiresAt)
+) ENGINE=InnoDB;
@@ -0,0 +1,120 @@
+package com.idan.coupons.catalog;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.LongPredicate;
+
+import org.junit.Test;
+
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.enums.CouponType;
+
+/**
+ * The filters of the catalog after the changes it follows, compared with the coupons the changes leave.
+ */
+public class CouponCatalogTest {
+
+	@Test
+	public void changesAfterTheLoad() {
+		CouponCatalog catalog = new CouponCatalog();
+		List<CouponEntity> coupons = new ArrayList<CouponEntity>();
+		for (long couponID = 1; couponID <= 100; couponID++) {
+			coupons.add(coupon(couponID, couponID % 3 + 1, "2030-01-01", couponID));
+		}
+		catalog.load(coupons);
+
+		// Appending past the spare capacity, inserting an older coupon and updating one.
+		for (long couponID = 101; couponID <= 300; couponID++) {
+			catalog.couponCreated(coupon(couponID, 4, "2031-01-01", couponID));
+		}
+		catalog.couponCreated(coupon(0, 4, "2031-01-01", 0));
+		catalog.couponUpdated(coupon(50, 4, "2031-01-01", 5));
+		catalog.couponPurchased(50L, 7L);
+		assertEquals(9, catalog.getAmount(50L));
+
+		// Removing a coupon and the coupons of a company, which only marks their rows.
+		catalog.couponRemoved(120L);
+		catalog.companyRemoved(1L);
+		assertEquals(ids(couponID -> couponID != 120 && (couponID == 0 || couponID > 100 || couponID % 3 != 0)),
+				ids(catalog.getCoupons(null, null, null, null)));
+		assertEquals(ids(couponID -> couponID > 100 && couponID != 120 || couponID == 0 || couponID == 50),
+				ids(catalog.getCouponsByCompanyID(4)));
+		assertEquals(-1, catalog.getAmount(120L));
+
+		// Removing the coupons expired before 2031, which compacts the columns.
+		catalog.couponsExpired("2031-01-01");
+		assertEquals(ids(couponID -> couponID > 100 && couponID != 120 || couponID == 0 || couponID == 50),
+				ids(catalog.getCouponsUpToEndDate("2031-12-31")));
+		assertEquals(Arrays.asList(0L, 50L), ids(catalog.getCouponsUpToPrice(5)));
+
+		// A removed coupon that is created again is back in the catalog.
+		catalog.couponCreated(coupon(120, 4, "2031-01-01", 120));
+		assertEquals(ids(couponID -> couponID > 100 && couponID % 2 == 1), ids(catalog.getCouponsByType(CouponType.Food)));
+		assertEquals(10, catalog.getAmount(120L));
+
+		long[] couponIDs = new long[10];
+		int[] amounts = new int[10];
+		assertEquals(10, catalog.getAmounts(50L, couponIDs, amounts));
+		assertEquals(101L, couponIDs[0]);
+		assertEquals(110L, couponIDs[9]);
+		assertEquals(2, catalog.getAmounts(298L, couponIDs, amounts));
+	}
+
+	@Test
+	public void changesDuringTheLoadAreApplied() {
+		CouponCatalog catalog = new CouponCatalog();
+		// Committed before the coupons are read, so already in them.
+		catalog.couponPurchased(1L, 7L);
+
+		catalog.startLoad();
+		catalog.couponCreated(coupon(3, 1, "2030-01-01", 3));
+		catalog.couponRemoved(2L);
+		catalog.couponPurchased(1L, 8L);
+		catalog.load(Arrays.asList(coupon(1, 1, "2030-01-01", 1), coupon(2, 1, "2030-01-01", 2)));
+
+		assertEquals(Arrays.asList(1L, 3L), ids(catalog.getCoupons(null, null, null, null)));
+		assertEquals(9, catalog.getAmount(1L));
+	}
+
+	@Test
+	public void changesOfAFailedLoadAreDropped() {
+		CouponCatalog catalog = new CouponCatalog();
+		catalog.startLoad();
+		catalog.couponCreated(coupon(3, 1, "2030-01-01", 3));
+		catalog.cancelLoad();
+		catalog.load(Collections.<CouponEntity>emptyList());
+
+		assertEquals(Collections.emptyList(), catalog.getCoupons(null, null, null, null));
+	}
+
+	private static CouponEntity coupon(long couponID, long companyID, String endDate, double price) {
+		return new CouponEntity(couponID, "Coupon " + couponID, "2019-01-01", endDate, 10,
+				CouponType.values()[(int) (couponID % 2)], "message", price, null, companyID);
+	}
+
+	/**
+	 * @return The IDs from 0 to 300 that match the predicate, in their order.
+	 */
+	private static List<Long> ids(LongPredicate predicate) {
+		List<Long> ids = new ArrayList<Long>();
+		for (long couponID = 0; couponID <= 300; couponID++) {
+			if (predicate.test(couponID)) {
+				ids.add(couponID);
+			}
+		}
+		return ids;
+	}
+
+	private static List<Long> ids(List<CouponEntity> coupons) {
+		List<Long> ids = new ArrayList<Long>();
+		for (CouponEntity coupon : coupons) {
+			ids.add(coupon.getCouponId());
+		}
+		return ids;
+	}
+
+}
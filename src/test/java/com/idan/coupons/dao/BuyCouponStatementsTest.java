@@ -0,0 +1,100 @@
+package com.idan.coupons.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.idan.coupons.beans.SqlStatementStats;
+import com.idan.coupons.datasource.SqlStatistics;
+import com.idan.coupons.exceptions.ApplicationException;
+import com.idan.coupons.ledger.PurchaseLedger;
+
+/**
+ * The statements of a purchase, counted by the StatementStatsDataSource, don't depend on the purchasers of the coupon.
+ */
+public class BuyCouponStatementsTest {
+
+	private AnnotationConfigApplicationContext context;
+	private JdbcTemplate primary;
+
+	@Before
+	public void startContext() throws InterruptedException {
+		context = new AnnotationConfigApplicationContext(EmbeddedDbConfig.class);
+		// The ledger writes its entries from its own thread at any time, stopped they stay queued out of the counts.
+		context.getBean(PurchaseLedger.class).stop();
+		// Seeding directly on the primary DB, so the seeding statements are not counted.
+		primary = new JdbcTemplate(context.getBean(EmbeddedDbConfig.class).primaryDataSource());
+		primary.update("INSERT INTO company (CompanyID, CompanyName, CompanyPassword, CompanyEmail) VALUES"
+				+ " (1, 'Pizza', 'pass', 'pizza@mail.com'), (2, 'Spa', 'pass', 'spa@mail.com')");
+	}
+
+	@After
+	public void closeContext() {
+		context.close();
+	}
+
+	@Test
+	public void buyRunsTheSameStatementsWhateverThePurchasers() {
+		// Each coupon of its own company, so both purchases insert the sales counters.
+		createCoupon(1, 1, 1);
+		createCoupon(2, 2, 5000);
+
+		long[] fewPurchasers = countBuy(1, 1000000L);
+		long[] manyPurchasers = countBuy(2, 1000000L);
+
+		// Reading the coupon, taking a unit, inserting the purchase and adding to the two sales counters.
+		assertEquals(5, fewPurchasers[0]);
+		assertEquals(fewPurchasers[0], manyPurchasers[0]);
+		assertEquals("Rows read or changed", fewPurchasers[1], manyPurchasers[1]);
+		assertEquals(5001, primary.queryForInt("SELECT COUNT(*) FROM customer_coupon WHERE CouponID = 2"));
+	}
+
+	/**
+	 * Buying a coupon as the controller does, reading it and buying it in one transaction.
+	 * @return The executed statements and their rows.
+	 */
+	private long[] countBuy(long couponID, long customerID) {
+		long[] before = countStatements();
+		new TransactionTemplate(context.getBean(JpaTransactionManager.class)).execute(status -> {
+			try {
+				CouponDao couponDao = context.getBean(CouponDao.class);
+				couponDao.buyCoupon(customerID, couponDao.getCouponByCouponId(couponID));
+			} catch (ApplicationException e) {
+				throw new IllegalStateException(e);
+			}
+			return null;
+		});
+		long[] after = countStatements();
+		return new long[] {after[0] - before[0], after[1] - before[1]};
+	}
+
+	private long[] countStatements() {
+		long[] counts = new long[2];
+		for (SqlStatementStats statement : context.getBean(SqlStatistics.class).getTopStatements(Integer.MAX_VALUE)) {
+			counts[0] += statement.getExecutions();
+			counts[1] += statement.getRows();
+		}
+		return counts;
+	}
+
+	private void createCoupon(long couponID, long companyID, int purchasers) {
+		primary.update("INSERT INTO Coupon (CouponID, CouponTitle, CouponStartDate, CouponEndDate, CouponAmount, CouponType,"
+				+ " CouponMessage, CouponPrice, CompanyID) VALUES (?, ?, '2030-01-01', '2030-12-31', 10, 0, 'message', 10, ?)",
+				couponID, "Coupon " + couponID, companyID);
+		List<Object[]> purchases = new ArrayList<Object[]>(purchasers);
+		for (long customerID = 1; customerID <= purchasers; customerID++) {
+			purchases.add(new Object[] {customerID, couponID});
+		}
+		primary.batchUpdate("INSERT INTO customer_coupon (CustomerID, CouponID) VALUES (?, ?)", purchases);
+	}
+
+}
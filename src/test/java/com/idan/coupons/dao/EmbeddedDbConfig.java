@@ -0,0 +1,168 @@
+package com.idan.coupons.dao;
+
+import static org.mockito.Mockito.mock;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+
+import com.idan.coupons.datasource.NamedQueryCatalog;
+import com.idan.coupons.datasource.ReadWriteRoutingDataSource;
+import com.idan.coupons.datasource.SqlStatistics;
+import com.idan.coupons.datasource.StatementStatsDataSource;
+import com.idan.coupons.enums.DataSourceType;
+import com.idan.coupons.events.ClusterEventBridge;
+import com.idan.coupons.events.CouponChangePublisher;
+import com.idan.coupons.ledger.PurchaseLedger;
+import com.idan.coupons.metrics.MetricsRegistry;
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * The DataSources and the DAOs of application-context.xml on two embedded H2 DBs in MODE=MySQL, a primary and a
+ * replica, each with the tables of db/h2-schema.sql. Every context gets its own DBs, which are dropped when it closes.
+ * The changes are published to the other nodes through a JmsTemplate that sends nothing.
+ */
+@Configuration
+@EnableTransactionManagement
+public class EmbeddedDbConfig {
+
+	private static final AtomicInteger databases = new AtomicInteger();
+
+	@Bean
+	static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
+		return new PropertySourcesPlaceholderConfigurer();
+	}
+
+	@Bean(destroyMethod="close")
+	public HikariDataSource primaryDataSource() {
+		return createDatabase("primary");
+	}
+
+	@Bean(destroyMethod="close")
+	public HikariDataSource replicaDataSource() {
+		return createDatabase("replica");
+	}
+
+	@Bean
+	ReadWriteRoutingDataSource routingDataSource() {
+		Map<Object, Object> targetDataSources = new HashMap<Object, Object>();
+		targetDataSources.put(DataSourceType.PRIMARY, primaryDataSource());
+		targetDataSources.put(DataSourceType.REPLICA, replicaDataSource());
+		ReadWriteRoutingDataSource routingDataSource = new ReadWriteRoutingDataSource();
+		routingDataSource.setTargetDataSources(targetDataSources);
+		routingDataSource.setDefaultTargetDataSource(primaryDataSource());
+		return routingDataSource;
+	}
+
+	@Bean
+	StatementStatsDataSource statementStatsDataSource() {
+		StatementStatsDataSource statementStatsDataSource = new StatementStatsDataSource();
+		statementStatsDataSource.setTargetDataSource(routingDataSource());
+		statementStatsDataSource.setSqlStatistics(sqlStatistics());
+		return statementStatsDataSource;
+	}
+
+	@Bean
+	public DataSource dataSource() {
+		LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy();
+		dataSource.setTargetDataSource(statementStatsDataSource());
+		dataSource.setDefaultAutoCommit(true);
+		dataSource.setDefaultTransactionIsolationName("TRANSACTION_REPEATABLE_READ");
+		return dataSource;
+	}
+
+	@Bean
+	LocalContainerEntityManagerFactoryBean entityManagerFactory() {
+		LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+		entityManagerFactory.setPersistenceUnitName("couponSystem");
+		entityManagerFactory.setDataSource(dataSource());
+		entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+		return entityManagerFactory;
+	}
+
+	@Bean
+	JpaTransactionManager transactionManager() {
+		return new JpaTransactionManager(entityManagerFactory().getObject());
+	}
+
+	@Bean
+	SqlStatistics sqlStatistics() {
+		return new SqlStatistics();
+	}
+
+	@Bean
+	MetricsRegistry metricsRegistry() {
+		return new MetricsRegistry();
+	}
+
+	@Bean
+	NamedQueryCatalog namedQueryCatalog() {
+		return new NamedQueryCatalog();
+	}
+
+	@Bean
+	JmsTemplate clusterJmsTemplate() {
+		return mock(JmsTemplate.class);
+	}
+
+	@Bean
+	ClusterEventBridge clusterEventBridge() {
+		return new ClusterEventBridge();
+	}
+
+	@Bean
+	CouponChangePublisher couponChangePublisher() {
+		return new CouponChangePublisher();
+	}
+
+	@Bean
+	SalesStatsDao salesStatsDao() {
+		return new SalesStatsDao();
+	}
+
+	@Bean
+	PurchaseLedgerDao purchaseLedgerDao() {
+		return new PurchaseLedgerDao();
+	}
+
+	@Bean
+	PurchaseLedger purchaseLedger() {
+		return new PurchaseLedger();
+	}
+
+	@Bean
+	CouponDao couponDao() {
+		return new CouponDao();
+	}
+
+	/**
+	 * An in-memory DB lives as long as a connection to it is open, so it is dropped when its pool is closed.
+	 */
+	private static HikariDataSource createDatabase(String name) {
+		HikariDataSource dataSource = new HikariDataSource();
+		dataSource.setJdbcUrl("jdbc:h2:mem:" + name + databases.incrementAndGet() + ";MODE=MySQL");
+		dataSource.setMaximumPoolSize(4);
+		dataSource.setMinimumIdle(1);
+
+		ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+		populator.addScript(new ClassPathResource("db/h2-schema.sql"));
+		DatabasePopulatorUtils.execute(populator, dataSource);
+		return dataSource;
+	}
+
+}
@@ -0,0 +1,123 @@
+package com.idan.coupons.datasource;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.dao.CouponDao;
+import com.idan.coupons.dao.EmbeddedDbConfig;
+import com.idan.coupons.exceptions.ApplicationException;
+
+/**
+ * The transactions of the DAOs on a primary and a replica embedded DB, which hold the same coupon under different titles.
+ */
+public class ReadWriteRoutingDataSourceTest {
+
+	private static final String ON_PRIMARY = "On the primary";
+	private static final String ON_REPLICA = "On the replica";
+
+	private AnnotationConfigApplicationContext context;
+	private JdbcTemplate primary;
+	private JdbcTemplate replica;
+	private CouponDao couponDao;
+
+	@Before
+	public void startContext() {
+		context = new AnnotationConfigApplicationContext(EmbeddedDbConfig.class, ReadYourWritesInterceptor.class);
+		EmbeddedDbConfig config = context.getBean(EmbeddedDbConfig.class);
+		primary = new JdbcTemplate(config.primaryDataSource());
+		replica = new JdbcTemplate(config.replicaDataSource());
+		couponDao = context.getBean(CouponDao.class);
+
+		for (JdbcTemplate database : new JdbcTemplate[] {primary, replica}) {
+			database.update("INSERT INTO company (CompanyID, CompanyName, CompanyPassword, CompanyEmail) VALUES (1, 'Pizza', 'pass', 'pizza@mail.com')");
+			database.update("INSERT INTO Coupon (CouponID, CouponTitle, CouponStartDate, CouponEndDate, CouponAmount, CouponType,"
+					+ " CouponMessage, CouponPrice, CompanyID) VALUES (1, ?, '2030-01-01', '2030-12-31', 10, 0, 'message', 10, 1)",
+					database == primary ? ON_PRIMARY : ON_REPLICA);
+		}
+	}
+
+	@After
+	public void closeContext() {
+		DataSourceRouting.clearPrimaryRequired();
+		context.close();
+	}
+
+	@Test
+	public void readOnlyTransactionUsesTheReplica() throws ApplicationException {
+		assertEquals(ON_REPLICA, couponDao.getCouponByCouponId(1L).getCouponTitle());
+	}
+
+	@Test
+	public void writeUsesThePrimary() throws ApplicationException {
+		CouponEntity coupon = couponDao.getCouponByCouponId(1L);
+		couponDao.buyCoupon(7L, coupon);
+
+		assertEquals(9, primary.queryForInt("SELECT CouponAmount FROM Coupon WHERE CouponID = 1"));
+		assertEquals(1, primary.queryForInt("SELECT COUNT(*) FROM customer_coupon"));
+		assertEquals(10, replica.queryForInt("SELECT CouponAmount FROM Coupon WHERE CouponID = 1"));
+		assertEquals(0, replica.queryForInt("SELECT COUNT(*) FROM customer_coupon"));
+	}
+
+	@Test
+	public void requirePrimaryPinsTheReadOnlyTransactions() throws ApplicationException {
+		DataSourceRouting.requirePrimary();
+		assertEquals(ON_PRIMARY, couponDao.getCouponByCouponId(1L).getCouponTitle());
+
+		DataSourceRouting.clearPrimaryRequired();
+		assertEquals(ON_REPLICA, couponDao.getCouponByCouponId(1L).getCouponTitle());
+	}
+
+	@Test
+	public void writeRequestPinsThePrimaryAndSetsTheCookie() throws Exception {
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		assertEquals(ON_PRIMARY, readDuringRequest(request("POST", null), response));
+		verify(response).addCookie(any(Cookie.class));
+	}
+
+	@Test
+	public void primaryUntilCookiePinsTheReadsUntilItPasses() throws Exception {
+		HttpServletResponse response = mock(HttpServletResponse.class);
+		Cookie recentWrite = new Cookie("primaryUntil", Long.toString(System.currentTimeMillis() + 5000));
+		Cookie formerWrite = new Cookie("primaryUntil", Long.toString(System.currentTimeMillis() - 1));
+
+		assertEquals(ON_PRIMARY, readDuringRequest(request("GET", recentWrite), response));
+		assertEquals(ON_REPLICA, readDuringRequest(request("GET", formerWrite), response));
+		assertEquals(ON_REPLICA, readDuringRequest(request("GET", null), response));
+	}
+
+	/**
+	 * Reading the coupon while a request is handled, between the calls of the interceptor as for a controller.
+	 * @return The title of the coupon, which tells the DB it was read from.
+	 */
+	private String readDuringRequest(HttpServletRequest request, HttpServletResponse response) throws Exception {
+		ReadYourWritesInterceptor interceptor = context.getBean(ReadYourWritesInterceptor.class);
+		interceptor.preHandle(request, response, null);
+		try {
+			return couponDao.getCouponByCouponId(1L).getCouponTitle();
+		} finally {
+			interceptor.afterCompletion(request, response, null, null);
+		}
+	}
+
+	private static HttpServletRequest request(String method, Cookie cookie) {
+		HttpServletRequest request = mock(HttpServletRequest.class);
+		when(request.getMethod()).thenReturn(method);
+		when(request.getCookies()).thenReturn(cookie == null ? null : new Cookie[] {cookie});
+		return request;
+	}
+
+}
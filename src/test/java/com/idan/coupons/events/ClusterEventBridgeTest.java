@@ -0,0 +1,171 @@
+package com.idan.coupons.events;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.ConnectionFactory;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.support.PropertySourcesPlaceholderConfigurer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+
+import com.idan.coupons.metrics.MetricsRegistry;
+
+/**
+ * Two nodes in one JVM, connected through an embedded vm:// broker as in application-context.xml.
+ */
+public class ClusterEventBridgeTest {
+
+	private static final String BROKER_URL = "vm://cluster-test?broker.persistent=false&broker.useJmx=false";
+	private static final String TOPIC = "coupons.changes";
+
+	private AnnotationConfigApplicationContext nodeA;
+	private AnnotationConfigApplicationContext nodeB;
+
+	@Before
+	public void startNodes() throws InterruptedException {
+		nodeA = startNode("node-a");
+		nodeB = startNode("node-b");
+		awaitSubscribed();
+	}
+
+	@After
+	public void stopNodes() {
+		nodeB.close();
+		nodeA.close();
+	}
+
+	@Test
+	public void remotePurchaseIsDispatchedOnTheOtherNode() throws InterruptedException {
+		nodeA.getBean(CouponChangePublisher.class).publishCouponPurchased(42L, 7L);
+
+		Long[] purchase = purchases(nodeB).poll(5, TimeUnit.SECONDS);
+		assertNotNull("The purchase didn't reach the other node", purchase);
+		assertEquals(Long.valueOf(42), purchase[0]);
+		assertEquals(Long.valueOf(7), purchase[1]);
+	}
+
+	@Test
+	public void changeIsNotDispatchedTwiceOnTheNodeThatMadeIt() throws InterruptedException {
+		nodeA.getBean(CouponChangePublisher.class).publishCouponPurchased(42L, 7L);
+
+		assertNotNull(purchases(nodeA).poll(5, TimeUnit.SECONDS));
+		// The topic delivers the change back to node A, by the time node B has it.
+		assertNotNull(purchases(nodeB).poll(5, TimeUnit.SECONDS));
+		assertNull(purchases(nodeA).poll(500, TimeUnit.MILLISECONDS));
+	}
+
+	private static AnnotationConfigApplicationContext startNode(String nodeId) {
+		AnnotationConfigApplicationContext node = new AnnotationConfigApplicationContext();
+		node.getEnvironment().getPropertySources().addFirst(new MapPropertySource("node",
+				Collections.<String, Object>singletonMap("coupons.cluster.nodeId", nodeId)));
+		node.register(NodeConfig.class);
+		node.refresh();
+		return node;
+	}
+
+	/**
+	 * The topic doesn't keep the changes for consumers that subscribe later, so a change is sent until both nodes
+	 * received one, and the changes received until then are discarded.
+	 */
+	private void awaitSubscribed() throws InterruptedException {
+		CouponChangePublisher publisher = nodeB.getBean(CouponChangePublisher.class);
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (purchases(nodeA).poll(100, TimeUnit.MILLISECONDS) == null) {
+			if (System.currentTimeMillis() > deadline) {
+				throw new IllegalStateException("The nodes didn't subscribe to the topic");
+			}
+			publisher.publishCouponPurchased(0L, 0L);
+		}
+		Thread.sleep(200);
+		purchases(nodeA).clear();
+		purchases(nodeB).clear();
+	}
+
+	private static BlockingQueue<Long[]> purchases(AnnotationConfigApplicationContext node) {
+		return node.getBean(RecordingListener.class).purchases;
+	}
+
+	@Configuration
+	static class NodeConfig {
+
+		@Bean
+		static PropertySourcesPlaceholderConfigurer placeholderConfigurer() {
+			return new PropertySourcesPlaceholderConfigurer();
+		}
+
+		@Bean
+		ConnectionFactory clusterConnectionFactory() {
+			ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(BROKER_URL);
+			connectionFactory.setUseAsyncSend(true);
+			return new CachingConnectionFactory(connectionFactory);
+		}
+
+		@Bean
+		JmsTemplate clusterJmsTemplate() {
+			JmsTemplate jmsTemplate = new JmsTemplate(clusterConnectionFactory());
+			jmsTemplate.setDefaultDestinationName(TOPIC);
+			jmsTemplate.setPubSubDomain(true);
+			jmsTemplate.setExplicitQosEnabled(true);
+			jmsTemplate.setDeliveryPersistent(false);
+			return jmsTemplate;
+		}
+
+		@Bean
+		DefaultMessageListenerContainer clusterListenerContainer() {
+			DefaultMessageListenerContainer container = new DefaultMessageListenerContainer();
+			container.setConnectionFactory(clusterConnectionFactory());
+			container.setDestinationName(TOPIC);
+			container.setPubSubDomain(true);
+			container.setConcurrentConsumers(1);
+			container.setMessageListener(clusterEventBridge());
+			return container;
+		}
+
+		@Bean
+		ClusterEventBridge clusterEventBridge() {
+			return new ClusterEventBridge();
+		}
+
+		@Bean
+		CouponChangePublisher couponChangePublisher() {
+			return new CouponChangePublisher();
+		}
+
+		@Bean
+		MetricsRegistry metricsRegistry() {
+			return new MetricsRegistry();
+		}
+
+		@Bean
+		RecordingListener recordingListener() {
+			return new RecordingListener();
+		}
+	}
+
+	static class RecordingListener implements CouponChangeListener {
+
+		private final BlockingQueue<Long[]> purchases = new LinkedBlockingQueue<Long[]>();
+
+		@Override
+		public void couponPurchased(Long couponID, Long customerID) {
+			purchases.add(new Long[] {couponID, customerID});
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.idan.coupons.ledger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.idan.coupons.beans.CouponEntity;
+import com.idan.coupons.beans.PurchaseLedgerEntity;
+import com.idan.coupons.dao.CouponDao;
+import com.idan.coupons.dao.EmbeddedDbConfig;
+import com.idan.coupons.dao.PurchaseLedgerDao;
+import com.idan.coupons.dao.SalesStatsDao;
+import com.idan.coupons.enums.PurchaseEventType;
+import com.idan.coupons.events.CouponChangeListener;
+import com.idan.coupons.exceptions.ApplicationException;
+
+/**
+ * The purchases, refunds and removals of the DAOs on an embedded DB, replayed from the ledger they were recorded in.
+ */
+public class PurchaseLedgerTest {
+
+	private static final String SALES_COUNTERS = "SELECT 'coupon', CouponID, UnitsSold, Revenue FROM coupon_sales"
+			+ " UNION ALL SELECT 'company', CompanyID, UnitsSold, Revenue FROM company_sales ORDER BY 1, 2";
+
+	private AnnotationConfigApplicationContext context;
+	private JdbcTemplate primary;
+	private CouponDao couponDao;
+	private PurchaseLedger purchaseLedger;
+
+	@Before
+	public void startContext() {
+		context = new AnnotationConfigApplicationContext(EmbeddedDbConfig.class);
+		primary = new JdbcTemplate(context.getBean(EmbeddedDbConfig.class).primaryDataSource());
+		couponDao = context.getBean(CouponDao.class);
+		purchaseLedger = context.getBean(PurchaseLedger.class);
+	}
+
+	@After
+	public void closeContext() {
+		context.close();
+	}
+
+	@Test
+	public void rebuildFromLedgerMatchesTheLiveCounters() throws Exception {
+		primary.update("INSERT INTO company (CompanyID, CompanyName, CompanyPassword, CompanyEmail) VALUES"
+				+ " (1, 'Pizza', 'pass', 'pizza@mail.com'), (2, 'Spa', 'pass', 'spa@mail.com')");
+		CouponEntity pizza = createCoupon(1, 1, 10);
+		CouponEntity drink = createCoupon(2, 1, 25);
+		CouponEntity massage = createCoupon(3, 2, 40);
+
+		for (long customerID = 1; customerID <= 6; customerID++) {
+			couponDao.buyCoupon(customerID, pizza);
+		}
+		for (long customerID = 1; customerID <= 4; customerID++) {
+			couponDao.buyCoupon(customerID, drink);
+			couponDao.buyCoupon(customerID, massage);
+		}
+		couponDao.removeBoughtCouponByCouponIDandCustomerID(massage, 3L);
+
+		// The purchases after the change of the price are recorded with the new price.
+		primary.update("UPDATE Coupon SET CouponPrice = 12.5 WHERE CouponID = 1");
+		pizza.setCouponPrice(12.5);
+		couponDao.removeBoughtCouponByCouponIDandCustomerID(pizza, 2L);
+		couponDao.buyCoupon(7L, pizza);
+
+		// The purchases of a removed coupon are recorded as removed, and its sales leave the counters of its company.
+		couponDao.removeCouponsByCouponIDs(Arrays.asList(drink.getCouponId()));
+
+		// Writing the entries still queued.
+		purchaseLedger.stop();
+		List<Map<String, Object>> liveCounters = primary.queryForList(SALES_COUNTERS);
+		assertFalse(liveCounters.isEmpty());
+
+		Map<Long, Integer> replayedUnits = new HashMap<Long, Integer>();
+		long lastSeq = purchaseLedger.replay(0, new CouponChangeListener() {
+			@Override
+			public void couponPurchased(Long couponID, Long customerID) {
+				replayedUnits.merge(couponID, 1, Integer::sum);
+			}
+
+			@Override
+			public void couponPurchaseCancelled(Long couponID, Long customerID) {
+				replayedUnits.merge(couponID, -1, Integer::sum);
+			}
+		});
+		assertEquals(primary.queryForLong("SELECT COUNT(*) FROM purchase_ledger"), lastSeq);
+		assertEquals(Integer.valueOf(6), replayedUnits.get(pizza.getCouponId()));
+		assertEquals(Integer.valueOf(0), replayedUnits.get(drink.getCouponId()));
+		assertEquals(Integer.valueOf(3), replayedUnits.get(massage.getCouponId()));
+
+		context.getBean(SalesStatsDao.class).rebuildSalesStatsFromLedger();
+		assertEquals(liveCounters, primary.queryForList(SALES_COUNTERS));
+	}
+
+	/**
+	 * Appending a ledger of many entries as the writer does, in batches, and replaying it with the cursor of the DAO.
+	 */
+	@Test
+	public void replayStreamsALargeLedger() throws ApplicationException {
+		int entries = 200000;
+		int batchSize = 5000;
+		PurchaseLedgerDao purchaseLedgerDao = context.getBean(PurchaseLedgerDao.class);
+		for (int first = 0; first < entries; first += batchSize) {
+			List<PurchaseLedgerEntity> batch = new ArrayList<PurchaseLedgerEntity>(batchSize);
+			for (int i = first; i < first + batchSize; i++) {
+				// Every tenth entry is a refund of the entry before it.
+				PurchaseEventType eventType = i % 10 == 9 ? PurchaseEventType.REFUND : PurchaseEventType.PURCHASE;
+				batch.add(new PurchaseLedgerEntity(eventType, (long) (i % 100), (long) i, 1L, 10, i));
+			}
+			purchaseLedgerDao.appendEntries(batch);
+		}
+
+		long[] counts = new long[2];
+		long lastSeq = purchaseLedger.replay(0, new CouponChangeListener() {
+			@Override
+			public void couponPurchased(Long couponID, Long customerID) {
+				counts[0]++;
+			}
+
+			@Override
+			public void couponPurchaseCancelled(Long couponID, Long customerID) {
+				counts[1]++;
+			}
+		});
+		assertEquals(entries, lastSeq);
+		assertEquals(entries * 9 / 10, counts[0]);
+		assertEquals(entries / 10, counts[1]);
+
+		// Replaying from a sequence number only reads the entries after it.
+		Arrays.fill(counts, 0);
+		purchaseLedger.replay(entries - 10, new CouponChangeListener() {
+			@Override
+			public void couponPurchased(Long couponID, Long customerID) {
+				counts[0]++;
+			}
+		});
+		assertEquals(9, counts[0]);
+	}
+
+	private CouponEntity createCoupon(long couponID, long companyID, double price) {
+		primary.update("INSERT INTO Coupon (CouponID, CouponTitle, CouponStartDate, CouponEndDate, CouponAmount, CouponType,"
+				+ " CouponMessage, CouponPrice, CompanyID) VALUES (?, ?, '2030-01-01', '2030-12-31', 100, 0, 'message', ?, ?)",
+				couponID, "Coupon " + couponID, price, companyID);
+		CouponEntity coupon = new CouponEntity();
+		coupon.setCouponId(couponID);
+		coupon.setCompanyID(companyID);
+		coupon.setCouponPrice(price);
+		return coupon;
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.idan.coupons.logging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.core.LogEvent;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.appender.AbstractAppender;
+import org.apache.logging.log4j.core.async.AsyncLoggerConfig;
+import org.apache.logging.log4j.core.config.AbstractConfiguration;
+import org.apache.logging.log4j.core.config.AppenderRef;
+import org.apache.logging.log4j.core.config.ConfigurationSource;
+import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.util.PropertiesUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * An async logger of its own context, whose appender blocks as a disk that stopped, with the policy and the threshold of
+ * log4j2.component.properties.
+ */
+public class CountingAsyncQueueFullPolicyTest {
+
+	private static final String RING_BUFFER_SIZE = "log4j2.asyncLoggerConfigRingBufferSize";
+	private static final int MAX_EVENTS = 100000;
+
+	private final CountDownLatch diskStopped = new CountDownLatch(1);
+	private String ringBufferSize;
+	private LoggerContext context;
+
+	@Before
+	public void startContext() {
+		ringBufferSize = System.setProperty(RING_BUFFER_SIZE, "128");
+		// The properties are cached by the first use of log4j in the JVM, which may be an earlier test.
+		PropertiesUtil.getProperties().reload();
+		context = new LoggerContext("CountingAsyncQueueFullPolicyTest");
+		context.start(new BlockingConfiguration(context));
+	}
+
+	@After
+	public void stopContext() {
+		diskStopped.countDown();
+		context.stop(10, TimeUnit.SECONDS);
+		if (ringBufferSize == null) {
+			System.clearProperty(RING_BUFFER_SIZE);
+		}
+		else {
+			System.setProperty(RING_BUFFER_SIZE, ringBufferSize);
+		}
+		PropertiesUtil.getProperties().reload();
+	}
+
+	@Test
+	public void errorIsDroppedWithoutWaitingWhenTheBufferIsFull() throws InterruptedException {
+		Logger logger = context.getLogger("coupons");
+		long dropped = CountingAsyncQueueFullPolicy.DROPPED_EVENTS.getCount();
+		int events = 0;
+		while (CountingAsyncQueueFullPolicy.DROPPED_EVENTS.getCount() == dropped) {
+			assertTrue("The buffer was not filled", ++events < MAX_EVENTS);
+			logger.info("Filling the buffer");
+		}
+
+		// Logged by another thread, so an error that waits for room fails the test instead of blocking it.
+		Thread requestThread = new Thread(() -> logger.error("Failed while the disk is slow", new IllegalStateException()));
+		requestThread.start();
+		requestThread.join(TimeUnit.SECONDS.toMillis(1));
+
+		assertFalse("The error waited for room in the buffer", requestThread.isAlive());
+		assertEquals(dropped + 2, CountingAsyncQueueFullPolicy.DROPPED_EVENTS.getCount());
+	}
+
+	private class BlockingConfiguration extends AbstractConfiguration {
+
+		private BlockingConfiguration(LoggerContext context) {
+			super(context, ConfigurationSource.NULL_SOURCE);
+		}
+
+		@Override
+		protected void doConfigure() {
+			BlockingAppender appender = new BlockingAppender();
+			appender.start();
+			addAppender(appender);
+			LoggerConfig loggerConfig = AsyncLoggerConfig.createLogger("false", "info", "coupons", "false",
+					new AppenderRef[] {AppenderRef.createAppenderRef(appender.getName(), null, null)}, null, this, null);
+			loggerConfig.addAppender(appender, Level.ALL, null);
+			addLogger("coupons", loggerConfig);
+		}
+	}
+
+	private class BlockingAppender extends AbstractAppender {
+
+		private BlockingAppender() {
+			super("Blocking", null, null);
+		}
+
+		@Override
+		public void append(LogEvent event) {
+			try {
+				diskStopped.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
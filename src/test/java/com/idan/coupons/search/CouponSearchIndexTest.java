@@ -0,0 +1,65 @@
+package com.idan.coupons.search;
+
+import static org.junit.Assert.assertEquals;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CouponSearchIndexTest {
+
+	@Test
+	public void prefixCompletesToTheTermsOfTheMostCoupons() throws Exception {
+		CouponSearchIndex index = index(2, "apple", "apple", "apple", "apricot", "avocado", "avocado", "a");
+
+		// The term equal to the prefix, and apple and avocado, but not apricot which comes first alphabetically.
+		List<Long> results = new ArrayList<Long>(index.search("a", 10));
+		Collections.sort(results);
+		assertEquals(Arrays.asList(1L, 2L, 3L, 5L, 6L, 7L), results);
+	}
+
+	@Test
+	public void termsAreLowerCasedWhateverTheDefaultLocale() throws Exception {
+		Locale defaultLocale = Locale.getDefault();
+		// In Turkish the lower case of I is the dotless ı.
+		Locale.setDefault(new Locale("tr", "TR"));
+		try {
+			CouponSearchIndex index = index(64, "PIZZA IN ISTANBUL");
+			assertEquals(Arrays.asList(1L), index.search("pizza in istanbul", 10));
+			assertEquals(Arrays.asList(1L), index.search("Pizza In Ist", 10));
+		} finally {
+			Locale.setDefault(defaultLocale);
+		}
+	}
+
+	/**
+	 * Building an index of coupons with the titles, with the IDs from 1 in their order.
+	 */
+	private static CouponSearchIndex index(int maxPrefixTerms, String... titles) throws Exception {
+		CouponSearchIndex index = new CouponSearchIndex();
+		Field field = CouponSearchIndex.class.getDeclaredField("maxPrefixTerms");
+		field.setAccessible(true);
+		field.setInt(index, maxPrefixTerms);
+
+		List<Map<String, Object>> coupons = new ArrayList<Map<String, Object>>();
+		for (int i = 0; i < titles.length; i++) {
+			Map<String, Object> coupon = new HashMap<String, Object>();
+			coupon.put("couponId", (long) i + 1);
+			coupon.put("couponTitle", titles[i]);
+			coupon.put("couponMessage", "message");
+			coupon.put("couponEndDate", "2030-01-01");
+			coupon.put("companyID", 1L);
+			coupons.add(coupon);
+		}
+		index.load(coupons);
+		return index;
+	}
+
+}
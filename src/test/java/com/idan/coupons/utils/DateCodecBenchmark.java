@@ -0,0 +1,81 @@
+package com.idan.coupons.utils;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The parsing and the formatting of the coupon dates by DateCodec against a strict SimpleDateFormat, over dates spread
+ * across the years of the coupons. Run with:
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.idan.coupons.utils.DateCodecBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations=5, time=1)
+@Measurement(iterations=5, time=1)
+@Fork(1)
+@State(Scope.Thread)
+public class DateCodecBenchmark {
+
+	private static final int DATES = 1024;
+
+	private final String[] dates = new String[DATES];
+	private final int[] epochDays = new int[DATES];
+	private final Date[] javaDates = new Date[DATES];
+	private final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+	private int next;
+
+	@Setup
+	public void createDates() throws ParseException {
+		dateFormat.setLenient(false);
+		Random random = new Random(1);
+		int firstDay = DateCodec.parse("2015-01-01");
+		for (int i = 0; i < DATES; i++) {
+			epochDays[i] = firstDay + random.nextInt(20 * 365);
+			dates[i] = DateCodec.format(epochDays[i]);
+			javaDates[i] = dateFormat.parse(dates[i]);
+		}
+	}
+
+	@Benchmark
+	public int parseDateCodec() {
+		return DateCodec.parse(dates[next++ & (DATES - 1)]);
+	}
+
+	@Benchmark
+	public Date parseSimpleDateFormat() throws ParseException {
+		return dateFormat.parse(dates[next++ & (DATES - 1)]);
+	}
+
+	@Benchmark
+	public String formatDateCodec() {
+		return DateCodec.format(epochDays[next++ & (DATES - 1)]);
+	}
+
+	@Benchmark
+	public String formatSimpleDateFormat() {
+		return dateFormat.format(javaDates[next++ & (DATES - 1)]);
+	}
+
+	public static void main(String[] args) throws RunnerException {
+		new Runner(new OptionsBuilder().include(DateCodecBenchmark.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.idan.coupons.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.time.LocalDate;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+
+import org.junit.Test;
+
+public class DateCodecTest {
+
+	@Test
+	public void everyDayOfTheYearsOfMySqlRoundTrips() {
+		LocalDate last = LocalDate.of(9999, 12, 31);
+		for (LocalDate date = LocalDate.of(1000, 1, 1); !date.isAfter(last); date = date.plusDays(1)) {
+			String formatted = date.toString();
+			int epochDay = DateCodec.parse(formatted);
+			assertEquals(formatted, date.toEpochDay(), epochDay);
+			assertEquals(formatted, DateCodec.format(epochDay));
+		}
+	}
+
+	@Test
+	public void yearBoundaries() {
+		assertEquals(-1, DateCodec.parse("1969-12-31"));
+		assertEquals(0, DateCodec.parse("1970-01-01"));
+		assertEquals(DateCodec.parse("2019-12-31") + 1, DateCodec.parse("2020-01-01"));
+		assertEquals(LocalDate.of(1000, 1, 1).toEpochDay(), DateCodec.parse("1000-01-01"));
+		assertEquals(LocalDate.of(9999, 12, 31).toEpochDay(), DateCodec.parse("9999-12-31"));
+		assertEquals(DateCodec.INVALID, DateCodec.parse("0999-12-31"));
+		assertEquals(DateCodec.INVALID, DateCodec.parse("10000-01-01"));
+	}
+
+	@Test
+	public void leapDays() {
+		assertEquals(LocalDate.of(2020, 2, 29).toEpochDay(), DateCodec.parse("2020-02-29"));
+		assertEquals(LocalDate.of(2000, 2, 29).toEpochDay(), DateCodec.parse("2000-02-29"));
+		assertEquals(DateCodec.INVALID, DateCodec.parse("2019-02-29"));
+		assertEquals(DateCodec.INVALID, DateCodec.parse("1900-02-29"));
+	}
+
+	@Test
+	public void invalidDates() {
+		String[] dates = {null, "", "2019-02-30", "2019-04-31", "2019-13-01", "2019-00-10", "2019-01-00", "2019-01-32",
+				"2019-1-", "2019--01", "-01-01", "2019-01", "2019-01-01-", "2019-01-01x", "abcd-01-01", "+2019-01-01",
+				"2019/01/01", "2019-001-01", "2019-01-001", " 2019-01-01"};
+		for (String date : dates) {
+			assertEquals(date, DateCodec.INVALID, DateCodec.parse(date));
+			assertTrue(date, !ValidationUtils.isValidDateFormat(date));
+		}
+	}
+
+	@Test
+	public void monthsAndDaysWithoutLeadingZeros() {
+		assertEquals(DateCodec.parse("2019-01-05"), DateCodec.parse("2019-1-5"));
+		assertEquals(DateCodec.parse("2019-11-05"), DateCodec.parse("2019-11-5"));
+	}
+
+	/**
+	 * The dates written to the DB must keep the format of the dates written before the codec, which DateUtils formatted
+	 * with String.format, so the dates of both compare as strings.
+	 */
+	@Test
+	public void normalizeAndFormatMatchTheFormerDateUtils() {
+		GregorianCalendar calendar = new GregorianCalendar(1999, Calendar.JANUARY, 1);
+		GregorianCalendar last = new GregorianCalendar(2031, Calendar.DECEMBER, 31);
+		while (!calendar.after(last)) {
+			int year = calendar.get(Calendar.YEAR);
+			int month = calendar.get(Calendar.MONTH) + 1;
+			int day = calendar.get(Calendar.DAY_OF_MONTH);
+			String former = String.format("%04d", year) + "-" + String.format("%02d", month) + "-" + String.format("%02d", day);
+
+			assertEquals(former, DateUtils.dateToStrConverter(calendar));
+			assertEquals(former, DateCodec.normalize(former));
+			assertEquals(former, DateCodec.normalize(year + "-" + month + "-" + day));
+			calendar.add(Calendar.DAY_OF_MONTH, 1);
+		}
+		assertEquals("2019-02-30", DateCodec.normalize("2019-02-30"));
+	}
+
+}
@@ -0,0 +1,83 @@
+-- The tables of the migrations of db/migration for the embedded H2 DB of the tests, which runs in MODE=MySQL.
+-- The migrations themselves build the indexes with the MySQL online DDL options, which H2 doesn't parse.
+
+CREATE TABLE company (
+	CompanyID BIGINT NOT NULL AUTO_INCREMENT,
+	CompanyName VARCHAR(255) NOT NULL,
+	CompanyPassword VARCHAR(255) NOT NULL,
+	CompanyEmail VARCHAR(255) NOT NULL,
+	PRIMARY KEY (CompanyID),
+	CONSTRAINT UK_CompanyName UNIQUE (CompanyName),
+	CONSTRAINT UK_CompanyEmail UNIQUE (CompanyEmail)
+);
+
+CREATE TABLE customer (
+	CustomerID BIGINT NOT NULL AUTO_INCREMENT,
+	CustomerName VARCHAR(255) NOT NULL,
+	CustomerPassword VARCHAR(255) NOT NULL,
+	CustomerEmail VARCHAR(255) NOT NULL,
+	PRIMARY KEY (CustomerID),
+	CONSTRAINT UK_CustomerEmail UNIQUE (CustomerEmail)
+);
+
+CREATE TABLE Coupon (
+	CouponID BIGINT NOT NULL AUTO_INCREMENT,
+	CouponTitle VARCHAR(255) NOT NULL,
+	CouponStartDate VARCHAR(255) NOT NULL,
+	CouponEndDate VARCHAR(255) NOT NULL,
+	CouponAmount INT NOT NULL,
+	CouponType INT NOT NULL,
+	CouponMessage VARCHAR(255) NOT NULL,
+	CouponPrice DOUBLE NOT NULL,
+	CouponImage VARCHAR(255),
+	CompanyID BIGINT NOT NULL,
+	PRIMARY KEY (CouponID),
+	CONSTRAINT UK_CouponTitle UNIQUE (CouponTitle)
+);
+CREATE INDEX IX_Coupon_CompanyID ON Coupon (CompanyID);
+CREATE INDEX IX_Coupon_CouponEndDate ON Coupon (CouponEndDate);
+CREATE INDEX IX_Coupon_CouponType ON Coupon (CouponType);
+
+CREATE TABLE customer_coupon (
+	CustomerID BIGINT NOT NULL,
+	CouponID BIGINT NOT NULL,
+	PRIMARY KEY (CustomerID, CouponID)
+);
+CREATE INDEX IX_customer_coupon_CouponID ON customer_coupon (CouponID);
+
+CREATE TABLE coupon_sales (
+	CouponID BIGINT NOT NULL,
+	CompanyID BIGINT NOT NULL,
+	UnitsSold BIGINT NOT NULL,
+	Revenue DOUBLE NOT NULL,
+	PRIMARY KEY (CouponID)
+);
+CREATE INDEX IX_coupon_sales_CompanyID ON coupon_sales (CompanyID);
+
+CREATE TABLE company_sales (
+	CompanyID BIGINT NOT NULL,
+	UnitsSold BIGINT NOT NULL,
+	Revenue DOUBLE NOT NULL,
+	PRIMARY KEY (CompanyID)
+);
+
+CREATE TABLE purchase_ledger (
+	Seq BIGINT NOT NULL AUTO_INCREMENT,
+	EventType INT NOT NULL,
+	CouponID BIGINT NOT NULL,
+	CustomerID BIGINT NOT NULL,
+	CompanyID BIGINT NOT NULL,
+	Price DOUBLE NOT NULL,
+	EventTime BIGINT NOT NULL,
+	PRIMARY KEY (Seq)
+);
+
+CREATE TABLE coupon_reservation (
+	ReservationID BIGINT NOT NULL AUTO_INCREMENT,
+	CouponID BIGINT NOT NULL,
+	CustomerID BIGINT NOT NULL,
+	ExpiresAt BIGINT NOT NULL,
+	PRIMARY KEY (ReservationID),
+	CONSTRAINT UK_CouponReservation UNIQUE (CustomerID, CouponID)
+);
+CREATE INDEX IX_coupon_reservation_ExpiresAt ON coupon_reservation (ExpiresAt);